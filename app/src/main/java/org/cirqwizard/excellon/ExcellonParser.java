@@ -15,11 +15,12 @@ This program is free software: you can redistribute it and/or modify
 package org.cirqwizard.excellon;
 
 import org.cirqwizard.geom.Point;
+import org.cirqwizard.io.AsciiInput;
+import org.cirqwizard.io.AsciiLine;
 import org.cirqwizard.settings.ApplicationConstants;
 import org.cirqwizard.generation.toolpath.DrillPoint;
 
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -53,7 +54,12 @@ public class ExcellonParser
     private Integer x = null;
     private Integer y = null;
 
-    private Reader reader;
+    private AsciiInput input;
+    private Matcher tcCommandMatcher = TC_COMMAND_PATTERN.matcher("");
+    private Matcher tCommandMatcher = T_COMMAND_PATTERN.matcher("");
+    private Matcher coordinatesMatcher = COORDINATES_PATTERN.matcher("");
+    private Matcher rCommandMatcher = R_COMMAND_PATTERN.matcher("");
+    private Matcher measurementSystemMatcher = MEASUREMENT_SYSTEM_PATTERN.matcher("");
 
     public ExcellonParser(Reader reader)
     {
@@ -66,38 +72,41 @@ public class ExcellonParser
     }
 
     public ExcellonParser(int integerPlaces, int decimalPlaces, BigDecimal coordinatesConversionRatio, boolean leadingZeros, Reader reader)
+    {
+        this(integerPlaces, decimalPlaces, coordinatesConversionRatio, leadingZeros, AsciiInput.of(reader));
+    }
+
+    public ExcellonParser(int integerPlaces, int decimalPlaces, BigDecimal coordinatesConversionRatio, boolean leadingZeros, AsciiInput input)
     {
         this.integerPlaces = integerPlaces;
         this.decimalPlaces = decimalPlaces;
         this.coordinatesConversionRatio = coordinatesConversionRatio;
         this.leadingZeros = leadingZeros;
-        this.reader = reader;
+        this.input = input;
     }
 
     public List<DrillPoint> parse() throws IOException
     {
-        LineNumberReader r = new LineNumberReader(reader);
-        String str;
-
-        while ((str = r.readLine()) != null)
+        AsciiLine line = new AsciiLine();
+        while (input.readLine(line))
         {
             if (header)
-                parseHeaderLine(str);
+                parseHeaderLine(line);
             else
-                parseBodyLine(str);
+                parseBodyLine(line);
         }
 
         return drillPoints;
     }
 
-    private boolean parseHeaderCommands(String line)
+    private boolean parseHeaderCommands(AsciiLine line)
     {
-        if (line.equals("%"))
+        if (line.contentEquals("%"))
         {
             header = false;
             return true;
         }
-        if (line.equals("M48"))
+        if (line.contentEquals("M48"))
         {
             header = true;
             return true;
@@ -106,9 +115,9 @@ public class ExcellonParser
         return false;
     }
 
-    private boolean parseToolDefinition(String line, boolean updateCurrentTool)
+    private boolean parseToolDefinition(AsciiLine line, boolean updateCurrentTool)
     {
-        Matcher matcher = TC_COMMAND_PATTERN.matcher(line);
+        Matcher matcher = tcCommandMatcher.reset(line);
         if (matcher.matches())
         {
             int toolNumber = Integer.parseInt(matcher.group(1));
@@ -122,14 +131,14 @@ public class ExcellonParser
         return false;
     }
 
-    private void parseHeaderLine(String line)
+    private void parseHeaderLine(AsciiLine line)
     {
         if (parseHeaderCommands(line))
             return;
         if (parseToolDefinition(line, false))
             return;
 
-        Matcher matcher = MEASUREMENT_SYSTEM_PATTERN.matcher(line);
+        Matcher matcher = measurementSystemMatcher.reset(line);
         if (matcher.matches())
         {
             coordinatesConversionRatio = matcher.group(1).equals("METRIC") ? MM_MM_RATIO : INCHES_MM_RATIO;
@@ -139,7 +148,7 @@ public class ExcellonParser
         }
     }
 
-    private void parseBodyLine(String line)
+    private void parseBodyLine(AsciiLine line)
     {
         if (parseHeaderCommands(line))
             return;
@@ -147,7 +156,7 @@ public class ExcellonParser
         if (parseToolDefinition(line, true))
             return;
 
-        Matcher matcher = T_COMMAND_PATTERN.matcher(line);
+        Matcher matcher = tCommandMatcher.reset(line);
         if (matcher.matches())
         {
             currentDiameter = tools.get(Integer.parseInt(matcher.group(1)));
@@ -156,7 +165,7 @@ public class ExcellonParser
             return;
         }
 
-        matcher = R_COMMAND_PATTERN.matcher(line);
+        matcher = rCommandMatcher.reset(line);
         if (matcher.matches())
         {
             int repetitions = Integer.valueOf(matcher.group(1));
@@ -175,7 +184,7 @@ public class ExcellonParser
             }
         }
 
-        matcher = COORDINATES_PATTERN.matcher(line);
+        matcher = coordinatesMatcher.reset(line);
         if (matcher.matches())
         {
             if (matcher.group(1) != null)
@@ -29,6 +29,7 @@ import org.cirqwizard.gerber.GerberPrimitive;
 import org.cirqwizard.layers.LayerElement;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -75,9 +76,13 @@ public class PCBPane extends javafx.scene.layout.Region
         return toolpaths;
     }
 
+    /**
+     * Primitives are copied once, as elements of columnar layers are created on every access and the pane goes
+     * through them on each repaint
+     */
     public void setGerberPrimitives(List<? extends LayerElement> gerberPrimitives)
     {
-        this.gerberPrimitives = gerberPrimitives;
+        this.gerberPrimitives = gerberPrimitives == null ? null : new ArrayList<>(gerberPrimitives);
         repaint();
     }
 
@@ -26,9 +26,15 @@ import javafx.scene.transform.Affine;
 import org.cirqwizard.geom.Point;
 import org.cirqwizard.layers.Board;
 import org.cirqwizard.layers.Layer;
+import org.cirqwizard.layers.LayerElement;
 import org.cirqwizard.layers.Panel;
 import org.cirqwizard.layers.PanelBoard;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class PanelPane extends Region
 {
     public static final Color BACKGROUND_COLOR = Color.web("#ddfbdd");
@@ -58,6 +64,9 @@ public class PanelPane extends Region
     private BoardDragListener boardDragListener;
 
     private Canvas canvas;
+    // Elements of columnar layers are created on access, so they are materialized once per layer version
+    private Map<Layer, List<? extends LayerElement>> layerElements = new IdentityHashMap<>();
+    private Map<Layer, Integer> layerVersions = new IdentityHashMap<>();
 
     public Panel getPanel()
     {
@@ -68,6 +77,8 @@ public class PanelPane extends Region
     {
         this.panel = panel;
         selectedBoard.setValue(null);
+        layerElements.clear();
+        layerVersions.clear();
     }
 
     public PanelPane()
@@ -153,11 +164,22 @@ public class PanelPane extends Region
                     g.setFill(color);
                     Layer layer = board.getBoard().getLayer(layerType);
                     if (layer != null)
-                        layer.getElements().stream().forEach(e -> e.render(g));
+                        getElements(layer).forEach(e -> e.render(g));
                     g.translate(-board.getX(), -board.getY());
                 });
     }
 
+    private List<? extends LayerElement> getElements(Layer layer)
+    {
+        Integer version = layerVersions.get(layer);
+        if (version == null || version != layer.getVersion())
+        {
+            layerElements.put(layer, new ArrayList<>(layer.getElements()));
+            layerVersions.put(layer, layer.getVersion());
+        }
+        return layerElements.get(layer);
+    }
+
     private void renderContour(GraphicsContext g)
     {
         g.setStroke(PANEL_CONTOUR);
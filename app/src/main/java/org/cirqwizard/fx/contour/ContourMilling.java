@@ -23,6 +23,7 @@ import org.cirqwizard.fx.SettingsDependentScreenController;
 import org.cirqwizard.fx.machining.Machining;
 import org.cirqwizard.fx.settings.SettingsEditor;
 import org.cirqwizard.generation.MillingToolpathGenerator;
+import org.cirqwizard.generation.gcode.LineSink;
 import org.cirqwizard.generation.gcode.MillingGCodeGenerator;
 import org.cirqwizard.generation.optimizer.Chain;
 import org.cirqwizard.generation.optimizer.ChainDetector;
@@ -38,6 +39,7 @@ import org.cirqwizard.settings.SettingsFactory;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class ContourMilling extends Machining
@@ -104,34 +106,41 @@ public class ContourMilling extends Machining
     }
 
     @Override
-    protected String generateGCode()
+    protected Consumer<LineSink> prepareGCode()
     {
         ContourMillingSettings settings = SettingsFactory.getContourMillingSettings();
+        int feedXY = settings.getFeedXY().getValue();
+        int feedZ = settings.getFeedZ().getValue();
         int arcFeed = (settings.getFeedXY().getValue() * settings.getFeedArcs().getValue() / 100);
+        int clearance = settings.getClearance().getValue();
+        int safetyHeight = settings.getSafetyHeight().getValue();
+        int workingHeight = settings.getWorkingHeight().getValue();
+        int maxStepDown = settings.getMaxStepDown().getValue();
+        int speed = settings.getSpeed().getValue();
         MillingGCodeGenerator generator = new MillingGCodeGenerator(getMainApplication().getContext());
+        return sink -> generateGCode(generator, feedXY, feedZ, arcFeed, clearance, safetyHeight, workingHeight, maxStepDown,
+                speed, sink);
+    }
 
-        StringBuilder sb = new StringBuilder();
+    private void generateGCode(MillingGCodeGenerator generator, int feedXY, int feedZ, int arcFeed, int clearance,
+                               int safetyHeight, int workingHeight, int maxStepDown, int speed, LineSink sink)
+    {
         double stepNumber = 1;
 
-        int workingStepHeight = settings.getMaxStepDown().getValue();
+        int workingStepHeight = maxStepDown;
         if (workingStepHeight > 0)
-            stepNumber = Math.ceil(Math.abs((double)settings.getWorkingHeight().getValue() / workingStepHeight));
+            stepNumber = Math.ceil(Math.abs((double)workingHeight / workingStepHeight));
 
-        int roundedStepHeight = (int)(settings.getWorkingHeight().getValue() / stepNumber);
+        int roundedStepHeight = (int)(workingHeight / stepNumber);
 
-        int currentHeight = settings.getWorkingHeight().getValue();
+        int currentHeight = workingHeight;
         currentHeight -=  (stepNumber - 1) * roundedStepHeight;
 
         for (int i = 0; i < stepNumber; ++i)
         {
-            String generatedGCode = generator.generate(new RTPostprocessor(), settings.getFeedXY().getValue(), settings.getFeedZ().getValue(), arcFeed,
-                    settings.getClearance().getValue(), settings.getSafetyHeight().getValue(), currentHeight, settings.getSpeed().getValue());
-
-            sb.append(generatedGCode);
+            generator.generate(new RTPostprocessor(), feedXY, feedZ, arcFeed, clearance, safetyHeight, currentHeight, speed, sink);
 
             currentHeight += roundedStepHeight;
         }
-
-        return sb.toString();
     }
 }
@@ -22,6 +22,7 @@ import org.cirqwizard.fx.SettingsDependentScreenController;
 import org.cirqwizard.fx.machining.Machining;
 import org.cirqwizard.fx.settings.SettingsEditor;
 import org.cirqwizard.generation.DispensingToolpathGenerator;
+import org.cirqwizard.generation.gcode.LineSink;
 import org.cirqwizard.generation.gcode.PasteGCodeGenerator;
 import org.cirqwizard.generation.toolpath.Toolpath;
 import org.cirqwizard.gerber.GerberPrimitive;
@@ -31,7 +32,9 @@ import org.cirqwizard.post.RTPostprocessor;
 import org.cirqwizard.settings.DispensingSettings;
 import org.cirqwizard.settings.SettingsFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public abstract class Dispensing extends Machining
 {
@@ -75,14 +78,17 @@ public abstract class Dispensing extends Machining
     protected abstract boolean mirror();
 
     @Override
-    protected String generateGCode()
+    protected Consumer<LineSink> prepareGCode()
     {
         DispensingSettings settings = SettingsFactory.getDispensingSettings();
+        int preFeedPause = settings.getPreFeedPause().getValue();
+        int postFeedPause = settings.getPostFeedPause().getValue();
+        int feed = settings.getFeed().getValue();
+        int clearance = settings.getClearance().getValue();
+        int workingHeight = settings.getWorkingHeight().getValue();
         Context context = getMainApplication().getContext();
-        PasteGCodeGenerator generator = new PasteGCodeGenerator(context, pcbPane.toolpathsProperty().getValue(),
+        PasteGCodeGenerator generator = new PasteGCodeGenerator(context, new ArrayList<>(pcbPane.toolpathsProperty().getValue()),
                 mirror());
-        return generator.generate(new RTPostprocessor(), settings.getPreFeedPause().getValue(),
-                settings.getPostFeedPause().getValue(), settings.getFeed().getValue(), settings.getClearance().getValue(),
-                settings.getWorkingHeight().getValue());
+        return sink -> generator.generate(new RTPostprocessor(), preFeedPause, postFeedPause, feed, clearance, workingHeight, sink);
     }
 }
@@ -22,6 +22,7 @@ import org.cirqwizard.fx.SettingsDependentScreenController;
 import org.cirqwizard.fx.machining.Machining;
 import org.cirqwizard.fx.settings.SettingsEditor;
 import org.cirqwizard.generation.gcode.DrillGCodeGenerator;
+import org.cirqwizard.generation.gcode.LineSink;
 import org.cirqwizard.generation.toolpath.DrillPoint;
 import org.cirqwizard.generation.toolpath.Toolpath;
 import org.cirqwizard.layers.Board;
@@ -30,8 +31,10 @@ import org.cirqwizard.post.RTPostprocessor;
 import org.cirqwizard.settings.DrillingSettings;
 import org.cirqwizard.settings.SettingsFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class Drilling extends Machining
@@ -77,15 +80,20 @@ public class Drilling extends Machining
     }
 
     @Override
-    protected String generateGCode()
+    protected Consumer<LineSink> prepareGCode()
     {
         DrillingSettings settings = SettingsFactory.getDrillingSettings();
-        List<? extends Toolpath> toolpaths = pcbPane.toolpathsProperty().getValue();
+        int feed = settings.getFeed().getValue();
+        int clearance = settings.getClearance().getValue();
+        int safetyHeight = settings.getSafetyHeight().getValue();
+        int workingHeight = settings.getWorkingHeight().getValue();
+        int speed = settings.getSpeed().getValue();
+        List<DrillPoint> drillPoints = new ArrayList<>();
+        for (Toolpath toolpath : pcbPane.toolpathsProperty().getValue())
+            drillPoints.add((DrillPoint) toolpath);
         Context context = getMainApplication().getContext();
         DrillGCodeGenerator generator = new DrillGCodeGenerator(context.getG54X(), context.getG54Y(), context.getG54Z(),
-                (List<DrillPoint>) toolpaths);
-        return generator.generate(new RTPostprocessor(), settings.getFeed().getValue(), settings.getClearance().getValue(),
-                settings.getSafetyHeight().getValue(), settings.getWorkingHeight().getValue(),
-                settings.getSpeed().getValue());
+                drillPoints);
+        return sink -> generator.generate(new RTPostprocessor(), feed, clearance, safetyHeight, workingHeight, speed, sink);
     }
 }
@@ -29,7 +29,6 @@ import org.cirqwizard.generation.optimizer.OptimizationService;
 import org.cirqwizard.generation.toolpath.*;
 import org.cirqwizard.logging.LoggerFactory;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -61,6 +60,8 @@ public abstract class LongProcessingMachining extends Machining
                         List<Toolpath> toolpaths = new ArrayList<>();
 
                         cacheKey = getCacheKey();
+                        if (toolpathsCache == null)
+                            toolpathsCache = new ToolpathsCache();
                         GenerationService generationService = getGenerationService();
                         bindToService(generationService);
                         List<Chain> chains = generationService.generate();
@@ -93,6 +94,7 @@ public abstract class LongProcessingMachining extends Machining
     };
 
     protected ToolpathsCacheKey cacheKey;
+    protected ToolpathsCache toolpathsCache;
 
     protected abstract ToolpathsCacheKey getCacheKey();
     protected abstract GenerationService getGenerationService();
@@ -118,25 +120,29 @@ public abstract class LongProcessingMachining extends Machining
     }
 
 
+    private String getCacheFilename()
+    {
+        String filename = getMainApplication().getContext().getPanelFile().getAbsolutePath();
+        return filename.substring(0, filename.lastIndexOf('.')) + ".tmp";
+    }
+
     private boolean loadFromCache()
     {
+        toolpathsCache = null;
         try
         {
-            String filename = getMainApplication().getContext().getPanelFile().getAbsolutePath();
-            filename = filename.substring(0, filename.lastIndexOf('.'));
-            ToolpathsCache cache = ToolpathsPersistor.loadFromFile(filename + ".tmp");
+            toolpathsCache = ToolpathsPersistor.loadFromFile(getCacheFilename());
+            if (toolpathsCache == null)
+                return false;
+
             if (!getMainApplication().getContext().getPanel().isCacheValid())
             {
-                File cacheFile = new File(filename + ".tmp");
-                if (cacheFile.exists())
-                    cacheFile.delete();
+                // Tool paths of unchanged boards are still valid and get reused during generation
+                toolpathsCache.invalidatePanelToolpaths();
                 return false;
             }
 
-            if (cache == null)
-                return false;
-
-            List<Toolpath> toolpaths = cache.getToolpaths(getCacheKey());
+            List<Toolpath> toolpaths = toolpathsCache.getToolpaths(getCacheKey());
             if (toolpaths != null)
             {
                 cacheKey = getCacheKey();
@@ -156,15 +162,12 @@ public abstract class LongProcessingMachining extends Machining
     {
         try
         {
-            String filename = getMainApplication().getContext().getPanelFile().getAbsolutePath();
-            filename = filename.substring(0, filename.lastIndexOf('.'));
-            ToolpathsCache cache = ToolpathsPersistor.loadFromFile(filename + ".tmp");
-            if (cache == null)
-                cache = new ToolpathsCache();
-            cache.setToolpaths(getCacheKey(), toolpaths);
+            if (toolpathsCache == null)
+                toolpathsCache = new ToolpathsCache();
+            toolpathsCache.setToolpaths(getCacheKey(), toolpaths);
             getMainApplication().getContext().getPanel().updateCacheTimestamps();
             getMainApplication().getContext().getPanel().save(getMainApplication().getContext().getPanelFile());
-            ToolpathsPersistor.saveToFile(cache, filename  + ".tmp");
+            ToolpathsPersistor.saveToFile(toolpathsCache, getCacheFilename());
         }
         catch (ToolpathPersistingException e)
         {
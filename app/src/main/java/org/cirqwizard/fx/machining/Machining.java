@@ -26,12 +26,16 @@ import org.cirqwizard.fx.Context;
 import org.cirqwizard.fx.PCBPane;
 import org.cirqwizard.fx.SettingsDependentScreenController;
 import org.cirqwizard.fx.services.SerialInterfaceService;
+import org.cirqwizard.generation.gcode.LineSink;
+import org.cirqwizard.generation.gcode.ProgramPipe;
 import org.cirqwizard.generation.toolpath.Toolpath;
 import org.cirqwizard.layers.Board;
 
 import java.net.URL;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -243,14 +247,20 @@ public abstract class Machining extends SettingsDependentScreenController implem
         pcbPane.repaint(changedToolpaths);
     }
 
-    protected abstract String generateGCode();
+    /**
+     * Takes tool paths, settings and context the program depends on. Called on FX thread, while the returned
+     * generator may run on another one, so it must not touch screen state.
+     */
+    protected abstract Consumer<LineSink> prepareGCode();
 
     public void showGCodeListing()
     {
         veil.visibleProperty().unbind();
         veil.setVisible(true);
         gcodePane.setVisible(true);
-        gcodeListing.setText(generateGCode());
+        StringBuilder program = new StringBuilder();
+        prepareGCode().accept(line -> program.append(line).append('\n'));
+        gcodeListing.setText(program.toString());
         gcodeListing.requestFocus();
     }
 
@@ -264,7 +274,29 @@ public abstract class Machining extends SettingsDependentScreenController implem
     public void executeProgram()
     {
         veil.visibleProperty().bind(serialService.runningProperty());
-        serialService.setProgram(generateGCode());
+        // Program is sent while later tool paths are still being formatted
+        ProgramPipe program = new ProgramPipe();
+        Consumer<LineSink> generator = prepareGCode();
+        Thread generationThread = new Thread(() ->
+        {
+            try
+            {
+                generator.accept(program);
+                program.close();
+            }
+            catch (CancellationException e)
+            {
+                // Execution has been stopped
+            }
+            catch (Throwable e)
+            {
+                // Reported by the service sending the program
+                program.fail(e);
+            }
+        }, "G-code generation");
+        generationThread.setDaemon(true);
+        generationThread.start();
+        serialService.setProgram(program);
         serialService.restart();
     }
 
@@ -21,6 +21,7 @@ import org.cirqwizard.fx.SettingsDependentScreenController;
 import org.cirqwizard.fx.machining.LongProcessingMachining;
 import org.cirqwizard.fx.settings.SettingsEditor;
 import org.cirqwizard.generation.GenerationService;
+import org.cirqwizard.generation.gcode.LineSink;
 import org.cirqwizard.generation.gcode.TraceGCodeGenerator;
 import org.cirqwizard.generation.optimizer.Chain;
 import org.cirqwizard.generation.optimizer.OptimizationService;
@@ -28,8 +29,11 @@ import org.cirqwizard.generation.toolpath.ToolpathsCacheKey;
 import org.cirqwizard.post.RTPostprocessor;
 import org.cirqwizard.settings.RubOutSettings;
 import org.cirqwizard.settings.SettingsFactory;
+import org.cirqwizard.settings.ToolpathEngine;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public abstract class Rubout extends LongProcessingMachining
 {
@@ -80,7 +84,7 @@ public abstract class Rubout extends LongProcessingMachining
     {
         RubOutSettings settings = SettingsFactory.getRubOutSettings();
         return new ToolpathsCacheKey(getCacheId(), settings.getToolDiameter().getValue(), 0,
-                0, false, settings.getInitialOffset().getValue(), settings.getOverlap().getValue());
+                0, false, ToolpathEngine.RASTER, settings.getInitialOffset().getValue(), settings.getOverlap().getValue());
     }
 
     @Override
@@ -90,15 +94,20 @@ public abstract class Rubout extends LongProcessingMachining
     }
 
     @Override
-    protected String generateGCode()
+    protected Consumer<LineSink> prepareGCode()
     {
         RubOutSettings settings = SettingsFactory.getRubOutSettings();
+        int feedXY = settings.getFeedXY().getValue();
+        int feedZ = settings.getFeedZ().getValue();
         int arcFeed = (settings.getFeedXY().getValue() * settings.getFeedArcs().getValue() / 100);
+        int clearance = settings.getClearance().getValue();
+        int safetyHeight = settings.getSafetyHeight().getValue();
+        int workingHeight = settings.getWorkingHeight().getValue();
+        int speed = settings.getSpeed().getValue();
         TraceGCodeGenerator generator = new TraceGCodeGenerator(getMainApplication().getContext(),
-                getMainApplication().getContext().getPanel().getToolspaths(getCurrentLayer()), mirror());
-        return generator.generate(new RTPostprocessor(), settings.getFeedXY().getValue(), settings.getFeedZ().getValue(), arcFeed,
-                settings.getClearance().getValue(), settings.getSafetyHeight().getValue(), settings.getWorkingHeight().getValue(),
-                settings.getSpeed().getValue());
+                new ArrayList<>(getMainApplication().getContext().getPanel().getToolspaths(getCurrentLayer())), mirror());
+        return sink -> generator.generate(new RTPostprocessor(), feedXY, feedZ, arcFeed, clearance, safetyHeight, workingHeight,
+                speed, sink);
     }
 
     @Override
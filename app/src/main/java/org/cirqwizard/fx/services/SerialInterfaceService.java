@@ -21,21 +21,21 @@ import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import org.cirqwizard.fx.MainApplication;
 import org.cirqwizard.fx.util.ExceptionAlert;
+import org.cirqwizard.generation.gcode.ProgramPipe;
 import org.cirqwizard.logging.LoggerFactory;
 import org.cirqwizard.serial.ExecutionException;
 import org.cirqwizard.serial.SerialException;
+import org.cirqwizard.settings.SettingsFactory;
 
-import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CancellationException;
 
 
 public class SerialInterfaceService extends Service
 {
+    private final static long LINE_TIMEOUT = 20000000;
+
     private MainApplication mainApplication;
-    private List<String> programLines;
+    private ProgramPipe program;
     private Property<String> executionTime = new SimpleStringProperty("");
     private Property<String> responses = new SimpleStringProperty("");
     private boolean readResponses;
@@ -52,21 +52,23 @@ public class SerialInterfaceService extends Service
     }
 
     public void setProgram(String program, boolean readResponses, boolean suppressExceptions)
+    {
+        setProgram(ProgramPipe.of(program), readResponses, suppressExceptions);
+    }
+
+    /**
+     * Sets program which is still being generated, lines are sent as they come out of the pipe
+     */
+    public void setProgram(ProgramPipe program)
+    {
+        setProgram(program, false, false);
+    }
+
+    public void setProgram(ProgramPipe program, boolean readResponses, boolean suppressExceptions)
     {
         this.readResponses = readResponses;
         this.suppressExceptions = suppressExceptions;
-        programLines = new ArrayList<>();
-        LineNumberReader reader = new LineNumberReader(new StringReader(program));
-        String str;
-        try
-        {
-            while ((str = reader.readLine()) != null)
-                programLines.add(str);
-        }
-        catch (IOException e)
-        {
-            LoggerFactory.logException("Error reading a program from StringReader", e);
-        }
+        this.program = program;
     }
 
     public Property<String> executionTimeProperty()
@@ -82,7 +84,7 @@ public class SerialInterfaceService extends Service
     @Override
     protected Task createTask()
     {
-        return new SerialInterfaceTask();
+        return new SerialInterfaceTask(program);
     }
 
     private String formatTime(long time)
@@ -92,6 +94,13 @@ public class SerialInterfaceService extends Service
 
     public class SerialInterfaceTask extends Task
     {
+        private ProgramPipe program;
+
+        public SerialInterfaceTask(ProgramPipe program)
+        {
+            this.program = program;
+        }
+
         @Override
         protected Object call() throws Exception
         {
@@ -102,25 +111,39 @@ public class SerialInterfaceService extends Service
                     Platform.runLater(() -> responses.setValue(""));
 
                 long executionStartTime = System.currentTimeMillis();
-                for (int i = 0; i < programLines.size(); i++)
+                int bufferSize = SettingsFactory.getApplicationSettings().getStreamingBufferSize().getValue();
+                if (bufferSize > 0)
+                {
+                    long[] lastUpdate = {-1};
+                    mainApplication.getSerialInterface().stream(program, bufferSize, LINE_TIMEOUT, responseBuilder,
+                            suppressExceptions, i ->
+                            {
+                                // Acknowledgements arrive much faster than the screen needs to be updated
+                                long time = (System.currentTimeMillis() - executionStartTime) / 1000;
+                                if (time == lastUpdate[0])
+                                    return;
+                                lastUpdate[0] = time;
+                                updateStatus(responseBuilder, time);
+                            });
+                    updateStatus(responseBuilder, (System.currentTimeMillis() - executionStartTime) / 1000);
+                    return null;
+                }
+
+                while (program.hasNext())
                 {
                     if (isCancelled())
                         throw new InterruptedException();
 
                     try
                     {
-                        mainApplication.getSerialInterface().send(programLines.get(i), 20000000, responseBuilder, false);
+                        mainApplication.getSerialInterface().send(program.next(), LINE_TIMEOUT, responseBuilder, false);
                     }
                     catch (SerialException | ExecutionException e)
                     {
                         if (!suppressExceptions)
                             throw e;
                     }
-                    if (readResponses)
-                        Platform.runLater(() -> responses.setValue(responseBuilder.toString()));
-                    updateProgress(i, programLines.size());
-                    final String s = formatTime((System.currentTimeMillis() - executionStartTime) / 1000);
-                    Platform.runLater(() -> executionTime.setValue(s));
+                    updateStatus(responseBuilder, (System.currentTimeMillis() - executionStartTime) / 1000);
                 }
             }
             catch (SerialException | ExecutionException e)
@@ -132,11 +155,36 @@ public class SerialInterfaceService extends Service
                                 "The most sensible thing to do now would be to close the program and start over again. Sorry about that.", e);
                 alert.showAndWait();
             }
-            catch (InterruptedException e)
+            catch (InterruptedException | CancellationException e)
             {
                 mainApplication.getCNCController().interruptProgram();
             }
+            catch (IllegalStateException e)
+            {
+                LoggerFactory.logException("Error generating the program", e);
+                mainApplication.getCNCController().interruptProgram();
+                ExceptionAlert alert = new ExceptionAlert("Oops! That's embarrassing!", "Program generation error",
+                        "Something went wrong while generating the program. The program has been interrupted.", e);
+                alert.showAndWait();
+            }
+            finally
+            {
+                // Releases generator of the program if execution ends before the program does
+                program.cancel();
+            }
             return null;
         }
+
+        private void updateStatus(StringBuilder responseBuilder, long time)
+        {
+            if (readResponses)
+            {
+                String response = responseBuilder.toString();
+                Platform.runLater(() -> responses.setValue(response));
+            }
+            updateProgress(program.getProgress(), 1);
+            final String s = formatTime(time);
+            Platform.runLater(() -> executionTime.setValue(s));
+        }
     }
 }
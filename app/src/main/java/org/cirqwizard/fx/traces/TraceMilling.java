@@ -20,6 +20,7 @@ import org.cirqwizard.fx.PCBPane;
 import org.cirqwizard.fx.SettingsDependentScreenController;
 import org.cirqwizard.fx.machining.LongProcessingMachining;
 import org.cirqwizard.generation.GenerationService;
+import org.cirqwizard.generation.gcode.LineSink;
 import org.cirqwizard.generation.gcode.TraceGCodeGenerator;
 import org.cirqwizard.generation.optimizer.Chain;
 import org.cirqwizard.generation.optimizer.OptimizationService;
@@ -29,7 +30,9 @@ import org.cirqwizard.settings.InsulationMillingSettings;
 import org.cirqwizard.settings.SettingsFactory;
 import org.cirqwizard.settings.ToolSettings;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public abstract class TraceMilling extends LongProcessingMachining
 {
@@ -65,7 +68,8 @@ public abstract class TraceMilling extends LongProcessingMachining
     @Override
     protected GenerationService getGenerationService()
     {
-        return new org.cirqwizard.generation.ToolpathGenerationService(getMainApplication().getContext(), getCurrentLayer());
+        return new org.cirqwizard.generation.ToolpathGenerationService(getMainApplication().getContext(), getCurrentLayer(),
+                getCacheKey(), toolpathsCache);
     }
 
     @Override
@@ -82,7 +86,8 @@ public abstract class TraceMilling extends LongProcessingMachining
     {
         ToolSettings currentTool = getMainApplication().getContext().getCurrentMillingTool();
         return new ToolpathsCacheKey(getCacheId(), currentTool.getDiameter(),
-                currentTool.getAdditionalPasses(), currentTool.getAdditionalPassesOverlap(), currentTool.isAdditionalPassesPadsOnly(), 0, 0);
+                currentTool.getAdditionalPasses(), currentTool.getAdditionalPassesOverlap(), currentTool.isAdditionalPassesPadsOnly(),
+                SettingsFactory.getInsulationMillingSettings().getToolpathEngine().getValue(), 0, 0);
     }
 
     @Override
@@ -95,14 +100,20 @@ public abstract class TraceMilling extends LongProcessingMachining
     protected abstract int getCacheId();
 
     @Override
-    protected String generateGCode()
+    protected Consumer<LineSink> prepareGCode()
     {
         InsulationMillingSettings settings = SettingsFactory.getInsulationMillingSettings();
         ToolSettings currentTool = getMainApplication().getContext().getCurrentMillingTool();
+        int feedXY = currentTool.getFeedXY();
+        int feedZ = currentTool.getFeedZ();
         int arcFeed = (currentTool.getFeedXY() * currentTool.getArcs() / 100);
-        TraceGCodeGenerator generator = new TraceGCodeGenerator(getMainApplication().getContext(), pcbPane.toolpathsProperty().getValue(), mirror());
-        return generator.generate(new RTPostprocessor(), currentTool.getFeedXY(), currentTool.getFeedZ(), arcFeed,
-                settings.getClearance().getValue(), settings.getSafetyHeight().getValue(), settings.getWorkingHeight().getValue(),
-                currentTool.getSpeed());
+        int clearance = settings.getClearance().getValue();
+        int safetyHeight = settings.getSafetyHeight().getValue();
+        int workingHeight = settings.getWorkingHeight().getValue();
+        int speed = currentTool.getSpeed();
+        TraceGCodeGenerator generator = new TraceGCodeGenerator(getMainApplication().getContext(),
+                new ArrayList<>(pcbPane.toolpathsProperty().getValue()), mirror());
+        return sink -> generator.generate(new RTPostprocessor(), feedXY, feedZ, arcFeed, clearance, safetyHeight, workingHeight,
+                speed, sink);
     }
 }
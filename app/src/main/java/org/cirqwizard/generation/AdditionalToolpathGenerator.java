@@ -20,18 +20,13 @@ import org.cirqwizard.geom.Point;
 import org.cirqwizard.gerber.Flash;
 import org.cirqwizard.gerber.GerberPrimitive;
 import org.cirqwizard.logging.LoggerFactory;
-import org.cirqwizard.settings.SettingsFactory;
 import org.cirqwizard.generation.toolpath.CuttingToolpath;
 import org.cirqwizard.generation.toolpath.LinearToolpath;
 import org.cirqwizard.generation.toolpath.Toolpath;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 public class AdditionalToolpathGenerator extends AbstractToolpathGenerator
 {
@@ -58,73 +53,63 @@ public class AdditionalToolpathGenerator extends AbstractToolpathGenerator
         long tt = System.currentTimeMillis();
         final Vector<Toolpath> segments = new Vector<>();
 
-        ExecutorService pool = Executors.newFixedThreadPool(SettingsFactory.getApplicationSettings().getProcessingThreads().getValue());
         progressProperty.setValue(0);
         final double progressIncrement = 1.0 / primitives.size();
+        final PrimitiveIndex primitiveIndex = new PrimitiveIndex(primitives, toolDiameter / 2);
 
-        for (final GerberPrimitive primitive : primitives)
+        ProcessingPool.getInstance().forEach(primitives, primitive ->
         {
-            pool.submit(() ->
+            try
             {
-                try
-                {
-                    Platform.runLater(() -> progressProperty.setValue(progressProperty.getValue() + progressIncrement));
-                    if (!(primitive instanceof Flash))
-                        return null;
+                Platform.runLater(() -> progressProperty.setValue(progressProperty.getValue() + progressIncrement));
+                if (!(primitive instanceof Flash))
+                    return;
 
-                    Flash flash = (Flash) primitive;
-                    ArrayList<GerberPrimitive> primitivesCopy = new ArrayList<>(primitives);
-                    primitivesCopy.remove(flash);
-                    int windowSize = (flash.getAperture().getCircumRadius() + (inflation * (passes + 1) * overlap / 100)) * 2;
-                    int x = flash.getX() - windowSize;
-                    int y = flash.getY() - windowSize;
-                    x = Math.max(0, x);
-                    y = Math.max(0, y);
-                    Point windowOffset = new Point(x, y);
-                    int windowWidth = Math.min(windowSize * 2, width - x);
-                    int windowHeight = Math.min(windowSize * 2, height - y);
-                    for (int i = 0; i < passes; i++)
+                Flash flash = (Flash) primitive;
+                int windowSize = (flash.getAperture().getCircumRadius() + (inflation * (passes + 1) * overlap / 100)) * 2;
+                int x = flash.getX() - windowSize;
+                int y = flash.getY() - windowSize;
+                x = Math.max(0, x);
+                y = Math.max(0, y);
+                Point windowOffset = new Point(x, y);
+                int windowWidth = Math.min(windowSize * 2, width - x);
+                int windowHeight = Math.min(windowSize * 2, height - y);
+                List<GerberPrimitive> primitivesCopy = primitiveIndex.query(x, y, windowWidth, windowHeight);
+                primitivesCopy.remove(flash);
+                for (int i = 0; i < passes; i++)
+                {
+                    RasterWindow window = new RasterWindow(new Point(x, y), windowWidth, windowHeight);
+                    window.render(primitivesCopy, toolDiameter / 2);
+                    int inflation = toolDiameter / 2 + toolDiameter * (100 - overlap) / 100 * (1 + i);
+                    window.render(Arrays.asList((GerberPrimitive) flash), inflation);
+                    SimpleEdgeDetector detector = new SimpleEdgeDetector(window.getBitRaster());
+                    window = null; // Helping GC to reclaim memory consumed by rendered image
+                    detector.process();
+                    if (detector.getOutput() != null)
                     {
-                        RasterWindow window = new RasterWindow(new Point(x, y), windowWidth, windowHeight);
-                        window.render(primitivesCopy, toolDiameter / 2);
-                        int inflation = toolDiameter / 2 + toolDiameter * (100 - overlap) / 100 * (1 + i);
-                        window.render(Arrays.asList((GerberPrimitive) flash), inflation);
-                        SimpleEdgeDetector detector = new SimpleEdgeDetector(window.getBufferedImage());
-                        window = null; // Helping GC to reclaim memory consumed by rendered image
-                        detector.process();
-                        if (detector.getOutput() != null)
+                        List<Circle> knownCircles = translateKnownCircles(windowOffset, 1, getKnownCircles(inflation));
+                        List<Toolpath> toolpaths =
+                                new Tracer(detector.getOutput(), toolDiameter, knownCircles).process();
+                        detector = null;  // Helping GC to reclaim memory consumed by processed image
+                        for (Toolpath t : toolpaths)
                         {
-                            List<Circle> knownCircles = translateKnownCircles(windowOffset, 1, getKnownCircles(inflation));
-                            List<Toolpath> toolpaths =
-                                    new Tracer(detector.getOutput(), windowWidth, windowHeight, toolDiameter, knownCircles).process();
-                            detector = null;  // Helping GC to reclaim memory consumed by processed image
-                            for (Toolpath t : toolpaths)
-                            {
-                                Point from = ((CuttingToolpath)t).getCurve().getFrom();
-                                Point to = ((CuttingToolpath)t).getCurve().getTo();
-                                if ((t instanceof LinearToolpath) && from.distanceTo(to) < MIN_LENGTH)
-                                    continue;
-                                Point centerPoint = translateToWindowCoordinates(flash.getPoint(), windowOffset, 1);
-                                int threshold = flash.getAperture().getCircumRadius() + (int)Math.sqrt(inflation * inflation * 2) + 10;
-                                if (from.distanceTo(centerPoint) < threshold && to.distanceTo(centerPoint) < threshold)
-                                    segments.addAll(translateToolpaths(Arrays.asList(t), windowOffset, 1));
-                            }
+                            Point from = ((CuttingToolpath)t).getCurve().getFrom();
+                            Point to = ((CuttingToolpath)t).getCurve().getTo();
+                            if ((t instanceof LinearToolpath) && from.distanceTo(to) < MIN_LENGTH)
+                                continue;
+                            Point centerPoint = translateToWindowCoordinates(flash.getPoint(), windowOffset, 1);
+                            int threshold = flash.getAperture().getCircumRadius() + (int)Math.sqrt(inflation * inflation * 2) + 10;
+                            if (from.distanceTo(centerPoint) < threshold && to.distanceTo(centerPoint) < threshold)
+                                segments.addAll(translateToolpaths(Arrays.asList(t), windowOffset, 1));
                         }
                     }
                 }
-                catch (Throwable e)
-                {
-                    LoggerFactory.logException("Exception caught while generating additional passes", e);
-                }
-                return null;
-            });
-        }
-        try
-        {
-            pool.shutdown();
-            pool.awaitTermination(10, TimeUnit.DAYS);
-        }
-        catch (InterruptedException e) {}
+            }
+            catch (Throwable e)
+            {
+                LoggerFactory.logException("Exception caught while generating additional passes", e);
+            }
+        });
 
         tt = System.currentTimeMillis() - tt;
         System.out.println("Addtional passes generation time: " + tt);
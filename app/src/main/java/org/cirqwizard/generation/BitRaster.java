@@ -0,0 +1,162 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.MultiPixelPackedSampleModel;
+
+/**
+ * Binary raster packed 64 pixels per word. Pixel x of a row is stored in word x / 64 with the most significant bit
+ * holding the leftmost pixel, which is the same bit order as TYPE_BYTE_BINARY images use.
+ */
+public class BitRaster
+{
+    private int width;
+    private int height;
+    private int wordsPerRow;
+    private long[] words;
+
+    public BitRaster(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Copies packed pixels of a TYPE_BYTE_BINARY image without unpacking them
+     */
+    public static BitRaster fromImage(BufferedImage image)
+    {
+        return fromImage(image, null);
+    }
+
+    /**
+     * Same as fromImage(image), taking the raster from the pool. All of its words are overwritten.
+     */
+    public static BitRaster fromImage(BufferedImage image, BitRasterPool pool)
+    {
+        if (image.getType() != BufferedImage.TYPE_BYTE_BINARY || image.getColorModel().getPixelSize() != 1)
+            throw new IllegalArgumentException("1 bit TYPE_BYTE_BINARY image expected");
+
+        BitRaster raster = pool == null ? new BitRaster(image.getWidth(), image.getHeight()) : pool.acquire(image.getWidth(), image.getHeight());
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = ((MultiPixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+        long lastWordMask = raster.getLastWordMask();
+        for (int y = 0; y < raster.height; y++)
+        {
+            int rowOffset = y * stride;
+            int wordOffset = y * raster.wordsPerRow;
+            for (int w = 0; w < raster.wordsPerRow; w++)
+            {
+                long word = 0;
+                int byteIndex = w << 3;
+                int bytes = Math.min(8, stride - byteIndex);
+                for (int b = 0; b < bytes; b++)
+                    word |= (data[rowOffset + byteIndex + b] & 0xFFL) << (56 - (b << 3));
+                raster.words[wordOffset + w] = word;
+            }
+            raster.words[wordOffset + raster.wordsPerRow - 1] &= lastWordMask;
+        }
+        return raster;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public int getWordsPerRow()
+    {
+        return wordsPerRow;
+    }
+
+    public long[] getWords()
+    {
+        return words;
+    }
+
+    public long getWord(int wordIndex, int y)
+    {
+        return words[y * wordsPerRow + wordIndex];
+    }
+
+    /**
+     * Mask of bits in the last word of a row which correspond to actual pixels
+     */
+    public long getLastWordMask()
+    {
+        int tail = width & 63;
+        return tail == 0 ? -1L : -1L << (64 - tail);
+    }
+
+    public boolean get(int x, int y)
+    {
+        return (words[y * wordsPerRow + (x >>> 6)] & (Long.MIN_VALUE >>> (x & 63))) != 0;
+    }
+
+    public void set(int x, int y)
+    {
+        words[y * wordsPerRow + (x >>> 6)] |= Long.MIN_VALUE >>> (x & 63);
+    }
+
+    public void clear(int x, int y)
+    {
+        words[y * wordsPerRow + (x >>> 6)] &= ~(Long.MIN_VALUE >>> (x & 63));
+    }
+
+    /**
+     * Sets pixels of row y from fromX (inclusive) to toX (exclusive)
+     */
+    public void setRange(int y, int fromX, int toX)
+    {
+        if (fromX >= toX)
+            return;
+        int rowOffset = y * wordsPerRow;
+        int firstWord = fromX >>> 6;
+        int lastWord = (toX - 1) >>> 6;
+        long firstMask = -1L >>> (fromX & 63);
+        long lastMask = -1L << (63 - ((toX - 1) & 63));
+        if (firstWord == lastWord)
+        {
+            words[rowOffset + firstWord] |= firstMask & lastMask;
+            return;
+        }
+        words[rowOffset + firstWord] |= firstMask;
+        for (int w = firstWord + 1; w < lastWord; w++)
+            words[rowOffset + w] = -1L;
+        words[rowOffset + lastWord] |= lastMask;
+    }
+
+    public BufferedImage toImage()
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = ((MultiPixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+        for (int y = 0; y < height; y++)
+        {
+            for (int i = 0; i < stride; i++)
+                data[y * stride + i] = (byte) (words[y * wordsPerRow + (i >>> 3)] >>> (56 - ((i & 7) << 3)));
+        }
+        return image;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps rasters of finished windows for reuse by the next windows of the same size, so that every window does not
+ * allocate its rasters anew. Rasters are handed out as they are, without clearing.
+ */
+public class BitRasterPool
+{
+    private int capacity;
+    private List<BitRaster> rasters = new ArrayList<>();
+
+    /**
+     * @param capacity maximum number of idle rasters kept, extra rasters released are left to GC
+     */
+    public BitRasterPool(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    public synchronized BitRaster acquire(int width, int height)
+    {
+        for (int i = rasters.size() - 1; i >= 0; i--)
+        {
+            BitRaster raster = rasters.get(i);
+            if (raster.getWidth() == width && raster.getHeight() == height)
+            {
+                rasters.set(i, rasters.get(rasters.size() - 1));
+                rasters.remove(rasters.size() - 1);
+                return raster;
+            }
+        }
+        return new BitRaster(width, height);
+    }
+
+    public synchronized void release(BitRaster raster)
+    {
+        if (raster != null && rasters.size() < capacity)
+            rasters.add(raster);
+    }
+
+    public synchronized int getIdleCount()
+    {
+        return rasters.size();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation;
+
+import org.cirqwizard.generation.toolpath.BoardToolpathsKey;
+import org.cirqwizard.generation.toolpath.ToolpathsCacheKey;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.layers.PanelBoard;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups of panel boards which are far enough from each other for their tool paths to be generated
+ * and cached separately
+ */
+public class BoardGroups
+{
+    /**
+     * Splits boards into groups, boards closer than twice the margin end up in the same group
+     */
+    public static List<List<PanelBoard>> split(List<PanelBoard> boards, int margin)
+    {
+        int[] group = new int[boards.size()];
+        for (int i = 0; i < group.length; i++)
+            group[i] = i;
+        for (int i = 0; i < boards.size(); i++)
+        {
+            for (int j = i + 1; j < boards.size(); j++)
+            {
+                if (!isClose(boards.get(i), boards.get(j), margin))
+                    continue;
+                int from = group[j];
+                int to = group[i];
+                for (int k = 0; k < group.length; k++)
+                    if (group[k] == from)
+                        group[k] = to;
+            }
+        }
+
+        Map<Integer, List<PanelBoard>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < boards.size(); i++)
+            groups.computeIfAbsent(group[i], g -> new ArrayList<>()).add(boards.get(i));
+        return new ArrayList<>(groups.values());
+    }
+
+    private static boolean isClose(PanelBoard a, PanelBoard b, int margin)
+    {
+        return a.getX() - margin <= b.getX() + b.getBoard().getWidth() + margin &&
+                b.getX() - margin <= a.getX() + a.getBoard().getWidth() + margin &&
+                a.getY() - margin <= b.getY() + b.getBoard().getHeight() + margin &&
+                b.getY() - margin <= a.getY() + a.getBoard().getHeight() + margin;
+    }
+
+    /**
+     * Lower left corner of the area tool paths of the group are generated in
+     */
+    public static Point getOrigin(List<PanelBoard> group, int margin)
+    {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        for (PanelBoard b : group)
+        {
+            minX = Math.min(minX, b.getX());
+            minY = Math.min(minY, b.getY());
+        }
+        return new Point(minX - margin, minY - margin);
+    }
+
+    /**
+     * Key the tool paths of the group are cached with. It does not depend on the group position on the panel,
+     * so that moving the group or placing an identical one reuses the tool paths
+     * @return null if content of some of the boards is unknown
+     */
+    public static BoardToolpathsKey getKey(ToolpathsCacheKey parametersKey, List<PanelBoard> group, Point origin)
+    {
+        String[] boards = new String[group.size()];
+        int[] x = new int[group.size()];
+        int[] y = new int[group.size()];
+        for (int i = 0; i < group.size(); i++)
+        {
+            PanelBoard b = group.get(i);
+            if (b.getContentHash() == null)
+                return null;
+            boards[i] = b.getContentHash() + ":" + b.getAngle() + ":" + b.isGenerateOutline();
+            x[i] = b.getX() - origin.getX();
+            y[i] = b.getY() - origin.getY();
+        }
+        return new BoardToolpathsKey(parametersKey, boards, x, y);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation;
+
+import org.cirqwizard.geom.Circle;
+import org.cirqwizard.geom.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over circumferences of known circles within a raster window. Each circle is listed in the cells
+ * its circumference, widened by the tolerance, passes through, so circles passing near a point are looked up
+ * without scanning all of them.
+ */
+public class CircleIndex
+{
+    private final static int CELL_SIZE = 64;
+
+    private List<Circle> circles;
+    private int tolerance;
+    private int columns;
+    private int rows;
+
+    // Circle indices of each cell, stored contiguously: cell i occupies cellContents[cellStart[i]..cellStart[i + 1])
+    private int[] cellStart;
+    private int[] cellContents;
+
+    /**
+     * @param circles circles in window coordinates
+     * @param width window width
+     * @param height window height
+     * @param tolerance maximum distance from circumference to a point for the circle to be returned
+     */
+    public CircleIndex(List<Circle> circles, int width, int height, int tolerance)
+    {
+        this.circles = circles;
+        this.tolerance = tolerance;
+        columns = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+        rows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < circles.size(); i++)
+            addCircle(i, null);
+        for (int i = 1; i < cellStart.length; i++)
+            cellStart[i] += cellStart[i - 1];
+
+        cellContents = new int[cellStart[cellStart.length - 1]];
+        int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+        for (int i = 0; i < circles.size(); i++)
+            addCircle(i, fill);
+    }
+
+    /**
+     * Returns circles whose circumference passes closer than tolerance to the given point, in their original order
+     */
+    public List<Circle> query(int x, int y)
+    {
+        ArrayList<Circle> result = new ArrayList<>();
+        if (x < 0 || y < 0)
+            return result;
+        int column = x / CELL_SIZE;
+        int row = y / CELL_SIZE;
+        if (column >= columns || row >= rows)
+            return result;
+
+        Point point = new Point(x, y);
+        int cell = row * columns + column;
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++)
+        {
+            Circle circle = circles.get(cellContents[i]);
+            if (Math.abs(circle.getRadius() - circle.getCenter().distanceTo(point)) < tolerance)
+                result.add(circle);
+        }
+        return result;
+    }
+
+    public int size()
+    {
+        return circles.size();
+    }
+
+    // Counts cells crossed by the circle when fill is null, otherwise stores the circle in them
+    private void addCircle(int index, int[] fill)
+    {
+        Circle circle = circles.get(index);
+        long cx = circle.getCenter().getX();
+        long cy = circle.getCenter().getY();
+        long outer = (long) circle.getRadius() + tolerance;
+        long inner = Math.max(0, (long) circle.getRadius() - tolerance);
+
+        int firstColumn = (int) Math.max(0, Math.floorDiv(cx - outer, CELL_SIZE));
+        int lastColumn = (int) Math.min(columns - 1, Math.floorDiv(cx + outer, CELL_SIZE));
+        int firstRow = (int) Math.max(0, Math.floorDiv(cy - outer, CELL_SIZE));
+        int lastRow = (int) Math.min(rows - 1, Math.floorDiv(cy + outer, CELL_SIZE));
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            long minY = (long) row * CELL_SIZE;
+            long maxY = minY + CELL_SIZE - 1;
+            long nearY = Math.max(minY, Math.min(maxY, cy)) - cy;
+            long farY = Math.max(Math.abs(minY - cy), Math.abs(maxY - cy));
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                long minX = (long) column * CELL_SIZE;
+                long maxX = minX + CELL_SIZE - 1;
+                long nearX = Math.max(minX, Math.min(maxX, cx)) - cx;
+                long farX = Math.max(Math.abs(minX - cx), Math.abs(maxX - cx));
+                // The ring of points within tolerance from circumference has to overlap the cell
+                if (nearX * nearX + nearY * nearY > outer * outer || farX * farX + farY * farY < inner * inner)
+                    continue;
+                int cell = row * columns + column;
+                if (fill == null)
+                    cellStart[cell + 1]++;
+                else
+                    cellContents[fill[cell]++] = index;
+            }
+        }
+    }
+}
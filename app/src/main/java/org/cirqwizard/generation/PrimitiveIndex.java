@@ -0,0 +1,239 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation;
+
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.gerber.Flash;
+import org.cirqwizard.gerber.GerberPrimitive;
+import org.cirqwizard.gerber.appertures.macro.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over bounding boxes of gerber primitives. Primitives returned by {@link #query(int, int, int, int)}
+ * keep their original order, so dark and clear polarities are rendered in the same sequence as in the source file.
+ */
+public class PrimitiveIndex
+{
+    public final static int DEFAULT_CELL_SIZE = 5000;
+
+    private List<GerberPrimitive> primitives;
+    private int cellSize;
+    private int originX;
+    private int originY;
+    private int columns;
+    private int rows;
+
+    private int[] minX;
+    private int[] minY;
+    private int[] maxX;
+    private int[] maxY;
+
+    // Primitive indices of each cell, stored contiguously: cell i occupies cellContents[cellStart[i]..cellStart[i + 1])
+    private int[] cellStart;
+    private int[] cellContents;
+
+    public PrimitiveIndex(List<GerberPrimitive> primitives, int inflation)
+    {
+        this(primitives, inflation, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     *
+     * @param primitives primitives to be indexed
+     * @param inflation offset the primitives are going to be rendered with
+     * @param cellSize grid cell size
+     */
+    public PrimitiveIndex(List<GerberPrimitive> primitives, int inflation, int cellSize)
+    {
+        this.primitives = primitives;
+        this.cellSize = cellSize;
+
+        int count = primitives.size();
+        minX = new int[count];
+        minY = new int[count];
+        maxX = new int[count];
+        maxY = new int[count];
+        originX = Integer.MAX_VALUE;
+        originY = Integer.MAX_VALUE;
+        int extentX = Integer.MIN_VALUE;
+        int extentY = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++)
+        {
+            calculateBounds(i, primitives.get(i), Math.abs(inflation));
+            originX = Math.min(originX, minX[i]);
+            originY = Math.min(originY, minY[i]);
+            extentX = Math.max(extentX, maxX[i]);
+            extentY = Math.max(extentY, maxY[i]);
+        }
+        if (count == 0)
+        {
+            cellStart = new int[1];
+            cellContents = new int[0];
+            return;
+        }
+
+        columns = (int) (((long) extentX - originX) / cellSize) + 1;
+        rows = (int) (((long) extentY - originY) / cellSize) + 1;
+
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < count; i++)
+        {
+            for (int row = getRow(minY[i]); row <= getRow(maxY[i]); row++)
+                for (int column = getColumn(minX[i]); column <= getColumn(maxX[i]); column++)
+                    cellStart[row * columns + column + 1]++;
+        }
+        for (int i = 1; i < cellStart.length; i++)
+            cellStart[i] += cellStart[i - 1];
+
+        cellContents = new int[cellStart[cellStart.length - 1]];
+        int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+        for (int i = 0; i < count; i++)
+        {
+            for (int row = getRow(minY[i]); row <= getRow(maxY[i]); row++)
+                for (int column = getColumn(minX[i]); column <= getColumn(maxX[i]); column++)
+                    cellContents[fill[row * columns + column]++] = i;
+        }
+    }
+
+    /**
+     * Returns primitives whose inflated bounding box intersects given rectangle, in their original order
+     */
+    public List<GerberPrimitive> query(int x, int y, int width, int height)
+    {
+        ArrayList<GerberPrimitive> result = new ArrayList<>();
+        if (primitives.isEmpty())
+            return result;
+
+        int right = x + width;
+        int top = y + height;
+        int firstColumn = Math.max(0, getColumn(x));
+        int lastColumn = Math.min(columns - 1, getColumn(right));
+        int firstRow = Math.max(0, getRow(y));
+        int lastRow = Math.min(rows - 1, getRow(top));
+        if (firstColumn > lastColumn || firstRow > lastRow)
+            return result;
+
+        int candidatesCount = 0;
+        for (int row = firstRow; row <= lastRow; row++)
+            candidatesCount += cellStart[row * columns + lastColumn + 1] - cellStart[row * columns + firstColumn];
+        int[] candidates = new int[candidatesCount];
+        int n = 0;
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            int from = cellStart[row * columns + firstColumn];
+            int to = cellStart[row * columns + lastColumn + 1];
+            System.arraycopy(cellContents, from, candidates, n, to - from);
+            n += to - from;
+        }
+
+        // Primitives spanning several cells are listed in each of them, sorting restores file order and groups duplicates
+        Arrays.sort(candidates);
+        int previous = -1;
+        for (int i : candidates)
+        {
+            if (i == previous)
+                continue;
+            previous = i;
+            if (maxX[i] >= x && minX[i] <= right && maxY[i] >= y && minY[i] <= top)
+                result.add(primitives.get(i));
+        }
+        return result;
+    }
+
+    public int size()
+    {
+        return primitives.size();
+    }
+
+    private int getColumn(int x)
+    {
+        return (int) Math.floorDiv((long) x - originX, cellSize);
+    }
+
+    private int getRow(int y)
+    {
+        return (int) Math.floorDiv((long) y - originY, cellSize);
+    }
+
+    private void calculateBounds(int i, GerberPrimitive primitive, int inflation)
+    {
+        Point min = primitive.getMin();
+        Point max = primitive.getMax();
+        minX[i] = min.getX();
+        minY[i] = min.getY();
+        maxX[i] = max.getX();
+        maxY[i] = max.getY();
+
+        int padding = inflation + 1;
+        if (primitive instanceof Flash && primitive.getAperture() instanceof ApertureMacro)
+            includeMacro((Flash) primitive, (ApertureMacro) primitive.getAperture(), i);
+        else if (primitive.getAperture() != null)
+        {
+            // Square caps of diagonal strokes stick out further than half of aperture size
+            padding += Math.max(primitive.getAperture().getWidth(), primitive.getAperture().getHeight()) / 2;
+        }
+
+        minX[i] -= padding;
+        minY[i] -= padding;
+        maxX[i] += padding;
+        maxY[i] += padding;
+    }
+
+    // Macro apertures do not report their dimensions, so their extents are calculated from macro primitives
+    private void includeMacro(Flash flash, ApertureMacro macro, int i)
+    {
+        for (MacroPrimitive p : macro.getPrimitives())
+        {
+            if (p instanceof MacroCircle)
+            {
+                MacroCircle circle = (MacroCircle) p;
+                include(i, circle.getCenter().add(flash.getPoint()), circle.getDiameter() / 2);
+            }
+            else if (p instanceof MacroCenterLine)
+            {
+                MacroCenterLine centerLine = (MacroCenterLine) p;
+                include(i, centerLine.getFrom().add(flash.getPoint()), centerLine.getHeight() / 2);
+                include(i, centerLine.getTo().add(flash.getPoint()), centerLine.getHeight() / 2);
+            }
+            else if (p instanceof MacroVectorLine)
+            {
+                MacroVectorLine vectorLine = (MacroVectorLine) p;
+                include(i, vectorLine.getTranslatedStart().add(flash.getPoint()), vectorLine.getWidth() / 2);
+                include(i, vectorLine.getTranslatedEnd().add(flash.getPoint()), vectorLine.getWidth() / 2);
+            }
+            else if (p instanceof MacroOutline)
+            {
+                for (Point point : ((MacroOutline) p).getTranslatedPoints())
+                    include(i, point.add(flash.getPoint()), 0);
+            }
+            else if (p instanceof MacroPolygon)
+            {
+                for (Point point : ((MacroPolygon) p).getPoints())
+                    include(i, point.add(flash.getPoint()), 0);
+            }
+        }
+    }
+
+    private void include(int i, Point p, int radius)
+    {
+        minX[i] = Math.min(minX[i], p.getX() - radius);
+        minY[i] = Math.min(minY[i], p.getY() - radius);
+        maxX[i] = Math.max(maxX[i], p.getX() + radius);
+        maxY[i] = Math.max(maxY[i], p.getY() + radius);
+    }
+}
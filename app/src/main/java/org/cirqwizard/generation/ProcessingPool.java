@@ -0,0 +1,203 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation;
+
+import org.cirqwizard.settings.SettingsFactory;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Application wide pool of processing threads shared by tool path generation and optimization.
+ * Work is submitted as ranges of items split into chunks, so that short items do not pay for scheduling one by one.
+ */
+public class ProcessingPool
+{
+    // Number of chunks per thread a range is split into by default, leaves room for balancing uneven items
+    private final static int CHUNKS_PER_THREAD = 4;
+
+    private static ProcessingPool instance;
+
+    private ForkJoinPool pool;
+    private int parallelism;
+
+    private AtomicLong completedChunks = new AtomicLong();
+    private AtomicLong totalLatency = new AtomicLong();
+    private AtomicLong maxLatency = new AtomicLong();
+    private AtomicLong totalDuration = new AtomicLong();
+
+    public ProcessingPool(int parallelism)
+    {
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = new ForkJoinPool(this.parallelism);
+    }
+
+    /**
+     * Pool sized by processing threads setting. A new pool replaces the current one once the setting changes,
+     * tasks already submitted to the old one are completed.
+     */
+    public static synchronized ProcessingPool getInstance()
+    {
+        int threads = SettingsFactory.getApplicationSettings().getProcessingThreads().getValue();
+        if (instance == null || instance.parallelism != Math.max(1, threads))
+        {
+            if (instance != null)
+                instance.pool.shutdown();
+            instance = new ProcessingPool(threads);
+        }
+        return instance;
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Calls task for every index from 0 to count - 1 and waits for all of them to complete
+     */
+    public void forEach(int count, IntConsumer task)
+    {
+        forEach(count, getChunkSize(count), task);
+    }
+
+    public void forEach(int count, int chunkSize, IntConsumer task)
+    {
+        if (count <= 0)
+            return;
+        invoke(new RangeTask(0, count, Math.max(1, chunkSize), task));
+    }
+
+    public <T> void forEach(List<T> items, Consumer<T> task)
+    {
+        forEach(items, getChunkSize(items.size()), task);
+    }
+
+    public <T> void forEach(List<T> items, int chunkSize, Consumer<T> task)
+    {
+        forEach(items.size(), chunkSize, i -> task.accept(items.get(i)));
+    }
+
+    /**
+     * Runs the task in the pool. Called from a thread of the pool the task is executed by the calling thread.
+     * Threads of other fork/join pools (e.g. the common one) hand the task over and wait, so that it does not
+     * escape to a pool of different parallelism.
+     */
+    public <T> T invoke(ForkJoinTask<T> task)
+    {
+        if (ForkJoinTask.getPool() == pool)
+            return task.invoke();
+        return pool.invoke(task);
+    }
+
+    public int getChunkSize(int count)
+    {
+        return Math.max(1, count / (parallelism * CHUNKS_PER_THREAD));
+    }
+
+    /**
+     * Number of chunks submitted and waiting for a thread
+     */
+    public long getQueuedTasks()
+    {
+        return pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+    }
+
+    public int getActiveThreads()
+    {
+        return pool.getActiveThreadCount();
+    }
+
+    public long getCompletedTasks()
+    {
+        return completedChunks.get();
+    }
+
+    /**
+     * Average time in milliseconds between submission of a chunk and start of its execution
+     */
+    public double getAverageLatency()
+    {
+        long completed = completedChunks.get();
+        return completed == 0 ? 0 : totalLatency.get() / 1e6 / completed;
+    }
+
+    public double getMaxLatency()
+    {
+        return maxLatency.get() / 1e6;
+    }
+
+    /**
+     * Average execution time of a chunk in milliseconds
+     */
+    public double getAverageDuration()
+    {
+        long completed = completedChunks.get();
+        return completed == 0 ? 0 : totalDuration.get() / 1e6 / completed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Processing pool: %d threads, %d active, %d queued, %d chunks completed, latency %.2f ms average %.2f ms max, " +
+                "chunk duration %.2f ms average", parallelism, getActiveThreads(), getQueuedTasks(), getCompletedTasks(),
+                getAverageLatency(), getMaxLatency(), getAverageDuration());
+    }
+
+    private class RangeTask extends RecursiveAction
+    {
+        private final static long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+        private int chunkSize;
+        private IntConsumer task;
+        private long submissionTime = System.nanoTime();
+
+        private RangeTask(int from, int to, int chunkSize, IntConsumer task)
+        {
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > chunkSize)
+            {
+                int middle = from + (to - from + chunkSize - 1) / chunkSize / 2 * chunkSize;
+                invokeAll(new RangeTask(from, middle, chunkSize, task), new RangeTask(middle, to, chunkSize, task));
+                return;
+            }
+
+            long start = System.nanoTime();
+            long latency = start - submissionTime;
+            for (int i = from; i < to; i++)
+                task.accept(i);
+            totalDuration.addAndGet(System.nanoTime() - start);
+            totalLatency.addAndGet(latency);
+            long max;
+            while (latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency));
+            completedChunks.incrementAndGet();
+        }
+    }
+}
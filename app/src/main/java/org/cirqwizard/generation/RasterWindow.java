@@ -28,8 +28,12 @@ import java.io.IOException;
 
 public class RasterWindow
 {
+    private final static Stroke DEFAULT_STROKE = new BasicStroke();
+
     private BufferedImage window;
     private Point windowLowerLeftCorner;
+    private int width;
+    private int height;
     private Graphics2D g;
 
     public RasterWindow(Point windowLowerLeftCorner, int width, int height)
@@ -47,6 +51,8 @@ public class RasterWindow
     public RasterWindow(Point windowLowerLeftCorner, int width, int height, double scale)
     {
         this.windowLowerLeftCorner = windowLowerLeftCorner;
+        this.width = width;
+        this.height = height;
         this.window = new BufferedImage((int)(scale * width), (int)(scale * height), BufferedImage.TYPE_BYTE_BINARY);
         g = window.createGraphics();
         g.setBackground(Color.BLACK);
@@ -62,12 +68,19 @@ public class RasterWindow
             renderPrimitive(primitive, primitive.getPolarity() == GerberPrimitive.Polarity.DARK ? inflation : -inflation);
     }
 
+    public void render(PrimitiveIndex index, int inflation)
+    {
+        render(index.query(windowLowerLeftCorner.getX(), windowLowerLeftCorner.getY(), width, height), inflation);
+    }
+
     private void renderPrimitive(GerberPrimitive primitive, double inflation)
     {
         if (!(primitive instanceof Region) && !primitive.getAperture().isVisible())
             return;
 
         g.setColor(primitive.getPolarity() == GerberPrimitive.Polarity.DARK ? Color.WHITE : Color.BLACK);
+        // Java2D picks fill pipeline depending on current stroke, so it is reset to keep the result independent of previous primitives
+        g.setStroke(DEFAULT_STROKE);
         primitive.render(g, inflation);
     }
 
@@ -93,6 +106,16 @@ public class RasterWindow
         return window;
     }
 
+    public BitRaster getBitRaster()
+    {
+        return BitRaster.fromImage(window);
+    }
+
+    public BitRaster getBitRaster(BitRasterPool pool)
+    {
+        return BitRaster.fromImage(window, pool);
+    }
+
     public void save(String file)
     {
         System.out.println("windowLeftCorner: " + windowLowerLeftCorner);
@@ -18,13 +18,12 @@ import org.cirqwizard.geom.Point;
 import org.cirqwizard.generation.toolpath.LinearToolpath;
 import org.cirqwizard.generation.toolpath.Toolpath;
 
-import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 
 public class RubOutGenerator
 {
-    private byte[] sourceData;
+    private BitRaster sourceData;
     private int width;
     private int height;
     private int diameter;
@@ -32,29 +31,29 @@ public class RubOutGenerator
 
     /**
      *
-     * @param image Source raster window
+     * @param sourceData Source raster window
      * @param diameter Tool diameter
      * @param overlap Tool paths overlap in mm/RESOLUTION units
      */
-    public RubOutGenerator(BufferedImage image, int diameter, int overlap)
+    public RubOutGenerator(BitRaster sourceData, int diameter, int overlap)
     {
-        sourceData = (byte[]) image.getData().getDataElements(0, 0, image.getWidth(), image.getHeight(), null);
-        this.width = image.getWidth();
-        this.height = image.getHeight();
+        this.sourceData = sourceData;
+        this.width = sourceData.getWidth();
+        this.height = sourceData.getHeight();
         this.diameter = diameter;
         this.overlap = overlap;
     }
 
-    private byte getPoint(int x, int y)
+    private boolean getPoint(int x, int y)
     {
-        return sourceData[y * width + x];
+        return sourceData.get(x, y);
     }
 
     private boolean checkVertical(int x, int y)
     {
         for (int yy = y - diameter / 2; yy < y + diameter / 2; yy++)
         {
-            if (getPoint(x, yy) != 0)
+            if (getPoint(x, yy))
                 return false;
         }
         return true;
@@ -63,11 +62,7 @@ public class RubOutGenerator
     private Toolpath generateToolpath(int start, int end, int y)
     {
         for (int yy = y - diameter / 2; yy < y + diameter / 2 - overlap; yy++)
-        {
-            int endIndex = yy * width + end;
-            for (int index = yy * width + start; index < endIndex; index++)
-                sourceData[index] = 1;
-        }
+            sourceData.setRange(yy, start, end);
         return new LinearToolpath(diameter, new Point(start, y), new Point(end, y));
     }
 
@@ -80,7 +75,7 @@ public class RubOutGenerator
             Integer start = null;
             for (int x = 0; x < width - 1; x++)
             {
-                if (start == null && getPoint(x, y) == 0 && checkVertical(x, y))
+                if (start == null && !getPoint(x, y) && checkVertical(x, y))
                     start = x;
                 else if (start != null && !checkVertical(x, y))
                 {
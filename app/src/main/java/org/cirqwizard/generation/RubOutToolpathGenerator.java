@@ -21,11 +21,9 @@ import org.cirqwizard.gerber.GerberPrimitive;
 import org.cirqwizard.logging.LoggerFactory;
 import org.cirqwizard.generation.toolpath.Toolpath;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public class RubOutToolpathGenerator extends AbstractToolpathGenerator
@@ -33,7 +31,8 @@ public class RubOutToolpathGenerator extends AbstractToolpathGenerator
     private final static int WINDOW_SIZE = 5000;
     private final static int WINDOWS_HORIZONTAL_OVERLAP = 5;
     private final static int WINDOWS_VERTICAL_OVERLAP = 500;
-    private final static int OOM_RETRY_DELAY = 1000;
+    // Rendered image and its packed copy, rubout marks visited pixels in the packed copy itself
+    private final static int WINDOW_RASTERS = 2;
 
     private int x;
     private int y;
@@ -43,7 +42,10 @@ public class RubOutToolpathGenerator extends AbstractToolpathGenerator
     private int overlap;
     private int threadCount;
     private double scale = 1; // It has to go
+    private PrimitiveIndex primitiveIndex;
     private BooleanProperty cancelledProperty;
+    private WindowScheduler scheduler;
+    private int windowSize;
 
     public void init(int x, int y, int width, int height, int inflation, int toolDiameter, int overlap, List<GerberPrimitive> primitives,
                      int threadCount, BooleanProperty cancelledProperty)
@@ -56,6 +58,7 @@ public class RubOutToolpathGenerator extends AbstractToolpathGenerator
         this.toolDiameter = toolDiameter;
         this.overlap = overlap;
         this.primitives = primitives;
+        this.primitiveIndex = new PrimitiveIndex(primitives, inflation + toolDiameter / 2);
         this.threadCount = threadCount;
         this.cancelledProperty = cancelledProperty;
     }
@@ -64,19 +67,17 @@ public class RubOutToolpathGenerator extends AbstractToolpathGenerator
     {
         final Vector<Toolpath> segments = new Vector<>();
 
-        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
-        for (int x = this.x; x < this.x + width; x += WINDOW_SIZE)
-            for (int y = this.y; y < this.y + height; y += WINDOW_SIZE)
-                pool.submit(new WindowGeneratorThread(x > WINDOWS_HORIZONTAL_OVERLAP ? x - WINDOWS_HORIZONTAL_OVERLAP : x, y > WINDOWS_VERTICAL_OVERLAP ? y - WINDOWS_VERTICAL_OVERLAP : y, segments));
-
-        try
-        {
-            pool.shutdown();
-            pool.awaitTermination(10, TimeUnit.DAYS);
-        }
-        catch (InterruptedException e)
-        {
-        }
+        scheduler = new WindowScheduler(WindowScheduler.getDefaultBudget());
+        windowSize = scheduler.fitWindowSize(WINDOW_SIZE, WINDOWS_HORIZONTAL_OVERLAP, WINDOWS_VERTICAL_OVERLAP, WINDOW_RASTERS, threadCount);
+        List<WindowGeneratorThread> windows = new ArrayList<>();
+        for (int x = this.x; x < this.x + width; x += windowSize)
+            for (int y = this.y; y < this.y + height; y += windowSize)
+                windows.add(new WindowGeneratorThread(x > WINDOWS_HORIZONTAL_OVERLAP ? x - WINDOWS_HORIZONTAL_OVERLAP : x, y > WINDOWS_VERTICAL_OVERLAP ? y - WINDOWS_VERTICAL_OVERLAP : y, segments));
+        ProcessingPool pool = ProcessingPool.getInstance();
+        pool.forEach(windows, 1, WindowGeneratorThread::run);
+        LoggerFactory.getApplicationLogger().log(Level.FINE, pool.toString());
+        LoggerFactory.getApplicationLogger().log(Level.FINE, "Rub out window size: " + windowSize +
+                ", peak windows memory: " + scheduler.getPeakBytes() / 1024 + " KB of " + scheduler.getBudget() / 1024 + " KB budget");
 
         return segments;
     }
@@ -100,36 +101,39 @@ public class RubOutToolpathGenerator extends AbstractToolpathGenerator
             if (cancelledProperty.get())
                 return;
 
+            int windowWidth = Math.min(windowSize + 2 * WINDOWS_HORIZONTAL_OVERLAP, width);
+            int windowHeight = Math.min(windowSize + 2 * WINDOWS_VERTICAL_OVERLAP, height);
+            long footprint = WindowScheduler.estimateFootprint(windowWidth, windowHeight, WINDOW_RASTERS);
+            try
+            {
+                scheduler.acquire(footprint);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
             try
             {
-                Platform.runLater(() -> progressProperty.set(((double) y * WINDOW_SIZE + (double) x * height) / ((double) width * height)));
+                Platform.runLater(() -> progressProperty.set(((double) y * windowSize + (double) x * height) / ((double) width * height)));
 
                 Point offset = new Point(x, y);
 
-                int windowWidth = Math.min(WINDOW_SIZE + 2 * WINDOWS_HORIZONTAL_OVERLAP, width);
-                int windowHeight = Math.min(WINDOW_SIZE + 2 * WINDOWS_VERTICAL_OVERLAP, height);
                 RasterWindow window = new RasterWindow(new Point(x, y), windowWidth, windowHeight, scale);
-                window.render(primitives, inflation + toolDiameter / 2);
+                window.render(primitiveIndex, inflation + toolDiameter / 2);
 
-                RubOutGenerator g = new RubOutGenerator(window.getBufferedImage(), toolDiameter, overlap);
+                RubOutGenerator g = new RubOutGenerator(window.getBitRaster(), toolDiameter, overlap);
                 window = null;
                 segments.addAll(translateToolpaths(g.process(), offset, scale));
             }
-            catch (OutOfMemoryError e)
-            {
-                LoggerFactory.getApplicationLogger().log(Level.WARNING, "Out of memory caught while generating tool paths. Retrying", e);
-                try
-                {
-                    Thread.sleep((int)((1.0 + Math.random()) * OOM_RETRY_DELAY));
-                }
-                catch (InterruptedException e1)  {}
-
-                run();
-            }
             catch (Throwable e)
             {
                 LoggerFactory.logException("Error while generating tool paths", e);
             }
+            finally
+            {
+                scheduler.release(footprint);
+            }
         }
     }
 
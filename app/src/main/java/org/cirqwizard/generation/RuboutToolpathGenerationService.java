@@ -42,7 +42,8 @@ public class RuboutToolpathGenerationService extends GenerationService
     {
         RubOutSettings settings = SettingsFactory.getRubOutSettings();
         int diameter = settings.getToolDiameter().getValue();
-        List<GerberPrimitive> elements = (List<GerberPrimitive>) getContext().getPanel().getCombinedElements(getLayer());
+        // Combined elements are read-only and created on access, generators get a list of their own with pin keepouts added later
+        List<GerberPrimitive> elements = new ArrayList<>((List<GerberPrimitive>) getContext().getPanel().getCombinedElements(getLayer()));
 
         List<Toolpath> toolpaths = new ArrayList<>();
         for (int pass = 0; pass < 2; pass++)
@@ -85,7 +86,7 @@ public class RuboutToolpathGenerationService extends GenerationService
 
         if (cancelledProperty().get())
             return null;
-        return new ChainDetector(toolpaths).detect();
+        return new ChainDetector(toolpaths).detectInRegions();
     }
 
     private List<GerberPrimitive> createPinKeepout()
@@ -14,46 +14,92 @@ This program is free software: you can redistribute it and/or modify
 package org.cirqwizard.generation;
 
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
+/**
+ * Marks clear pixels having at least one lit 4-neighbour. Rows are processed 64 pixels at a time, bands of rows
+ * are processed in parallel.
+ */
 public class SimpleEdgeDetector
 {
-    private byte[] sourceData;
-    private byte[] output;
+    // Rows processed by a single task, fewer are not worth scheduling
+    private final static int MIN_BAND_ROWS = 64;
+
+    private BitRaster source;
+    private BitRasterPool pool;
+    private BitRaster output;
     private int width;
     private int height;
+    private long[] columnMask;
+
+    public SimpleEdgeDetector(BitRaster source)
+    {
+        this(source, null);
+    }
 
-    public SimpleEdgeDetector(BufferedImage image)
+    /**
+     * @param pool pool output raster is taken from, may be null
+     */
+    public SimpleEdgeDetector(BitRaster source, BitRasterPool pool)
     {
-        sourceData = (byte[]) image.getData().getDataElements(0, 0, image.getWidth(), image.getHeight(), null);
-        this.width = image.getWidth();
-        this.height = image.getHeight();
+        this.source = source;
+        this.pool = pool;
+        this.width = source.getWidth();
+        this.height = source.getHeight();
     }
 
     public void process()
     {
-        output = new byte[sourceData.length];
-        for (int y = 1; y < height - 1; y++)
+        output = pool == null ? new BitRaster(width, height) : pool.acquire(width, height);
+        int wordsPerRow = source.getWordsPerRow();
+        long[] outputData = output.getWords();
+        if (width < 3 || height < 3)
+        {
+            Arrays.fill(outputData, 0);
+            return;
+        }
+
+        // Border pixels are never marked
+        Arrays.fill(outputData, 0, wordsPerRow, 0);
+        Arrays.fill(outputData, (height - 1) * wordsPerRow, height * wordsPerRow, 0);
+        columnMask = new long[wordsPerRow];
+        for (int w = 0; w < wordsPerRow; w++)
+            columnMask[w] = -1L;
+        columnMask[0] &= ~Long.MIN_VALUE;
+        columnMask[wordsPerRow - 1] &= source.getLastWordMask();
+        int lastX = width - 1;
+        columnMask[lastX >>> 6] &= ~(Long.MIN_VALUE >>> (lastX & 63));
+
+        int rows = height - 2;
+        ProcessingPool processingPool = ProcessingPool.getInstance();
+        processingPool.forEach(rows, Math.max(MIN_BAND_ROWS, processingPool.getChunkSize(rows)), row -> processRow(row + 1));
+    }
+
+    private void processRow(int y)
+    {
+        int wordsPerRow = source.getWordsPerRow();
+        long[] sourceData = source.getWords();
+        long[] outputData = output.getWords();
+        int index = y * wordsPerRow;
+        for (int w = 0; w < wordsPerRow; w++, index++)
         {
-            final int _y = y;
-            for (int x = 1; x < width - 1; x++)
-            {
-                int index = _y * width + x;
-                if (sourceData[index] == 0 &&
-                        (sourceData[index - 1] != 0 || sourceData[index + 1] != 0 || sourceData[index - width] != 0 || sourceData[index + width] != 0))
-                    output[index] = 1;
-            }
+            long current = sourceData[index];
+            long previous = w > 0 ? sourceData[index - 1] : 0;
+            long next = w < wordsPerRow - 1 ? sourceData[index + 1] : 0;
+            long left = (current >>> 1) | (previous << 63);
+            long right = (current << 1) | (next >>> 63);
+            long neighbours = left | right | sourceData[index - wordsPerRow] | sourceData[index + wordsPerRow];
+            outputData[index] = ~current & neighbours & columnMask[w];
         }
     }
 
-    public byte[] getOutput()
+    public BitRaster getOutput()
     {
         return output;
     }
 
     public BufferedImage getOutputImage()
     {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
-        image.getWritableTile(0, 0).setDataElements(0, 0, width, height, output);
-        return image;
+        return output.toImage();
     }
 }
@@ -11,76 +11,209 @@ This program is free software: you can redistribute it and/or modify
     You should have received a copy of the GNU General Public License
     along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
+
 package org.cirqwizard.generation;
 
 import org.cirqwizard.fx.Context;
 import org.cirqwizard.generation.optimizer.Chain;
 import org.cirqwizard.generation.optimizer.ChainDetector;
+import org.cirqwizard.generation.toolpath.*;
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Curve;
+import org.cirqwizard.geom.Point;
 import org.cirqwizard.gerber.GerberPrimitive;
 import org.cirqwizard.layers.*;
+import org.cirqwizard.settings.SettingsFactory;
 import org.cirqwizard.settings.ToolSettings;
-import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.settings.ToolpathEngine;
 
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 public class ToolpathGenerationService extends GenerationService
 {
+    private ToolpathsCacheKey cacheKey;
+    private ToolpathsCache cache;
+
     public ToolpathGenerationService(Context context, Board.LayerType layer)
+    {
+        this(context, layer, null, null);
+    }
+
+    /**
+     * @param cacheKey generation parameters the tool paths of board groups are cached with
+     * @param cache cache to reuse tool paths of board groups which have not changed, may be null
+     */
+    public ToolpathGenerationService(Context context, Board.LayerType layer, ToolpathsCacheKey cacheKey, ToolpathsCache cache)
     {
         super(context, layer);
+        this.cacheKey = cacheKey;
+        this.cache = cache;
     }
 
     @Override
     public List<Chain> generate()
     {
         ToolSettings currentTool = getContext().getCurrentMillingTool();
-        int diameter = currentTool.getDiameter();
-
-        final ToolpathGenerator generator = new ToolpathGenerator();
-        List<GerberPrimitive> elements = (List<GerberPrimitive>) getContext().getPanel().getCombinedElements(getLayer());
-        generator.init(getContext().getPanel().getSize().getWidth() + 1, getContext().getPanel().getSize().getHeight() + 1,
-                diameter / 2, diameter, elements, cancelledProperty());
-        setCurrentStage("Generating tool paths...");
-        progressProperty().bind(generator.progressProperty());
 
-        List<Toolpath> toolpaths = generator.generate();
+        // Boards which are too far apart to affect each other's tool paths are generated (and cached) separately
+        List<List<PanelBoard>> groups = getBoardGroups(getGroupMargin());
+        Set<BoardToolpathsKey> usedKeys = new HashSet<>();
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++)
+        {
+            setCurrentStage(groups.size() > 1 ? "Generating tool paths (" + (i + 1) + " of " + groups.size() + ")..." :
+                    "Generating tool paths...");
+            List<Toolpath> groupToolpaths = generateGroup(groups.get(i), usedKeys);
+            if (isCancelled())
+                return null;
+            toolpaths.addAll(groupToolpaths);
+        }
+        if (cache != null && cacheKey != null)
+            cache.retainBoardToolpaths(cacheKey, usedKeys);
 
-        if (isCancelled())
+        if (toolpaths.size() == 0)
             return null;
-        if (toolpaths == null || toolpaths.size() == 0)
-            return null;
-        toolpaths = new ToolpathMerger(toolpaths, getMergeTolerance()).merge();
 
-        if (currentTool.getAdditionalPasses() > 0)
+        if (currentTool.getAdditionalPasses() > 0 && currentTool.isAdditionalPassesPadsOnly())
         {
             setCurrentStage("Generating additional passes...");
+            progressProperty().unbind();
+            generatePadsOnlyAdditionalPasses();
+        }
+
+        return new ChainDetector(toolpaths).detectInRegions();
+    }
 
-            if (!currentTool.isAdditionalPassesPadsOnly())
+    private List<Toolpath> generateGroup(List<PanelBoard> group, Set<BoardToolpathsKey> usedKeys)
+    {
+        int margin = getGroupMargin();
+        Point origin = BoardGroups.getOrigin(group, margin);
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (PanelBoard b : group)
+        {
+            maxX = Math.max(maxX, b.getX() + b.getBoard().getWidth());
+            maxY = Math.max(maxY, b.getY() + b.getBoard().getHeight());
+        }
+
+        BoardToolpathsKey key = getGroupKey(group, origin);
+        List<Toolpath> toolpaths = key == null ? null : cache.getBoardToolpaths(key);
+        if (toolpaths == null)
+        {
+            // Combined elements are created on access, while generators go through them several times
+            List<GerberPrimitive> elements = new ArrayList<>((List<GerberPrimitive>) Panel.getCombinedElements(getLayer(), group,
+                    new Point(-origin.getX(), -origin.getY())));
+            toolpaths = generateToolpaths(maxX - origin.getX() + margin, maxY - origin.getY() + margin, elements);
+            if (isCancelled())
+                return null;
+            if (key != null)
+                cache.setBoardToolpaths(key, toolpaths);
+        }
+        if (key != null)
+            usedKeys.add(key);
+
+        return translate(toolpaths, origin);
+    }
+
+    private List<Toolpath> generateToolpaths(int width, int height, List<GerberPrimitive> elements)
+    {
+        ToolSettings currentTool = getContext().getCurrentMillingTool();
+        int diameter = currentTool.getDiameter();
+
+        List<Toolpath> toolpaths = generateToolpaths(width, height, diameter / 2, diameter, elements);
+        if (isCancelled() || toolpaths == null || toolpaths.size() == 0)
+            return new ArrayList<>();
+        toolpaths = new ToolpathMerger(toolpaths, getMergeTolerance()).merge();
+
+        if (currentTool.getAdditionalPasses() > 0 && !currentTool.isAdditionalPassesPadsOnly())
+        {
+            setCurrentStage("Generating additional passes...");
+            for (int i = 0 ; i < currentTool.getAdditionalPasses(); i++)
             {
-                for (int i = 0 ; i < currentTool.getAdditionalPasses(); i++)
-                {
-                    int offset = diameter * (100 - currentTool.getAdditionalPassesOverlap()) / 100;
-                    generator.init(getContext().getPanel().getSize().getWidth() + 1, getContext().getPanel().getSize().getHeight() + 1,
-                            diameter / 2 + offset * (i + 1), diameter, elements,
-                            cancelledProperty());
-                    List<Toolpath> additionalToolpaths = generator.generate();
-                    if (additionalToolpaths == null || additionalToolpaths.size() == 0)
-                        continue;
-                    if (isCancelled())
-                        return null;
-                    toolpaths.addAll(new ToolpathMerger(additionalToolpaths, getMergeTolerance()).merge());
-                }
+                int offset = diameter * (100 - currentTool.getAdditionalPassesOverlap()) / 100;
+                List<Toolpath> additionalToolpaths = generateToolpaths(width, height, diameter / 2 + offset * (i + 1), diameter, elements);
+                if (additionalToolpaths == null || additionalToolpaths.size() == 0)
+                    continue;
+                if (isCancelled())
+                    return new ArrayList<>();
+                toolpaths.addAll(new ToolpathMerger(additionalToolpaths, getMergeTolerance()).merge());
             }
-            else
+        }
+        return toolpaths;
+    }
+
+    private List<Toolpath> generateToolpaths(int width, int height, int inflation, int diameter, List<GerberPrimitive> elements)
+    {
+        progressProperty().unbind();
+        if (SettingsFactory.getInsulationMillingSettings().getToolpathEngine().getValue() == ToolpathEngine.VECTOR)
+        {
+            VectorToolpathGenerator generator = new VectorToolpathGenerator();
+            generator.init(width, height, inflation, diameter, elements, cancelledProperty());
+            progressProperty().bind(generator.progressProperty());
+            return generator.generate();
+        }
+
+        ToolpathGenerator generator = new ToolpathGenerator();
+        generator.init(width, height, inflation, diameter, elements, cancelledProperty());
+        progressProperty().bind(generator.progressProperty());
+        return generator.generate();
+    }
+
+    private List<List<PanelBoard>> getBoardGroups(int margin)
+    {
+        return BoardGroups.split(getContext().getPanel().getBoards().stream().
+                filter(b -> b.getBoard() != null && b.getBoard().getLayer(getLayer()) != null).
+                collect(Collectors.toList()), margin);
+    }
+
+    /**
+     * Distance covering the largest offset of tool paths from board elements
+     */
+    private int getGroupMargin()
+    {
+        ToolSettings currentTool = getContext().getCurrentMillingTool();
+        int diameter = currentTool.getDiameter();
+        int offset = diameter * (100 - currentTool.getAdditionalPassesOverlap()) / 100;
+        return diameter / 2 + offset * currentTool.getAdditionalPasses() + diameter;
+    }
+
+    private BoardToolpathsKey getGroupKey(List<PanelBoard> group, Point origin)
+    {
+        if (cache == null || cacheKey == null)
+            return null;
+        return BoardGroups.getKey(cacheKey, group, origin);
+    }
+
+    /**
+     * Moves tool paths from group to panel coordinates, dropping the ones outside of the panel
+     */
+    private List<Toolpath> translate(List<Toolpath> toolpaths, Point offset)
+    {
+        int width = getContext().getPanel().getSize().getWidth();
+        int height = getContext().getPanel().getSize().getHeight();
+        List<Toolpath> result = new ArrayList<>();
+        for (Toolpath toolpath : toolpaths)
+        {
+            CuttingToolpath t = (CuttingToolpath) toolpath;
+            Curve curve = t.getCurve();
+            Point from = curve.getFrom().add(offset);
+            Point to = curve.getTo().add(offset);
+            if (!isInside(from, width, height) || !isInside(to, width, height))
+                continue;
+            if (curve instanceof Arc)
             {
-                progressProperty().unbind();
-                generatePadsOnlyAdditionalPasses();
+                Arc arc = (Arc) curve;
+                result.add(new CircularToolpath(t.getToolDiameter(), from, to, arc.getCenter().add(offset), arc.getRadius(), arc.isClockwise()));
             }
+            else
+                result.add(new LinearToolpath(t.getToolDiameter(), from, to));
         }
+        return result;
+    }
 
-        return new ChainDetector(toolpaths).detect();
+    private boolean isInside(Point p, int width, int height)
+    {
+        return p.getX() >= 0 && p.getY() >= 0 && p.getX() <= width && p.getY() <= height;
     }
 
     private List<Toolpath> generatePadsOnlyAdditionalPasses()
@@ -20,27 +20,29 @@ import org.cirqwizard.geom.Circle;
 import org.cirqwizard.geom.Point;
 import org.cirqwizard.gerber.GerberPrimitive;
 import org.cirqwizard.logging.LoggerFactory;
-import org.cirqwizard.settings.SettingsFactory;
 import org.cirqwizard.generation.toolpath.Toolpath;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public class ToolpathGenerator extends AbstractToolpathGenerator
 {
     private final static int WINDOW_SIZE = 5000;
     private final static int WINDOWS_OVERLAP = 5;
-    private final static int OOM_RETRY_DELAY = 1000;
+    // Rendered image, its packed copy and detected edges
+    private final static int WINDOW_RASTERS = 3;
 
     private int width;
     private int height;
     private int toolDiameter;
     private List<Circle> knownCircles;
+    private PrimitiveIndex primitiveIndex;
     private BooleanProperty cancelledProperty;
+    private WindowScheduler scheduler;
+    private BitRasterPool rasterPool;
+    private int windowSize;
     private double scale = 1;   // It has to go
 
     public void init(int width, int height, int inflation, int toolDiameter, List<GerberPrimitive> primitives,
@@ -53,25 +55,26 @@ public class ToolpathGenerator extends AbstractToolpathGenerator
         this.primitives = primitives;
         this.cancelledProperty = cancelledProperty;
         knownCircles = getKnownCircles(inflation);
+        primitiveIndex = new PrimitiveIndex(primitives, inflation);
     }
 
     public List<Toolpath> generate()
     {
         final Vector<Toolpath> segments = new Vector<>();
 
-        ExecutorService pool = Executors.newFixedThreadPool(SettingsFactory.getApplicationSettings().getProcessingThreads().getValue());
-        for (int x = 0; x < width; x += WINDOW_SIZE)
-            for (int y = 0; y < height; y += WINDOW_SIZE)
-                pool.submit(new WindowGeneratorThread(x > WINDOWS_OVERLAP ? x - WINDOWS_OVERLAP : x, y > WINDOWS_OVERLAP ? y - WINDOWS_OVERLAP : y, segments));
-
-        try
-        {
-            pool.shutdown();
-            pool.awaitTermination(10, TimeUnit.DAYS);
-        }
-        catch (InterruptedException e)
-        {
-        }
+        int threads = ProcessingPool.getInstance().getParallelism();
+        scheduler = new WindowScheduler(WindowScheduler.getDefaultBudget());
+        windowSize = scheduler.fitWindowSize(WINDOW_SIZE, WINDOWS_OVERLAP, WINDOW_RASTERS, threads);
+        rasterPool = new BitRasterPool(threads * 2);
+        List<WindowGeneratorThread> windows = new ArrayList<>();
+        for (int x = 0; x < width; x += windowSize)
+            for (int y = 0; y < height; y += windowSize)
+                windows.add(new WindowGeneratorThread(x > WINDOWS_OVERLAP ? x - WINDOWS_OVERLAP : x, y > WINDOWS_OVERLAP ? y - WINDOWS_OVERLAP : y, segments));
+        ProcessingPool pool = ProcessingPool.getInstance();
+        pool.forEach(windows, 1, WindowGeneratorThread::run);
+        LoggerFactory.getApplicationLogger().log(Level.FINE, pool.toString());
+        LoggerFactory.getApplicationLogger().log(Level.FINE, "Tool path generation window size: " + windowSize +
+                ", peak windows memory: " + scheduler.getPeakBytes() / 1024 + " KB of " + scheduler.getBudget() / 1024 + " KB budget");
 
         return segments;
     }
@@ -95,43 +98,46 @@ public class ToolpathGenerator extends AbstractToolpathGenerator
             if (cancelledProperty.get())
                 return;
 
+            int windowWidth = Math.min(windowSize + 2 * WINDOWS_OVERLAP, width - x);
+            int windowHeight = Math.min(windowSize + 2 * WINDOWS_OVERLAP, height - y);
+            long footprint = WindowScheduler.estimateFootprint(windowWidth, windowHeight, WINDOW_RASTERS);
+            try
+            {
+                scheduler.acquire(footprint);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
             try
             {
-                Platform.runLater(() -> progressProperty.set(((double) y * WINDOW_SIZE + (double) x * height) / ((double) width * height)));
+                Platform.runLater(() -> progressProperty.set(((double) y * windowSize + (double) x * height) / ((double) width * height)));
 
                 Point offset = new Point(x, y);
                 List<Circle> translatedCircles = translateKnownCircles(offset, scale, knownCircles);
 
-                int windowWidth = Math.min(WINDOW_SIZE + 2 * WINDOWS_OVERLAP, width - x);
-                int windowHeight = Math.min(WINDOW_SIZE + 2 * WINDOWS_OVERLAP, height - y);
                 RasterWindow window = new RasterWindow(new Point(x, y), windowWidth, windowHeight, scale);
-                window.render(primitives, inflation);
-                SimpleEdgeDetector detector = new SimpleEdgeDetector(window.getBufferedImage());
+                window.render(primitiveIndex, inflation);
+                BitRaster source = window.getBitRaster(rasterPool);
+                SimpleEdgeDetector detector = new SimpleEdgeDetector(source, rasterPool);
                 window = null; // Helping GC to reclaim memory consumed by rendered image
                 detector.process();
-                if (detector.getOutput() != null)
-                {
-                    java.util.List<Toolpath> toolpaths =
-                            new Tracer(detector.getOutput(), (int)(scale * windowWidth), (int)(scale * windowHeight), toolDiameter, translatedCircles).process();
-                    detector = null;  // Helping GC to reclaim memory consumed by processed image
-                    segments.addAll(translateToolpaths(toolpaths, offset, scale));
-                }
-            }
-            catch (OutOfMemoryError e)
-            {
-                LoggerFactory.getApplicationLogger().log(Level.WARNING, "Out of memory caught while generating tool paths. Retrying", e);
-                try
-                {
-                    Thread.sleep((int)((1.0 + Math.random()) * OOM_RETRY_DELAY));
-                }
-                catch (InterruptedException e1)  {}
-
-                run();
+                rasterPool.release(source);
+                BitRaster edges = detector.getOutput();
+                detector = null;
+                java.util.List<Toolpath> toolpaths = new Tracer(edges, toolDiameter, translatedCircles).process();
+                rasterPool.release(edges);
+                segments.addAll(translateToolpaths(toolpaths, offset, scale));
             }
             catch (Throwable e)
             {
                 LoggerFactory.logException("Error while generating tool paths", e);
             }
+            finally
+            {
+                scheduler.release(footprint);
+            }
         }
     }
 
@@ -23,18 +23,40 @@ import org.cirqwizard.generation.toolpath.CuttingToolpath;
 import org.cirqwizard.generation.toolpath.LinearToolpath;
 import org.cirqwizard.generation.toolpath.Toolpath;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-
+import java.util.*;
+
+/**
+ * Joins collinear segments and arcs of the same circle meeting at a common vertex, drops duplicate, overlapping and
+ * very short segments. Vertices are bucketed into a grid with cell size of twice the tolerance, each end of a tool path
+ * is registered in the four cells around it. Cells are processed from a work list, a cell is revisited whenever
+ * a merge changes tool paths ending in it, so merging the result once more changes nothing. A single pass over the
+ * cells, doing one merge per cell, used to leave some of the joins to iteration order.
+ * Cells are stored in an open addressing table keyed on packed grid node coordinates: boxed keys hash grid aligned
+ * coordinates poorly and cost an allocation per lookup.
+ */
 public class ToolpathMerger
 {
+    private final static double COMPARISON_THRESHOLD = Math.PI / 60;  // 3 degrees
+
+    private final static int INITIAL_CAPACITY = 1024;
+
     private List<Toolpath> toolpaths;
-    private HashMap<Point, ArrayList<Toolpath>> verticesMap = new HashMap<>();
+    private Set<Toolpath> removed = Collections.newSetFromMap(new IdentityHashMap<>());
     private int tolerance;
     private int roundingFactor;
 
+    // Grid cells: table holds cell index + 1 at hashed slot of cell key, 0 marks an empty slot
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private long[] cellKeys = new long[INITIAL_CAPACITY];
+    private ArrayList<Toolpath>[] cellToolpaths = newCellArray(INITIAL_CAPACITY);
+    private int cellCount;
+
+    // Work list of cells, a ring buffer
+    private int[] queue = new int[INITIAL_CAPACITY];
+    private int queueHead;
+    private int queueSize;
+    private boolean[] queued = new boolean[INITIAL_CAPACITY];
+
     public ToolpathMerger(List<Toolpath> toolpaths, int tolerance)
     {
         this.toolpaths = toolpaths;
@@ -44,156 +66,175 @@ public class ToolpathMerger
 
     public List<Toolpath> merge()
     {
-        double comparisonThreshold = Math.PI / 60;  // 3 degrees
-
         initVerticesMap(toolpaths);
+        filterDots();
 
-        ArrayList<Toolpath> toBeRemoved = new ArrayList<>();
-        filterDots(toBeRemoved);
-
-        for (Point p : verticesMap.keySet())
+        for (int cell = 0; cell < cellCount; cell++)
+            enqueue(cell);
+        while (queueSize > 0)
         {
+            int cell = queue[queueHead];
+            queueHead = (queueHead + 1) & (queue.length - 1);
+            queueSize--;
+            queued[cell] = false;
+            if (mergeAtVertex(cellToolpaths[cell]))
+                enqueue(cell);
+        }
 
-            ArrayList<Toolpath> toMerge = verticesMap.get(p);
-            for (int i = 0; i < toMerge.size(); i++)
-            {
-                boolean merge = false;
+        ArrayList<Toolpath> result = new ArrayList<>();
+        for (Toolpath t : toolpaths)
+            if (!removed.contains(t))
+                result.add(t);
+        return result;
+    }
 
-                for (int j = i + 1; j < toMerge.size(); j++)
-                {
-                    Toolpath t1 = toMerge.get(i);
-                    Toolpath t2 = toMerge.get(j);
+    /**
+     * Performs at most one merge of tool paths registered at a grid node, removing duplicates on the way
+     * @return true if tool paths were merged
+     */
+    private boolean mergeAtVertex(ArrayList<Toolpath> toMerge)
+    {
+        for (int i = 0; i < toMerge.size(); i++)
+        {
+            for (int j = i + 1; j < toMerge.size(); j++)
+            {
+                Toolpath t1 = toMerge.get(i);
+                Toolpath t2 = toMerge.get(j);
 
-                    if (!t1.getClass().equals(t2.getClass()))
-                        continue;
+                if (!t1.getClass().equals(t2.getClass()))
+                    continue;
 
-                    Curve c1 = ((CuttingToolpath)t1).getCurve();
-                    Curve c2 = ((CuttingToolpath)t2).getCurve();
+                if (t1 == t2 || removed.contains(t1) || removed.contains(t2))
+                    continue;
 
-                    if (t1 == t2 || toBeRemoved.contains(t1) || toBeRemoved.contains(t2))
-                        continue;
+                Curve c1 = ((CuttingToolpath)t1).getCurve();
+                Curve c2 = ((CuttingToolpath)t2).getCurve();
 
-                    boolean l1Inversed = false;
-                    if (!c1.getTo().equals(p, roundingFactor))
-                    {
-                        c1 = c1.reverse();
-                        l1Inversed = true;
-                    }
-                    if (!c2.getFrom().equals(p, roundingFactor))
-                        c2 = c2.reverse();
+                // Tool paths are oriented so that the first one ends where the second one starts
+                int ends = getClosestEnds(c1, c2);
+                boolean l1Inversed = (ends & 1) != 0;
+                if (l1Inversed)
+                    c1 = c1.reverse();
+                if ((ends & 2) != 0)
+                    c2 = c2.reverse();
 
-                    if (t1 instanceof LinearToolpath && t2 instanceof LinearToolpath)
+                boolean merge = false;
+                if (t1 instanceof LinearToolpath)
+                {
+                    Line l1 = (Line) c1;
+                    Line l2 = (Line) c2;
+                    if (l2.getFrom().equals(l1.getTo(), tolerance))
                     {
-                        Line l1 = (Line) c1;
-                        Line l2 = (Line) c2;
-                        if (l2.getFrom().equals(l1.getTo(), tolerance))
+                        if (l1.getFrom().equals(l2.getTo())) // Removing duplicate segments
+                        {
+                            remove(t2, c2.getTo());
+                            continue;
+                        }
+                        else if (Math.abs(Math.abs(l1.angleToX() - l2.angleToX()) - Math.PI) < COMPARISON_THRESHOLD) // Removing overlapping segments
                         {
-                            if (l1.getFrom().equals(l2.getTo())) // Removing duplicate segments
+                            if (l1.length() > l2.length())
                             {
-                                toBeRemoved.add(t2);
-                                removeVertices(c2.getTo(), t2);
+                                remove(t2, c2.getTo());
                                 continue;
                             }
-                            else if (Math.abs(Math.abs(l1.angleToX() - l2.angleToX()) - Math.PI) < comparisonThreshold) // Removing overlapping segments
+                            else
                             {
-                                if (l1.length() > l2.length())
-                                {
-                                    toBeRemoved.add(t2);
-                                    removeVertices(c2.getTo(), t2);
-                                    continue;
-                                }
-                                else
-                                {
-                                    toBeRemoved.add(t1);
-                                    removeVertices(c1.getFrom(), t1);
-                                    break;
-                                }
+                                remove(t1, c1.getFrom());
+                                break;
                             }
+                        }
 
-                            double angleDifference = Math.abs(l1.angleToX() - l2.angleToX());
-                            while (angleDifference >= Math.PI - comparisonThreshold)
-                                angleDifference -= Math.PI;
-                            angleDifference = Math.abs(angleDifference);
+                        double angleDifference = Math.abs(l1.angleToX() - l2.angleToX());
+                        while (angleDifference >= Math.PI - COMPARISON_THRESHOLD)
+                            angleDifference -= Math.PI;
+                        angleDifference = Math.abs(angleDifference);
 
-                            if (angleDifference < comparisonThreshold)
-                                merge = true;
-                        }
-                    }
-                    else if (t1 instanceof CircularToolpath && t2 instanceof CircularToolpath)
-                    {
-                        Arc a1 = (Arc) c1;
-                        Arc a2 = (Arc) c2;
-                        if (a1.getTo().equals(a2.getFrom(), tolerance) && a1.isClockwise() == a2.isClockwise())
-                        {
-                            if (a1.getCenter().equals(a2.getCenter()) && a1.getRadius() == a2.getRadius())
-                                merge = true;
-                        }
+                        if (angleDifference < COMPARISON_THRESHOLD)
+                            merge = true;
                     }
-
-                    if (merge)
+                }
+                else if (t1 instanceof CircularToolpath)
+                {
+                    Arc a1 = (Arc) c1;
+                    Arc a2 = (Arc) c2;
+                    if (a1.getTo().equals(a2.getFrom(), tolerance) && a1.isClockwise() == a2.isClockwise())
                     {
-                        Curve curve = ((CuttingToolpath) t1).getCurve();
-                        if (l1Inversed)
-                            curve.setFrom(c2.getTo());
-                        else
-                            curve.setTo(c2.getTo());
-                        if (curve instanceof Arc && c2.getTo().equals(c1.getFrom(), tolerance))
-                            curve.setTo(curve.getFrom());
-                        toBeRemoved.add(t2);
-                        removeVertices(c2.getFrom(), t2);
-                        removeVertices(c2.getTo(), t2);
-                        addVertices(c2.getTo(), t1);
-                        break;
-
+                        if (a1.getCenter().equals(a2.getCenter()) && a1.getRadius() == a2.getRadius())
+                            merge = true;
                     }
                 }
 
                 if (merge)
-                    break;
+                {
+                    Curve curve = ((CuttingToolpath) t1).getCurve();
+                    if (l1Inversed)
+                        curve.setFrom(c2.getTo());
+                    else
+                        curve.setTo(c2.getTo());
+                    if (curve instanceof Arc && c2.getTo().equals(c1.getFrom(), tolerance))
+                        curve.setTo(curve.getFrom());
+                    removed.add(t2);
+                    removeVertices(c2.getFrom(), t2);
+                    removeVertices(c2.getTo(), t2);
+                    addVertices(c2.getTo(), t1);
+                    // Extended tool path might be merged further at its new end
+                    enqueueVertices(c2.getTo());
+                    return true;
+                }
             }
         }
+        return false;
+    }
 
-        int lines = 0;
-        int arcs = 0;
-        ArrayList<Toolpath> result = new ArrayList<>();
-        for (Toolpath t : toolpaths)
-            if (!toBeRemoved.contains(t))
+    /**
+     * Finds the closest pair of ends of two curves. Ends can't be told by their distance to the grid node: both ends of
+     * a tool path shorter than the cell are close to it.
+     * @return bit 0 set if the first curve touches the second one with its start, bit 1 set if the second curve touches
+     * the first one with its end. Of equally close pairs the end of the first curve and the start of the second one is preferred.
+     */
+    private static int getClosestEnds(Curve c1, Curve c2)
+    {
+        int result = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int ends = 0; ends < 4; ends++)
+        {
+            Point end1 = (ends & 1) == 0 ? c1.getTo() : c1.getFrom();
+            Point end2 = (ends & 2) == 0 ? c2.getFrom() : c2.getTo();
+            double distance = end1.distanceTo(end2);
+            if (distance < minDistance)
             {
-                if (t instanceof LinearToolpath)
-                    lines++;
-                if (t instanceof CircularToolpath)
-                    arcs++;
-                result.add(t);
+                minDistance = distance;
+                result = ends;
             }
-        System.out.println("lines: " + lines + ", arcs: " + arcs);
-
+        }
         return result;
     }
 
-    private void filterDots(List<Toolpath> toBeRemoved)
+    private void remove(Toolpath toolpath, Point otherEnd)
     {
-        for (Point p : verticesMap.keySet())
-        {
+        removed.add(toolpath);
+        removeVertices(otherEnd, toolpath);
+    }
 
-            ArrayList<Toolpath> toMerge = verticesMap.get(p);
-            for (int i = 0; i < toMerge.size(); i++)
+    /**
+     * Drops linear tool paths shorter than tolerance which share a vertex with other tool paths
+     */
+    private void filterDots()
+    {
+        for (int cell = 0; cell < cellCount; cell++)
+        {
+            ArrayList<Toolpath> list = cellToolpaths[cell];
+            boolean nonLinearBefore = false;
+            for (int i = 0; i < list.size(); i++)
             {
-                for (int j = i + 1; j < toMerge.size(); j++)
+                Toolpath t = list.get(i);
+                if (t instanceof LinearToolpath)
                 {
-                    Toolpath t1 = toMerge.get(i);
-                    Toolpath t2 = toMerge.get(j);
-
-                    if (t1 instanceof LinearToolpath)
-                    {
-                        if (((Line)((LinearToolpath) t1).getCurve()).length() < tolerance)
-                            toBeRemoved.add(t1);
-                    }
-                    else if (t2 instanceof LinearToolpath)
-                    {
-                        if (((Line)((LinearToolpath) t2).getCurve()).length() < tolerance)
-                            toBeRemoved.add(t2);
-                    }
+                    if ((i < list.size() - 1 || nonLinearBefore) && ((Line) ((LinearToolpath) t).getCurve()).length() < tolerance)
+                        removed.add(t);
                 }
+                else
+                    nonLinearBefore = true;
             }
         }
     }
@@ -208,48 +249,132 @@ public class ToolpathMerger
         }
     }
 
-    private List<Point> getPointsForVertex(Point point)
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Toolpath>[] newCellArray(int size)
+    {
+        return (ArrayList<Toolpath>[]) new ArrayList<?>[size];
+    }
+
+    private void enqueue(int cell)
+    {
+        if (cell < 0 || queued[cell])
+            return;
+        if (queueSize == queue.length)
+        {
+            int[] newQueue = new int[queue.length * 2];
+            for (int i = 0; i < queueSize; i++)
+                newQueue[i] = queue[(queueHead + i) & (queue.length - 1)];
+            queue = newQueue;
+            queueHead = 0;
+        }
+        queue[(queueHead + queueSize) & (queue.length - 1)] = cell;
+        queueSize++;
+        queued[cell] = true;
+    }
+
+    /**
+     * Packs coordinates of a grid node into a single key
+     */
+    private static long getKey(int x, int y)
     {
-        Point p1 = new Point(point.getX() / roundingFactor * roundingFactor, point.getY() / roundingFactor * roundingFactor);
-        Point p2 = p1.add(new Point(roundingFactor, 0));
-        Point p3 = p1.add(new Point(0, roundingFactor));
-        Point p4 = p1.add(new Point(roundingFactor, roundingFactor));
-        return Arrays.asList(p1, p2, p3, p4);
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
     }
 
     private void addVertices(Point point, Toolpath toolpath)
     {
-        addVertex(getPointsForVertex(point), toolpath);
+        int x = point.getX() / roundingFactor * roundingFactor;
+        int y = point.getY() / roundingFactor * roundingFactor;
+        addVertex(getKey(x, y), toolpath);
+        addVertex(getKey(x + roundingFactor, y), toolpath);
+        addVertex(getKey(x, y + roundingFactor), toolpath);
+        addVertex(getKey(x + roundingFactor, y + roundingFactor), toolpath);
+    }
+
+    private void enqueueVertices(Point point)
+    {
+        int x = point.getX() / roundingFactor * roundingFactor;
+        int y = point.getY() / roundingFactor * roundingFactor;
+        enqueue(findCell(getKey(x, y), false));
+        enqueue(findCell(getKey(x + roundingFactor, y), false));
+        enqueue(findCell(getKey(x, y + roundingFactor), false));
+        enqueue(findCell(getKey(x + roundingFactor, y + roundingFactor), false));
     }
 
     private void removeVertices(Point point, Toolpath toolpath)
     {
-        removeVertex(getPointsForVertex(point), toolpath);
+        int x = point.getX() / roundingFactor * roundingFactor;
+        int y = point.getY() / roundingFactor * roundingFactor;
+        removeVertex(getKey(x, y), toolpath);
+        removeVertex(getKey(x + roundingFactor, y), toolpath);
+        removeVertex(getKey(x, y + roundingFactor), toolpath);
+        removeVertex(getKey(x + roundingFactor, y + roundingFactor), toolpath);
+    }
+
+    private void addVertex(long key, Toolpath toolpath)
+    {
+        int cell = findCell(key, true);
+        ArrayList<Toolpath> list = cellToolpaths[cell];
+        if (!list.contains(toolpath))
+            list.add(toolpath);
     }
 
-    private void addVertex(List<Point> vertices, Toolpath toolpath)
+    private void removeVertex(long key, Toolpath toolpath)
     {
-        for (Point p : vertices)
+        int cell = findCell(key, false);
+        if (cell >= 0)
+            cellToolpaths[cell].remove(toolpath);
+    }
+
+    /**
+     * Looks up cell of a grid node, cells are numbered in the order of creation
+     * @return cell index or -1 if the cell does not exist and is not to be created
+     */
+    private int findCell(long key, boolean create)
+    {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0)
         {
-            ArrayList<Toolpath> list = verticesMap.get(p);
-            if (list == null)
-            {
-                list = new ArrayList<>();
-                verticesMap.put(p, list);
-            }
-            if (!list.contains(toolpath))
-                list.add(toolpath);
+            int cell = table[slot] - 1;
+            if (cellKeys[cell] == key)
+                return cell;
+            slot = (slot + 1) & mask;
         }
+        if (!create)
+            return -1;
+
+        if (cellCount == cellKeys.length)
+        {
+            cellKeys = Arrays.copyOf(cellKeys, cellCount * 2);
+            cellToolpaths = Arrays.copyOf(cellToolpaths, cellCount * 2);
+            queued = Arrays.copyOf(queued, cellCount * 2);
+        }
+        int cell = cellCount++;
+        cellKeys[cell] = key;
+        cellToolpaths[cell] = new ArrayList<>(4);
+        table[slot] = cell + 1;
+        // Table is kept at most half full
+        if (cellCount * 2 > table.length)
+            rehash();
+        return cell;
     }
 
-    private void removeVertex(List<Point> vertices, Toolpath toolpath)
+    private void rehash()
     {
-        for (Point p : vertices)
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int cell = 0; cell < cellCount; cell++)
         {
-            ArrayList<Toolpath> list = verticesMap.get(p);
-            if (list != null)
-                list.remove(toolpath);
+            int slot = hash(cellKeys[cell]) & mask;
+            while (table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = cell + 1;
         }
     }
 
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
 }
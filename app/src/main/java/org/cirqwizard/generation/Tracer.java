@@ -28,33 +28,31 @@ import java.util.List;
 
 public class Tracer
 {
-    private byte[] windowData;
+    private BitRaster windowData;
 
-    private int width;
-    private int height;
     private int toolDiameter;
-    private List<Circle> knownCircles;
+    private CircleIndex knownCircles;
 
-    public Tracer(byte[] windowData, int width, int height, int toolDiameter, List<Circle> knownCircles)
+    public Tracer(BitRaster windowData, int toolDiameter, List<Circle> knownCircles)
     {
         this.windowData = windowData;
-        this.width = width;
-        this.height = height;
         this.toolDiameter = toolDiameter;
-        this.knownCircles = knownCircles;
+        this.knownCircles = new CircleIndex(knownCircles, windowData.getWidth(), windowData.getHeight(), Vectorizer.MAX_ARC_DEVIATION);
     }
 
     public List<Toolpath> process()
     {
         ArrayList<Toolpath> result = new ArrayList<>();
-        for (int y = height - 1; y >= 0; y--)
+        for (int y = windowData.getHeight() - 1; y >= 0; y--)
         {
-            for (int x = width - 1; x >= 0; x--)
+            for (int w = windowData.getWordsPerRow() - 1; w >= 0; w--)
             {
-                int index = x + y * width;
-                if (windowData[index] != 0)
+                // Tracing only clears pixels, so picking the rightmost lit pixel each time keeps right to left scan order
+                long word;
+                while ((word = windowData.getWord(w, y)) != 0)
                 {
-                    List<Curve> curves = new Vectorizer(windowData, width, height, knownCircles, x, y).trace();
+                    int x = (w << 6) + 63 - Long.numberOfTrailingZeros(word);
+                    List<Curve> curves = new Vectorizer(windowData, knownCircles, x, y).trace();
                     for (Curve curve : curves)
                         result.add(getToolpath(curve));
                 }
@@ -0,0 +1,324 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation;
+
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.gerber.GerberPrimitive;
+import org.cirqwizard.gerber.Region;
+import org.cirqwizard.generation.toolpath.CircularToolpath;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.logging.LoggerFactory;
+
+import java.awt.Shape;
+import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates insulation tool paths directly from gerber geometry: primitives are converted to outlines inflated
+ * by the offset, united and the contour of the union becomes the tool path. Produces the same kind of output
+ * as {@link ToolpathGenerator} without rasterization.
+ */
+public class VectorToolpathGenerator extends AbstractToolpathGenerator
+{
+    // Number of primitives united sequentially before results are merged pairwise
+    private final static int UNION_CHUNK_SIZE = 16;
+    // Maximum deviation (in microns) of a curve from the arc or line segments it is replaced with
+    private final static double TOLERANCE = 1.0;
+    // Cubic approximation of a circle deviates from it proportionally to radius
+    private final static double RELATIVE_ARC_TOLERANCE = 0.0003;
+    private final static double MAX_ARC_RADIUS = 1_000_000;
+
+    private int width;
+    private int height;
+    private int toolDiameter;
+    private BooleanProperty cancelledProperty;
+    private AtomicInteger processedPrimitives = new AtomicInteger();
+
+    public void init(int width, int height, int inflation, int toolDiameter, List<GerberPrimitive> primitives,
+                     BooleanProperty cancelledProperty)
+    {
+        this.width = width;
+        this.height = height;
+        this.inflation = inflation;
+        this.toolDiameter = toolDiameter;
+        this.primitives = primitives;
+        this.cancelledProperty = cancelledProperty;
+    }
+
+    public List<Toolpath> generate()
+    {
+        processedPrimitives.set(0);
+        ProcessingPool pool = ProcessingPool.getInstance();
+        Area area = new Area();
+        try
+        {
+            // Consecutive primitives of the same polarity are united first, clear runs are cut out of everything before them
+            int runStart = 0;
+            for (int i = 1; i <= primitives.size(); i++)
+            {
+                if (i < primitives.size() && primitives.get(i).getPolarity() == primitives.get(runStart).getPolarity())
+                    continue;
+                Area run = pool.invoke(new UnionTask(runStart, i));
+                if (primitives.get(runStart).getPolarity() == GerberPrimitive.Polarity.DARK)
+                    area.add(run);
+                else
+                    area.subtract(run);
+                runStart = i;
+            }
+        }
+        catch (Throwable e)
+        {
+            LoggerFactory.logException("Error while generating tool paths", e);
+            return new ArrayList<>();
+        }
+
+        if (cancelledProperty.get())
+            return new ArrayList<>();
+
+        // Paths are not generated beyond panel boundaries, the same way raster windows do not trace their outermost pixels
+        area.intersect(new Area(new Rectangle2D.Double(0, 0, width - 1, height - 1)));
+        return traceContours(area);
+    }
+
+    private Shape getShape(GerberPrimitive primitive)
+    {
+        if (!(primitive instanceof Region) && !primitive.getAperture().isVisible())
+            return null;
+        return primitive.getShape(primitive.getPolarity() == GerberPrimitive.Polarity.DARK ? inflation : -inflation);
+    }
+
+    private class UnionTask extends RecursiveTask<Area>
+    {
+        private int from;
+        private int to;
+
+        private UnionTask(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Area compute()
+        {
+            if (cancelledProperty.get())
+                return new Area();
+
+            if (to - from <= UNION_CHUNK_SIZE)
+            {
+                Area area = new Area();
+                for (int i = from; i < to; i++)
+                {
+                    Shape shape = getShape(primitives.get(i));
+                    if (shape != null)
+                        area.add(shape instanceof Area ? (Area) shape : new Area(shape));
+                }
+                double progress = (double) processedPrimitives.addAndGet(to - from) / primitives.size();
+                Platform.runLater(() -> progressProperty.set(progress));
+                return area;
+            }
+
+            // Uniting areas of similar complexity is much cheaper than adding primitives one by one to a growing area
+            int middle = (from + to) >>> 1;
+            UnionTask left = new UnionTask(from, middle);
+            left.fork();
+            Area area = new UnionTask(middle, to).compute();
+            area.add(left.join());
+            return area;
+        }
+    }
+
+    private List<Toolpath> traceContours(Area area)
+    {
+        List<Toolpath> toolpaths = new ArrayList<>();
+        ContourBuilder builder = new ContourBuilder(toolpaths);
+        double[] coords = new double[6];
+        double startX = 0, startY = 0;
+        double x = 0, y = 0;
+        for (PathIterator i = area.getPathIterator(null); !i.isDone(); i.next())
+        {
+            switch (i.currentSegment(coords))
+            {
+                case PathIterator.SEG_MOVETO:
+                    builder.flush();
+                    startX = x = coords[0];
+                    startY = y = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    builder.addLine(x, y, coords[0], coords[1]);
+                    x = coords[0];
+                    y = coords[1];
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    builder.addCurve(new QuadCurve2D.Double(x, y, coords[0], coords[1], coords[2], coords[3]));
+                    x = coords[2];
+                    y = coords[3];
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    if (!builder.addArc(x, y, coords[0], coords[1], coords[2], coords[3], coords[4], coords[5]))
+                        builder.addCurve(new CubicCurve2D.Double(x, y, coords[0], coords[1], coords[2], coords[3], coords[4], coords[5]));
+                    x = coords[4];
+                    y = coords[5];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    builder.addLine(x, y, startX, startY);
+                    builder.flush();
+                    x = startX;
+                    y = startY;
+                    break;
+            }
+        }
+        builder.flush();
+        return toolpaths;
+    }
+
+    /**
+     * Turns contour segments into tool paths, joining consecutive cubic segments of the same circle into a single arc
+     */
+    private class ContourBuilder
+    {
+        private List<Toolpath> toolpaths;
+
+        // Arc being accumulated
+        private boolean pendingArc;
+        private double fromX, fromY, toX, toY;
+        private double centerX, centerY, radius;
+        private boolean clockwise;
+        private double sweep;
+
+        private ContourBuilder(List<Toolpath> toolpaths)
+        {
+            this.toolpaths = toolpaths;
+        }
+
+        private void addLine(double x1, double y1, double x2, double y2)
+        {
+            flush();
+            if (isOnBoundary(x1, y1, x2, y2))
+                return;
+            Point from = toPoint(x1, y1);
+            Point to = toPoint(x2, y2);
+            if (!from.equals(to))
+                toolpaths.add(new LinearToolpath(toolDiameter, from, to));
+        }
+
+        private void addCurve(Shape curve)
+        {
+            flush();
+            double[] coords = new double[6];
+            PathIterator i = curve.getPathIterator(null, TOLERANCE);
+            i.currentSegment(coords);
+            double x = coords[0];
+            double y = coords[1];
+            for (i.next(); !i.isDone(); i.next())
+            {
+                i.currentSegment(coords);
+                addLine(x, y, coords[0], coords[1]);
+                x = coords[0];
+                y = coords[1];
+            }
+        }
+
+        /**
+         * Tries to interpret cubic curve as a circular arc, which is how Java2D represents circles and round caps
+         * @return false if the curve deviates from a circle
+         */
+        private boolean addArc(double x0, double y0, double x1, double y1, double x2, double y2, double x3, double y3)
+        {
+            // Center lies on normals to the curve at both ends
+            double n0x = -(y1 - y0);
+            double n0y = x1 - x0;
+            double n1x = -(y3 - y2);
+            double n1y = x3 - x2;
+            double det = n1x * n0y - n0x * n1y;
+            if (Math.abs(det) < 1e-9 * Math.hypot(n0x, n0y) * Math.hypot(n1x, n1y) || (n0x == 0 && n0y == 0) || (n1x == 0 && n1y == 0))
+                return false;
+            double a = ((x3 - x0) * -n1y + n1x * (y3 - y0)) / det;
+            double cx = x0 + a * n0x;
+            double cy = y0 + a * n0y;
+
+            double r = Math.hypot(x0 - cx, y0 - cy);
+            if (r > MAX_ARC_RADIUS)
+                return false;
+            double tolerance = TOLERANCE + r * RELATIVE_ARC_TOLERANCE;
+            if (Math.abs(Math.hypot(x3 - cx, y3 - cy) - r) > tolerance)
+                return false;
+            for (double t = 0.25; t < 1; t += 0.25)
+            {
+                double mt = 1 - t;
+                double px = mt * mt * mt * x0 + 3 * mt * mt * t * x1 + 3 * mt * t * t * x2 + t * t * t * x3;
+                double py = mt * mt * mt * y0 + 3 * mt * mt * t * y1 + 3 * mt * t * t * y2 + t * t * t * y3;
+                if (Math.abs(Math.hypot(px - cx, py - cy) - r) > tolerance)
+                    return false;
+            }
+
+            boolean cw = (x0 - cx) * (y1 - y0) - (y0 - cy) * (x1 - x0) < 0;
+            double angle = Arc.calculateAngularDistance(Math.atan2(y0 - cy, x0 - cx), Math.atan2(y3 - cy, x3 - cx), cw);
+            if (angle > Math.PI)
+                return false;
+
+            if (pendingArc && cw == clockwise && Math.hypot(cx - centerX, cy - centerY) <= tolerance * 2 &&
+                    Math.abs(r - radius) <= tolerance * 2 && sweep + angle <= Math.PI + 1e-9)
+            {
+                toX = x3;
+                toY = y3;
+                sweep += angle;
+                return true;
+            }
+
+            flush();
+            pendingArc = true;
+            fromX = x0;
+            fromY = y0;
+            toX = x3;
+            toY = y3;
+            centerX = cx;
+            centerY = cy;
+            radius = r;
+            clockwise = cw;
+            sweep = angle;
+            return true;
+        }
+
+        private void flush()
+        {
+            if (!pendingArc)
+                return;
+            pendingArc = false;
+            Point from = toPoint(fromX, fromY);
+            Point to = toPoint(toX, toY);
+            if (from.equals(to))
+                return;
+            toolpaths.add(new CircularToolpath(toolDiameter, from, to, toPoint(centerX, centerY), (int) Math.round(radius), clockwise));
+        }
+
+        private boolean isOnBoundary(double x1, double y1, double x2, double y2)
+        {
+            return (x1 == x2 && (x1 <= 0 || x1 >= width - 1)) || (y1 == y2 && (y1 <= 0 || y1 >= height - 1));
+        }
+
+        private Point toPoint(double x, double y)
+        {
+            return new Point((int) Math.round(x), (int) Math.round(y));
+        }
+    }
+}
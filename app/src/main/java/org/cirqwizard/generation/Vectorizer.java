@@ -19,7 +19,6 @@ import org.cirqwizard.logging.LoggerFactory;
 import org.cirqwizard.settings.ApplicationConstants;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
 
@@ -28,100 +27,185 @@ public class Vectorizer
     private static final int INITIAL_SAMPLE_COUNT = (int)(0.15 * ApplicationConstants.RESOLUTION);                    // Amount of samples to process before trying to decide which curve it is
     private static final int SAMPLE_COUNT = (int)(0.1 * ApplicationConstants.RESOLUTION);                            // Amount of last processed points to hold for deviation calculation
     private static final double ANGULAR_THRESHOLD = Math.toRadians(3);      // Threshold of angular difference which results in a new segment start
-    private static final int MAX_ARC_DEVIATION = 10; // Tolerated deviation of the distance from arc's center to its points from the radius
+    static final int MAX_ARC_DEVIATION = 10; // Tolerated deviation of the distance from arc's center to its points from the radius
 
     private static final double LOW_UNCERTAINTY_THRESHOLD = 0.6;   // Arcs with uncertainty lower than that are processed as arcs
     private static final double HIGH_UNCERTAINTY_THRESHOLD = 10.0;    // Arcs with uncertainty higher than that are processed as segments
 
+    // Neighbour offsets in the order they are probed: E, SE, S, SW, W, NW, N, NE
+    private static final int[] DIRECTION_X = {1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] DIRECTION_Y = {0, -1, -1, -1, 0, 1, 1, 1};
 
-    private byte[] windowData;
+    private BitRaster windowData;
     private int width;
     private int height;
-    private List<Circle> knownCircles;
+    private CircleIndex knownCircles;
 
-    private Point current;
-    private Line currentSegment;
+    private int currentX;
+    private int currentY;
+    private int segmentFromX;
+    private int segmentFromY;
     private MatchedArc matchedArc;
     private ArrayList<Curve> result = new ArrayList<>();
-    private LinkedList<Point> segmentPoints = new LinkedList<>();
 
-    public Vectorizer(byte[] windowData, int width, int height, List<Circle> knownCircles, int x, int y)
+    // Ring buffer of the last processed points
+    private int[] lastX = new int[256];
+    private int[] lastY = new int[256];
+    private int lastHead;
+    private int lastSize;
+
+    // Points of the current segment are only kept as sums of their moments relative to its first point, so that
+    // deviations are updated in constant time per step. Sums stay exact while they fit into double's mantissa.
+    private int segmentPointCount;
+    private int startX;
+    private int startY;
+    private double sumU, sumV, sumUU, sumVV, sumUV;
+    private double sumUVV, sumUUV, sumUUVV;
+    private double sumP, sumPU, sumPV, sumPP;
+    private List<Circle> candidates;
+
+    /**
+     * @param knownCircles index built with {@link #MAX_ARC_DEVIATION} tolerance, shared by all vectorizers of a window
+     */
+    public Vectorizer(BitRaster windowData, CircleIndex knownCircles, int x, int y)
     {
         this.windowData = windowData;
-        this.width = width;
-        this.height = height;
+        this.width = windowData.getWidth();
+        this.height = windowData.getHeight();
         this.knownCircles = knownCircles;
-        current = new Point(x, y);
-        currentSegment = new Line(current, current);
+        currentX = x;
+        currentY = y;
+        segmentFromX = x;
+        segmentFromY = y;
     }
 
     public List<Curve> trace()
     {
         int segmentCounter = 0;
-        LinkedList<Point> lastPoints = new LinkedList<>();
-        segmentPoints = new LinkedList<>();
+        lastHead = 0;
+        lastSize = 0;
+        clearSegmentPoints();
         double angle = 0;
         matchedArc = null;
 
         do
         {
-            lastPoints.addLast(current);
             int sampleCount = segmentCounter <= INITIAL_SAMPLE_COUNT ? INITIAL_SAMPLE_COUNT : (matchedArc == null ? SAMPLE_COUNT : (int)((double) matchedArc.getCircle().getRadius() * 2 * (Math.PI / 15)));
-            while (lastPoints.size() > sampleCount)
-                lastPoints.removeFirst();
-            segmentPoints.addLast(current);
+            addLastPoint(currentX, currentY, sampleCount);
+            addSegmentPoint(currentX, currentY);
 
             segmentCounter++;
-            currentSegment.setTo(current);
 
             boolean restart = false;
 
             if (segmentCounter == INITIAL_SAMPLE_COUNT)
             {
-                angle = calculateAngle(currentSegment.getFrom(), current);
-                matchedArc = fitArc(segmentPoints, calculateSegmentDeviation(segmentPoints));
+                angle = calculateAngle(segmentFromX, segmentFromY, currentX, currentY);
+                matchedArc = fitArc(calculateSegmentDeviation());
             }
             else if (segmentCounter > INITIAL_SAMPLE_COUNT)
             {
                 if (matchedArc != null && matchedArc.getUncertainty() >= LOW_UNCERTAINTY_THRESHOLD)
-                    matchedArc = fitArc(segmentPoints, calculateSegmentDeviation(segmentPoints));
+                    matchedArc = fitArc(calculateSegmentDeviation());
 
                 if (matchedArc != null && matchedArc.getUncertainty() < LOW_UNCERTAINTY_THRESHOLD)
-                    restart = Math.abs(matchedArc.getCircle().getRadius() - matchedArc.getCircle().getCenter().distanceTo(current)) >= MAX_ARC_DEVIATION;
+                    restart = Math.abs(matchedArc.getCircle().getRadius() - distanceToCenter(matchedArc.getCircle(), currentX, currentY)) >= MAX_ARC_DEVIATION;
                 else if (matchedArc == null || segmentCounter >  (double)matchedArc.getCircle().getRadius() * 2 * (Math.PI / 15))
-                    restart = Math.abs(calculateAngle(lastPoints.getFirst(), lastPoints.getLast()) - angle) > ANGULAR_THRESHOLD;
+                    restart = Math.abs(calculateAngle(lastX[lastHead], lastY[lastHead], currentX, currentY) - angle) > ANGULAR_THRESHOLD;
             }
 
             if (restart)
             {
-
-                Curve curve = getCurve(calculateAngle(lastPoints.get(0), current), lastPoints.get(0));
-                result.add(curve);
-                currentSegment = new Line(current, current);
-                segmentPoints.clear();
+                result.add(getCurve(calculateAngle(lastX[lastHead], lastY[lastHead], currentX, currentY), lastX[lastHead], lastY[lastHead]));
+                segmentFromX = currentX;
+                segmentFromY = currentY;
+                clearSegmentPoints();
                 matchedArc = null;
                 segmentCounter = 0;
             }
 
-            windowData[current.getX() + current.getY() * width] = 0;
+            windowData.clear(currentX, currentY);
         }
         while (calculateNextPoint());
         if (segmentCounter > 10)
-            result.add(getCurve(calculateAngle(lastPoints.get(0), current), lastPoints.get(0)));
+            result.add(getCurve(calculateAngle(lastX[lastHead], lastY[lastHead], currentX, currentY), lastX[lastHead], lastY[lastHead]));
 
         return result;
     }
 
+    private void addLastPoint(int x, int y, int sampleCount)
+    {
+        if (lastSize == lastX.length)
+        {
+            int[] x2 = new int[lastX.length * 2];
+            int[] y2 = new int[lastY.length * 2];
+            for (int i = 0; i < lastSize; i++)
+            {
+                x2[i] = lastX[(lastHead + i) & (lastX.length - 1)];
+                y2[i] = lastY[(lastHead + i) & (lastY.length - 1)];
+            }
+            lastX = x2;
+            lastY = y2;
+            lastHead = 0;
+        }
+        int tail = (lastHead + lastSize) & (lastX.length - 1);
+        lastX[tail] = x;
+        lastY[tail] = y;
+        lastSize++;
+        while (lastSize > Math.max(1, sampleCount))
+        {
+            lastHead = (lastHead + 1) & (lastX.length - 1);
+            lastSize--;
+        }
+    }
+
+    private void clearSegmentPoints()
+    {
+        segmentPointCount = 0;
+        sumU = sumV = sumUU = sumVV = sumUV = 0;
+        sumUVV = sumUUV = sumUUVV = 0;
+        sumP = sumPU = sumPV = sumPP = 0;
+        candidates = null;
+    }
+
+    private void addSegmentPoint(int x, int y)
+    {
+        if (segmentPointCount++ == 0)
+        {
+            startX = x;
+            startY = y;
+        }
+        double u = x - startX;
+        double v = y - startY;
+        double uu = u * u;
+        double vv = v * v;
+        double p = uu + vv;
+        sumU += u;
+        sumV += v;
+        sumUU += uu;
+        sumVV += vv;
+        sumUV += u * v;
+        sumUVV += u * vv;
+        sumUUV += uu * v;
+        sumUUVV += uu * vv;
+        sumP += p;
+        sumPU += p * u;
+        sumPV += p * v;
+        sumPP += p * p;
+    }
+
     private boolean calculateNextPoint()
     {
-        for (Direction d : directions)
+        for (int i = 0; i < DIRECTION_X.length; i++)
         {
-            Point p = current.add(d.getVector());
-            if (p.getX() < 0 || p.getX() >= width || p.getY() < 0 || p.getY() >= height)
+            int x = currentX + DIRECTION_X[i];
+            int y = currentY + DIRECTION_Y[i];
+            if (x < 0 || x >= width || y < 0 || y >= height)
                 continue;
-            if (windowData[p.getX() + p.getY() * width] != 0)
+            if (windowData.get(x, y))
             {
-                current = p;
+                currentX = x;
+                currentY = y;
                 return true;
             }
         }
@@ -129,12 +213,15 @@ public class Vectorizer
         return false;
     }
 
-    private Curve getCurve(double heading, Point headingStartPoint)
+    private Curve getCurve(double heading, int headingStartX, int headingStartY)
     {
+        Point from = new Point(segmentFromX, segmentFromY);
+        Point to = new Point(currentX, currentY);
         if (matchedArc == null || matchedArc.getUncertainty() > HIGH_UNCERTAINTY_THRESHOLD)
-            return currentSegment;
+            return new Line(from, to);
 
-        double centerAngle = calculateAngle(headingStartPoint, matchedArc.getCircle().getCenter());
+        Point center = matchedArc.getCircle().getCenter();
+        double centerAngle = calculateAngle(headingStartX, headingStartY, center.getX(), center.getY());
         double headingCenterAngle = heading - centerAngle;
         if (headingCenterAngle < -Math.PI)
             headingCenterAngle += Math.PI * 2;
@@ -142,50 +229,57 @@ public class Vectorizer
             headingCenterAngle -= Math.PI * 2;
 
         boolean clockwise = headingCenterAngle > 0;
-        int r1 = (int)matchedArc.getCircle().getCenter().distanceTo(currentSegment.getFrom());
-        int r2 = (int)matchedArc.getCircle().getCenter().distanceTo(currentSegment.getTo());
+        int r1 = (int)center.distanceTo(from);
+        int r2 = (int)center.distanceTo(to);
         if (Math.abs(r1 - matchedArc.getCircle().getRadius()) > MAX_ARC_DEVIATION + 1|| Math.abs(r2 - matchedArc.getCircle().getRadius()) > MAX_ARC_DEVIATION + 1)
-            LoggerFactory.getApplicationLogger().log(Level.WARNING, "Arc geometry violation: " + matchedArc + " / " + currentSegment + " / " + r1 + " | " + r2);
-        return new Arc(currentSegment.getFrom(), currentSegment.getTo(), matchedArc.getCircle().getCenter(), matchedArc.getCircle().getRadius(), clockwise);
+            LoggerFactory.getApplicationLogger().log(Level.WARNING, "Arc geometry violation: " + matchedArc + " / " + new Line(from, to) + " / " + r1 + " | " + r2);
+        return new Arc(from, to, center, matchedArc.getCircle().getRadius(), clockwise);
     }
 
-    private double calculateAngle(Point start, Point end)
+    private double calculateAngle(int startX, int startY, int endX, int endY)
     {
-        return Math.atan2(end.getY() - start.getY(), end.getX() - start.getX());
+        return Math.atan2(endY - startY, endX - startX);
     }
 
-    private double calculateSegmentDeviation(LinkedList<Point> points)
+    private double distanceToCenter(Circle circle, int x, int y)
     {
-        double deviation = 0;
-        Point start = points.getFirst();
-        Point end = points.getLast();
-        for (Point p : points)
-        {
-            double d = (p.getY() - start.getY()) * (end.getX() - p.getX()) - (end.getY() - start.getY()) * (p.getX() - start.getX());
-            deviation += d * d;
-        }
-        return Math.sqrt(deviation);
+        double dx = x - circle.getCenter().getX();
+        double dy = y - circle.getCenter().getY();
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
-    private double calculateArcDeviation(LinkedList<Point> points, Point center, int radius)
+    // Sum over segment points of d^2, d = v * (e - u) - f * u, with (u, v) and (e, f) being point and last point relative to the first one
+    private double calculateSegmentDeviation()
     {
-        double deviation = 0;
-        for (Point p : points)
-        {
-            double d = (double)((p.getX() - center.getX()) * (p.getX() - center.getX()) + (p.getY() - center.getY()) * (p.getY() - center.getY())) - radius * radius;
-            deviation += d * d;
-        }
-        return Math.sqrt(deviation);
+        double e = currentX - startX;
+        double f = currentY - startY;
+        double deviation = e * e * sumVV + f * f * sumUU + sumUUVV - 2 * e * f * sumUV - 2 * e * sumUVV + 2 * f * sumUUV;
+        return Math.sqrt(Math.max(0, deviation));
     }
 
-    private MatchedArc fitArc(LinkedList<Point> points, double segmentDeviation)
+    // Sum over segment points of q^2, q = |p - c|^2 - r^2 = u^2 + v^2 - 2au - 2bv + k, with (a, b) being center relative to the first point
+    private double calculateArcDeviation(Point center, int radius)
     {
+        double a = center.getX() - startX;
+        double b = center.getY() - startY;
+        double k = a * a + b * b - (double) radius * radius;
+        double deviation = sumPP + 4 * a * a * sumUU + 4 * b * b * sumVV + k * k * segmentPointCount
+                - 4 * a * sumPU - 4 * b * sumPV + 2 * k * sumP + 8 * a * b * sumUV - 4 * a * k * sumU - 4 * b * k * sumV;
+        return Math.sqrt(Math.max(0, deviation));
+    }
+
+    private MatchedArc fitArc(double segmentDeviation)
+    {
+        // Arc has to start within tolerance from the circle, so only the circles passing near the first point are fitted
+        if (candidates == null)
+            candidates = knownCircles.query(startX, startY);
+
         double minDeviation = Double.MAX_VALUE;
         Circle bestFit = null;
 
-        for (Circle circle : knownCircles)
+        for (Circle circle : candidates)
         {
-            double deviation = calculateArcDeviation(points, circle.getCenter(), circle.getRadius());
+            double deviation = calculateArcDeviation(circle.getCenter(), circle.getRadius());
             if (deviation < minDeviation)
             {
                 minDeviation = deviation;
@@ -195,8 +289,7 @@ public class Vectorizer
 
         if (bestFit == null)
             return null;
-        if (Math.abs(bestFit.getRadius() - bestFit.getCenter().distanceTo(points.getFirst())) >= MAX_ARC_DEVIATION ||
-                Math.abs(bestFit.getRadius() - bestFit.getCenter().distanceTo(points.getLast())) >= MAX_ARC_DEVIATION)
+        if (Math.abs(bestFit.getRadius() - distanceToCenter(bestFit, currentX, currentY)) >= MAX_ARC_DEVIATION)
             return null;
         double uncertainty = minDeviation / segmentDeviation;
         if (uncertainty > HIGH_UNCERTAINTY_THRESHOLD)
@@ -204,32 +297,4 @@ public class Vectorizer
         return new MatchedArc(bestFit, uncertainty);
     }
 
-    private static Direction[] directions = {Direction.EAST, Direction.SOUTH_EAST, Direction.SOUTH, Direction.SOUTH_WEST, Direction.WEST, Direction.NORTH_WEST,
-            Direction.NORTH, Direction.NORTH_EAST};
-
-    private static enum Direction
-    {
-        NORTH(new Point(0, 1)),
-        NORTH_EAST(new Point(1, 1)),
-        EAST(new Point(1, 0)),
-        SOUTH_EAST(new Point(1, -1)),
-        SOUTH(new Point(0, -1)),
-        SOUTH_WEST(new Point(-1, -1)),
-        WEST(new Point(-1, 0)),
-        NORTH_WEST(new Point(-1, 1));
-
-        private Point vector;
-
-        Direction(Point vector)
-        {
-            this.vector = vector;
-        }
-
-        public Point getVector()
-        {
-            return vector;
-        }
-    }
-
-
 }
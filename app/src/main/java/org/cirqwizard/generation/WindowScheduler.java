@@ -0,0 +1,121 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation;
+
+import org.cirqwizard.settings.SettingsFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admits raster windows for processing only while their estimated footprint fits into a heap budget,
+ * so that concurrent windows wait for each other instead of running out of memory.
+ */
+public class WindowScheduler
+{
+    public final static int MIN_WINDOW_SIZE = 1000;
+
+    // Graphics context, scanline buffers and resulting toolpaths of a window
+    private final static long WINDOW_OVERHEAD = 1024 * 1024;
+    private final static int PERMIT_SIZE = 1024;
+
+    private long budget;
+    private int totalPermits;
+    private Semaphore semaphore;
+    private AtomicLong currentBytes = new AtomicLong();
+    private AtomicLong peakBytes = new AtomicLong();
+
+    public WindowScheduler(long budget)
+    {
+        this.budget = budget;
+        this.totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / PERMIT_SIZE));
+        this.semaphore = new Semaphore(totalPermits, true);
+    }
+
+    /**
+     * Budget configured in application settings as a share of maximum heap size
+     */
+    public static long getDefaultBudget()
+    {
+        int percent = SettingsFactory.getApplicationSettings().getGenerationMemoryBudget().getValue();
+        return Runtime.getRuntime().maxMemory() / 100 * Math.max(1, Math.min(100, percent));
+    }
+
+    /**
+     * Estimates memory consumed by a window of given size
+     * @param rasters number of 1 bit rasters of window size held at the same time
+     */
+    public static long estimateFootprint(int width, int height, int rasters)
+    {
+        long rasterBytes = (long) ((width + 63) >>> 6) * 8 * height;
+        return rasterBytes * rasters + WINDOW_OVERHEAD;
+    }
+
+    /**
+     * Shrinks window size until the given number of threads can process windows simultaneously within the budget
+     */
+    public int fitWindowSize(int windowSize, int overlap, int rasters, int threads)
+    {
+        return fitWindowSize(windowSize, overlap, overlap, rasters, threads);
+    }
+
+    /**
+     * Same as {@link #fitWindowSize(int, int, int, int)} for windows overlapping their neighbours by different
+     * distances horizontally and vertically
+     */
+    public int fitWindowSize(int windowSize, int horizontalOverlap, int verticalOverlap, int rasters, int threads)
+    {
+        while (windowSize > MIN_WINDOW_SIZE &&
+                estimateFootprint(windowSize + 2 * horizontalOverlap, windowSize + 2 * verticalOverlap, rasters) * threads > budget)
+            windowSize = Math.max(MIN_WINDOW_SIZE, windowSize * 3 / 4);
+        return windowSize;
+    }
+
+    /**
+     * Blocks until the window of given footprint fits into the budget. Windows larger than the whole budget
+     * are processed alone.
+     */
+    public void acquire(long bytes) throws InterruptedException
+    {
+        semaphore.acquire(getPermits(bytes));
+        long current = currentBytes.addAndGet(bytes);
+        long peak;
+        while (current > (peak = peakBytes.get()) && !peakBytes.compareAndSet(peak, current));
+    }
+
+    public void release(long bytes)
+    {
+        currentBytes.addAndGet(-bytes);
+        semaphore.release(getPermits(bytes));
+    }
+
+    public long getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * Highest sum of footprints of windows processed at the same time
+     */
+    public long getPeakBytes()
+    {
+        return peakBytes.get();
+    }
+
+    private int getPermits(long bytes)
+    {
+        return (int) Math.max(1, Math.min(totalPermits, (bytes + PERMIT_SIZE - 1) / PERMIT_SIZE));
+    }
+}
@@ -37,6 +37,18 @@ public class DrillGCodeGenerator
 
     public String generate(Postprocessor postprocessor, int feed, int clearance, int safetyHeight,
                            int drillingDepth, int spindleSpeed)
+    {
+        StringBuilder program = new StringBuilder();
+        generate(postprocessor, feed, clearance, safetyHeight, drillingDepth, spindleSpeed,
+                line -> program.append(line).append('\n'));
+        return program.toString();
+    }
+
+    /**
+     * Passes the program to the sink one hole at a time
+     */
+    public void generate(Postprocessor postprocessor, int feed, int clearance, int safetyHeight,
+                         int drillingDepth, int spindleSpeed, LineSink sink)
     {
         StringBuilder str = new StringBuilder();
         postprocessor.header(str);
@@ -51,19 +63,21 @@ public class DrillGCodeGenerator
 
         postprocessor.rapid(str, null, null, clearance);
         postprocessor.spindleOn(str, spindleSpeed);
-        drillPoints.stream().
-                filter(DrillPoint::isEnabled).
-                forEach(drillPoint ->
-                {
-                    postprocessor.rapid(str, drillPoint.getPoint().getX(), drillPoint.getPoint().getY(), clearance);
-                    postprocessor.rapid(str, null, null, safetyHeight);
-                    postprocessor.linearInterpolation(str, drillPoint.getPoint().getX(), drillPoint.getPoint().getY(), drillingDepth, feed);
-                    postprocessor.rapid(str, null, null, clearance);
-                });
+        int processed = 0;
+        for (DrillPoint drillPoint : drillPoints)
+        {
+            sink.flush(str);
+            sink.setProgress((double) processed++ / drillPoints.size());
+            if (!drillPoint.isEnabled())
+                continue;
+            postprocessor.rapid(str, drillPoint.getPoint().getX(), drillPoint.getPoint().getY(), clearance);
+            postprocessor.rapid(str, null, null, safetyHeight);
+            postprocessor.linearInterpolation(str, drillPoint.getPoint().getX(), drillPoint.getPoint().getY(), drillingDepth, feed);
+            postprocessor.rapid(str, null, null, clearance);
+        }
         postprocessor.selectMachineWS(str);
         postprocessor.rapid(str, null, null, 0);
         postprocessor.spindleOff(str);
-
-        return str.toString();
+        sink.flush(str);
     }
 }
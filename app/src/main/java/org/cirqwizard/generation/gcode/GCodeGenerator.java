@@ -10,13 +10,26 @@ import org.cirqwizard.settings.SettingsFactory;
  */
 public class GCodeGenerator
 {
-    private Context context;
     private boolean mirror;
+    // Work offsets are taken from context when generator is created, so that the program can be generated on
+    // another thread
+    private int g54X;
+    private int g54Y;
+    private int g54Z;
 
     public GCodeGenerator(Context context, boolean mirror)
     {
-        this.context = context;
         this.mirror = mirror;
+        g54X = context.getG54X();
+        if (mirror)
+        {
+            MachineSettings machineSettings = SettingsFactory.getMachineSettings();
+            int laminateWidth = context.getPanel().getSize() == PCBSize.Small ? machineSettings.getSmallPcbWidth().getValue() : machineSettings.getLargePcbWidth().getValue();
+            int pinX = machineSettings.getReferencePinX().getValue();
+            g54X = pinX * 2 + laminateWidth - context.getG54X();
+        }
+        g54Y = context.getG54Y();
+        g54Z = context.getG54Z();
     }
 
     protected int getX(int x)
@@ -26,14 +39,16 @@ public class GCodeGenerator
 
     protected int getG54X()
     {
-        int g54X = context.getG54X();
-        if (mirror)
-        {
-            MachineSettings machineSettings = SettingsFactory.getMachineSettings();
-            int laminateWidth = context.getPanel().getSize() == PCBSize.Small ? machineSettings.getSmallPcbWidth().getValue() : machineSettings.getLargePcbWidth().getValue();
-            int pinX = machineSettings.getReferencePinX().getValue();
-            g54X = pinX * 2 + laminateWidth - context.getG54X();
-        }
         return g54X;
     }
+
+    protected int getG54Y()
+    {
+        return g54Y;
+    }
+
+    protected int getG54Z()
+    {
+        return g54Z;
+    }
 }
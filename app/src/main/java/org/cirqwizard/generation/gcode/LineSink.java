@@ -0,0 +1,48 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation.gcode;
+
+/**
+ * Receives generated program line by line
+ */
+public interface LineSink
+{
+    void accept(String line);
+
+    /**
+     * Share of the program generated so far, reported by generators as they go through tool paths
+     */
+    default void setProgress(double progress)
+    {
+    }
+
+    /**
+     * Passes lines accumulated by postprocessor in the buffer to the sink and empties the buffer
+     */
+    default void flush(StringBuilder str)
+    {
+        int start = 0;
+        for (int i = 0; i < str.length(); i++)
+        {
+            if (str.charAt(i) == '\n')
+            {
+                accept(str.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (start < str.length())
+            accept(str.substring(start));
+        str.setLength(0);
+    }
+}
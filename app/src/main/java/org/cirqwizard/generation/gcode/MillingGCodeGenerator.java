@@ -26,39 +26,64 @@ import org.cirqwizard.generation.toolpath.LinearToolpath;
 import org.cirqwizard.generation.toolpath.Toolpath;
 import org.cirqwizard.settings.ApplicationConstants;
 
+import java.util.ArrayList;
 import java.util.List;
 
 
 public class MillingGCodeGenerator
 {
-    private Context context;
+    private List<Toolpath> toolpaths;
+    private int g54X;
+    private int g54Y;
+    private int g54Z;
 
+    /**
+     * Contour tool paths and work offsets are taken from context right away, so that the program can be generated
+     * on another thread
+     */
     public MillingGCodeGenerator(Context context)
     {
-        this.context = context;
+        toolpaths = new ArrayList<>(context.getPanel().getToolspaths(Board.LayerType.MILLING));
+        g54X = context.getG54X();
+        g54Y = context.getG54Y();
+        g54Z = context.getG54Z();
     }
 
     public String generate(Postprocessor postprocessor, int xyFeed, int zFeed, int arcFeed, int clearance, int safetyHeight,
                            int millingDepth, int spindleSpeed)
+    {
+        StringBuilder program = new StringBuilder();
+        generate(postprocessor, xyFeed, zFeed, arcFeed, clearance, safetyHeight, millingDepth, spindleSpeed,
+                line -> program.append(line).append('\n'));
+        return program.toString();
+    }
+
+    /**
+     * Passes the program to the sink one tool path at a time
+     */
+    public void generate(Postprocessor postprocessor, int xyFeed, int zFeed, int arcFeed, int clearance, int safetyHeight,
+                         int millingDepth, int spindleSpeed, LineSink sink)
     {
         StringBuilder str = new StringBuilder();
         postprocessor.header(str);
 
-        List<Toolpath> toolpaths = context.getPanel().getToolspaths(Board.LayerType.MILLING);
         Toolpath firstToolpath = toolpaths.stream().filter(Toolpath::isEnabled).findFirst().get();
         Curve firstCurve = ((CuttingToolpath)firstToolpath).getCurve();
         postprocessor.selectMachineWS(str);
         postprocessor.rapid(str, null, null, 0);
-        postprocessor.rapid(str, context.getG54X() + firstCurve.getFrom().getX(), context.getG54Y() + firstCurve.getFrom().getY(), null);
+        postprocessor.rapid(str, g54X + firstCurve.getFrom().getX(), g54Y + firstCurve.getFrom().getY(), null);
 
-        postprocessor.setupG54(str, context.getG54X(), context.getG54Y(), context.getG54Z());
+        postprocessor.setupG54(str, g54X, g54Y, g54Z);
         postprocessor.selectWCS(str);
 
         postprocessor.rapid(str, null, null, clearance);
         postprocessor.spindleOn(str, spindleSpeed);
         Point prevLocation = null;
+        int processed = 0;
         for (Toolpath toolpath : toolpaths)
         {
+            sink.flush(str);
+            sink.setProgress((double) processed++ / toolpaths.size());
             if (!toolpath.isEnabled())
                 continue;
             Curve curve = ((CuttingToolpath)toolpath).getCurve();
@@ -87,7 +112,6 @@ public class MillingGCodeGenerator
         postprocessor.selectMachineWS(str);
         postprocessor.rapid(str, null, null, 0);
         postprocessor.spindleOff(str);
-
-        return str.toString();
+        sink.flush(str);
     }
 }
@@ -25,29 +25,42 @@ import java.util.List;
 
 public class PasteGCodeGenerator extends GCodeGenerator
 {
-    private Context context;
     private List<Toolpath> toolpaths;
 
     public PasteGCodeGenerator(Context context, List<Toolpath> toolpaths, boolean mirror)
     {
         super(context, mirror);
-        this.context = context;
         this.toolpaths = toolpaths;
     }
 
     public String generate(Postprocessor postprocessor, int preFeedPause, int postFeedPause, int feed, int clearance, int workingHeight)
+    {
+        StringBuilder program = new StringBuilder();
+        generate(postprocessor, preFeedPause, postFeedPause, feed, clearance, workingHeight,
+                line -> program.append(line).append('\n'));
+        return program.toString();
+    }
+
+    /**
+     * Passes the program to the sink one pad at a time
+     */
+    public void generate(Postprocessor postprocessor, int preFeedPause, int postFeedPause, int feed, int clearance, int workingHeight,
+                         LineSink sink)
     {
         StringBuilder str = new StringBuilder();
         postprocessor.header(str);
 
         postprocessor.selectMachineWS(str);
         postprocessor.rapid(str, null, null, 0);
-        postprocessor.setupG54(str, getG54X(), context.getG54Y(), context.getG54Z());
+        postprocessor.setupG54(str, getG54X(), getG54Y(), getG54Z());
         postprocessor.selectWCS(str);
 
         boolean firstPad = true;
+        int processed = 0;
         for (Toolpath toolpath : toolpaths)
         {
+            sink.flush(str);
+            sink.setProgress((double) processed++ / toolpaths.size());
             if (!toolpath.isEnabled())
                 continue;
             Curve curve = ((CuttingToolpath)toolpath).getCurve();
@@ -65,7 +78,6 @@ public class PasteGCodeGenerator extends GCodeGenerator
         postprocessor.selectMachineWS(str);
         postprocessor.rapid(str, null, null, 0);
         postprocessor.footer(str);
-
-        return str.toString();
+        sink.flush(str);
     }
 }
@@ -0,0 +1,303 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation.gcode;
+
+import org.cirqwizard.generation.toolpath.CircularToolpath;
+import org.cirqwizard.generation.toolpath.CuttingToolpath;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Curve;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.settings.ApplicationConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replaces continuous runs of linear tool paths with fewer moves before G-code is generated. Runs of nearly
+ * collinear segments become a single line, runs following a circle become an arc, as long as the new path stays
+ * within tolerance from every vertex of the original one.
+ * Arcs are created in board coordinates, so mirroring is applied to them by the generator the usual way.
+ * Tool paths can be passed one at a time as they are generated, only the current continuous run is kept in memory.
+ */
+public class PathSimplifier
+{
+    // Fewer segments are cheaper to keep as they are than to replace with an arc
+    private final static int MIN_ARC_SEGMENTS = 3;
+    private final static double MAX_ARC_RADIUS = 1_000_000;
+    // Angle between neighbouring vertices as seen from the center, larger steps are unlikely to belong to an arc
+    private final static double MAX_ARC_STEP = Math.PI / 4;
+
+    private int tolerance;
+
+    // Vertices of the current run and tool paths connecting them
+    private int[] xs = new int[64];
+    private int[] ys = new int[64];
+    private List<LinearToolpath> run = new ArrayList<>();
+
+    private int inputCount;
+    private int outputCount;
+
+    // Arc fitted by the last successful call to isArc()
+    private int centerX;
+    private int centerY;
+    private double radius;
+    private boolean clockwise;
+
+    public PathSimplifier(int tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Returns enabled tool paths of the list with continuous linear runs simplified
+     */
+    public List<Toolpath> simplify(List<? extends Toolpath> toolpaths)
+    {
+        List<Toolpath> result = new ArrayList<>();
+        for (Toolpath toolpath : toolpaths)
+            add(toolpath, result);
+        flush(result);
+        return result;
+    }
+
+    /**
+     * Passes the next tool path to the simplifier. Tool paths of runs which are already complete are appended to
+     * output, the tool path itself is held back while the run it belongs to can continue.
+     */
+    public void add(Toolpath toolpath, List<Toolpath> output)
+    {
+        if (!toolpath.isEnabled())
+            return;
+        inputCount++;
+        if (!(toolpath instanceof LinearToolpath))
+        {
+            flush(output);
+            output.add(toolpath);
+            outputCount++;
+            return;
+        }
+        LinearToolpath linear = (LinearToolpath) toolpath;
+        if (!run.isEmpty() && !continues(linear))
+            flush(output);
+        addToRun(linear);
+    }
+
+    /**
+     * Appends simplified tool paths of the current run to output, to be called after the last tool path
+     */
+    public void flush(List<Toolpath> output)
+    {
+        int size = output.size();
+        flushRun(output);
+        outputCount += output.size() - size;
+    }
+
+    /**
+     * Number of enabled tool paths passed to the simplifier
+     */
+    public int getInputCount()
+    {
+        return inputCount;
+    }
+
+    /**
+     * Number of tool paths produced by the simplifier
+     */
+    public int getOutputCount()
+    {
+        return outputCount;
+    }
+
+    // The same continuity criteria as generator uses to decide whether the tool has to be lifted
+    private boolean continues(LinearToolpath toolpath)
+    {
+        LinearToolpath last = run.get(run.size() - 1);
+        Point from = toolpath.getCurve().getFrom();
+        Point to = last.getCurve().getTo();
+        return last.getToolDiameter() == toolpath.getToolDiameter() &&
+                Math.abs(from.getX() - to.getX()) <= ApplicationConstants.ROUNDING &&
+                Math.abs(from.getY() - to.getY()) <= ApplicationConstants.ROUNDING;
+    }
+
+    private void addToRun(LinearToolpath toolpath)
+    {
+        Curve curve = toolpath.getCurve();
+        if (run.isEmpty())
+            addVertex(0, curve.getFrom());
+        run.add(toolpath);
+        addVertex(run.size(), curve.getTo());
+    }
+
+    private void addVertex(int index, Point point)
+    {
+        if (index == xs.length)
+        {
+            xs = Arrays.copyOf(xs, index * 2);
+            ys = Arrays.copyOf(ys, index * 2);
+        }
+        xs[index] = point.getX();
+        ys[index] = point.getY();
+    }
+
+    private void flushRun(List<Toolpath> result)
+    {
+        int last = run.size();
+        int i = 0;
+        while (i < last)
+        {
+            int lineEnd = findLongest(i, 1, last, false);
+            int arcEnd = i + MIN_ARC_SEGMENTS <= last ? findLongest(i, MIN_ARC_SEGMENTS, last, true) : i;
+            if (arcEnd > lineEnd && isArc(i, arcEnd))
+            {
+                int toolDiameter = run.get(i).getToolDiameter();
+                result.add(new FittedArc(toolDiameter, new Point(xs[i], ys[i]), new Point(xs[arcEnd], ys[arcEnd]),
+                        new Point(centerX, centerY), (int) Math.round(radius), clockwise));
+                i = arcEnd;
+            }
+            else
+            {
+                if (lineEnd == i + 1)
+                    result.add(run.get(i));
+                else
+                    result.add(new LinearToolpath(run.get(i).getToolDiameter(), new Point(xs[i], ys[i]), new Point(xs[lineEnd], ys[lineEnd])));
+                i = lineEnd;
+            }
+        }
+        run.clear();
+    }
+
+    /**
+     * Finds the farthest vertex the path starting at vertex i can be replaced up to, doubling the number of
+     * segments while replacement succeeds and then bisecting between the last success and the first failure
+     * @return i if even the minimal number of segments can't be replaced
+     */
+    private int findLongest(int i, int minSegments, int last, boolean arc)
+    {
+        if (!fits(i, i + minSegments, arc))
+            return i;
+        int good = i + minSegments;
+        int bad = last + 1;
+        for (int segments = minSegments * 2; i + segments <= last; segments *= 2)
+        {
+            if (!fits(i, i + segments, arc))
+            {
+                bad = i + segments;
+                break;
+            }
+            good = i + segments;
+        }
+        while (bad - good > 1)
+        {
+            int middle = (good + bad) >>> 1;
+            if (fits(i, middle, arc))
+                good = middle;
+            else
+                bad = middle;
+        }
+        return good;
+    }
+
+    private boolean fits(int from, int to, boolean arc)
+    {
+        return arc ? isArc(from, to) : isLine(from, to);
+    }
+
+    /**
+     * Checks that all the vertices between from and to lie within tolerance from the line connecting them
+     */
+    private boolean isLine(int from, int to)
+    {
+        if (to - from == 1)
+            return true;
+        double dx = xs[to] - xs[from];
+        double dy = ys[to] - ys[from];
+        double lengthSquared = dx * dx + dy * dy;
+        for (int k = from + 1; k < to; k++)
+        {
+            double px = xs[k] - xs[from];
+            double py = ys[k] - ys[from];
+            double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+            if (Math.hypot(px - t * dx, py - t * dy) > tolerance)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fits a circle through the first, the middle and the last vertices and checks that the vertices between them,
+     * as well as midpoints of the segments, lie within tolerance from the circle and that the path goes around the
+     * center in one direction
+     */
+    private boolean isArc(int from, int to)
+    {
+        int middle = (from + to) >>> 1;
+        double ax = xs[middle] - xs[from];
+        double ay = ys[middle] - ys[from];
+        double bx = xs[to] - xs[from];
+        double by = ys[to] - ys[from];
+        double d = 2 * (ax * by - ay * bx);
+        if (d == 0 || (ax == 0 && ay == 0) || (bx == 0 && by == 0))
+            return false;
+        double a = ax * ax + ay * ay;
+        double b = bx * bx + by * by;
+        double cx = (by * a - ay * b) / d;
+        double cy = (ax * b - bx * a) / d;
+        if (Math.hypot(cx, cy) > MAX_ARC_RADIUS)
+            return false;
+
+        int centerX = xs[from] + (int) Math.round(cx);
+        int centerY = ys[from] + (int) Math.round(cy);
+        double radius = Math.hypot(xs[from] - centerX, ys[from] - centerY);
+        boolean clockwise = d < 0;
+        double sweep = 0;
+        for (int k = from; k < to; k++)
+        {
+            double x1 = xs[k] - centerX;
+            double y1 = ys[k] - centerY;
+            double x2 = xs[k + 1] - centerX;
+            double y2 = ys[k + 1] - centerY;
+            double step = Math.atan2(x1 * y2 - y1 * x2, x1 * x2 + y1 * y2);
+            if (clockwise)
+                step = -step;
+            if (step <= 0 || step > MAX_ARC_STEP)
+                return false;
+            sweep += step;
+            if (Math.abs(Math.hypot(x2, y2) - radius) > tolerance ||
+                    Math.abs(Math.hypot((x1 + x2) / 2, (y1 + y2) / 2) - radius) > tolerance)
+                return false;
+        }
+        if (sweep >= Math.PI * 2 || (xs[from] == xs[to] && ys[from] == ys[to]))
+            return false;
+
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.radius = radius;
+        this.clockwise = clockwise;
+        return true;
+    }
+
+    /**
+     * Arc replacing a run of linear tool paths. It is still milled at linear feed, unlike the arcs of the original
+     * tool paths.
+     */
+    public static class FittedArc extends CircularToolpath
+    {
+        public FittedArc(int toolDiameter, Point from, Point to, Point center, int radius, boolean clockwise)
+        {
+            super(toolDiameter, from, to, center, radius, clockwise);
+        }
+    }
+}
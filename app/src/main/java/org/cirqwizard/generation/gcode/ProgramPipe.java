@@ -0,0 +1,193 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation.gcode;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of program lines between the thread generating a program and the one sending it to the controller.
+ * Generator blocks once the consumer falls behind by the capacity of the pipe, so that the program never needs
+ * to be held in memory as a whole and sending starts as soon as the first lines are generated.
+ */
+public class ProgramPipe implements LineSink, Iterator<String>
+{
+    private final static int DEFAULT_CAPACITY = 1024;
+    // Interval in which a blocked generator checks whether the pipe is still consumed
+    private final static long CANCELLATION_CHECK_INTERVAL = 100;
+
+    private final static Line END = new Line(null, 1);
+
+    private LinkedBlockingQueue<Line> lines;
+    private volatile double progress;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+
+    // Consumer side
+    private Line next;
+    private double consumedProgress;
+
+    public ProgramPipe()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ProgramPipe(int capacity)
+    {
+        lines = new LinkedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Creates closed pipe holding the whole program
+     */
+    public static ProgramPipe of(String program)
+    {
+        String[] programLines = program.split("\r?\n", -1);
+        int count = programLines.length;
+        // Text ending with a line terminator has no empty line after it
+        if (count > 0 && programLines[count - 1].isEmpty())
+            count--;
+        ProgramPipe pipe = new ProgramPipe(Math.max(1, count + 1));
+        for (int i = 0; i < count; i++)
+        {
+            pipe.setProgress((double) i / count);
+            pipe.accept(programLines[i]);
+        }
+        pipe.close();
+        return pipe;
+    }
+
+    @Override
+    public void setProgress(double progress)
+    {
+        this.progress = progress;
+    }
+
+    /**
+     * Adds a line, blocks while the pipe is full
+     * @throws CancellationException if the consumer has stopped reading
+     */
+    @Override
+    public void accept(String line)
+    {
+        put(new Line(line, progress));
+    }
+
+    /**
+     * Marks the end of the program
+     */
+    public void close()
+    {
+        put(END);
+    }
+
+    /**
+     * Ends the program with an error passed to the consumer
+     */
+    public void fail(Throwable failure)
+    {
+        this.failure = failure;
+        try
+        {
+            put(END);
+        }
+        catch (CancellationException e)
+        {
+            // Nobody is going to read it anyway
+        }
+    }
+
+    /**
+     * Called by the consumer once it stops reading, releases blocked generator
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        lines.clear();
+    }
+
+    /**
+     * Waits for the next line to be generated
+     * @throws CancellationException if the waiting thread is interrupted
+     * @throws IllegalStateException if generation has failed
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (next == null)
+        {
+            try
+            {
+                next = lines.take();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the program");
+            }
+        }
+        if (next == END && failure != null)
+            throw new IllegalStateException("Program generation failed", failure);
+        return next != END;
+    }
+
+    @Override
+    public String next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        String line = next.text;
+        consumedProgress = next.progress;
+        next = null;
+        return line;
+    }
+
+    /**
+     * Share of the program taken by the consumer
+     */
+    public double getProgress()
+    {
+        return consumedProgress;
+    }
+
+    private void put(Line line)
+    {
+        try
+        {
+            while (!cancelled && !lines.offer(line, CANCELLATION_CHECK_INTERVAL, TimeUnit.MILLISECONDS));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        }
+        if (cancelled)
+            throw new CancellationException("Program is no longer read");
+    }
+
+    private static class Line
+    {
+        private String text;
+        private double progress;
+
+        private Line(String text, double progress)
+        {
+            this.text = text;
+            this.progress = progress;
+        }
+    }
+}
@@ -27,26 +27,42 @@ import org.cirqwizard.generation.toolpath.CircularToolpath;
 import org.cirqwizard.generation.toolpath.CuttingToolpath;
 import org.cirqwizard.generation.toolpath.LinearToolpath;
 import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.logging.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 
 
 public class TraceGCodeGenerator extends GCodeGenerator
 {
-    private Context context;
     private List<? extends Toolpath> toolpaths;
     private boolean mirror;
+    private int simplificationTolerance;
 
     public TraceGCodeGenerator(Context context, List<? extends Toolpath> toolpaths, boolean mirror)
     {
         super(context, mirror);
-        this.context = context;
         this.toolpaths = toolpaths;
         this.mirror = mirror;
+        simplificationTolerance = SettingsFactory.getApplicationSettings().getPathSimplificationTolerance().getValue();
     }
 
     public String generate(Postprocessor postprocessor, int xyFeed, int zFeed, int arcFeed, int clearance, int safetyHeight,
                            int millingDepth, int spindleSpeed)
+    {
+        StringBuilder program = new StringBuilder();
+        generate(postprocessor, xyFeed, zFeed, arcFeed, clearance, safetyHeight, millingDepth, spindleSpeed,
+                line -> program.append(line).append('\n'));
+        return program.toString();
+    }
+
+    /**
+     * Passes the program to the sink one tool path at a time. Continuous runs are simplified as they are reached,
+     * each one is passed to the sink once the tool leaves it.
+     */
+    public void generate(Postprocessor postprocessor, int xyFeed, int zFeed, int arcFeed, int clearance, int safetyHeight,
+                         int millingDepth, int spindleSpeed, LineSink sink)
     {
         StringBuilder str = new StringBuilder();
         postprocessor.header(str);
@@ -63,50 +79,79 @@ public class TraceGCodeGenerator extends GCodeGenerator
             }
         }
         if (firstToolpath == null)
-            return "";
+            return;
         Curve firstCurve = ((CuttingToolpath)firstToolpath).getCurve();
         postprocessor.selectMachineWS(str);
         postprocessor.rapid(str, null, null, 0);
-        postprocessor.rapid(str, g54X + getX(firstCurve.getFrom().getX()), context.getG54Y() + firstCurve.getFrom().getY(), null);
+        postprocessor.rapid(str, g54X + getX(firstCurve.getFrom().getX()), getG54Y() + firstCurve.getFrom().getY(), null);
 
-        postprocessor.setupG54(str, g54X, context.getG54Y(), context.getG54Z());
+        postprocessor.setupG54(str, g54X, getG54Y(), getG54Z());
         postprocessor.selectWCS(str);
 
         postprocessor.rapid(str, null, null, clearance);
 
         postprocessor.spindleOn(str, spindleSpeed);
+        PathSimplifier simplifier = createSimplifier();
+        List<Toolpath> moves = new ArrayList<>();
         Point prevLocation = null;
-        for (Toolpath toolpath : toolpaths)
+        for (int i = 0; i <= toolpaths.size(); i++)
         {
-            if (!toolpath.isEnabled())
-                continue;
-            Curve curve = ((CuttingToolpath)toolpath).getCurve();
-            if (prevLocation == null ||
-                    Math.abs(prevLocation.getX() - curve.getFrom().getX()) > ApplicationConstants.ROUNDING ||
-                    Math.abs(prevLocation.getY() - curve.getFrom().getY()) > ApplicationConstants.ROUNDING)
+            sink.flush(str);
+            if (i < toolpaths.size())
             {
-                postprocessor.rapid(str, null, null, clearance);
-                postprocessor.rapid(str, getX(curve.getFrom().getX()), curve.getFrom().getY(), clearance);
-                postprocessor.rapid(str, getX(curve.getFrom().getX()), curve.getFrom().getY(), safetyHeight);
-                postprocessor.linearInterpolation(str, getX(curve.getFrom().getX()), curve.getFrom().getY(),
-                        millingDepth, zFeed);
+                sink.setProgress((double) i / toolpaths.size());
+                Toolpath toolpath = toolpaths.get(i);
+                if (simplifier != null)
+                    simplifier.add(toolpath, moves);
+                else if (toolpath.isEnabled())
+                    moves.add(toolpath);
             }
-            if (toolpath instanceof LinearToolpath)
-                postprocessor.linearInterpolation(str, getX(curve.getTo().getX()), curve.getTo().getY(), millingDepth, xyFeed);
-            else if (toolpath instanceof CircularToolpath)
+            else if (simplifier != null)
+                simplifier.flush(moves);
+
+            for (Toolpath toolpath : moves)
             {
-                Arc arc = (Arc)curve;
-                postprocessor.circularInterpolation(str, mirror ? !arc.isClockwise() : arc.isClockwise(),
-                        getX(arc.getTo().getX()), arc.getTo().getY(), millingDepth, getX(arc.getCenter().getX() - arc.getFrom().getX()),
-                        arc.getCenter().getY() - arc.getFrom().getY(), arcFeed);
+                Curve curve = ((CuttingToolpath)toolpath).getCurve();
+                if (prevLocation == null ||
+                        Math.abs(prevLocation.getX() - curve.getFrom().getX()) > ApplicationConstants.ROUNDING ||
+                        Math.abs(prevLocation.getY() - curve.getFrom().getY()) > ApplicationConstants.ROUNDING)
+                {
+                    postprocessor.rapid(str, null, null, clearance);
+                    postprocessor.rapid(str, getX(curve.getFrom().getX()), curve.getFrom().getY(), clearance);
+                    postprocessor.rapid(str, getX(curve.getFrom().getX()), curve.getFrom().getY(), safetyHeight);
+                    postprocessor.linearInterpolation(str, getX(curve.getFrom().getX()), curve.getFrom().getY(),
+                            millingDepth, zFeed);
+                }
+                if (toolpath instanceof LinearToolpath)
+                    postprocessor.linearInterpolation(str, getX(curve.getTo().getX()), curve.getTo().getY(), millingDepth, xyFeed);
+                else if (toolpath instanceof CircularToolpath)
+                {
+                    Arc arc = (Arc)curve;
+                    postprocessor.circularInterpolation(str, mirror ? !arc.isClockwise() : arc.isClockwise(),
+                            getX(arc.getTo().getX()), arc.getTo().getY(), millingDepth, getX(arc.getCenter().getX() - arc.getFrom().getX()),
+                            arc.getCenter().getY() - arc.getFrom().getY(),
+                            toolpath instanceof PathSimplifier.FittedArc ? xyFeed : arcFeed);
+                }
+                prevLocation = curve.getTo();
             }
-            prevLocation = curve.getTo();
+            moves.clear();
         }
+        if (simplifier != null)
+            LoggerFactory.getApplicationLogger().log(Level.INFO, "Path simplification: " + simplifier.getInputCount() +
+                    " tool paths replaced with " + simplifier.getOutputCount() + ", " +
+                    (simplifier.getInputCount() - simplifier.getOutputCount()) + " fewer moves");
         postprocessor.selectMachineWS(str);
         postprocessor.rapid(str, null, null, 0);
         postprocessor.spindleOff(str);
         postprocessor.footer(str);
+        sink.flush(str);
+    }
 
-        return str.toString();
+    /**
+     * @return null if path simplification is turned off
+     */
+    private PathSimplifier createSimplifier()
+    {
+        return simplificationTolerance > 0 ? new PathSimplifier(simplificationTolerance) : null;
     }
 }
@@ -14,10 +14,15 @@ This program is free software: you can redistribute it and/or modify
 
 package org.cirqwizard.generation.optimizer;
 
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Curve;
 import org.cirqwizard.geom.Point;
+import org.cirqwizard.generation.toolpath.CircularToolpath;
 import org.cirqwizard.generation.toolpath.CuttingToolpath;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
 import org.cirqwizard.generation.toolpath.Toolpath;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class Chain
@@ -43,4 +48,28 @@ public class Chain
     {
         return ((CuttingToolpath)segments.get(segments.size() - 1)).getCurve().getTo();
     }
+
+    /**
+     * Chain which runs the same segments in opposite direction
+     */
+    public Chain reverse()
+    {
+        List<Toolpath> reversed = new ArrayList<>(segments.size());
+        for (int i = segments.size() - 1; i >= 0; i--)
+        {
+            CuttingToolpath t = (CuttingToolpath) segments.get(i);
+            Curve curve = t.getCurve();
+            Toolpath r;
+            if (curve instanceof Arc)
+            {
+                Arc arc = (Arc) curve;
+                r = new CircularToolpath(t.getToolDiameter(), arc.getTo(), arc.getFrom(), arc.getCenter(), arc.getRadius(), !arc.isClockwise());
+            }
+            else
+                r = new LinearToolpath(t.getToolDiameter(), curve.getTo(), curve.getFrom());
+            r.setEnabled(t.isEnabled());
+            reversed.add(r);
+        }
+        return new Chain(reversed);
+    }
 }
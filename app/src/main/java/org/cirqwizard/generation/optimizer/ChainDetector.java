@@ -19,21 +19,35 @@ import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import org.cirqwizard.geom.Arc;
 import org.cirqwizard.geom.Point;
+import org.cirqwizard.generation.ProcessingPool;
 import org.cirqwizard.generation.toolpath.CircularToolpath;
 import org.cirqwizard.generation.toolpath.CuttingToolpath;
 import org.cirqwizard.generation.toolpath.LinearToolpath;
 import org.cirqwizard.generation.toolpath.Toolpath;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Joins tool paths sharing end points into chains. End points are rounded to a grid and numbered in the order
+ * of their coordinates, tool paths incident to a vertex are kept in flat adjacency arrays indexed by vertex number.
+ * Chains are traced starting from the vertex with the lowest coordinates which still has unused tool paths.
+ */
 public class ChainDetector
 {
     private static final int ROUNDING_FACTOR = 30;
+    // Smallest number of tool paths worth tracing as a separate region
+    private static final int MIN_REGION_SIZE = 50_000;
 
     private List<Toolpath> toolpaths;
 
-    private ArrayList<Point> vertices = new ArrayList<>();
-    private HashMap<Point, ArrayList<Toolpath>> map = new HashMap<>();
+    // Rounded vertex coordinates packed into sortable keys, in ascending order
+    private long[] vertexKeys;
+    // Vertex numbers of tool path ends
+    private int[] fromVertices;
+    private int[] toVertices;
+
     private DoubleProperty progressProperty = new SimpleDoubleProperty();
     private StringProperty estimatedMachiningTimeProperty = new SimpleStringProperty();
 
@@ -45,21 +59,61 @@ public class ChainDetector
 
     public List<Chain> detect()
     {
+        int[] edges = new int[toolpaths.size()];
+        for (int i = 0; i < edges.length; i++)
+            edges[i] = i;
         List<Chain> result = new ArrayList<>();
-        while (!vertices.isEmpty())
+        for (Trace trace : traceRegion(edges, 0, vertexKeys.length))
+            result.add(new Chain(trace.segments));
+        return result;
+    }
+
+    /**
+     * Splits the board into vertical strips traced in parallel, chains crossing strip boundaries are stitched
+     * afterwards. Resulting chains cover the same tool paths as {@link #detect()} does but may be split differently.
+     * Boards too small to be worth splitting are traced with {@link #detect()}.
+     */
+    public List<Chain> detectInRegions()
+    {
+        ProcessingPool pool = ProcessingPool.getInstance();
+        return detect(Math.min(pool.getParallelism(), toolpaths.size() / MIN_REGION_SIZE));
+    }
+
+    public List<Chain> detect(int regions)
+    {
+        if (regions <= 1 || vertexKeys.length < regions)
+            return detect();
+
+        // Tool path belongs to the strip of its vertex with the lowest number
+        int[] regionSizes = new int[regions];
+        int[] edgeRegions = new int[toolpaths.size()];
+        for (int i = 0; i < edgeRegions.length; i++)
         {
-            Point p = vertices.get(0);
-            if (map.get(p).isEmpty())
-            {
-                vertices.remove(0);
-                continue;
-            }
-            ArrayList<Toolpath> chainSegments = new ArrayList<>();
-            traverse(chainSegments, p, (CuttingToolpath) map.get(p).get(0));
-            result.add(new Chain(chainSegments));
+            edgeRegions[i] = getRegion(Math.min(fromVertices[i], toVertices[i]), regions);
+            regionSizes[edgeRegions[i]]++;
         }
+        int[][] regionEdges = new int[regions][];
+        for (int r = 0; r < regions; r++)
+            regionEdges[r] = new int[regionSizes[r]];
+        Arrays.fill(regionSizes, 0);
+        for (int i = 0; i < edgeRegions.length; i++)
+            regionEdges[edgeRegions[i]][regionSizes[edgeRegions[i]]++] = i;
 
-        return result;
+        @SuppressWarnings("unchecked")
+        List<Trace>[] regionTraces = (List<Trace>[]) new List<?>[regions];
+        ProcessingPool.getInstance().forEach(regions, 1, r ->
+        {
+            int firstVertex = (int) ((long) vertexKeys.length * r / regions);
+            int lastVertex = firstVertex;
+            for (int edge : regionEdges[r])
+                lastVertex = Math.max(lastVertex, Math.max(fromVertices[edge], toVertices[edge]));
+            regionTraces[r] = traceRegion(regionEdges[r], firstVertex, lastVertex - firstVertex + 1);
+        });
+
+        List<Trace> traces = new ArrayList<>();
+        for (List<Trace> t : regionTraces)
+            traces.addAll(t);
+        return stitch(traces);
     }
 
     public DoubleProperty progressProperty()
@@ -72,72 +126,205 @@ public class ChainDetector
         return estimatedMachiningTimeProperty;
     }
 
-    private void traverse(ArrayList<Toolpath> result, Point point, CuttingToolpath edge)
+    private int getRegion(int vertex, int regions)
     {
-        if (edge.getCurve().getFrom().equals(point, ROUNDING_FACTOR))
-            result.add(edge);
-        else
+        return (int) ((long) vertex * regions / vertexKeys.length);
+    }
+
+    /**
+     * Traces chains over given tool paths, all their vertices are expected to lie within the range of vertex numbers
+     */
+    private List<Trace> traceRegion(int[] edges, int firstVertex, int vertexCount)
+    {
+        // Adjacency arrays: tool paths incident to vertex v are stored from offsets[v] to offsets[v + 1],
+        // in the order of the tool path list. A tool path starting and ending at the same vertex is stored there twice
+        int[] offsets = new int[vertexCount + 1];
+        for (int edge : edges)
+        {
+            offsets[fromVertices[edge] - firstVertex + 1]++;
+            offsets[toVertices[edge] - firstVertex + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++)
+            offsets[v + 1] += offsets[v];
+        int[] adjacency = new int[edges.length * 2];
+        int[] cursors = Arrays.copyOf(offsets, vertexCount);
+        for (int edge : edges)
+        {
+            adjacency[cursors[fromVertices[edge] - firstVertex]++] = edge;
+            adjacency[cursors[toVertices[edge] - firstVertex]++] = edge;
+        }
+
+        // Cursor of a vertex points to its first tool path which might still be unused
+        System.arraycopy(offsets, 0, cursors, 0, vertexCount);
+        boolean[] used = new boolean[toolpaths.size()];
+        List<Trace> result = new ArrayList<>();
+        for (int v = 0; v < vertexCount; v++)
         {
-            if (edge instanceof LinearToolpath)
-                result.add(new LinearToolpath(edge.getToolDiameter(), edge.getCurve().getTo(), edge.getCurve().getFrom()));
-            else if (edge instanceof CircularToolpath)
+            while (true)
             {
-                Arc arc = (Arc) edge.getCurve();
-                result.add(new CircularToolpath(edge.getToolDiameter(), arc.getTo(), arc.getFrom(),
-                        arc.getCenter(), arc.getRadius(), !arc.isClockwise()));
+                int edge = nextEdge(v, offsets, cursors, adjacency, used);
+                if (edge < 0)
+                    break;
+                Trace trace = new Trace();
+                trace.start = v + firstVertex;
+                int vertex = v;
+                while (edge >= 0)
+                {
+                    used[edge] = true;
+                    trace.segments.add(orient(edge, vertex + firstVertex));
+                    vertex = (fromVertices[edge] == vertex + firstVertex ? toVertices[edge] : fromVertices[edge]) - firstVertex;
+                    edge = nextEdge(vertex, offsets, cursors, adjacency, used);
+                }
+                trace.end = vertex + firstVertex;
+                result.add(trace);
             }
         }
-        Point p = edge.getCurve().getFrom().round(ROUNDING_FACTOR);
-        if (p.equals(point, ROUNDING_FACTOR))
-            p = edge.getCurve().getTo().round(ROUNDING_FACTOR);
-        map.get(point).remove(edge);
+        return result;
+    }
+
+    private static int nextEdge(int vertex, int[] offsets, int[] cursors, int[] adjacency, boolean[] used)
+    {
+        int end = offsets[vertex + 1];
+        while (cursors[vertex] < end && used[adjacency[cursors[vertex]]])
+            cursors[vertex]++;
+        return cursors[vertex] < end ? adjacency[cursors[vertex]] : -1;
+    }
 
-        if (map.get(p) != null)
+    /**
+     * Returns tool path itself if it starts at the vertex, its reversed copy otherwise
+     */
+    private Toolpath orient(int edge, int vertex)
+    {
+        CuttingToolpath toolpath = (CuttingToolpath) toolpaths.get(edge);
+        long key = vertexKeys[vertex];
+        Point point = new Point(getX(key), getY(key));
+        if (toolpath.getCurve().getFrom().equals(point, ROUNDING_FACTOR))
+            return toolpath;
+        if (toolpath instanceof CircularToolpath)
         {
-            map.get(p).remove(edge);
-            if (!map.get(p).isEmpty())
-                traverse(result, p, (CuttingToolpath) map.get(p).get(0));
+            Arc arc = (Arc) toolpath.getCurve();
+            return new CircularToolpath(toolpath.getToolDiameter(), arc.getTo(), arc.getFrom(),
+                    arc.getCenter(), arc.getRadius(), !arc.isClockwise());
         }
+        return new LinearToolpath(toolpath.getToolDiameter(), toolpath.getCurve().getTo(), toolpath.getCurve().getFrom());
     }
 
-    private void generateMap()
+    /**
+     * Joins traces meeting at a common vertex. Every trace is extended forwards from its end and then backwards
+     * from its start, traces running in opposite direction are reversed.
+     */
+    private List<Chain> stitch(List<Trace> traces)
     {
-        for (Toolpath t : toolpaths)
+        int[] offsets = new int[vertexKeys.length + 1];
+        for (Trace t : traces)
         {
-            Point from = ((CuttingToolpath)t).getCurve().getFrom().round(ROUNDING_FACTOR);
-            Point to = ((CuttingToolpath)t).getCurve().getTo().round(ROUNDING_FACTOR);
+            offsets[t.start + 1]++;
+            offsets[t.end + 1]++;
+        }
+        for (int v = 0; v < vertexKeys.length; v++)
+            offsets[v + 1] += offsets[v];
+        int[] adjacency = new int[traces.size() * 2];
+        int[] cursors = Arrays.copyOf(offsets, vertexKeys.length);
+        for (int i = 0; i < traces.size(); i++)
+        {
+            adjacency[cursors[traces.get(i).start]++] = i;
+            adjacency[cursors[traces.get(i).end]++] = i;
+        }
+        System.arraycopy(offsets, 0, cursors, 0, vertexKeys.length);
+
+        boolean[] used = new boolean[traces.size()];
+        List<Chain> result = new ArrayList<>();
+        for (int i = 0; i < traces.size(); i++)
+        {
+            if (used[i])
+                continue;
+            used[i] = true;
+            Trace first = traces.get(i);
 
-            ArrayList<Toolpath> list = map.get(from);
-            if (list == null)
+            List<List<Toolpath>> before = new ArrayList<>();
+            List<List<Toolpath>> after = new ArrayList<>();
+            int vertex = first.end;
+            int next;
+            while ((next = nextEdge(vertex, offsets, cursors, adjacency, used)) >= 0)
             {
-                vertices.add(from);
-                list = new ArrayList<>();
-                map.put(from, list);
+                used[next] = true;
+                Trace t = traces.get(next);
+                after.add(t.start == vertex ? t.segments : new Chain(t.segments).reverse().getSegments());
+                vertex = t.start == vertex ? t.end : t.start;
             }
-            list.add(t);
-
-            list = map.get(to);
-            if (list == null)
+            vertex = first.start;
+            while ((next = nextEdge(vertex, offsets, cursors, adjacency, used)) >= 0)
             {
-                vertices.add(to);
-                list = new ArrayList<>();
-                map.put(to, list);
+                used[next] = true;
+                Trace t = traces.get(next);
+                before.add(t.end == vertex ? t.segments : new Chain(t.segments).reverse().getSegments());
+                vertex = t.end == vertex ? t.start : t.end;
             }
-            list.add(t);
+
+            List<Toolpath> segments = new ArrayList<>();
+            for (int j = before.size() - 1; j >= 0; j--)
+                segments.addAll(before.get(j));
+            segments.addAll(first.segments);
+            for (List<Toolpath> s : after)
+                segments.addAll(s);
+            result.add(new Chain(segments));
         }
-        Collections.sort(vertices, new Comparator<Point>()
+        return result;
+    }
+
+    private void generateMap()
+    {
+        int count = toolpaths.size();
+        long[] fromKeys = new long[count];
+        long[] toKeys = new long[count];
+        ProcessingPool pool = ProcessingPool.getInstance();
+        pool.forEach(count, i ->
         {
-            @Override
-            public int compare(Point o1, Point o2)
-            {
-                if (o1.getX() < o2.getX())
-                    return -1;
-                if (o1.getX() > o2.getX())
-                    return 1;
-                if (o1.getY() < o2.getY())
-                    return -1;
-                return o1.getY() == o2.getY() ? 0 : 1;
-            }
+            CuttingToolpath t = (CuttingToolpath) toolpaths.get(i);
+            fromKeys[i] = getKey(t.getCurve().getFrom().round(ROUNDING_FACTOR));
+            toKeys[i] = getKey(t.getCurve().getTo().round(ROUNDING_FACTOR));
         });
+
+        long[] keys = Arrays.copyOf(fromKeys, count * 2);
+        System.arraycopy(toKeys, 0, keys, count, count);
+        Arrays.sort(keys);
+        int unique = 0;
+        for (int i = 0; i < keys.length; i++)
+            if (i == 0 || keys[i] != keys[i - 1])
+                keys[unique++] = keys[i];
+        vertexKeys = Arrays.copyOf(keys, unique);
+
+        fromVertices = new int[count];
+        toVertices = new int[count];
+        pool.forEach(count, i ->
+        {
+            fromVertices[i] = Arrays.binarySearch(vertexKeys, fromKeys[i]);
+            toVertices[i] = Arrays.binarySearch(vertexKeys, toKeys[i]);
+        });
+    }
+
+    /**
+     * Packs point coordinates into a key which sorts by X and then by Y
+     */
+    private static long getKey(Point point)
+    {
+        return ((long) point.getX() << 32) | ((point.getY() ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    private static int getX(long key)
+    {
+        return (int) (key >> 32);
+    }
+
+    private static int getY(long key)
+    {
+        return (int) key ^ Integer.MIN_VALUE;
+    }
+
+    private static class Trace
+    {
+        private ArrayList<Toolpath> segments = new ArrayList<>();
+        private int start;
+        private int end;
     }
 }
@@ -14,15 +14,27 @@ This program is free software: you can redistribute it and/or modify
 
 package org.cirqwizard.generation.optimizer;
 
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.settings.ApplicationConstants;
+
 import java.util.List;
 
+/**
+ * Chains being ordered along with their end points unpacked into flat arrays, which is what fitness evaluation needs
+ */
 public class Environment
 {
+    private final static double MOTION_PENALTY = 2000;
+
     private List<Chain> chains;
+    private int[] startX;
+    private int[] startY;
+    private int[] endX;
+    private int[] endY;
 
     public Environment(List<Chain> chains)
     {
-        this.chains = chains;
+        setChains(chains);
     }
 
     public List<Chain> getChains()
@@ -33,5 +45,50 @@ public class Environment
     public void setChains(List<Chain> chains)
     {
         this.chains = chains;
+        startX = new int[chains.size()];
+        startY = new int[chains.size()];
+        endX = new int[chains.size()];
+        endY = new int[chains.size()];
+        for (int i = 0; i < chains.size(); i++)
+        {
+            Point start = chains.get(i).getStart();
+            Point end = chains.get(i).getEnd();
+            startX[i] = start.getX();
+            startY[i] = start.getY();
+            endX[i] = end.getX();
+            endY[i] = end.getY();
+        }
+    }
+
+    public int[] getStartX()
+    {
+        return startX;
+    }
+
+    public int[] getStartY()
+    {
+        return startY;
+    }
+
+    public int[] getEndX()
+    {
+        return endX;
+    }
+
+    public int[] getEndY()
+    {
+        return endY;
+    }
+
+    /**
+     * Cost of moving from the end of one chain to the start of another
+     * @param from chain to move from or -1 for the origin
+     */
+    public double getTransitionCost(int from, int to)
+    {
+        double dx = (from < 0 ? 0 : endX[from]) - startX[to];
+        double dy = (from < 0 ? 0 : endY[from]) - startY[to];
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        return distance > ApplicationConstants.ROUNDING ? distance + MOTION_PENALTY : 0;
     }
 }
@@ -16,6 +16,7 @@ package org.cirqwizard.generation.optimizer;
 
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Generation
 {
@@ -58,7 +59,7 @@ public class Generation
     public Phenotype tournamentWinner(Environment environment, int tournamentSize)
     {
         Phenotype winner = null;
-        Random random = new Random();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         for (int i = 0; i < tournamentSize; i++)
         {
             Phenotype p = population.get(random.nextInt(population.size()));
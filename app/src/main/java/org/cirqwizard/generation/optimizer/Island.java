@@ -0,0 +1,105 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation.optimizer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Population of a single island of {@link IslandOptimizer}. Not thread safe, every island is evolved by a single thread.
+ */
+public class Island
+{
+    private final static int POPULATION_SIZE = 100;
+    private final static int TOURNAMENT_SIZE = 7;
+    private final static double MUTATION_PROBABILITY = 0.025;
+
+    private Environment environment;
+    private MigrationRing ring;
+    private int index;
+    // Populations are reused in turns, so breeding does not allocate genes
+    private Phenotype[] current = new Phenotype[POPULATION_SIZE];
+    private Phenotype[] next = new Phenotype[POPULATION_SIZE];
+    private boolean[] copied;
+
+    /**
+     * Creates random population along with the initial order of chains, which is kept until a fitter phenotype appears.
+     * Thus the result of evolution is never worse than the initial order.
+     */
+    public Island(Environment environment, MigrationRing ring, int index)
+    {
+        this.environment = environment;
+        this.ring = ring;
+        this.index = index;
+        int genomeSize = environment.getChains().size();
+        copied = new boolean[genomeSize];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < POPULATION_SIZE; i++)
+        {
+            int[] genes = new int[genomeSize];
+            for (int j = 0; j < genomeSize; j++)
+            {
+                int k = i == 0 ? j : random.nextInt(j + 1);
+                genes[j] = genes[k];
+                genes[k] = j;
+            }
+            current[i] = new Phenotype(genes);
+            next[i] = new Phenotype(new int[genomeSize]);
+        }
+    }
+
+    public void breed()
+    {
+        // The fittest phenotype survives unchanged
+        next[0].copyFrom(getMostFit());
+        for (int i = 1; i < POPULATION_SIZE; i++)
+        {
+            Phenotype parent1 = tournamentWinner();
+            Phenotype parent2 = tournamentWinner();
+            parent1.crossOver(parent2, next[i], copied);
+            next[i].calculateFitness(environment);
+            if (ThreadLocalRandom.current().nextDouble() < MUTATION_PROBABILITY)
+                next[i].mutate(environment);
+        }
+        Phenotype[] t = current;
+        current = next;
+        next = t;
+    }
+
+    public void migrate()
+    {
+        ring.migrate(index, current, environment);
+    }
+
+    public Phenotype getMostFit()
+    {
+        Phenotype mostFit = current[0];
+        for (Phenotype p : current)
+            if (p.calculateFitness(environment) < mostFit.calculateFitness(environment))
+                mostFit = p;
+        return mostFit;
+    }
+
+    private Phenotype tournamentWinner()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Phenotype winner = null;
+        for (int i = 0; i < TOURNAMENT_SIZE; i++)
+        {
+            Phenotype p = current[random.nextInt(POPULATION_SIZE)];
+            if (winner == null || p.calculateFitness(environment) < winner.calculateFitness(environment))
+                winner = p;
+        }
+        return winner;
+    }
+}
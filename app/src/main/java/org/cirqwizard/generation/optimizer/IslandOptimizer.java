@@ -0,0 +1,194 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation.optimizer;
+
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import org.cirqwizard.generation.ProcessingPool;
+import org.cirqwizard.generation.toolpath.Toolpath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Genetic optimizer running an independent population per processing thread. Populations evolve without waiting
+ * for each other and periodically pass their best phenotypes to the next population in a ring.
+ * Islands run for the whole optimization, so they get threads of their own instead of occupying {@link ProcessingPool},
+ * which stays available to generators running meanwhile.
+ */
+public class IslandOptimizer implements ChainOptimizer
+{
+    private final static int MAX_GENERATIONS_COUNT = 10_000;
+    private final static int REEVALUATION_FREQUENCY = 200;
+    private final static double MIN_IMPROVEMENT = 0.2;
+    private final static int MIGRATION_INTERVAL = 50;
+    private final static int MIGRANTS_COUNT = 2;
+
+    private Environment environment;
+    private int islandsCount;
+    private Island[] islands;
+    private AtomicIntegerArray generations;
+
+    private double feed;
+    private double arcFeed;
+    private double zFeed;
+    private double clearance;
+    private double safetyHeight;
+    private int mergeTolerance;
+
+    private double bestDuration = Double.MAX_VALUE;
+    private DoubleProperty progressProperty = new SimpleDoubleProperty();
+    private DoubleProperty bestSolutionDuration = new SimpleDoubleProperty();
+    private BooleanProperty cancelledProperty;
+
+    public IslandOptimizer(List<Chain> chains, double feed, double zFeed, double arcFeed, double clearance, double safetyHeight, int mergeTolerance,
+                           BooleanProperty cancelledProperty)
+    {
+        this.environment = new Environment(chains);
+        this.islandsCount = ProcessingPool.getInstance().getParallelism();
+        this.feed = feed;
+        this.arcFeed = arcFeed;
+        this.zFeed = zFeed;
+        this.clearance = clearance;
+        this.safetyHeight = safetyHeight;
+        this.mergeTolerance = mergeTolerance;
+        this.cancelledProperty = cancelledProperty;
+    }
+
+    @Override
+    public List<Chain> optimize()
+    {
+        List<Chain> chains = environment.getChains();
+        if (chains.size() < 2)
+            return new ArrayList<>(chains);
+
+        islands = new Island[islandsCount];
+        generations = new AtomicIntegerArray(islands.length);
+        MigrationRing ring = new MigrationRing(islands.length, MIGRANTS_COUNT);
+        for (int i = 0; i < islands.length; i++)
+            islands[i] = new Island(environment, ring, i);
+
+        ExecutorService executor = Executors.newFixedThreadPool(islands.length);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < islands.length; i++)
+            {
+                int index = i;
+                futures.add(executor.submit(() -> evolve(index)));
+            }
+            for (Future<?> f : futures)
+                f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>(chains);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        Phenotype mostFit = null;
+        for (Island island : islands)
+        {
+            Phenotype p = island.getMostFit();
+            if (mostFit == null || p.calculateFitness(environment) < mostFit.calculateFitness(environment))
+                mostFit = p;
+        }
+        ArrayList<Chain> result = new ArrayList<>();
+        for (int i : mostFit.getGenes())
+            result.add(chains.get(i));
+        return result;
+    }
+
+    @Override
+    public DoubleProperty progressProperty()
+    {
+        return progressProperty;
+    }
+
+    @Override
+    public double getBestSolutionDuration()
+    {
+        return bestSolutionDuration.get();
+    }
+
+    @Override
+    public DoubleProperty bestSolutionDurationProperty()
+    {
+        return bestSolutionDuration;
+    }
+
+    private void evolve(int index)
+    {
+        Island island = islands[index];
+        double lastEvaluation = Double.MAX_VALUE;
+        for (int i = 0; i < MAX_GENERATIONS_COUNT && !cancelledProperty.get() && !Thread.currentThread().isInterrupted(); i++)
+        {
+            island.breed();
+            if (i % MIGRATION_INTERVAL == 0)
+                island.migrate();
+            if (i % REEVALUATION_FREQUENCY == 0)
+            {
+                updateProgress(index, i);
+                double duration = estimateDuration(island.getMostFit());
+                updateBestDuration(duration);
+                if (Math.abs(lastEvaluation - duration) < MIN_IMPROVEMENT)
+                    break;
+                lastEvaluation = duration;
+            }
+        }
+        updateProgress(index, MAX_GENERATIONS_COUNT);
+    }
+
+    private synchronized void updateProgress(int island, int generation)
+    {
+        generations.set(island, generation);
+        long total = 0;
+        for (int i = 0; i < generations.length(); i++)
+            total += generations.get(i);
+        double progress = (double) total / ((long) MAX_GENERATIONS_COUNT * generations.length());
+        Platform.runLater(() -> progressProperty.setValue(progress));
+    }
+
+    private synchronized void updateBestDuration(double duration)
+    {
+        if (duration >= bestDuration)
+            return;
+        bestDuration = duration;
+        Platform.runLater(() -> bestSolutionDuration.setValue(duration));
+    }
+
+    private double estimateDuration(Phenotype phenotype)
+    {
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (int j : phenotype.getGenes())
+            toolpaths.addAll(environment.getChains().get(j).getSegments());
+        return TimeEstimator.calculateTotalDuration(toolpaths, feed, zFeed, arcFeed, clearance, safetyHeight, true, mergeTolerance);
+    }
+}
@@ -0,0 +1,282 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation.optimizer;
+
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders chains by nearest neighbour construction followed by 2-opt and Or-opt improvements.
+ * Transitions are evaluated with the rapid move model of {@link TimeEstimator}. Chains may optionally be run
+ * in reverse, which changes milling direction.
+ */
+public class LocalSearchOptimizer implements ChainOptimizer
+{
+    // Chains closest to ends of a chain which are considered as its new neighbours
+    private final static int CANDIDATES_COUNT = 8;
+    // Longest sequence of chains moved as a whole by Or-opt
+    private final static int MAX_SEGMENT_LENGTH = 3;
+    private final static double EPSILON = 1e-9;
+
+    private List<Chain> chains;
+    private double transitionDuration;
+    private int mergeTolerance;
+    private boolean reversalAllowed;
+    private long timeLimit;
+    private BooleanProperty cancelledProperty;
+
+    private double feed;
+    private double zFeed;
+    private double arcFeed;
+    private double clearance;
+    private double safetyHeight;
+
+    private Tour tour;
+    private int[][] candidates;
+
+    private DoubleProperty progressProperty = new SimpleDoubleProperty();
+    private DoubleProperty bestSolutionDuration = new SimpleDoubleProperty();
+
+    /**
+     * @param timeLimit time limit of the search in milliseconds
+     */
+    public LocalSearchOptimizer(List<Chain> chains, double feed, double zFeed, double arcFeed, double clearance, double safetyHeight,
+                                int mergeTolerance, boolean reversalAllowed, long timeLimit, BooleanProperty cancelledProperty)
+    {
+        this.chains = chains;
+        this.feed = feed;
+        this.zFeed = zFeed;
+        this.arcFeed = arcFeed;
+        this.clearance = clearance;
+        this.safetyHeight = safetyHeight;
+        this.mergeTolerance = mergeTolerance;
+        this.reversalAllowed = reversalAllowed;
+        this.timeLimit = timeLimit;
+        this.cancelledProperty = cancelledProperty;
+        this.transitionDuration = TimeEstimator.calculateTransitionDuration(zFeed, clearance, safetyHeight);
+    }
+
+    @Override
+    public List<Chain> optimize()
+    {
+        long deadline = System.currentTimeMillis() + timeLimit;
+        tour = new Tour(chains, transitionDuration, mergeTolerance);
+        buildInitialTour();
+        buildCandidates();
+
+        boolean improved = true;
+        while (improved && !cancelledProperty.get() && System.currentTimeMillis() < deadline)
+        {
+            improved = false;
+            for (int i = 0; i < tour.size() && !cancelledProperty.get(); i++)
+            {
+                if (reversalAllowed && improveByReversal(i))
+                    improved = true;
+                if (improveByMove(i))
+                    improved = true;
+                if ((i & 0xFF) == 0)
+                {
+                    if (System.currentTimeMillis() >= deadline)
+                        break;
+                    progressProperty.set(1 - (double) (deadline - System.currentTimeMillis()) / timeLimit);
+                }
+            }
+        }
+        progressProperty.set(1);
+
+        List<Chain> result = new ArrayList<>(tour.size());
+        for (int i = 0; i < tour.size(); i++)
+        {
+            int c = tour.getChain(i);
+            result.add(tour.isReversed(c) ? chains.get(c).reverse() : chains.get(c));
+        }
+
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (Chain c : result)
+            toolpaths.addAll(c.getSegments());
+        double duration = TimeEstimator.calculateTotalDuration(toolpaths, feed, zFeed, arcFeed, clearance, safetyHeight, true, mergeTolerance);
+        Platform.runLater(() -> bestSolutionDuration.setValue(duration));
+        return result;
+    }
+
+    @Override
+    public DoubleProperty progressProperty()
+    {
+        return progressProperty;
+    }
+
+    @Override
+    public double getBestSolutionDuration()
+    {
+        return bestSolutionDuration.get();
+    }
+
+    @Override
+    public DoubleProperty bestSolutionDurationProperty()
+    {
+        return bestSolutionDuration;
+    }
+
+    /**
+     * Point tree of chain starts and optionally ends. With ends included id of a point is chain index * 2
+     * for its start and chain index * 2 + 1 for its end, otherwise it is chain index.
+     */
+    private PointTree createTree(boolean includeEnds)
+    {
+        int n = chains.size();
+        int size = includeEnds ? n * 2 : n;
+        int[] x = new int[size];
+        int[] y = new int[size];
+        int[] ids = new int[size];
+        for (int i = 0; i < n; i++)
+        {
+            x[i] = chains.get(i).getStart().getX();
+            y[i] = chains.get(i).getStart().getY();
+            ids[i] = includeEnds ? i * 2 : i;
+            if (includeEnds)
+            {
+                x[n + i] = chains.get(i).getEnd().getX();
+                y[n + i] = chains.get(i).getEnd().getY();
+                ids[n + i] = i * 2 + 1;
+            }
+        }
+        return new PointTree(x, y, ids);
+    }
+
+    private void buildInitialTour()
+    {
+        PointTree tree = createTree(reversalAllowed);
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < tour.size(); i++)
+        {
+            int id = tree.nearest(x, y);
+            int chain = reversalAllowed ? id / 2 : id;
+            tree.remove(id);
+            if (reversalAllowed)
+                tree.remove(id ^ 1);
+            tour.set(i, chain, reversalAllowed && id % 2 == 1);
+            x = tour.getEndX(chain);
+            y = tour.getEndY(chain);
+        }
+    }
+
+    private void buildCandidates()
+    {
+        PointTree tree = createTree(true);
+        candidates = new int[chains.size()][];
+        for (int c = 0; c < chains.size(); c++)
+        {
+            Point start = chains.get(c).getStart();
+            Point end = chains.get(c).getEnd();
+            int[] nearStart = tree.nearest(start.getX(), start.getY(), CANDIDATES_COUNT, c, 2);
+            int[] nearEnd = tree.nearest(end.getX(), end.getY(), CANDIDATES_COUNT, c, 2);
+            int[] list = new int[nearStart.length + nearEnd.length];
+            int count = 0;
+            for (int id : nearStart)
+                count = addCandidate(list, count, id / 2);
+            for (int id : nearEnd)
+                count = addCandidate(list, count, id / 2);
+            candidates[c] = new int[count];
+            System.arraycopy(list, 0, candidates[c], 0, count);
+        }
+    }
+
+    private static int addCandidate(int[] list, int count, int chain)
+    {
+        for (int i = 0; i < count; i++)
+            if (list[i] == chain)
+                return count;
+        list[count] = chain;
+        return count + 1;
+    }
+
+    /**
+     * 2-opt: reverses a run of chains starting or ending at given position along with direction of each of them
+     */
+    private boolean improveByReversal(int position)
+    {
+        int chain = tour.getChain(position);
+        for (int candidate : candidates[chain])
+        {
+            int other = tour.getPosition(candidate);
+            if (other >= position && tryReversal(position, other))
+                return true;
+            if (other < position && tryReversal(other, position))
+                return true;
+        }
+        return tryReversal(position, position);
+    }
+
+    private boolean tryReversal(int from, int to)
+    {
+        if (tour.getReversalDelta(from, to) >= -EPSILON)
+            return false;
+        tour.reverse(from, to);
+        return true;
+    }
+
+    /**
+     * Or-opt: moves a run of up to three chains starting at given position next to a chain close to it
+     */
+    private boolean improveByMove(int position)
+    {
+        for (int length = 1; length <= MAX_SEGMENT_LENGTH && position + length <= tour.size(); length++)
+        {
+            int first = tour.getChain(position);
+            int last = tour.getChain(position + length - 1);
+            for (int candidate : candidates[first])
+                if (tryMove(position, length, tour.getPosition(candidate) + 1))
+                    return true;
+            for (int candidate : candidates[last])
+                if (tryMove(position, length, tour.getPosition(candidate)))
+                    return true;
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates moving chains from position to position + length - 1 in front of the chain at target position,
+     * as they are and reversed
+     */
+    private boolean tryMove(int position, int length, int target)
+    {
+        if (target >= position && target <= position + length)
+            return false;
+
+        double delta = tour.getMoveDelta(position, length, target, false);
+        boolean reverse = false;
+        if (reversalAllowed)
+        {
+            double reversedDelta = tour.getMoveDelta(position, length, target, true);
+            if (reversedDelta < delta)
+            {
+                delta = reversedDelta;
+                reverse = true;
+            }
+        }
+        if (delta >= -EPSILON)
+            return false;
+        tour.move(position, length, target, reverse);
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation.optimizer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring of islands passing their best phenotypes to the next island. Islands migrate without waiting for each other,
+ * an island receives whatever its predecessor published last.
+ */
+public class MigrationRing
+{
+    // Best phenotypes last published by each island
+    private AtomicReferenceArray<Phenotype[]> emigrants;
+    private int migrantsCount;
+
+    public MigrationRing(int islandsCount, int migrantsCount)
+    {
+        this.emigrants = new AtomicReferenceArray<>(islandsCount);
+        this.migrantsCount = migrantsCount;
+    }
+
+    public int size()
+    {
+        return emigrants.length();
+    }
+
+    /**
+     * Replaces the worst phenotypes of the population with better ones published by the previous island and publishes
+     * copies of the best phenotypes of the population for the next one
+     */
+    public void migrate(int island, Phenotype[] population, Environment environment)
+    {
+        if (emigrants.length() < 2)
+            return;
+
+        Phenotype[] immigrants = emigrants.get((island + emigrants.length() - 1) % emigrants.length());
+        if (immigrants != null)
+        {
+            for (Phenotype immigrant : immigrants)
+            {
+                Phenotype worst = population[0];
+                for (Phenotype p : population)
+                    if (p.calculateFitness(environment) > worst.calculateFitness(environment))
+                        worst = p;
+                if (immigrant.calculateFitness(environment) < worst.calculateFitness(environment))
+                    worst.copyFrom(immigrant);
+            }
+        }
+
+        Phenotype[] elite = new Phenotype[Math.min(migrantsCount, population.length)];
+        boolean[] taken = new boolean[population.length];
+        for (int i = 0; i < elite.length; i++)
+        {
+            int best = -1;
+            for (int j = 0; j < population.length; j++)
+                if (!taken[j] && (best < 0 || population[j].calculateFitness(environment) < population[best].calculateFitness(environment)))
+                    best = j;
+            taken[best] = true;
+            elite[i] = new Phenotype(population[best].getGenes().clone());
+            elite[i].calculateFitness(environment);
+        }
+        emigrants.set(island, elite);
+    }
+}
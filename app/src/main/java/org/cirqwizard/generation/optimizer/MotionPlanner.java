@@ -0,0 +1,340 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation.optimizer;
+
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.settings.ApplicationConstants;
+
+/**
+ * Simulates motion the way controller firmware plans it: moves are queued into a short look-ahead buffer, speed at
+ * junctions between moves is limited by junction deviation and axis limits, and every move follows a trapezoidal
+ * velocity profile between its entry and exit speeds. The buffer is assumed to end with a full stop, so moves leave
+ * it with conservative exit speeds, as they do on the machine.
+ * Distances are in millimeters, speeds in mm/s and durations in seconds. Nothing is allocated per move, so an instance
+ * can be reused for repeated estimations.
+ */
+public class MotionPlanner
+{
+    public enum Phase
+    {
+        RAPID, PLUNGE, LINEAR, ARC
+    }
+
+    // Power of two, so that ring buffer indices wrap around with a mask
+    private final static int BUFFER_SIZE = 16;
+    private final static int MASK = BUFFER_SIZE - 1;
+    private final static double EPSILON = 1e-9;
+
+    private final static double[] RAPIDS = {toSpeed(ApplicationConstants.getXRapids()),
+            toSpeed(ApplicationConstants.getYRapids()), toSpeed(ApplicationConstants.getZRapids())};
+    private final static double[] ACCELERATIONS = {toMillimeters(ApplicationConstants.getXRapidAcceleration()),
+            toMillimeters(ApplicationConstants.getYRapidAcceleration()), toMillimeters(ApplicationConstants.getZRapidAcceleration())};
+    private final static double FEED_ACCELERATION = toMillimeters(ApplicationConstants.getFeedAcceleration());
+    private final static double JUNCTION_DEVIATION = toMillimeters(ApplicationConstants.getJunctionDeviation());
+
+    // Ring buffer of planned moves
+    private double[] length = new double[BUFFER_SIZE];
+    private double[] nominalSpeed = new double[BUFFER_SIZE];
+    private double[] acceleration = new double[BUFFER_SIZE];
+    private double[] maxEntrySpeed = new double[BUFFER_SIZE];
+    private double[] entrySpeed = new double[BUFFER_SIZE];
+    private Phase[] phase = new Phase[BUFFER_SIZE];
+    private int first;
+    private int count;
+    // Number of queued moves whose entry speeds can no longer change
+    private int planned;
+
+    private double x;
+    private double y;
+    private double z;
+    // Direction and limits of the last queued move, zero vector if the machine is at rest
+    private double directionX;
+    private double directionY;
+    private double directionZ;
+    private double lastSpeed;
+    private double lastAcceleration;
+
+    private double totalDuration;
+    private double[] phaseDurations = new double[Phase.values().length];
+
+    private static double toMillimeters(int value)
+    {
+        return (double) value / ApplicationConstants.RESOLUTION;
+    }
+
+    private static double toSpeed(int feed)
+    {
+        return toMillimeters(feed) / 60;
+    }
+
+    /**
+     * Discards all the moves and durations and puts the tool at the given location at rest
+     */
+    public void reset(double x, double y, double z)
+    {
+        count = 0;
+        planned = 0;
+        totalDuration = 0;
+        for (int i = 0; i < phaseDurations.length; i++)
+            phaseDurations[i] = 0;
+        jumpTo(x, y, z);
+    }
+
+    /**
+     * Completes the moves queued so far and moves the tool to the given location without spending any time
+     */
+    public void jumpTo(double x, double y, double z)
+    {
+        flush();
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public void rapid(double x, double y, double z)
+    {
+        double dx = x - this.x;
+        double dy = y - this.y;
+        double dz = z - this.z;
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length < EPSILON)
+            return;
+        dx /= length;
+        dy /= length;
+        dz /= length;
+        queue(length, getAxisLimit(RAPIDS, dx, dy, dz), getAxisLimit(ACCELERATIONS, dx, dy, dz),
+                dx, dy, dz, dx, dy, dz, Phase.RAPID);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public void feed(double x, double y, double z, double speed)
+    {
+        double dx = x - this.x;
+        double dy = y - this.y;
+        double dz = z - this.z;
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length < EPSILON)
+            return;
+        dx /= length;
+        dy /= length;
+        dz /= length;
+        queue(length, Math.min(speed, getAxisLimit(RAPIDS, dx, dy, dz)),
+                Math.min(FEED_ACCELERATION, getAxisLimit(ACCELERATIONS, dx, dy, dz)),
+                dx, dy, dz, dx, dy, dz, dx == 0 && dy == 0 ? Phase.PLUNGE : Phase.LINEAR);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * Moves along circular arc in XY plane. Speed is additionally limited so that centripetal acceleration stays
+     * within acceleration limits.
+     */
+    public void arc(double x, double y, double centerX, double centerY, boolean clockwise, double speed)
+    {
+        double radius = Math.hypot(this.x - centerX, this.y - centerY);
+        if (radius < EPSILON)
+            return;
+        double angle = Arc.calculateAngularDistance(Math.atan2(this.y - centerY, this.x - centerX),
+                Math.atan2(y - centerY, x - centerX), clockwise);
+        double sign = clockwise ? -1 : 1;
+        double startX = -(this.y - centerY) / radius * sign;
+        double startY = (this.x - centerX) / radius * sign;
+        double endRadius = Math.hypot(x - centerX, y - centerY);
+        double endX = endRadius < EPSILON ? startX : -(y - centerY) / endRadius * sign;
+        double endY = endRadius < EPSILON ? startY : (x - centerX) / endRadius * sign;
+        double acceleration = Math.min(FEED_ACCELERATION, Math.min(ACCELERATIONS[0], ACCELERATIONS[1]));
+        double maxSpeed = Math.min(Math.min(RAPIDS[0], RAPIDS[1]), Math.sqrt(acceleration * radius));
+        queue(radius * angle, Math.min(speed, maxSpeed), acceleration, startX, startY, 0, endX, endY, 0, Phase.ARC);
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Brings the machine to a stop after the queued moves, accounting their durations
+     */
+    public void flush()
+    {
+        plan();
+        while (count > 0)
+            retire();
+        directionX = directionY = directionZ = 0;
+    }
+
+    /**
+     * Duration of all the moves accounted so far, queued moves are not included until flush()
+     */
+    public double getTotalDuration()
+    {
+        return totalDuration;
+    }
+
+    public double getDuration(Phase phase)
+    {
+        return phaseDurations[phase.ordinal()];
+    }
+
+    /**
+     * Duration of a single move which starts and ends at rest
+     */
+    public static double calculateMoveDuration(double length, double speed, double acceleration)
+    {
+        return calculateDuration(length, 0, speed, 0, acceleration);
+    }
+
+    /**
+     * Duration of a rapid move which starts and ends at rest, with speed and acceleration limited by all the axes
+     * involved
+     */
+    public static double calculateRapidDuration(double dx, double dy, double dz)
+    {
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length < EPSILON)
+            return 0;
+        dx /= length;
+        dy /= length;
+        dz /= length;
+        return calculateMoveDuration(length, getAxisLimit(RAPIDS, dx, dy, dz), getAxisLimit(ACCELERATIONS, dx, dy, dz));
+    }
+
+    /**
+     * Duration of a feed move which starts and ends at rest
+     */
+    public static double calculateFeedDuration(double dx, double dy, double dz, double speed)
+    {
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length < EPSILON)
+            return 0;
+        dx /= length;
+        dy /= length;
+        dz /= length;
+        return calculateMoveDuration(length, Math.min(speed, getAxisLimit(RAPIDS, dx, dy, dz)),
+                Math.min(FEED_ACCELERATION, getAxisLimit(ACCELERATIONS, dx, dy, dz)));
+    }
+
+    private static double getAxisLimit(double[] limits, double dx, double dy, double dz)
+    {
+        double limit = Double.MAX_VALUE;
+        if (dx != 0)
+            limit = Math.min(limit, limits[0] / Math.abs(dx));
+        if (dy != 0)
+            limit = Math.min(limit, limits[1] / Math.abs(dy));
+        if (dz != 0)
+            limit = Math.min(limit, limits[2] / Math.abs(dz));
+        return limit;
+    }
+
+    private void queue(double length, double speed, double acceleration, double startX, double startY, double startZ,
+                       double endX, double endY, double endZ, Phase phase)
+    {
+        if (count == BUFFER_SIZE)
+        {
+            plan();
+            retire();
+        }
+
+        double junctionSpeed = 0;
+        if (directionX != 0 || directionY != 0 || directionZ != 0)
+        {
+            junctionSpeed = Math.min(speed, lastSpeed);
+            double cosTheta = -(directionX * startX + directionY * startY + directionZ * startZ);
+            if (cosTheta > 1 - EPSILON)
+                junctionSpeed = 0;
+            else if (cosTheta > -1 + EPSILON)
+            {
+                double sinHalfTheta = Math.sqrt(0.5 * (1 - cosTheta));
+                double junctionAcceleration = Math.min(acceleration, lastAcceleration);
+                junctionSpeed = Math.min(junctionSpeed,
+                        Math.sqrt(junctionAcceleration * JUNCTION_DEVIATION * sinHalfTheta / (1 - sinHalfTheta)));
+            }
+        }
+
+        int i = (first + count) & MASK;
+        this.length[i] = length;
+        this.nominalSpeed[i] = speed;
+        this.acceleration[i] = acceleration;
+        this.maxEntrySpeed[i] = junctionSpeed;
+        this.entrySpeed[i] = junctionSpeed;
+        this.phase[i] = phase;
+        count++;
+
+        directionX = endX;
+        directionY = endY;
+        directionZ = endZ;
+        lastSpeed = speed;
+        lastAcceleration = acceleration;
+    }
+
+    /**
+     * Recalculates entry speeds of queued moves, so that every move can decelerate to the entry speed of the next one
+     * and the last one can stop. Entry speed of the first move is already executed and stays fixed.
+     * Moves are not revisited once their entry speed reaches the junction limit or is limited by acceleration from
+     * the previous move, since queueing more moves can't change it anymore.
+     */
+    private void plan()
+    {
+        double nextEntry = 0;
+        for (int k = count - 1; k > planned; k--)
+        {
+            int i = (first + k) & MASK;
+            entrySpeed[i] = Math.min(maxEntrySpeed[i], Math.sqrt(nextEntry * nextEntry + 2 * acceleration[i] * length[i]));
+            nextEntry = entrySpeed[i];
+        }
+        for (int k = planned; k < count - 1; k++)
+        {
+            int i = (first + k) & MASK;
+            int next = (i + 1) & MASK;
+            double reachable = Math.sqrt(entrySpeed[i] * entrySpeed[i] + 2 * acceleration[i] * length[i]);
+            if (reachable < entrySpeed[next])
+            {
+                entrySpeed[next] = reachable;
+                planned = k + 1;
+            }
+            else if (entrySpeed[next] == maxEntrySpeed[next])
+                planned = k + 1;
+        }
+    }
+
+    /**
+     * Executes the oldest queued move
+     */
+    private void retire()
+    {
+        int i = first;
+        double exitSpeed = count > 1 ? entrySpeed[(i + 1) & MASK] : 0;
+        double duration = calculateDuration(length[i], entrySpeed[i], nominalSpeed[i], exitSpeed, acceleration[i]);
+        totalDuration += duration;
+        phaseDurations[phase[i].ordinal()] += duration;
+        first = (first + 1) & MASK;
+        count--;
+        planned = Math.max(0, planned - 1);
+    }
+
+    /**
+     * Duration of trapezoidal velocity profile, falling back to triangular one if there is no room for cruising
+     */
+    private static double calculateDuration(double length, double entrySpeed, double speed, double exitSpeed, double acceleration)
+    {
+        double accelerationDistance = (speed * speed - entrySpeed * entrySpeed) / (2 * acceleration);
+        double decelerationDistance = (speed * speed - exitSpeed * exitSpeed) / (2 * acceleration);
+        if (accelerationDistance + decelerationDistance <= length)
+            return (speed - entrySpeed) / acceleration + (speed - exitSpeed) / acceleration +
+                    (length - accelerationDistance - decelerationDistance) / speed;
+        double peakSpeed = Math.sqrt(acceleration * length + (entrySpeed * entrySpeed + exitSpeed * exitSpeed) / 2);
+        peakSpeed = Math.max(peakSpeed, Math.max(entrySpeed, exitSpeed));
+        return (peakSpeed - entrySpeed) / acceleration + (peakSpeed - exitSpeed) / acceleration;
+    }
+}
@@ -17,10 +17,17 @@ import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import org.cirqwizard.fx.Context;
 import org.cirqwizard.generation.ProcessingService;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.logging.LoggerFactory;
 import org.cirqwizard.settings.ApplicationConstants;
+import org.cirqwizard.settings.ApplicationSettings;
+import org.cirqwizard.settings.OptimizationStrategy;
+import org.cirqwizard.settings.SettingsFactory;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 
 public class OptimizationService extends ProcessingService
 {
@@ -46,9 +53,21 @@ public class OptimizationService extends ProcessingService
 
     public List<Chain> optimize()
     {
-        final Optimizer optimizer = new Optimizer(chains, convertToDouble(feedXY) / 60, convertToDouble(feedZ) / 60,
-                convertToDouble(feedXY) / 60 * arcs / 100, convertToDouble(clearance), convertToDouble(safetyHeight),
-                mergeTolerance, cancelledProperty());
+        ApplicationSettings settings = SettingsFactory.getApplicationSettings();
+        final ChainOptimizer optimizer;
+        if (settings.getOptimizationStrategy().getValue() == OptimizationStrategy.LOCAL_SEARCH)
+            optimizer = new LocalSearchOptimizer(chains, convertToDouble(feedXY) / 60, convertToDouble(feedZ) / 60,
+                    convertToDouble(feedXY) / 60 * arcs / 100, convertToDouble(clearance), convertToDouble(safetyHeight),
+                    mergeTolerance, settings.getChainReversal().getValue(), settings.getOptimizationTimeLimit().getValue() * 1000L,
+                    cancelledProperty());
+        else if (settings.getOptimizationStrategy().getValue() == OptimizationStrategy.PARALLEL_GENETIC)
+            optimizer = new IslandOptimizer(chains, convertToDouble(feedXY) / 60, convertToDouble(feedZ) / 60,
+                    convertToDouble(feedXY) / 60 * arcs / 100, convertToDouble(clearance), convertToDouble(safetyHeight),
+                    mergeTolerance, cancelledProperty());
+        else
+            optimizer = new Optimizer(chains, convertToDouble(feedXY) / 60, convertToDouble(feedZ) / 60,
+                    convertToDouble(feedXY) / 60 * arcs / 100, convertToDouble(clearance), convertToDouble(safetyHeight),
+                    mergeTolerance, cancelledProperty());
         setCurrentStage("Optimizing milling time...");
         progressProperty().bind(optimizer.progressProperty());
 
@@ -63,7 +82,23 @@ public class OptimizationService extends ProcessingService
                 }, optimizer.bestSolutionDurationProperty()))
         );
 
-        return optimizer.optimize();
+        List<Chain> result = optimizer.optimize();
+        logDurations(result);
+        return result;
+    }
+
+    private void logDurations(List<Chain> chains)
+    {
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (Chain chain : chains)
+            toolpaths.addAll(chain.getSegments());
+        MotionPlanner planner = new MotionPlanner();
+        TimeEstimator.simulate(planner, toolpaths, convertToDouble(feedXY) / 60, convertToDouble(feedZ) / 60,
+                convertToDouble(feedXY) / 60 * arcs / 100, convertToDouble(clearance), convertToDouble(safetyHeight), true, mergeTolerance);
+        StringBuilder str = new StringBuilder("Estimated machining time: ").append(Math.round(planner.getTotalDuration())).append(" s");
+        for (MotionPlanner.Phase phase : MotionPlanner.Phase.values())
+            str.append(", ").append(phase.name().toLowerCase()).append(' ').append(Math.round(planner.getDuration(phase))).append(" s");
+        LoggerFactory.getApplicationLogger().log(Level.INFO, str.toString());
     }
 
     private double convertToDouble(Integer i)
@@ -18,17 +18,15 @@ import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
+import org.cirqwizard.generation.ProcessingPool;
 import org.cirqwizard.generation.toolpath.Toolpath;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class Optimizer
+public class Optimizer implements ChainOptimizer
 {
     private final static int POPULATION_SIZE = 350;
     private final static int TOURNAMENT_SIZE = 7;
@@ -64,6 +62,7 @@ public class Optimizer
         this.cancelledProperty = cancelledProperty;
     }
 
+    @Override
     public List<Chain> optimize()
     {
         init();
@@ -97,16 +96,19 @@ public class Optimizer
         return result;
     }
 
+    @Override
     public DoubleProperty progressProperty()
     {
         return progressProperty;
     }
 
+    @Override
     public double getBestSolutionDuration()
     {
         return bestSolutionDuration.get();
     }
 
+    @Override
     public DoubleProperty bestSolutionDurationProperty()
     {
         return bestSolutionDuration;
@@ -123,28 +125,17 @@ public class Optimizer
 
     public void breed()
     {
-        final Vector<Phenotype> newGeneration = new Vector<>();
-
-        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        for (int i = 0; i < POPULATION_SIZE; i++)
+        final Phenotype[] newGeneration = new Phenotype[POPULATION_SIZE];
+        ProcessingPool.getInstance().forEach(POPULATION_SIZE, i ->
         {
-            pool.submit(() ->
-            {
-                Phenotype parent1 = currentGeneration.tournamentWinner(environment, TOURNAMENT_SIZE);
-                Phenotype parent2 = currentGeneration.tournamentWinner(environment, TOURNAMENT_SIZE);
-                Phenotype child = parent1.crossOver(parent2);
-                if (Math.random() < MUTATION_PROBABILITY)
-                    child.mutate();
-                child.calculateFitness(environment);
-                newGeneration.add(child);
-            });
-        }
-        try
-        {
-            pool.shutdown();
-            pool.awaitTermination(10, TimeUnit.DAYS);
-        }
-        catch (InterruptedException e) {}
-        currentGeneration = new Generation(new ArrayList<>(newGeneration));
+            Phenotype parent1 = currentGeneration.tournamentWinner(environment, TOURNAMENT_SIZE);
+            Phenotype parent2 = currentGeneration.tournamentWinner(environment, TOURNAMENT_SIZE);
+            Phenotype child = parent1.crossOver(parent2);
+            child.calculateFitness(environment);
+            if (ThreadLocalRandom.current().nextDouble() < MUTATION_PROBABILITY)
+                child.mutate(environment);
+            newGeneration[i] = child;
+        });
+        currentGeneration = new Generation(new ArrayList<>(Arrays.asList(newGeneration)));
     }
 }
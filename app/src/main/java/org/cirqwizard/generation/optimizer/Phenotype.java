@@ -14,17 +14,14 @@ This program is free software: you can redistribute it and/or modify
 
 package org.cirqwizard.generation.optimizer;
 
-import org.cirqwizard.geom.Point;
-import org.cirqwizard.settings.ApplicationConstants;
-
-import java.util.Random;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Phenotype
 {
     private int[] genes;
-    private Double fitness = null;
-
-    private static double MOTION_PENALTY = 2000;
+    private double fitness;
+    private boolean fitnessCalculated;
 
     public Phenotype(int[] genes)
     {
@@ -33,22 +30,18 @@ public class Phenotype
 
     public double calculateFitness(Environment env)
     {
-        if (fitness != null)
+        if (fitnessCalculated)
             return fitness;
 
-        Point currentLocation = new Point(0, 0);
-        fitness = 0.0;
-
-        for (int i : genes)
+        double sum = 0;
+        int previous = -1;
+        for (int g : genes)
         {
-            Chain chain = env.getChains().get(i);
-            if (currentLocation.distanceTo(chain.getStart()) > ApplicationConstants.ROUNDING)
-            {
-                fitness += currentLocation.distanceTo(chain.getStart());
-                fitness += MOTION_PENALTY;
-            }
-            currentLocation = chain.getEnd();
+            sum += env.getTransitionCost(previous, g);
+            previous = g;
         }
+        fitness = sum;
+        fitnessCalculated = true;
 
         return fitness;
     }
@@ -60,16 +53,27 @@ public class Phenotype
 
     public Phenotype crossOver(Phenotype partner)
     {
-        Random random = new Random();
+        Phenotype child = new Phenotype(new int[genes.length]);
+        crossOver(partner, child, new boolean[genes.length]);
+        return child;
+    }
+
+    /**
+     * Writes offspring of this phenotype and the partner into genes of the child
+     * @param copied buffer of genes length, its content is overwritten
+     */
+    public void crossOver(Phenotype partner, Phenotype child, boolean[] copied)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         int firstIndex = random.nextInt(genes.length);
         int lastIndex = random.nextInt(genes.length);
 
-        int[] childGenes = new int[genes.length];
+        int[] childGenes = child.genes;
         if (lastIndex < firstIndex)
             lastIndex += genes.length;
         int counter = 0;
 
-        boolean[] copied = new boolean[genes.length];
+        Arrays.fill(copied, false);
         for (int i = firstIndex; i < lastIndex; i++)
         {
             int g = genes[i % genes.length];
@@ -81,22 +85,66 @@ public class Phenotype
             if (!copied[partner.genes[i]])
                 childGenes[counter++] = partner.genes[i];
         }
+        child.fitnessCalculated = false;
+    }
 
-        return new Phenotype(childGenes);
+    /**
+     * Makes this phenotype a copy of another one without allocating new genes
+     */
+    public void copyFrom(Phenotype other)
+    {
+        System.arraycopy(other.genes, 0, genes, 0, genes.length);
+        fitness = other.fitness;
+        fitnessCalculated = other.fitnessCalculated;
     }
 
-    public void mutate()
+    /**
+     * Swaps random genes. Fitness calculated before the mutation is updated by the cost change of transitions
+     * around swapped genes instead of being recalculated.
+     */
+    public void mutate(Environment env)
     {
-        Random random = new Random();
+        if (genes.length < 2)
+            return;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         int genesCount = random.nextInt(genes.length / 2);
         for (int i = 0; i < genesCount; i++)
         {
             int gene1 = random.nextInt(genes.length);
             int gene2 = random.nextInt(genes.length);
+            if (gene1 == gene2)
+                continue;
+            if (fitnessCalculated)
+                fitness -= getSwapCost(env, gene1, gene2);
             int g = genes[gene1];
             genes[gene1] = genes[gene2];
             genes[gene2] = g;
+            if (fitnessCalculated)
+                fitness += getSwapCost(env, gene1, gene2);
         }
     }
 
+    /**
+     * Cost of transitions leading to and from genes at given positions
+     */
+    private double getSwapCost(Environment env, int position1, int position2)
+    {
+        int low = Math.min(position1, position2);
+        int high = Math.max(position1, position2);
+        double cost = getTransitionCost(env, low) + getTransitionCost(env, high);
+        if (high > low + 1)
+            cost += getTransitionCost(env, low + 1);
+        if (high + 1 < genes.length)
+            cost += getTransitionCost(env, high + 1);
+        return cost;
+    }
+
+    /**
+     * Cost of moving to the gene at given position
+     */
+    private double getTransitionCost(Environment env, int position)
+    {
+        return env.getTransitionCost(position == 0 ? -1 : genes[position - 1], genes[position]);
+    }
+
 }
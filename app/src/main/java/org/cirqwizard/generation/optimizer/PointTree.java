@@ -0,0 +1,208 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation.optimizer;
+
+/**
+ * Static k-d tree of points supporting removal and nearest neighbour queries. Distance is the duration of a
+ * coordinated rapid move between the points. A move is never shorter than the move along one of its axes alone,
+ * so the duration of crossing a splitting line bounds the distance to every point beyond it.
+ */
+public class PointTree
+{
+    private int[] x;
+    private int[] y;
+    private int[] ids;
+    // Position of each id in the tree
+    private int[] positions;
+    private boolean[] removed;
+    // Number of points not removed in the subtree rooted at a node
+    private int[] alive;
+
+    // Query state
+    private int queryX;
+    private int queryY;
+    private int excludedGroup;
+    private int groupSize;
+    private int count;
+    private int[] resultIds;
+    private double[] resultDistances;
+
+    /**
+     * @param ids point ids, unique and in range from 0 to the number of points
+     */
+    public PointTree(int[] x, int[] y, int[] ids)
+    {
+        this.x = x.clone();
+        this.y = y.clone();
+        this.ids = ids.clone();
+        removed = new boolean[x.length];
+        alive = new int[x.length];
+        build(0, x.length, 0);
+        positions = new int[x.length];
+        for (int i = 0; i < x.length; i++)
+            positions[this.ids[i]] = i;
+    }
+
+    public void remove(int id)
+    {
+        int position = positions[id];
+        if (removed[position])
+            return;
+        removed[position] = true;
+        int from = 0;
+        int to = x.length;
+        while (from < to)
+        {
+            int middle = (from + to) >>> 1;
+            alive[middle]--;
+            if (position == middle)
+                break;
+            if (position < middle)
+                to = middle;
+            else
+                from = middle + 1;
+        }
+    }
+
+    /**
+     * @return id of the nearest point which was not removed or -1 if there are none
+     */
+    public int nearest(int px, int py)
+    {
+        int[] result = nearest(px, py, 1, -1, 1);
+        return result.length == 0 ? -1 : result[0];
+    }
+
+    /**
+     * Finds up to k nearest points sorted by distance, skipping points of excluded group. Group of a point is
+     * its id divided by group size.
+     */
+    public int[] nearest(int px, int py, int k, int excludedGroup, int groupSize)
+    {
+        queryX = px;
+        queryY = py;
+        this.excludedGroup = excludedGroup;
+        this.groupSize = groupSize;
+        count = 0;
+        resultIds = new int[k];
+        resultDistances = new double[k];
+        search(0, x.length, 0);
+        int[] result = new int[count];
+        System.arraycopy(resultIds, 0, result, 0, count);
+        return result;
+    }
+
+    private void build(int from, int to, int depth)
+    {
+        if (from >= to)
+            return;
+        int middle = (from + to) >>> 1;
+        select(from, to - 1, middle, depth % 2 == 0);
+        alive[middle] = to - from;
+        build(from, middle, depth + 1);
+        build(middle + 1, to, depth + 1);
+    }
+
+    /**
+     * Partially orders range so that k-th element is in its sorted position
+     */
+    private void select(int left, int right, int k, boolean byX)
+    {
+        while (right > left)
+        {
+            int pivot = byX ? x[(left + right) >>> 1] : y[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j)
+            {
+                while ((byX ? x[i] : y[i]) < pivot)
+                    i++;
+                while ((byX ? x[j] : y[j]) > pivot)
+                    j--;
+                if (i <= j)
+                    swap(i++, j--);
+            }
+            if (k <= j)
+                right = j;
+            else if (k >= i)
+                left = i;
+            else
+                return;
+        }
+    }
+
+    private void swap(int i, int j)
+    {
+        int t = x[i];
+        x[i] = x[j];
+        x[j] = t;
+        t = y[i];
+        y[i] = y[j];
+        y[j] = t;
+        t = ids[i];
+        ids[i] = ids[j];
+        ids[j] = t;
+    }
+
+    private void search(int from, int to, int depth)
+    {
+        if (from >= to)
+            return;
+        int middle = (from + to) >>> 1;
+        if (alive[middle] == 0)
+            return;
+
+        if (!removed[middle] && ids[middle] / groupSize != excludedGroup)
+            offer(ids[middle], TimeEstimator.calculateRapidDuration(queryX - x[middle], queryY - y[middle]));
+
+        int difference = depth % 2 == 0 ? queryX - x[middle] : queryY - y[middle];
+        if (difference < 0)
+        {
+            search(from, middle, depth + 1);
+            if (count < resultIds.length || getBound(difference, depth) <= resultDistances[count - 1])
+                search(middle + 1, to, depth + 1);
+        }
+        else
+        {
+            search(middle + 1, to, depth + 1);
+            if (count < resultIds.length || getBound(difference, depth) <= resultDistances[count - 1])
+                search(from, middle, depth + 1);
+        }
+    }
+
+    /**
+     * Duration of a move crossing the splitting line of a node at given depth
+     */
+    private double getBound(int difference, int depth)
+    {
+        return depth % 2 == 0 ? TimeEstimator.calculateRapidDuration(difference, 0) :
+                TimeEstimator.calculateRapidDuration(0, difference);
+    }
+
+    private void offer(int id, double distance)
+    {
+        if (count == resultIds.length && distance >= resultDistances[count - 1])
+            return;
+        int i = count < resultIds.length ? count++ : count - 1;
+        while (i > 0 && resultDistances[i - 1] > distance)
+        {
+            resultIds[i] = resultIds[i - 1];
+            resultDistances[i] = resultDistances[i - 1];
+            i--;
+        }
+        resultIds[i] = id;
+        resultDistances[i] = distance;
+    }
+}
@@ -16,7 +16,6 @@ package org.cirqwizard.generation.optimizer;
 
 import org.cirqwizard.geom.Arc;
 import org.cirqwizard.geom.Curve;
-import org.cirqwizard.geom.Line;
 import org.cirqwizard.geom.Point;
 import org.cirqwizard.settings.ApplicationConstants;
 import org.cirqwizard.generation.toolpath.CuttingToolpath;
@@ -24,72 +23,90 @@ import org.cirqwizard.generation.toolpath.Toolpath;
 
 import java.util.List;
 
+/**
+ * Estimates machining time of tool paths by playing the moves G-code generator produces for them through
+ * {@link MotionPlanner}. Optimizers estimate orders over and over again, so every thread keeps its own planner
+ * and resets it for each estimation.
+ */
 public class TimeEstimator
 {
-    private final static double xRapids = (double) ApplicationConstants.getXRapids() / ApplicationConstants.RESOLUTION / 60;
-    private final static double yRapids = (double) ApplicationConstants.getYRapids() / ApplicationConstants.RESOLUTION / 60;
-    private final static double zRapids = (double) ApplicationConstants.getZRapids() / ApplicationConstants.RESOLUTION / 60;
-    private final static double xRapidAcceleration = (double) ApplicationConstants.getXRapidAcceleration() / ApplicationConstants.RESOLUTION;
-    private final static double yRapidAcceleration = (double) ApplicationConstants.getYRapidAcceleration() / ApplicationConstants.RESOLUTION;
-    private final static double zRapidAcceleration = (double) ApplicationConstants.getZRapidAcceleration() / ApplicationConstants.RESOLUTION;
-    private final static double feedAcceleration = (double) ApplicationConstants.getFeedAcceleration() / ApplicationConstants.RESOLUTION;
+    private final static ThreadLocal<MotionPlanner> planner = ThreadLocal.withInitial(MotionPlanner::new);
 
     public static double calculateTotalDuration(List<Toolpath> toolpaths, double feed, double zFeed, double arcFeed, double clearance, double safetyHeight, boolean includeFeed,
                                                 int mergeTolerance)
     {
-        Point currentLocation = new Point(0, 0);
-        double totalTime = 0;
-
-        double retractTime = calculatePathDuration(clearance, zRapids, zRapidAcceleration);
-        double descentToSafetyHeight = calculatePathDuration(clearance - safetyHeight, zRapids, xRapidAcceleration);
-        double finalDescent = calculatePathDuration(safetyHeight, zFeed, feedAcceleration);
-
         if (toolpaths == null)
             return 0;
+        MotionPlanner planner = TimeEstimator.planner.get();
+        simulate(planner, toolpaths, feed, zFeed, arcFeed, clearance, safetyHeight, includeFeed, mergeTolerance);
+        return planner.getTotalDuration();
+    }
 
+    /**
+     * Resets the planner and passes the moves of the program to it: the tool is lifted to clearance height, moved to
+     * the start of the next cut, lowered to safety height and plunged whenever tool paths are not continuous.
+     * Afterwards the planner holds total and per phase durations.
+     * @param includeFeed false if only transitions between the cuts are of interest
+     */
+    public static void simulate(MotionPlanner planner, List<Toolpath> toolpaths, double feed, double zFeed, double arcFeed,
+                                double clearance, double safetyHeight, boolean includeFeed, int mergeTolerance)
+    {
+        planner.reset(0, 0, 0);
+        int x = 0;
+        int y = 0;
         for (Toolpath t : toolpaths)
         {
-            if (t instanceof CuttingToolpath)
+            if (!(t instanceof CuttingToolpath))
+                continue;
+            Curve curve = ((CuttingToolpath) t).getCurve();
+            Point from = curve.getFrom();
+            double dx = x - from.getX();
+            double dy = y - from.getY();
+            if (Math.sqrt(dx * dx + dy * dy) > mergeTolerance)
             {
-                Curve curve = ((CuttingToolpath) t).getCurve();
-                if (currentLocation.distanceTo(curve.getFrom()) > mergeTolerance)
-                {
-                    double xRapidTime = calculatePathDuration((double)Math.abs(currentLocation.getX() - curve.getFrom().getX()) / ApplicationConstants.RESOLUTION,
-                            xRapids, xRapidAcceleration);
-                    double yRapidTime = calculatePathDuration((double)Math.abs(currentLocation.getY() - curve.getFrom().getY()) / ApplicationConstants.RESOLUTION,
-                            yRapids, yRapidAcceleration);
-                    totalTime += retractTime + Math.max(xRapidTime, yRapidTime) + descentToSafetyHeight + finalDescent;
-                }
+                planner.rapid(toMillimeters(x), toMillimeters(y), clearance);
+                planner.rapid(toMillimeters(from.getX()), toMillimeters(from.getY()), clearance);
+                planner.rapid(toMillimeters(from.getX()), toMillimeters(from.getY()), safetyHeight);
+                planner.feed(toMillimeters(from.getX()), toMillimeters(from.getY()), 0, zFeed);
+            }
 
-                if (includeFeed)
-                {
-                    if (curve instanceof Line)
-                    {
-                        Line l = (Line) curve;
-                        totalTime += calculatePathDuration(l.length() / ApplicationConstants.RESOLUTION, feed, feedAcceleration);
-                    }
-                    else if (curve instanceof Arc)
-                    {
-                        Arc arc = (Arc) curve;
-                        totalTime += calculatePathDuration(arc.getCircumreference() / ApplicationConstants.RESOLUTION, arcFeed, feedAcceleration);
-                    }
-                }
-                currentLocation = curve.getTo();
+            Point to = curve.getTo();
+            if (!includeFeed)
+                planner.jumpTo(toMillimeters(to.getX()), toMillimeters(to.getY()), 0);
+            else if (curve instanceof Arc)
+            {
+                Arc arc = (Arc) curve;
+                planner.arc(toMillimeters(to.getX()), toMillimeters(to.getY()), toMillimeters(arc.getCenter().getX()),
+                        toMillimeters(arc.getCenter().getY()), arc.isClockwise(), arcFeed);
             }
+            else
+                planner.feed(toMillimeters(to.getX()), toMillimeters(to.getY()), 0, feed);
+            x = to.getX();
+            y = to.getY();
         }
-
-        return totalTime;
+        planner.flush();
     }
 
-    private static double calculatePathDuration(double length, double speed, double acceleration)
+    /**
+     * Duration of retracting the tool, moving it to the start of the next cut and plunging it back
+     */
+    public static double calculateTransitionDuration(double zFeed, double clearance, double safetyHeight)
     {
-        double accelerationDistance = speed * speed / (acceleration * 2);
-        if (accelerationDistance * 2 < length)
-            return (length - accelerationDistance * 2) / speed + speed / acceleration * 2;
-
-        double topSpeed = Math.sqrt(acceleration * 2 * (length / 2));
-        return (topSpeed / acceleration) * 2;
+        return MotionPlanner.calculateRapidDuration(0, 0, clearance) +
+                MotionPlanner.calculateRapidDuration(0, 0, clearance - safetyHeight) +
+                MotionPlanner.calculateFeedDuration(0, 0, safetyHeight, zFeed);
     }
 
+    /**
+     * Duration of horizontal rapid move, axes are moving simultaneously
+     */
+    public static double calculateRapidDuration(int dx, int dy)
+    {
+        return MotionPlanner.calculateRapidDuration(toMillimeters(dx), toMillimeters(dy), 0);
+    }
 
+    private static double toMillimeters(int value)
+    {
+        return (double) value / ApplicationConstants.RESOLUTION;
+    }
 }
@@ -0,0 +1,242 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.generation.optimizer;
+
+import java.util.List;
+
+/**
+ * Order and directions of chains, starting from the origin. Transitions between chains are evaluated with the rapid
+ * move model of {@link TimeEstimator}, 2-opt and Or-opt moves are evaluated by the transitions they change only.
+ */
+public class Tour
+{
+    private int[] startX;
+    private int[] startY;
+    private int[] endX;
+    private int[] endY;
+    private double transitionDuration;
+    private int mergeTolerance;
+
+    private int[] tour;
+    private int[] positions;
+    private boolean[] reversed;
+
+    /**
+     * Creates tour visiting chains in their order and direction
+     * @param transitionDuration duration of retracting and plunging the tool, added to every transition
+     * @param mergeTolerance transitions shorter than this are free, the tool stays down
+     */
+    public Tour(List<Chain> chains, double transitionDuration, int mergeTolerance)
+    {
+        int n = chains.size();
+        this.transitionDuration = transitionDuration;
+        this.mergeTolerance = mergeTolerance;
+        startX = new int[n];
+        startY = new int[n];
+        endX = new int[n];
+        endY = new int[n];
+        tour = new int[n];
+        positions = new int[n];
+        reversed = new boolean[n];
+        for (int i = 0; i < n; i++)
+        {
+            startX[i] = chains.get(i).getStart().getX();
+            startY[i] = chains.get(i).getStart().getY();
+            endX[i] = chains.get(i).getEnd().getX();
+            endY[i] = chains.get(i).getEnd().getY();
+            tour[i] = i;
+            positions[i] = i;
+        }
+    }
+
+    public int size()
+    {
+        return tour.length;
+    }
+
+    public int getChain(int position)
+    {
+        return tour[position];
+    }
+
+    public int getPosition(int chain)
+    {
+        return positions[chain];
+    }
+
+    public boolean isReversed(int chain)
+    {
+        return reversed[chain];
+    }
+
+    /**
+     * Puts chain at given position. The caller is responsible for every chain ending up at exactly one position.
+     */
+    public void set(int position, int chain, boolean reversed)
+    {
+        tour[position] = chain;
+        positions[chain] = position;
+        this.reversed[chain] = reversed;
+    }
+
+    public int getStartX(int chain)
+    {
+        return reversed[chain] ? endX[chain] : startX[chain];
+    }
+
+    public int getStartY(int chain)
+    {
+        return reversed[chain] ? endY[chain] : startY[chain];
+    }
+
+    public int getEndX(int chain)
+    {
+        return reversed[chain] ? startX[chain] : endX[chain];
+    }
+
+    public int getEndY(int chain)
+    {
+        return reversed[chain] ? startY[chain] : endY[chain];
+    }
+
+    /**
+     * Total duration of transitions
+     */
+    public double getCost()
+    {
+        double cost = 0;
+        for (int i = 0; i < tour.length; i++)
+            cost += getCost(i);
+        return cost;
+    }
+
+    /**
+     * Change of the cost caused by 2-opt move reversing the chains from position to position to
+     */
+    public double getReversalDelta(int from, int to)
+    {
+        double delta = getCost(getPreviousEndX(from), getPreviousEndY(from), getEndX(tour[to]), getEndY(tour[to])) - getCost(from);
+        if (to + 1 < tour.length)
+        {
+            int next = tour[to + 1];
+            delta += getCost(getStartX(tour[from]), getStartY(tour[from]), getStartX(next), getStartY(next)) - getCost(to + 1);
+        }
+        return delta;
+    }
+
+    /**
+     * Reverses the run of chains from position to position to along with direction of each of them
+     */
+    public void reverse(int from, int to)
+    {
+        for (int i = from, j = to; i <= j; i++, j--)
+        {
+            int t = tour[i];
+            tour[i] = tour[j];
+            tour[j] = t;
+            positions[tour[i]] = i;
+            positions[tour[j]] = j;
+            reversed[tour[i]] = !reversed[tour[i]];
+            if (i != j)
+                reversed[tour[j]] = !reversed[tour[j]];
+        }
+    }
+
+    /**
+     * Change of the cost caused by Or-opt move of chains from position to position + length - 1 in front of the chain
+     * at target position, which must be outside of the run
+     * @param reverse whether the run is reversed as well
+     */
+    public double getMoveDelta(int position, int length, int target, boolean reverse)
+    {
+        int end = position + length;
+        double removal = getCost(position) + getCost(end);
+        if (end < tour.length)
+            removal -= getCost(getPreviousEndX(position), getPreviousEndY(position), getStartX(tour[end]), getStartY(tour[end]));
+
+        int first = tour[position];
+        int last = tour[end - 1];
+        int entryX = reverse ? getEndX(last) : getStartX(first);
+        int entryY = reverse ? getEndY(last) : getStartY(first);
+        int exitX = reverse ? getStartX(first) : getEndX(last);
+        int exitY = reverse ? getStartY(first) : getEndY(last);
+        double insertion = getCost(getPreviousEndX(target), getPreviousEndY(target), entryX, entryY) - getCost(target);
+        if (target < tour.length)
+            insertion += getCost(exitX, exitY, getStartX(tour[target]), getStartY(tour[target]));
+        return insertion - removal;
+    }
+
+    /**
+     * Moves chains from position to position + length - 1 in front of the chain at target position
+     */
+    public void move(int position, int length, int target, boolean reverse)
+    {
+        int end = position + length;
+        int[] run = new int[length];
+        for (int i = 0; i < length; i++)
+            run[i] = tour[position + (reverse ? length - 1 - i : i)];
+        int from;
+        int to;
+        if (target > end)
+        {
+            System.arraycopy(tour, end, tour, position, target - end);
+            System.arraycopy(run, 0, tour, target - length, length);
+            from = position;
+            to = target;
+        }
+        else
+        {
+            System.arraycopy(tour, target, tour, target + length, position - target);
+            System.arraycopy(run, 0, tour, target, length);
+            from = target;
+            to = end;
+        }
+        for (int i = from; i < to; i++)
+            positions[tour[i]] = i;
+        if (reverse)
+        {
+            for (int c : run)
+                reversed[c] = !reversed[c];
+        }
+    }
+
+    private int getPreviousEndX(int position)
+    {
+        return position == 0 ? 0 : getEndX(tour[position - 1]);
+    }
+
+    private int getPreviousEndY(int position)
+    {
+        return position == 0 ? 0 : getEndY(tour[position - 1]);
+    }
+
+    private double getCost(int fromX, int fromY, int toX, int toY)
+    {
+        int dx = toX - fromX;
+        int dy = toY - fromY;
+        if (Math.sqrt((double) dx * dx + (double) dy * dy) <= mergeTolerance)
+            return 0;
+        return transitionDuration + TimeEstimator.calculateRapidDuration(dx, dy);
+    }
+
+    /**
+     * Cost of moving to the chain at given position
+     */
+    private double getCost(int position)
+    {
+        if (position >= tour.length)
+            return 0;
+        return getCost(getPreviousEndX(position), getPreviousEndY(position), getStartX(tour[position]), getStartY(tour[position]));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.generation.toolpath;
+
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Identifies tool paths of a group of panel boards generated independently of the rest of the panel.
+ * Boards are described by their content and placement relatively to the group, so the same tool paths
+ * can be reused wherever the group is moved.
+ */
+public class BoardToolpathsKey implements Serializable
+{
+    private ToolpathsCacheKey parametersKey;
+    private String[] boards;
+    private int[] x;
+    private int[] y;
+
+    /**
+     * @param parametersKey generation parameters
+     * @param boards content hash, rotation angle and outline flag of each board
+     * @param x board offsets relatively to the group origin
+     * @param y board offsets relatively to the group origin
+     */
+    public BoardToolpathsKey(ToolpathsCacheKey parametersKey, String[] boards, int[] x, int[] y)
+    {
+        this.parametersKey = parametersKey;
+        this.boards = boards;
+        this.x = x;
+        this.y = y;
+    }
+
+    public ToolpathsCacheKey getParametersKey()
+    {
+        return parametersKey;
+    }
+
+    public String[] getBoards()
+    {
+        return boards;
+    }
+
+    public int[] getX()
+    {
+        return x;
+    }
+
+    public int[] getY()
+    {
+        return y;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BoardToolpathsKey that = (BoardToolpathsKey) o;
+
+        if (!parametersKey.equals(that.parametersKey)) return false;
+        if (!Arrays.equals(boards, that.boards)) return false;
+        if (!Arrays.equals(x, that.x)) return false;
+        return Arrays.equals(y, that.y);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = parametersKey.hashCode();
+        result = 31 * result + Arrays.hashCode(boards);
+        result = 31 * result + Arrays.hashCode(x);
+        result = 31 * result + Arrays.hashCode(y);
+        return result;
+    }
+}
@@ -15,24 +15,154 @@ This program is free software: you can redistribute it and/or modify
 package org.cirqwizard.generation.toolpath;
 
 
-import java.io.Serializable;
-import java.util.HashMap;
-import java.util.List;
+import org.cirqwizard.logging.LoggerFactory;
 
+import java.io.File;
+import java.util.*;
+import java.util.logging.Level;
 
-public class ToolpathsCache implements Serializable
+
+/**
+ * Tool paths cached between sessions. When loaded from a file only the index of stored entries is read,
+ * tool paths themselves are decoded on first request.
+ */
+public class ToolpathsCache
 {
     private HashMap<ToolpathsCacheKey, List<Toolpath>> traces = new HashMap<>();
+    // Tool paths of board groups in group coordinates, they survive changes of other boards of the panel
+    private HashMap<BoardToolpathsKey, List<Toolpath>> boardToolpaths = new HashMap<>();
+
+    private File file;
+    // Entries present in the file which have not been read yet
+    private HashMap<Object, ToolpathsPersistor.Chunk> storedChunks = new HashMap<>();
+    // Entries to be written to the file or removed from it on next save
+    private LinkedHashSet<Object> modifiedKeys = new LinkedHashSet<>();
+    private LinkedHashSet<Object> removedKeys = new LinkedHashSet<>();
+
+    public ToolpathsCache()
+    {
+    }
+
+    ToolpathsCache(File file, Map<Object, ToolpathsPersistor.Chunk> storedChunks)
+    {
+        this.file = file;
+        this.storedChunks.putAll(storedChunks);
+    }
 
     public List<Toolpath> getToolpaths(ToolpathsCacheKey cacheKey)
     {
-        if (traces.containsKey(cacheKey))
-            return traces.get(cacheKey);
-        return null;
+        if (!traces.containsKey(cacheKey))
+            load(cacheKey, traces);
+        return traces.get(cacheKey);
     }
 
     public void setToolpaths(ToolpathsCacheKey cacheKey, List<Toolpath> topLayer)
     {
         this.traces.put(cacheKey, topLayer);
+        modified(cacheKey);
+    }
+
+    public List<Toolpath> getBoardToolpaths(BoardToolpathsKey key)
+    {
+        if (!boardToolpaths.containsKey(key))
+            load(key, boardToolpaths);
+        return boardToolpaths.get(key);
+    }
+
+    public void setBoardToolpaths(BoardToolpathsKey key, List<Toolpath> toolpaths)
+    {
+        boardToolpaths.put(key, toolpaths);
+        modified(key);
+    }
+
+    /**
+     * Removes tool paths of board groups generated with given parameters which are not among the used ones
+     */
+    public void retainBoardToolpaths(ToolpathsCacheKey parametersKey, Set<BoardToolpathsKey> usedKeys)
+    {
+        List<Object> keys = new ArrayList<>(boardToolpaths.keySet());
+        keys.addAll(storedChunks.keySet());
+        for (Object k : keys)
+        {
+            if (k instanceof BoardToolpathsKey && ((BoardToolpathsKey) k).getParametersKey().equals(parametersKey) && !usedKeys.contains(k))
+                remove(k);
+        }
+    }
+
+    /**
+     * Drops tool paths of the whole panel, keeping tool paths of individual board groups
+     */
+    public void invalidatePanelToolpaths()
+    {
+        List<Object> keys = new ArrayList<>(traces.keySet());
+        keys.addAll(storedChunks.keySet());
+        for (Object k : keys)
+        {
+            if (k instanceof ToolpathsCacheKey)
+                remove(k);
+        }
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    Map<Object, List<Toolpath>> getModifiedEntries()
+    {
+        LinkedHashMap<Object, List<Toolpath>> entries = new LinkedHashMap<>();
+        for (Object key : modifiedKeys)
+            entries.put(key, key instanceof ToolpathsCacheKey ? traces.get(key) : boardToolpaths.get(key));
+        return entries;
+    }
+
+    Set<Object> getRemovedKeys()
+    {
+        return removedKeys;
+    }
+
+    /**
+     * Called once modifications are written to the file
+     */
+    void saved(File file, Map<Object, ToolpathsPersistor.Chunk> storedChunks)
+    {
+        this.file = file;
+        this.storedChunks.clear();
+        this.storedChunks.putAll(storedChunks);
+        this.storedChunks.keySet().removeAll(traces.keySet());
+        this.storedChunks.keySet().removeAll(boardToolpaths.keySet());
+        modifiedKeys.clear();
+        removedKeys.clear();
+    }
+
+    private void modified(Object key)
+    {
+        storedChunks.remove(key);
+        removedKeys.remove(key);
+        modifiedKeys.add(key);
+    }
+
+    private void remove(Object key)
+    {
+        traces.remove(key);
+        boardToolpaths.remove(key);
+        storedChunks.remove(key);
+        modifiedKeys.remove(key);
+        removedKeys.add(key);
+    }
+
+    private <K> void load(K key, Map<K, List<Toolpath>> map)
+    {
+        ToolpathsPersistor.Chunk chunk = storedChunks.remove(key);
+        if (chunk == null)
+            return;
+        try
+        {
+            map.put(key, ToolpathsPersistor.readToolpaths(file, chunk));
+        }
+        catch (ToolpathPersistingException e)
+        {
+            LoggerFactory.getApplicationLogger().log(Level.INFO, e.getMessage(), e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -15,6 +15,8 @@ This program is free software: you can redistribute it and/or modify
 package org.cirqwizard.generation.toolpath;
 
 
+import org.cirqwizard.settings.ToolpathEngine;
+
 import java.io.Serializable;
 
 
@@ -27,23 +29,65 @@ public class ToolpathsCacheKey implements Serializable
     private int additionalPasses;
     private int additionalPassesOverlap;
     private boolean additionalPassesAroundPadsOnly;
+    private ToolpathEngine toolpathEngine;
 
     // Rub out parameters
     private int rubOutInitialOffset;
     private int rubOutOverlap;
 
     public ToolpathsCacheKey(int layerId, int toolDiameter, int additionalPasses, int additionalPassesOverlap, boolean additionalPassesAroundPadsOnly,
-                             int rubOutInitialOffset, int rubOutOverlap)
+                             ToolpathEngine toolpathEngine, int rubOutInitialOffset, int rubOutOverlap)
     {
         this.layerId = layerId;
         this.toolDiameter = toolDiameter;
         this.additionalPasses = additionalPasses;
         this.additionalPassesOverlap = additionalPassesOverlap;
         this.additionalPassesAroundPadsOnly = additionalPassesAroundPadsOnly;
+        this.toolpathEngine = toolpathEngine;
         this.rubOutInitialOffset = rubOutInitialOffset;
         this.rubOutOverlap = rubOutOverlap;
     }
 
+    public int getLayerId()
+    {
+        return layerId;
+    }
+
+    public int getToolDiameter()
+    {
+        return toolDiameter;
+    }
+
+    public int getAdditionalPasses()
+    {
+        return additionalPasses;
+    }
+
+    public int getAdditionalPassesOverlap()
+    {
+        return additionalPassesOverlap;
+    }
+
+    public boolean isAdditionalPassesAroundPadsOnly()
+    {
+        return additionalPassesAroundPadsOnly;
+    }
+
+    public ToolpathEngine getToolpathEngine()
+    {
+        return toolpathEngine;
+    }
+
+    public int getRubOutInitialOffset()
+    {
+        return rubOutInitialOffset;
+    }
+
+    public int getRubOutOverlap()
+    {
+        return rubOutOverlap;
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -55,6 +99,7 @@ public class ToolpathsCacheKey implements Serializable
         if (additionalPasses != that.additionalPasses) return false;
         if (additionalPassesAroundPadsOnly != that.additionalPassesAroundPadsOnly) return false;
         if (additionalPassesOverlap != that.additionalPassesOverlap) return false;
+        if (toolpathEngine != that.toolpathEngine) return false;
         if (layerId != that.layerId) return false;
         if (rubOutInitialOffset != that.rubOutInitialOffset) return false;
         if (rubOutOverlap != that.rubOutOverlap) return false;
@@ -71,6 +116,7 @@ public class ToolpathsCacheKey implements Serializable
         result = 31 * result + additionalPasses;
         result = 31 * result + additionalPassesOverlap;
         result = 31 * result + (additionalPassesAroundPadsOnly ? 1 : 0);
+        result = 31 * result + (toolpathEngine != null ? toolpathEngine.hashCode() : 0);
         result = 31 * result + rubOutInitialOffset;
         result = 31 * result + rubOutOverlap;
         return result;
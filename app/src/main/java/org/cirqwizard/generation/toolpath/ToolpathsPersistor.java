@@ -15,46 +15,563 @@ This program is free software: you can redistribute it and/or modify
 package org.cirqwizard.generation.toolpath;
 
 
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Curve;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.settings.ToolpathEngine;
+
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 
+/**
+ * Stores tool paths cache as a sequence of chunks, one per cache key. Header is followed by chunks of the form
+ * <pre>
+ * byte kind, byte flags, int key length, int payload length, key, payload
+ * </pre>
+ * A later chunk with the same key supersedes earlier ones, so single entries are replaced or removed by appending
+ * to the file. The file is compacted once superseded chunks take more space than the live ones.
+ * Payload is a list of tool paths with coordinates stored as variable length deltas, optionally deflated.
+ */
 public class ToolpathsPersistor
 {
+    private final static int MAGIC = 0x43575443;
+    private final static int VERSION = 1;
+    private final static int HEADER_SIZE = 8;
+    private final static int CHUNK_HEADER_SIZE = 10;
+
+    private final static byte PANEL_TOOLPATHS = 1;
+    private final static byte BOARD_TOOLPATHS = 2;
+
+    private final static byte FLAG_DEFLATED = 1;
+    private final static byte FLAG_REMOVED = 2;
+
+    private final static byte TYPE_CIRCULAR = 1;
+    private final static byte TYPE_CLOCKWISE = 2;
+    private final static byte TYPE_DISABLED = 4;
+
+    private final static int COMPRESSION_THRESHOLD = 4096;
+    private final static long COMPACTION_THRESHOLD = 64 * 1024;
+
+    /**
+     * Location of an entry in the file
+     */
+    static class Chunk
+    {
+        private long offset;
+        private byte flags;
+        private byte[] key;
+        private int payloadLength;
+
+        private Chunk(long offset, byte flags, byte[] key, int payloadLength)
+        {
+            this.offset = offset;
+            this.flags = flags;
+            this.key = key;
+            this.payloadLength = payloadLength;
+        }
+
+        private long getSize()
+        {
+            return CHUNK_HEADER_SIZE + key.length + payloadLength;
+        }
+    }
+
+    private static class Index
+    {
+        private LinkedHashMap<Object, Chunk> chunks = new LinkedHashMap<>();
+        private boolean valid;
+        private long length = HEADER_SIZE;
+
+        private long getLiveSize()
+        {
+            long size = HEADER_SIZE;
+            for (Chunk c : chunks.values())
+                size += c.getSize();
+            return size;
+        }
+    }
+
     public static ToolpathsCache loadFromFile(String filename) throws ToolpathPersistingException
     {
-        if(!new File(filename).exists())
+        File file = new File(filename);
+        if(!file.exists())
             return null;
 
-        ToolpathsCache toolpathsCache;
         try
         {
-            FileInputStream fis = new FileInputStream(filename);
-            ObjectInputStream oin = new ObjectInputStream(fis);
-            toolpathsCache = (ToolpathsCache) oin.readObject();
+            Index index = readIndex(file);
+            if (!index.valid)
+                throw new ToolpathPersistingException("Unsupported tool paths cache format");
+            return new ToolpathsCache(file, index.chunks);
         }
-        catch(IOException | ClassNotFoundException e)
+        catch (IOException e)
         {
             throw new ToolpathPersistingException("Error loading toolpaths from file", e);
         }
-        return toolpathsCache;
     }
 
     public static void saveToFile(ToolpathsCache cache, String filename) throws ToolpathPersistingException
     {
-        if (cache != null)
+        if (cache == null)
+            return;
+
+        File file = new File(filename);
+        try
+        {
+            // Index is re-read as the file might have been appended to since the cache was loaded
+            Index index = file.exists() ? readIndex(file) : new Index();
+            boolean sameFile = file.equals(cache.getFile());
+            if (!sameFile || !index.valid)
+            {
+                // Entries which are still only in the old file have to be carried over
+                Map<Object, List<Toolpath>> entries = new LinkedHashMap<>();
+                if (cache.getFile() != null && !sameFile && cache.getFile().exists())
+                    entries.putAll(readAll(cache.getFile()));
+                entries.keySet().removeAll(cache.getRemovedKeys());
+                entries.putAll(cache.getModifiedEntries());
+                index = new Index();
+                index.valid = true;
+                try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+                {
+                    out.setLength(0);
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    appendChunks(out, index, entries, Collections.emptySet());
+                }
+            }
+            else
+            {
+                try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+                {
+                    // Drops an incomplete chunk left by interrupted write, if any
+                    out.setLength(index.length);
+                    out.seek(index.length);
+                    appendChunks(out, index, cache.getModifiedEntries(), cache.getRemovedKeys());
+                }
+            }
+
+            if (index.length > COMPACTION_THRESHOLD && index.getLiveSize() * 2 < index.length)
+                index = compact(file, index);
+            cache.saved(file, index.chunks);
+        }
+        catch (IOException e)
+        {
+            throw new ToolpathPersistingException("Error saving toolpaths to file", e);
+        }
+    }
+
+    static List<Toolpath> readToolpaths(File file, Chunk chunk) throws ToolpathPersistingException
+    {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"))
+        {
+            byte[] data = readChunk(in, chunk);
+            if ((chunk.flags & FLAG_DEFLATED) != 0)
+                data = inflate(data);
+            return decodeToolpaths(data);
+        }
+        catch (IOException | DataFormatException | RuntimeException e)
+        {
+            throw new ToolpathPersistingException("Error loading toolpaths from file", e);
+        }
+    }
+
+    private static Map<Object, List<Toolpath>> readAll(File file) throws ToolpathPersistingException
+    {
+        Map<Object, List<Toolpath>> entries = new LinkedHashMap<>();
+        try
+        {
+            Index index = readIndex(file);
+            if (!index.valid)
+                return entries;
+            for (Map.Entry<Object, Chunk> e : index.chunks.entrySet())
+                entries.put(e.getKey(), readToolpaths(file, e.getValue()));
+        }
+        catch (IOException e)
+        {
+            throw new ToolpathPersistingException("Error loading toolpaths from file", e);
+        }
+        return entries;
+    }
+
+    private static Index readIndex(File file) throws IOException
+    {
+        Index index = new Index();
+        long fileLength = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (fileLength < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION)
+                return index;
+            index.valid = true;
+            long offset = HEADER_SIZE;
+            while (offset + CHUNK_HEADER_SIZE <= fileLength)
+            {
+                byte kind = in.readByte();
+                byte flags = in.readByte();
+                int keyLength = in.readInt();
+                int payloadLength = in.readInt();
+                if (keyLength < 0 || payloadLength < 0 || offset + CHUNK_HEADER_SIZE + keyLength + payloadLength > fileLength)
+                    break;
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                skipFully(in, payloadLength);
+
+                Object decodedKey = decodeKey(kind, key);
+                if ((flags & FLAG_REMOVED) != 0)
+                    index.chunks.remove(decodedKey);
+                else
+                {
+                    index.chunks.remove(decodedKey);
+                    index.chunks.put(decodedKey, new Chunk(offset, flags, key, payloadLength));
+                }
+                offset += CHUNK_HEADER_SIZE + keyLength + payloadLength;
+            }
+            index.length = offset;
+        }
+        return index;
+    }
+
+    private static void appendChunks(RandomAccessFile out, Index index, Map<Object, List<Toolpath>> entries, Set<Object> removedKeys)
+            throws IOException, ToolpathPersistingException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long offset = out.getFilePointer();
+        for (Object key : removedKeys)
+        {
+            if (!index.chunks.containsKey(key))
+                continue;
+            byte[] keyData = encodeKey(key);
+            writeChunk(buffer, getKind(key), FLAG_REMOVED, keyData, new byte[0]);
+            index.chunks.remove(key);
+            offset += CHUNK_HEADER_SIZE + keyData.length;
+        }
+        for (Map.Entry<Object, List<Toolpath>> e : entries.entrySet())
+        {
+            byte[] keyData = encodeKey(e.getKey());
+            byte[] payload = encodeToolpaths(e.getValue());
+            byte flags = 0;
+            if (payload.length >= COMPRESSION_THRESHOLD)
+            {
+                byte[] deflated = deflate(payload);
+                if (deflated.length < payload.length)
+                {
+                    payload = deflated;
+                    flags = FLAG_DEFLATED;
+                }
+            }
+            writeChunk(buffer, getKind(e.getKey()), flags, keyData, payload);
+            index.chunks.remove(e.getKey());
+            index.chunks.put(e.getKey(), new Chunk(offset, flags, keyData, payload.length));
+            offset += CHUNK_HEADER_SIZE + keyData.length + payload.length;
+        }
+        out.write(buffer.toByteArray());
+        index.length = offset;
+    }
+
+    private static Index compact(File file, Index index) throws IOException
+    {
+        File compacted = new File(file.getAbsolutePath() + ".new");
+        Index result = new Index();
+        result.valid = true;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             RandomAccessFile out = new RandomAccessFile(compacted, "rw"))
+        {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long offset = HEADER_SIZE;
+            for (Map.Entry<Object, Chunk> e : index.chunks.entrySet())
+            {
+                Chunk chunk = e.getValue();
+                in.seek(chunk.offset);
+                byte[] data = new byte[(int) chunk.getSize()];
+                in.readFully(data);
+                out.write(data);
+                result.chunks.put(e.getKey(), new Chunk(offset, chunk.flags, chunk.key, chunk.payloadLength));
+                offset += data.length;
+            }
+            result.length = offset;
+        }
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return result;
+    }
+
+    private static byte[] readChunk(RandomAccessFile in, Chunk chunk) throws IOException
+    {
+        in.seek(chunk.offset);
+        in.readByte();
+        in.readByte();
+        int keyLength = in.readInt();
+        int payloadLength = in.readInt();
+        byte[] key = new byte[keyLength];
+        in.readFully(key);
+        // The file might have been compacted by another instance since it was indexed
+        if (payloadLength != chunk.payloadLength || !Arrays.equals(key, chunk.key))
+            throw new IOException("Tool paths cache has been modified");
+        byte[] payload = new byte[payloadLength];
+        in.readFully(payload);
+        return payload;
+    }
+
+    private static void writeChunk(ByteArrayOutputStream buffer, byte kind, byte flags, byte[] key, byte[] payload) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(kind);
+        out.writeByte(flags);
+        out.writeInt(key.length);
+        out.writeInt(payload.length);
+        out.write(key);
+        out.write(payload);
+        out.flush();
+    }
+
+    private static void skipFully(DataInputStream in, int bytes) throws IOException
+    {
+        while (bytes > 0)
         {
-            try
+            int skipped = in.skipBytes(bytes);
+            if (skipped <= 0)
+                throw new EOFException();
+            bytes -= skipped;
+        }
+    }
+
+    private static byte getKind(Object key)
+    {
+        return key instanceof BoardToolpathsKey ? BOARD_TOOLPATHS : PANEL_TOOLPATHS;
+    }
+
+    private static byte[] encodeKey(Object key) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        if (key instanceof BoardToolpathsKey)
+        {
+            BoardToolpathsKey boardKey = (BoardToolpathsKey) key;
+            writeKey(out, boardKey.getParametersKey());
+            out.writeInt(boardKey.getBoards().length);
+            for (int i = 0; i < boardKey.getBoards().length; i++)
             {
-                FileOutputStream fos = new FileOutputStream(filename);
-                ObjectOutputStream oos = new ObjectOutputStream(fos);
-                oos.writeObject(cache);
-                oos.flush();
-                oos.close();
+                out.writeUTF(boardKey.getBoards()[i]);
+                out.writeInt(boardKey.getX()[i]);
+                out.writeInt(boardKey.getY()[i]);
             }
-            catch(IOException e)
+        }
+        else
+            writeKey(out, (ToolpathsCacheKey) key);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static void writeKey(DataOutputStream out, ToolpathsCacheKey key) throws IOException
+    {
+        out.writeInt(key.getLayerId());
+        out.writeInt(key.getToolDiameter());
+        out.writeInt(key.getAdditionalPasses());
+        out.writeInt(key.getAdditionalPassesOverlap());
+        out.writeBoolean(key.isAdditionalPassesAroundPadsOnly());
+        out.writeUTF(key.getToolpathEngine() == null ? "" : key.getToolpathEngine().name());
+        out.writeInt(key.getRubOutInitialOffset());
+        out.writeInt(key.getRubOutOverlap());
+    }
+
+    private static Object decodeKey(byte kind, byte[] data) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        ToolpathsCacheKey key = readKey(in);
+        if (kind == PANEL_TOOLPATHS)
+            return key;
+        if (kind != BOARD_TOOLPATHS)
+            throw new IOException("Unknown tool paths cache entry: " + kind);
+
+        int count = in.readInt();
+        String[] boards = new String[count];
+        int[] x = new int[count];
+        int[] y = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            boards[i] = in.readUTF();
+            x[i] = in.readInt();
+            y[i] = in.readInt();
+        }
+        return new BoardToolpathsKey(key, boards, x, y);
+    }
+
+    private static ToolpathsCacheKey readKey(DataInputStream in) throws IOException
+    {
+        int layerId = in.readInt();
+        int toolDiameter = in.readInt();
+        int additionalPasses = in.readInt();
+        int additionalPassesOverlap = in.readInt();
+        boolean additionalPassesAroundPadsOnly = in.readBoolean();
+        String engine = in.readUTF();
+        int rubOutInitialOffset = in.readInt();
+        int rubOutOverlap = in.readInt();
+        return new ToolpathsCacheKey(layerId, toolDiameter, additionalPasses, additionalPassesOverlap, additionalPassesAroundPadsOnly,
+                engine.isEmpty() ? null : ToolpathEngine.valueOf(engine), rubOutInitialOffset, rubOutOverlap);
+    }
+
+    /**
+     * Tool paths usually form chains, so each one is stored relatively to the end of the previous one
+     */
+    static byte[] encodeToolpaths(List<Toolpath> toolpaths) throws ToolpathPersistingException
+    {
+        VarIntOutput out = new VarIntOutput();
+        out.writeUnsigned(toolpaths.size());
+        int x = 0;
+        int y = 0;
+        int diameter = 0;
+        for (Toolpath toolpath : toolpaths)
+        {
+            if (!(toolpath instanceof LinearToolpath) && !(toolpath instanceof CircularToolpath))
+                throw new ToolpathPersistingException("Unsupported tool path: " + toolpath.getClass().getSimpleName());
+            CuttingToolpath t = (CuttingToolpath) toolpath;
+            Curve curve = t.getCurve();
+            int type = toolpath.isEnabled() ? 0 : TYPE_DISABLED;
+            if (curve instanceof Arc)
+                type |= TYPE_CIRCULAR | (((Arc) curve).isClockwise() ? TYPE_CLOCKWISE : 0);
+            out.writeUnsigned(type);
+            out.writeSigned(t.getToolDiameter() - diameter);
+            out.writeSigned(curve.getFrom().getX() - x);
+            out.writeSigned(curve.getFrom().getY() - y);
+            out.writeSigned(curve.getTo().getX() - curve.getFrom().getX());
+            out.writeSigned(curve.getTo().getY() - curve.getFrom().getY());
+            if (curve instanceof Arc)
             {
-                throw new ToolpathPersistingException("Error saving toolpaths to file", e);
+                Arc arc = (Arc) curve;
+                out.writeSigned(arc.getCenter().getX() - curve.getFrom().getX());
+                out.writeSigned(arc.getCenter().getY() - curve.getFrom().getY());
+                out.writeUnsigned(arc.getRadius());
             }
+            diameter = t.getToolDiameter();
+            x = curve.getTo().getX();
+            y = curve.getTo().getY();
+        }
+        return out.toByteArray();
+    }
+
+    static List<Toolpath> decodeToolpaths(byte[] data)
+    {
+        VarIntInput in = new VarIntInput(data);
+        int count = in.readUnsigned();
+        List<Toolpath> toolpaths = new ArrayList<>(count);
+        int x = 0;
+        int y = 0;
+        int diameter = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int type = in.readUnsigned();
+            diameter += in.readSigned();
+            Point from = new Point(x + in.readSigned(), y + in.readSigned());
+            Point to = new Point(from.getX() + in.readSigned(), from.getY() + in.readSigned());
+            Toolpath toolpath;
+            if ((type & TYPE_CIRCULAR) != 0)
+            {
+                Point center = new Point(from.getX() + in.readSigned(), from.getY() + in.readSigned());
+                toolpath = new CircularToolpath(diameter, from, to, center, in.readUnsigned(), (type & TYPE_CLOCKWISE) != 0);
+            }
+            else
+                toolpath = new LinearToolpath(diameter, from, to);
+            toolpath.setEnabled((type & TYPE_DISABLED) == 0);
+            toolpaths.add(toolpath);
+            x = to.getX();
+            y = to.getY();
+        }
+        return toolpaths;
+    }
+
+    private static byte[] deflate(byte[] data)
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished())
+            out.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data) throws DataFormatException
+    {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+        byte[] buffer = new byte[8192];
+        while (!inflater.finished())
+        {
+            int n = inflater.inflate(buffer);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                throw new DataFormatException("Truncated tool paths chunk");
+            out.write(buffer, 0, n);
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    private static class VarIntOutput
+    {
+        private byte[] data = new byte[256];
+        private int length;
+
+        private void writeUnsigned(int value)
+        {
+            if (length + 5 > data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+            while ((value & ~0x7F) != 0)
+            {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        private void writeSigned(int value)
+        {
+            writeUnsigned((value << 1) ^ (value >> 31));
+        }
+
+        private byte[] toByteArray()
+        {
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    private static class VarIntInput
+    {
+        private byte[] data;
+        private int position;
+
+        private VarIntInput(byte[] data)
+        {
+            this.data = data;
+        }
+
+        private int readUnsigned()
+        {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            }
+            while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private int readSigned()
+        {
+            int value = readUnsigned();
+            return (value >>> 1) ^ -(value & 1);
         }
     }
 }
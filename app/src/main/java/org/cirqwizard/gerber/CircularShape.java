@@ -120,15 +120,34 @@ public class CircularShape extends InterpolatingShape
 
     @Override
     public void render(Graphics2D g, double inflation)
+    {
+        g.setStroke(getStroke(inflation));
+        g.draw(getPath());
+    }
+
+    @Override
+    public Shape getShape(double inflation)
+    {
+        return getStroke(inflation).createStrokedShape(getPath());
+    }
+
+    private BasicStroke getStroke(double inflation)
     {
         int cap = getAperture() instanceof CircularAperture ? BasicStroke.CAP_ROUND : BasicStroke.CAP_SQUARE;
         double width = Math.max(getAperture().getWidth() + inflation * 2, 0);
-        g.setStroke(new BasicStroke((float) width, cap, BasicStroke.JOIN_ROUND));
-        g.draw(new Arc2D.Double(getArc().getCenter().getX() - getArc().getRadius(),
+        return new BasicStroke((float) width, cap, BasicStroke.JOIN_ROUND);
+    }
+
+    /**
+     * Center line of the shape, the path its aperture is dragged along
+     */
+    Arc2D getPath()
+    {
+        return new Arc2D.Double(getArc().getCenter().getX() - getArc().getRadius(),
                 getArc().getCenter().getY() - getArc().getRadius(),
                 getArc().getRadius() * 2, getArc().getRadius() * 2,
                 -Math.toDegrees(getArc().getStart()),
-                Math.toDegrees(getArc().getAngle()) * (getArc().isClockwise() ? 1 : -1), Arc2D.OPEN));
+                Math.toDegrees(getArc().getAngle()) * (getArc().isClockwise() ? 1 : -1), Arc2D.OPEN);
     }
 
     @Override
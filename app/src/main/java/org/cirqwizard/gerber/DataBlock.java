@@ -14,88 +14,152 @@ This program is free software: you can redistribute it and/or modify
 
 package org.cirqwizard.gerber;
 
+/**
+ * Words of a gerber data block. Only the first occurrence of X, Y, G, D and M words is taken into account,
+ * while I and J are overwritten by subsequent words. Instances are reused between blocks.
+ */
 public class DataBlock
 {
-    private Integer x;
-    private Integer y;
-    private Integer i;
-    private Integer j;
-    private Integer g;
-    private Integer d;
-    private Integer m;
+    private int x;
+    private int y;
+    private int i;
+    private int j;
+    private int g;
+    private int d;
+    private int m;
+
+    private boolean hasX;
+    private boolean hasY;
+    private boolean hasI;
+    private boolean hasJ;
+    private boolean hasG;
+    private boolean hasD;
+    private boolean hasM;
+
+    public void clear()
+    {
+        hasX = hasY = hasI = hasJ = hasG = hasD = hasM = false;
+    }
+
+    public boolean hasX()
+    {
+        return hasX;
+    }
 
-    public Integer getX()
+    public int getX()
     {
         return x;
     }
 
-    public void setX(Integer x)
+    public void setX(int x)
+    {
+        if (hasX)
+            return;
+        this.x = x;
+        hasX = true;
+    }
+
+    public boolean hasY()
     {
-        if (this.x == null)
-            this.x = x;
+        return hasY;
     }
 
-    public Integer getY()
+    public int getY()
     {
         return y;
     }
 
-    public void setY(Integer y)
+    public void setY(int y)
+    {
+        if (hasY)
+            return;
+        this.y = y;
+        hasY = true;
+    }
+
+    public boolean hasI()
     {
-        if (this.y == null)
-            this.y = y;
+        return hasI;
     }
 
-    public Integer getI()
+    public int getI()
     {
         return i;
     }
 
-    public void setI(Integer i)
+    public void setI(int i)
     {
         this.i = i;
+        hasI = true;
     }
 
-    public Integer getJ()
+    public boolean hasJ()
+    {
+        return hasJ;
+    }
+
+    public int getJ()
     {
         return j;
     }
 
-    public void setJ(Integer j)
+    public void setJ(int j)
     {
         this.j = j;
+        hasJ = true;
+    }
+
+    public boolean hasG()
+    {
+        return hasG;
     }
 
-    public Integer getG()
+    public int getG()
     {
         return g;
     }
 
-    public void setG(Integer g)
+    public void setG(int g)
     {
-        if (this.g == null)
-            this.g = g;
+        if (hasG)
+            return;
+        this.g = g;
+        hasG = true;
     }
 
-    public Integer getD()
+    public boolean hasD()
+    {
+        return hasD;
+    }
+
+    public int getD()
     {
         return d;
     }
 
-    public void setD(Integer d)
+    public void setD(int d)
+    {
+        if (hasD)
+            return;
+        this.d = d;
+        hasD = true;
+    }
+
+    public boolean hasM()
     {
-        if (this.d == null)
-            this.d = d;
+        return hasM;
     }
 
-    public Integer getM()
+    public int getM()
     {
         return m;
     }
 
-    public void setM(Integer m)
+    public void setM(int m)
     {
-        if (this.m == null)
-            this.m = m;
+        if (hasM)
+            return;
+        this.m = m;
+        hasM = true;
     }
 }
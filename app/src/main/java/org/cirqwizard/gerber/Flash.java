@@ -22,6 +22,8 @@ import org.cirqwizard.gerber.appertures.macro.*;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class Flash extends GerberPrimitive
@@ -81,19 +83,51 @@ public class Flash extends GerberPrimitive
     @Override
     public void render(Graphics2D g, double inflation)
     {
+        for (Part part : getParts(inflation))
+        {
+            if (part.stroke == null)
+                g.fill(part.shape);
+            else
+            {
+                g.setStroke(part.stroke);
+                g.draw(part.shape);
+            }
+        }
+    }
+
+    @Override
+    public Shape getShape(double inflation)
+    {
+        List<Part> parts = getParts(inflation);
+        if (parts.size() == 1 && !(getAperture() instanceof ApertureMacro))
+            return parts.get(0).getOutline();
+        Area area = new Area();
+        for (Part part : parts)
+            area.add(new Area(part.getOutline()));
+        // Macro primitives have no inflation of their own, so the combined outline is offset as a whole
+        return getAperture() instanceof ApertureMacro ? inflate(area, inflation, BasicStroke.JOIN_ROUND) : area;
+    }
+
+    /**
+     * Shapes the flash consists of, rasterized one by one and united into its outline.
+     * Macros are made of their primitives at nominal size.
+     */
+    private List<Part> getParts(double inflation)
+    {
+        List<Part> parts = new ArrayList<>();
         if (getAperture() instanceof CircularAperture)
         {
             double d = Math.max(((CircularAperture)getAperture()).getDiameter() + inflation * 2, 0);
             double r = d / 2;
-            g.fill(new Ellipse2D.Double(getX() - r, getY() - r, d, d));
+            parts.add(new Part(new Ellipse2D.Double(getX() - r, getY() - r, d, d), null));
         }
         else if (getAperture() instanceof RectangularAperture)
         {
             RectangularAperture aperture = (RectangularAperture)getAperture();
             double w = Math.max(aperture.getDimensions()[0] + inflation * 2, 0);
             double h = Math.max(aperture.getDimensions()[1] + inflation * 2, 0);
-            g.fill(new Rectangle2D.Double(getX() - aperture.getDimensions()[0] / 2 - inflation,
-                    getY() - aperture.getDimensions()[1] / 2 - inflation, w, h));
+            parts.add(new Part(new Rectangle2D.Double(getX() - aperture.getDimensions()[0] / 2 - inflation,
+                    getY() - aperture.getDimensions()[1] / 2 - inflation, w, h), null));
         }
         else if (getAperture() instanceof OctagonalAperture)
         {
@@ -111,7 +145,8 @@ public class Flash extends GerberPrimitive
             polygon.lineTo(-edgeOffset + flashX, -centerOffset + flashY);
             polygon.lineTo(edgeOffset + flashX, -centerOffset + flashY);
             polygon.lineTo(centerOffset + flashX, -edgeOffset + flashY);
-            g.fill(polygon);
+            polygon.closePath();
+            parts.add(new Part(polygon, null));
         }
         else if (getAperture() instanceof OvalAperture)
         {
@@ -129,9 +164,9 @@ public class Flash extends GerberPrimitive
             double rectWidth =  aperture.isHorizontal() ? l : width;
             double rectHeight =  aperture.isHorizontal() ? height : l;
 
-            g.fill(new Ellipse2D.Double(flashX - xOffset - d / 2, flashY + yOffset - d / 2, d, d));
-            g.fill(new Ellipse2D.Double(flashX + xOffset - d / 2, flashY - yOffset - d / 2, d, d));
-            g.fill(new Rectangle2D.Double(rectX, rectY, rectWidth, rectHeight));
+            parts.add(new Part(new Ellipse2D.Double(flashX - xOffset - d / 2, flashY + yOffset - d / 2, d, d), null));
+            parts.add(new Part(new Ellipse2D.Double(flashX + xOffset - d / 2, flashY - yOffset - d / 2, d, d), null));
+            parts.add(new Part(new Rectangle2D.Double(rectX, rectY, rectWidth, rectHeight), null));
         }
         else if (getAperture() instanceof ApertureMacro)
         {
@@ -141,61 +176,61 @@ public class Flash extends GerberPrimitive
                 if (p instanceof MacroCenterLine)
                 {
                     MacroCenterLine centerLine = (MacroCenterLine) p;
-                    org.cirqwizard.geom.Point from = centerLine.getFrom().add(getPoint());
-                    org.cirqwizard.geom.Point to = centerLine.getTo().add(getPoint());
-                    g.setStroke(new BasicStroke(centerLine.getHeight(), BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
-                    g.draw(new Line2D.Float(from.getX(), from.getY(), to.getX(), to.getY()));
+                    Point from = centerLine.getFrom().add(getPoint());
+                    Point to = centerLine.getTo().add(getPoint());
+                    parts.add(new Part(new Line2D.Float(from.getX(), from.getY(), to.getX(), to.getY()),
+                            new BasicStroke(centerLine.getHeight(), BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL)));
                 }
                 else if (p instanceof MacroVectorLine)
                 {
                     MacroVectorLine vectorLine = (MacroVectorLine) p;
-                    org.cirqwizard.geom.Point from = vectorLine.getTranslatedStart().add(getPoint());
-                    org.cirqwizard.geom.Point to = vectorLine.getTranslatedEnd().add(getPoint());
-                    g.setStroke(new BasicStroke(vectorLine.getWidth(), BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
-                    g.draw(new Line2D.Float(from.getX(), from.getY(), to.getX(), to.getY()));
+                    Point from = vectorLine.getTranslatedStart().add(getPoint());
+                    Point to = vectorLine.getTranslatedEnd().add(getPoint());
+                    parts.add(new Part(new Line2D.Float(from.getX(), from.getY(), to.getX(), to.getY()),
+                            new BasicStroke(vectorLine.getWidth(), BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL)));
                 }
                 else if (p instanceof MacroCircle)
                 {
                     MacroCircle circle = (MacroCircle) p;
                     double d = circle.getDiameter();
                     double r = d / 2;
-                    org.cirqwizard.geom.Point point = circle.getCenter().add(getPoint());
-                    g.fill(new Ellipse2D.Double(point.getX() - r, point.getY() - r, d, d));
-                }
-                else if (p instanceof MacroOutline)
-                {
-                    MacroOutline outline = (MacroOutline) p;
-                    double x = getX();
-                    double y = getY();
-
-                    Path2D polygon = new GeneralPath();
-                    org.cirqwizard.geom.Point point = outline.getTranslatedPoints().get(0);
-                    polygon.moveTo(point.getX() + x, point.getY() + y);
-                    for (int i = 1; i < outline.getTranslatedPoints().size(); i++)
-                    {
-                        point = outline.getTranslatedPoints().get(i);
-                        polygon.lineTo(point.getX()  + x, point.getY() + y);
-                    }
-                    g.fill(polygon);
+                    Point point = circle.getCenter().add(getPoint());
+                    parts.add(new Part(new Ellipse2D.Double(point.getX() - r, point.getY() - r, d, d), null));
                 }
-                else if (p instanceof MacroPolygon)
+                else if (p instanceof MacroOutline || p instanceof MacroPolygon)
                 {
-                    MacroPolygon poly = (MacroPolygon) p;
-                    double x = getX();
-                    double y = getY();
-
+                    List<Point> points = p instanceof MacroOutline ?
+                            ((MacroOutline) p).getTranslatedPoints() : ((MacroPolygon) p).getPoints();
                     Path2D polygon = new GeneralPath();
-                    org.cirqwizard.geom.Point point = poly.getPoints().get(0);
-                    polygon.moveTo(point.getX() + x, point.getY() + y);
-                    for (int i = 1; i < poly.getPoints().size(); i++)
-                    {
-                        point = poly.getPoints().get(i);
-                        polygon.lineTo(point.getX()  + x, point.getY() + y);
-                    }
-                    g.fill(polygon);
+                    polygon.moveTo(points.get(0).getX() + getX(), points.get(0).getY() + getY());
+                    for (int i = 1; i < points.size(); i++)
+                        polygon.lineTo(points.get(i).getX() + getX(), points.get(i).getY() + getY());
+                    polygon.closePath();
+                    parts.add(new Part(polygon, null));
                 }
             }
         }
+        return parts;
+    }
+
+    /**
+     * Shape which is either filled or, if stroke is set, drawn with the stroke
+     */
+    private static class Part
+    {
+        private Shape shape;
+        private BasicStroke stroke;
+
+        private Part(Shape shape, BasicStroke stroke)
+        {
+            this.shape = shape;
+            this.stroke = stroke;
+        }
+
+        private Shape getOutline()
+        {
+            return stroke == null ? shape : stroke.createStrokedShape(shape);
+        }
     }
 
     @Override
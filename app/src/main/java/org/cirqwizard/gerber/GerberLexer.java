@@ -0,0 +1,194 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.gerber;
+
+import org.cirqwizard.io.AsciiInput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Splits gerber input into blocks terminated by '*' and breaks data blocks into words (a letter followed by
+ * an optional sign and digits) without creating intermediate strings.
+ */
+public class GerberLexer
+{
+    // Longest digit sequence which is guaranteed to fit into long
+    private final static int MAX_DIGITS = 18;
+
+    private AsciiInput input;
+
+    private byte[] block = new byte[256];
+    private int blockLength;
+    private boolean parameterMode;
+    private boolean delimiterPassed;
+
+    private int wordPosition;
+    private long wordDigits;
+    private int wordDigitCount;
+    private boolean wordNegative;
+
+    public GerberLexer(AsciiInput input)
+    {
+        this.input = input;
+    }
+
+    public GerberLexer(InputStream inputStream)
+    {
+        this(AsciiInput.of(inputStream));
+    }
+
+    public GerberLexer(Reader reader)
+    {
+        this(AsciiInput.of(reader));
+    }
+
+    /**
+     * Reads next non-empty block, skipping whitespace
+     * @return false when the input is exhausted
+     */
+    public boolean nextBlock() throws IOException
+    {
+        blockLength = 0;
+        wordPosition = 0;
+        delimiterPassed = false;
+        boolean inCommentSection = false;
+        int c;
+        while ((c = input.read()) != -1)
+        {
+            if (c == '%' && !inCommentSection)
+            {
+                parameterMode = !parameterMode;
+                delimiterPassed = true;
+            }
+            else if (c == '*')
+            {
+                if (blockLength > 0)
+                    break;
+            }
+            else if (!isWhitespace(c))
+                append(c);
+
+            if (blockLength == 3 && block[0] == 'G' && block[1] == '0' && block[2] == '4')
+                inCommentSection = true;
+        }
+        return blockLength > 0;
+    }
+
+    /**
+     * Whether the current block is enclosed in '%' delimiters
+     */
+    public boolean isParameterMode()
+    {
+        return parameterMode;
+    }
+
+    /**
+     * Whether a '%' delimiter was met while reading the current block
+     */
+    public boolean isDelimiterPassed()
+    {
+        return delimiterPassed;
+    }
+
+    public String getBlock()
+    {
+        return input.decode(block, 0, blockLength);
+    }
+
+    /**
+     * Advances to the next word of the current block. Characters not forming a word are skipped.
+     * @return word letter or -1 if there are no more words in the block
+     */
+    public int nextWord()
+    {
+        while (wordPosition < blockLength)
+        {
+            int letter = block[wordPosition++];
+            if (letter != 'G' && letter != 'M' && letter != 'D' && letter != 'X' && letter != 'Y' && letter != 'I' && letter != 'J')
+                continue;
+            int i = wordPosition;
+            boolean negative = false;
+            if (i < blockLength && (block[i] == '-' || block[i] == '+'))
+                negative = block[i++] == '-';
+            if (i >= blockLength || !isDigit(block[i]))
+                continue;
+
+            long digits = 0;
+            int count = 0;
+            for (; i < blockLength && isDigit(block[i]); i++, count++)
+            {
+                if (count < MAX_DIGITS)
+                    digits = digits * 10 + block[i] - '0';
+            }
+            wordDigits = digits;
+            wordDigitCount = count;
+            wordNegative = negative;
+            wordPosition = i;
+            return letter;
+        }
+        return -1;
+    }
+
+    /**
+     * Digits of the current word as a number, without sign
+     */
+    public long getDigits() throws GerberParsingException
+    {
+        if (wordDigitCount > MAX_DIGITS)
+            throw new GerberParsingException("Number is too long: " + getBlock());
+        return wordDigits;
+    }
+
+    public int getDigitCount()
+    {
+        return wordDigitCount;
+    }
+
+    public boolean isNegative()
+    {
+        return wordNegative;
+    }
+
+    public int getIntValue() throws GerberParsingException
+    {
+        long value = getDigits();
+        if (value > Integer.MAX_VALUE)
+            throw new GerberParsingException("Number is out of range: " + getBlock());
+        return wordNegative ? (int) -value : (int) value;
+    }
+
+    private void append(int c)
+    {
+        if (blockLength == block.length)
+        {
+            byte[] newBlock = new byte[block.length * 2];
+            System.arraycopy(block, 0, newBlock, 0, blockLength);
+            block = newBlock;
+        }
+        block[blockLength++] = (byte) c;
+    }
+
+    private static boolean isDigit(int c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    // Same as Character.isWhitespace() for ASCII characters
+    private static boolean isWhitespace(int c)
+    {
+        return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1C && c <= 0x1F);
+    }
+}
@@ -18,10 +18,12 @@ import org.cirqwizard.geom.Arc;
 import org.cirqwizard.gerber.appertures.*;
 import org.cirqwizard.gerber.appertures.macro.*;
 import org.cirqwizard.geom.Point;
+import org.cirqwizard.io.AsciiInput;
 import org.cirqwizard.logging.LoggerFactory;
 import org.cirqwizard.settings.ApplicationConstants;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -35,7 +37,6 @@ public class GerberParser
 {
     private ArrayList<GerberPrimitive> elements = new ArrayList<>();
 
-    private boolean parameterMode = false;
     private ApertureMacro apertureMacro = null;
     private HashMap<String, ApertureMacro> apertureMacros = new HashMap<>();
     private Region region = null;
@@ -48,8 +49,10 @@ public class GerberParser
     private boolean omitLeadingZeros = true;
     private int integerPlaces = 2;
     private int decimalPlaces = 4;
+    private double decimalScale = 10_000;
 
-    private Reader reader;
+    private GerberLexer lexer;
+    private DataBlock dataBlock = new DataBlock();
 
     private enum InterpolationMode
     {
@@ -83,20 +86,31 @@ public class GerberParser
 
     public GerberParser(Reader reader)
     {
-        this.reader = reader;
+        this.lexer = new GerberLexer(reader);
+    }
+
+    public GerberParser(InputStream inputStream)
+    {
+        this.lexer = new GerberLexer(inputStream);
+    }
+
+    public GerberParser(AsciiInput input)
+    {
+        this.lexer = new GerberLexer(input);
     }
 
     public List<GerberPrimitive> parse() throws IOException
     {
-        String str;
-        while ((str = readDataBlock()) != null)
+        while (lexer.nextBlock())
         {
+            if (lexer.isDelimiterPassed())
+                apertureMacro = null;
             try
             {
-                if (parameterMode)
-                    parseParameter(str);
+                if (lexer.isParameterMode())
+                    parseParameter(lexer.getBlock());
                 else
-                    processDataBlock(parseDataBlock(str));
+                    processDataBlock(parseDataBlock());
             }
             catch (GerberParsingException e)
             {
@@ -107,34 +121,6 @@ public class GerberParser
         return elements;
     }
 
-    private String readDataBlock() throws IOException
-    {
-        StringBuilder sb = new StringBuilder();
-        int i;
-        boolean inCommentSection = false;
-        while ((i = reader.read()) != -1)
-        {
-            if (i == '%' && !inCommentSection)
-            {
-                parameterMode = !parameterMode;
-                apertureMacro = null;
-            }
-            else if (i == '*')
-            {
-                if (sb.length() > 0)
-                    break;
-            }
-            else if (!Character.isWhitespace(i))
-                sb.append((char)i);
-
-            if (sb.length() == 3 && sb.toString().equals("G04"))
-                inCommentSection = true;
-        }
-        if (sb.length() == 0)
-            return null;
-        return sb.toString();
-    }
-
     private void parseParameter(String parameter) throws GerberParsingException
     {
         if (apertureMacro != null)
@@ -168,6 +154,9 @@ public class GerberParser
         omitLeadingZeros = str.charAt(2) == 'L';
         integerPlaces = str.charAt(str.indexOf('X') + 1) - '0';
         decimalPlaces = str.charAt(str.indexOf('X') + 2) - '0';
+        decimalScale = 1;
+        for (int i = 0; i < decimalPlaces; i++)
+            decimalScale *= 10;
     }
 
     private void parseLevelPolarity(String str) throws GerberParsingException
@@ -267,14 +256,18 @@ public class GerberParser
         }
     }
 
+    private final static Pattern PATTERN_APERTURE_MACRO_REFERENCE = Pattern.compile("(\\d+)(.*)");
+    private final static Pattern PATTERN_APERTURE_TYPE = Pattern.compile("(\\d+)([CORP8]+)");
+    private final static Pattern PATTERN_APERTURE_DIAMETER = Pattern.compile(".*,(\\d*.\\d*)");
+    private final static Pattern PATTERN_APERTURE_DIMENSIONS = Pattern.compile(".*,(\\d*.\\d*)X(\\d*.\\d*)");
+
     private void parseApertureDefinition(String str) throws GerberParsingException
     {
         if (!str.startsWith("D"))
             throw new GerberParsingException("Invalid aperture definition: " + str);
 
         str = str.substring(1);
-        Pattern pattern = Pattern.compile("(\\d+)(.*)");
-        Matcher matcher = pattern.matcher(str);
+        Matcher matcher = PATTERN_APERTURE_MACRO_REFERENCE.matcher(str);
         if (matcher.find())
         {
             ApertureMacro macro = apertureMacros.get(matcher.group(2));
@@ -285,8 +278,7 @@ public class GerberParser
             }
         }
 
-        pattern = Pattern.compile("(\\d+)([CORP8]+)");
-        matcher = pattern.matcher(str);
+        matcher = PATTERN_APERTURE_TYPE.matcher(str);
         if (!matcher.find())
             throw new GerberParsingException("Aperture definition incorrectly formatted: " + str);
 
@@ -295,8 +287,7 @@ public class GerberParser
 
         if (aperture.equals("C"))
         {
-            pattern = Pattern.compile(".*,(\\d*.\\d*)");
-            matcher = pattern.matcher(str);
+            matcher = PATTERN_APERTURE_DIAMETER.matcher(str);
             if (!matcher.find())
                 throw new GerberParsingException("Invalid definition of circular aperture");
             int diameter = (int)(Double.valueOf(matcher.group(1)) * unitConversionRatio);
@@ -304,8 +295,7 @@ public class GerberParser
         }
         else if (aperture.equals("R"))
         {
-            pattern = Pattern.compile(".*,(\\d*.\\d*)X(\\d*.\\d*)");
-            matcher = pattern.matcher(str);
+            matcher = PATTERN_APERTURE_DIMENSIONS.matcher(str);
             if (!matcher.find())
                 throw new GerberParsingException("Invalid definition of rectangular aperture");
             int width = (int)(Double.valueOf(matcher.group(1)) * unitConversionRatio);
@@ -314,8 +304,7 @@ public class GerberParser
         }
         else if (aperture.equals("OC8"))
         {
-            pattern = Pattern.compile(".*,(\\d*.\\d*)");
-            matcher = pattern.matcher(str);
+            matcher = PATTERN_APERTURE_DIAMETER.matcher(str);
             if (!matcher.find())
                 throw new GerberParsingException("Invalid definition of octagonal aperture");
             int diameter = (int)(Double.valueOf(matcher.group(1)) * unitConversionRatio);
@@ -323,8 +312,7 @@ public class GerberParser
         }
         else if (aperture.equals("O"))
         {
-            pattern = Pattern.compile(".*,(\\d*.\\d*)X(\\d*.\\d*)");
-            matcher = pattern.matcher(str);
+            matcher = PATTERN_APERTURE_DIMENSIONS.matcher(str);
             if (!matcher.find())
                 throw new GerberParsingException("Invalid definition of oval aperture");
             int width = (int) (Double.valueOf(matcher.group(1)) * unitConversionRatio);
@@ -339,44 +327,43 @@ public class GerberParser
             throw new GerberParsingException("Unknown aperture");
     }
 
-    private DataBlock parseDataBlock(String str)
+    private DataBlock parseDataBlock() throws GerberParsingException
     {
-        DataBlock dataBlock = new DataBlock();
-        Pattern pattern = Pattern.compile("([GMDXYIJ])([+-]?\\d+)");
-        Matcher matcher = pattern.matcher(str);
-        int i = 0;
-        while (matcher.find(i))
+        dataBlock.clear();
+        int letter;
+        while ((letter = lexer.nextWord()) != -1)
         {
-            switch (matcher.group(1).charAt(0))
+            switch (letter)
             {
-                case 'G': dataBlock.setG(Integer.parseInt(matcher.group(2))); break;
-                case 'M': dataBlock.setM(Integer.parseInt(matcher.group(2))); break;
-                case 'D': dataBlock.setD(Integer.parseInt(matcher.group(2))); break;
-                case 'X': dataBlock.setX(convertCoordinates(matcher.group(2))); break;
-                case 'Y': dataBlock.setY(convertCoordinates(matcher.group(2))); break;
-                case 'I': dataBlock.setI(convertCoordinates(matcher.group(2))); break;
-                case 'J': dataBlock.setJ(convertCoordinates(matcher.group(2))); break;
+                case 'G': dataBlock.setG(lexer.getIntValue()); break;
+                case 'M': dataBlock.setM(lexer.getIntValue()); break;
+                case 'D': dataBlock.setD(lexer.getIntValue()); break;
+                case 'X': dataBlock.setX(convertCoordinates()); break;
+                case 'Y': dataBlock.setY(convertCoordinates()); break;
+                case 'I': dataBlock.setI(convertCoordinates()); break;
+                case 'J': dataBlock.setJ(convertCoordinates()); break;
             }
-            i = matcher.end();
         }
         return dataBlock;
     }
 
-    private int convertCoordinates(String str)
+    private int convertCoordinates() throws GerberParsingException
     {
-        boolean negative = str.startsWith("-");
-        if (str.startsWith("-") || str.startsWith("+"))
-            str = str.substring(1);
-        while (str.length() < integerPlaces + decimalPlaces)
-            str = omitLeadingZeros ? '0' + str : str + '0';
-        str = str.substring(0, str.length() - decimalPlaces) + "." + str.substring(str.length() - decimalPlaces, str.length());
-
-        return (int)(Double.valueOf(str) * unitConversionRatio) * (negative ? -1 : 1);
+        long digits = lexer.getDigits();
+        // Omitted trailing zeros are restored up to the full coordinate length
+        if (!omitLeadingZeros)
+        {
+            for (int i = lexer.getDigitCount(); i < integerPlaces + decimalPlaces; i++)
+                digits *= 10;
+        }
+
+        // Division is correctly rounded, so the result is exactly what parsing the decimal representation would give
+        return (int)(digits / decimalScale * unitConversionRatio) * (lexer.isNegative() ? -1 : 1);
     }
 
     private void processDataBlock(DataBlock dataBlock) throws GerberParsingException
     {
-        if (dataBlock.getG() != null)
+        if (dataBlock.hasG())
         {
             switch (dataBlock.getG())
             {
@@ -415,7 +402,7 @@ public class GerberParser
                     throw new GerberParsingException("Unknown gcode: " + dataBlock.getG());
             }
         }
-        if (dataBlock.getM() != null)
+        if (dataBlock.hasM())
         {
             switch (dataBlock.getM())
             {
@@ -424,7 +411,7 @@ public class GerberParser
                     throw new GerberParsingException("Unknown mcode: " + dataBlock.getM());
             }
         }
-        if (dataBlock.getD() != null)
+        if (dataBlock.hasD())
         {
             switch (dataBlock.getD())
             {
@@ -439,14 +426,10 @@ public class GerberParser
             }
         }
 
-        if (dataBlock.getX() == null && dataBlock.getY() == null && dataBlock.getD() == null)
+        if (!dataBlock.hasX() && !dataBlock.hasY() && !dataBlock.hasD())
             return;
-        Integer newX = x;
-        if (dataBlock.getX() != null)
-            newX = dataBlock.getX();
-        Integer newY = y;
-        if (dataBlock.getY() != null)
-            newY = dataBlock.getY();
+        int newX = dataBlock.hasX() ? dataBlock.getX() : x;
+        int newY = dataBlock.hasY() ? dataBlock.getY() : y;
 
         GerberPrimitive primitive = null;
         if(exposureMode == ExposureMode.FLASH)
@@ -457,8 +440,8 @@ public class GerberParser
                 primitive = new LinearShape(x, y, newX, newY, aperture, polarity);
             else
             {
-                Integer i = dataBlock.getI() == null ? 0 : dataBlock.getI();
-                Integer j = dataBlock.getJ() == null ? 0 : dataBlock.getJ();
+                int i = dataBlock.hasI() ? dataBlock.getI() : 0;
+                int j = dataBlock.hasJ() ? dataBlock.getJ() : 0;
                 Point center = new Point(x + i, y + j);
                 if (arcQuadrantMode == ArcQuadrantMode.SINGLE_QUADRANT)
                 {
@@ -487,7 +470,7 @@ public class GerberParser
 
         if (region != null)
         {
-            if (exposureMode == ExposureMode.ON && (!newX.equals(x) || !newY.equals(y)))
+            if (exposureMode == ExposureMode.ON && (newX != x || newY != y))
                 region.addSegment(primitive);
         }
         else if (aperture != null)
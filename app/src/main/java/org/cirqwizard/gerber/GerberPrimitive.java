@@ -19,6 +19,7 @@ import org.cirqwizard.gerber.appertures.Aperture;
 import org.cirqwizard.layers.LayerElement;
 
 import java.awt.*;
+import java.awt.geom.Area;
 
 
 public abstract class GerberPrimitive implements LayerElement
@@ -47,6 +48,27 @@ public abstract class GerberPrimitive implements LayerElement
     public abstract Point getMax();
     public abstract void render(Graphics2D g, double inflation);
 
+    /**
+     * Outline of the primitive grown (or shrunk, if negative) by inflation, the same area render() fills
+     */
+    public abstract Shape getShape(double inflation);
+
+    /**
+     * Offsets arbitrary shape by tracing its outline with a pen of inflation radius
+     */
+    protected static Shape inflate(Shape shape, double inflation, int join)
+    {
+        if (inflation == 0)
+            return shape;
+        Area area = new Area(shape);
+        Area outline = new Area(new BasicStroke((float) Math.abs(inflation) * 2, BasicStroke.CAP_ROUND, join).createStrokedShape(shape));
+        if (inflation > 0)
+            area.add(outline);
+        else
+            area.subtract(outline);
+        return area;
+    }
+
     @Override
     public Object clone() throws CloneNotSupportedException
     {
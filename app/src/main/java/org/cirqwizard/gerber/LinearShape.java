@@ -87,13 +87,30 @@ public class LinearShape extends InterpolatingShape
 
     @Override
     public void render(Graphics2D g, double inflation)
+    {
+        g.setStroke(getStroke(inflation));
+        g.draw(getPath());
+    }
+
+    @Override
+    public Shape getShape(double inflation)
+    {
+        return getStroke(inflation).createStrokedShape(getPath());
+    }
+
+    private BasicStroke getStroke(double inflation)
     {
         int cap = getAperture() instanceof CircularAperture ? BasicStroke.CAP_ROUND : BasicStroke.CAP_SQUARE;
         double width = Math.max(getAperture().getWidth() + inflation * 2, 0);
-        g.setStroke(new BasicStroke((float) width, cap, BasicStroke.JOIN_ROUND));
-        g.draw(new Line2D.Double(getFrom().getX(), getFrom().getY(),
-                getTo().getX(), getTo().getY()));
+        return new BasicStroke((float) width, cap, BasicStroke.JOIN_ROUND);
+    }
 
+    /**
+     * Center line of the shape, the path its aperture is dragged along
+     */
+    Line2D getPath()
+    {
+        return new Line2D.Double(getFrom().getX(), getFrom().getY(), getTo().getX(), getTo().getY());
     }
 
     @Override
@@ -20,9 +20,7 @@ import org.cirqwizard.geom.Arc;
 import org.cirqwizard.geom.Point;
 
 import java.awt.*;
-import java.awt.geom.Arc2D;
 import java.awt.geom.GeneralPath;
-import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
 import java.util.ArrayList;
 import java.util.List;
@@ -80,29 +78,7 @@ public class Region extends GerberPrimitive
     @Override
     public void render(Graphics2D g, double inflation)
     {
-        Path2D polygon = new GeneralPath();
-
-        Point p = ((InterpolatingShape) getSegments().get(0)).getFrom();
-        polygon.moveTo(p.getX(), p.getY());
-        for (GerberPrimitive segment : getSegments())
-        {
-            if (segment instanceof LinearShape)
-            {
-                LinearShape linearShape = (LinearShape) segment;
-                polygon.lineTo(linearShape.getTo().getX(), linearShape.getTo().getY());
-            }
-            else if (segment instanceof CircularShape)
-            {
-                Arc arc = ((CircularShape) segment).getArc();
-                polygon.append(new Arc2D.Double(arc.getCenter().getX() - arc.getRadius(),
-                                arc.getCenter().getY() - arc.getRadius(),
-                                arc.getRadius() * 2, arc.getRadius() * 2,
-                                -Math.toDegrees(arc.getStart()),
-                                Math.toDegrees(arc.getAngle()) * (arc.isClockwise() ? 1 : -1), Arc2D.OPEN),
-                        true);
-            }
-        }
-        g.fill(polygon);
+        g.fill(getOutline());
 
         float width = (float) inflation * 2;
         if (width < 0)
@@ -112,22 +88,37 @@ public class Region extends GerberPrimitive
         }
         g.setStroke(new BasicStroke(width, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER));
         for (GerberPrimitive segment : getSegments())
+        {
+            if (segment instanceof LinearShape)
+                g.draw(((LinearShape) segment).getPath());
+            else if (segment instanceof CircularShape)
+                g.draw(((CircularShape) segment).getPath());
+        }
+    }
+
+    @Override
+    public Shape getShape(double inflation)
+    {
+        return inflate(getOutline(), inflation, BasicStroke.JOIN_MITER);
+    }
+
+    private Path2D getOutline()
+    {
+        Path2D polygon = new GeneralPath();
+        Point p = ((InterpolatingShape) getSegments().get(0)).getFrom();
+        polygon.moveTo(p.getX(), p.getY());
+        for (GerberPrimitive segment : getSegments())
         {
             if (segment instanceof LinearShape)
             {
                 LinearShape linearShape = (LinearShape) segment;
-                g.draw(new Line2D.Double(linearShape.getFrom().getX(), linearShape.getFrom().getY(),
-                        linearShape.getTo().getX(), linearShape.getTo().getY()));
+                polygon.lineTo(linearShape.getTo().getX(), linearShape.getTo().getY());
             }
             else if (segment instanceof CircularShape)
-            {
-                Arc arc = ((CircularShape) segment).getArc();
-                g.draw(new Arc2D.Double(arc.getCenter().getX() - arc.getRadius(), arc.getCenter().getY() - arc.getRadius(),
-                        arc.getRadius() * 2, arc.getRadius() * 2,
-                        -Math.toDegrees(arc.getStart()), Math.toDegrees(arc.getAngle()) * (arc.isClockwise() ? 1 : -1), Arc2D.OPEN));
-            }
+                polygon.append(((CircularShape) segment).getPath(), true);
         }
-
+        polygon.closePath();
+        return polygon;
     }
 
     @Override
@@ -0,0 +1,333 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.io;
+
+import org.cirqwizard.logging.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.logging.Level;
+
+/**
+ * Byte oriented input for parsers of ASCII based formats. Large files are memory mapped and scanned in place,
+ * other sources are read in chunks into a reusable buffer. Non-ASCII bytes are passed through untouched and
+ * only decoded with {@link #getCharset()} when a parser turns them into a string.
+ */
+public abstract class AsciiInput implements Closeable
+{
+    // Smaller files are cheaper to read than to map
+    public final static int MAP_THRESHOLD = 1024 * 1024;
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    protected ByteBuffer buffer;
+    private Charset charset;
+
+    protected AsciiInput(ByteBuffer buffer, Charset charset)
+    {
+        this.buffer = buffer;
+        this.charset = charset;
+    }
+
+    /**
+     * Opens a file, mapping it into memory if it is large enough. Files are expected in platform's default
+     * encoding, the same way they were read by FileReader.
+     */
+    public static AsciiInput open(File file) throws IOException
+    {
+        return open(file, null);
+    }
+
+    /**
+     * Opens a file and feeds its whole content to the digest before it is parsed
+     * @param digest may be null if the content is not to be digested
+     */
+    public static AsciiInput open(File file, MessageDigest digest) throws IOException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File is too large: " + file);
+            AsciiInput input;
+            if (size < MAP_THRESHOLD)
+            {
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) != -1);
+                buffer.flip();
+                input = new BufferInput(buffer);
+            }
+            else
+                input = new MappedInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            if (digest != null)
+                digest.update(input.buffer.duplicate());
+            return input;
+        }
+        finally
+        {
+            // Mapping stays valid after its channel is closed
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Input over characters already decoded by the reader, which are encoded back as UTF-8. Unpaired surrogates
+     * are replaced with '?'.
+     */
+    public static AsciiInput of(Reader reader)
+    {
+        return new ReaderInput(reader);
+    }
+
+    public static AsciiInput of(InputStream inputStream)
+    {
+        return new StreamInput(inputStream);
+    }
+
+    /**
+     * @return next byte or -1 if the input is exhausted
+     */
+    public final int read() throws IOException
+    {
+        if (!buffer.hasRemaining() && !fill())
+            return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Reads next line, terminated by "\n", "\r" or "\r\n", the same way as BufferedReader does
+     * @return false if the input is exhausted
+     */
+    public boolean readLine(AsciiLine line) throws IOException
+    {
+        line.clear(charset);
+        int c = read();
+        if (c == -1)
+            return false;
+        while (c != -1 && c != '\n' && c != '\r')
+        {
+            line.append(c);
+            c = read();
+        }
+        if (c == '\r')
+        {
+            if (!buffer.hasRemaining())
+                fill();
+            if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n')
+                buffer.get();
+        }
+        return true;
+    }
+
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    public String decode(byte[] bytes, int offset, int length)
+    {
+        return new String(bytes, offset, length, charset);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        buffer = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Makes next portion of input available in the buffer
+     * @return false if there is nothing more to read
+     */
+    protected abstract boolean fill() throws IOException;
+
+    /**
+     * Releases memory mapping of the buffer without waiting for garbage collector. The buffer must not be accessed
+     * afterwards.
+     * @return false if the mapping could not be released and is left to garbage collector
+     */
+    public static boolean unmap(ByteBuffer mapped)
+    {
+        if (!mapped.isDirect())
+            return false;
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try
+            {
+                // Java 9 and later
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), mapped);
+            }
+            catch (NoSuchMethodException e)
+            {
+                // Java 8
+                Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(mapped);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+            return true;
+        }
+        catch (Exception e)
+        {
+            LoggerFactory.getApplicationLogger().log(Level.FINE, "Could not unmap file, it is released by garbage collector", e);
+            return false;
+        }
+    }
+
+    private static class BufferInput extends AsciiInput
+    {
+        private BufferInput(ByteBuffer buffer)
+        {
+            super(buffer, Charset.defaultCharset());
+        }
+
+        @Override
+        protected boolean fill()
+        {
+            return false;
+        }
+    }
+
+    private static class MappedInput extends AsciiInput
+    {
+        private MappedInput(MappedByteBuffer buffer)
+        {
+            super(buffer, Charset.defaultCharset());
+        }
+
+        @Override
+        protected boolean fill()
+        {
+            return false;
+        }
+
+        /**
+         * Unmaps the file right away, otherwise it stays locked on Windows until the buffer is collected and can't be
+         * overwritten when the board is exported again. The buffer must not be accessed afterwards.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            ByteBuffer mapped = buffer;
+            super.close();
+            unmap(mapped);
+        }
+    }
+
+    private static class StreamInput extends AsciiInput
+    {
+        private InputStream inputStream;
+        private byte[] bytes = new byte[BUFFER_SIZE];
+
+        private StreamInput(InputStream inputStream)
+        {
+            super(ByteBuffer.allocate(0), Charset.defaultCharset());
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        protected boolean fill() throws IOException
+        {
+            int length;
+            while ((length = inputStream.read(bytes)) == 0);
+            if (length < 0)
+                return false;
+            buffer = ByteBuffer.wrap(bytes, 0, length);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            super.close();
+            inputStream.close();
+        }
+    }
+
+    private static class ReaderInput extends AsciiInput
+    {
+        private Reader reader;
+        // Unpaired surrogates are replaced, the way String.getBytes() does
+        private CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder().
+                onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE * (int) Math.ceil(encoder.maxBytesPerChar()));
+        private boolean endOfInput;
+        private boolean flushed;
+
+        private ReaderInput(Reader reader)
+        {
+            super(ByteBuffer.allocate(0), StandardCharsets.UTF_8);
+            this.reader = reader;
+        }
+
+        @Override
+        protected boolean fill() throws IOException
+        {
+            while (!flushed)
+            {
+                if (!endOfInput && chars.hasRemaining())
+                {
+                    int length = reader.read(chars.array(), chars.position(), chars.remaining());
+                    if (length < 0)
+                        endOfInput = true;
+                    else
+                        chars.position(chars.position() + length);
+                }
+                chars.flip();
+                bytes.clear();
+                // A high surrogate at the end of the chunk stays in chars until its pair is read
+                CoderResult result = encoder.encode(chars, bytes, endOfInput);
+                chars.compact();
+                if (endOfInput && result.isUnderflow() && encoder.flush(bytes).isUnderflow())
+                    flushed = true;
+                bytes.flip();
+                if (bytes.hasRemaining())
+                {
+                    buffer = bytes;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            super.close();
+            reader.close();
+        }
+    }
+}
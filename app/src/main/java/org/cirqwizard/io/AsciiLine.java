@@ -0,0 +1,91 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.io;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Line of {@link AsciiInput} exposed to regular expressions without decoding. Each byte is one character,
+ * bytes outside of ASCII are seen as {@link #NON_ASCII}, so multi-byte characters can only be matched by
+ * patterns like \S or '.', which keep them whole. Subsequences, and thus matched groups, are decoded properly.
+ * Instances are reused from line to line.
+ */
+public final class AsciiLine implements CharSequence
+{
+    // Neither whitespace nor a line terminator for regular expressions
+    public final static char NON_ASCII = '\u00FF';
+
+    private byte[] bytes = new byte[256];
+    private int length;
+    private Charset charset = StandardCharsets.UTF_8;
+
+    void clear(Charset charset)
+    {
+        this.charset = charset;
+        length = 0;
+    }
+
+    void append(int c)
+    {
+        if (length == bytes.length)
+        {
+            byte[] newBytes = new byte[bytes.length * 2];
+            System.arraycopy(bytes, 0, newBytes, 0, length);
+            bytes = newBytes;
+        }
+        bytes[length++] = (byte) c;
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if (index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " is out of line of length " + length);
+        byte b = bytes[index];
+        return b >= 0 ? (char) b : NON_ASCII;
+    }
+
+    @Override
+    public String subSequence(int start, int end)
+    {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("Invalid range " + start + ".." + end + " of line of length " + length);
+        return new String(bytes, start, end - start, charset);
+    }
+
+    public boolean contentEquals(String str)
+    {
+        if (str.length() != length)
+            return false;
+        for (int i = 0; i < length; i++)
+        {
+            if (str.charAt(i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return subSequence(0, length);
+    }
+}
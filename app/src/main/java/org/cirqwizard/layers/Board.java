@@ -14,17 +14,28 @@ This program is free software: you can redistribute it and/or modify
 package org.cirqwizard.layers;
 
 import org.cirqwizard.excellon.ExcellonParser;
+import org.cirqwizard.generation.ProcessingPool;
+import org.cirqwizard.generation.toolpath.PPPoint;
 import org.cirqwizard.geom.Point;
 import org.cirqwizard.gerber.GerberParser;
+import org.cirqwizard.gerber.GerberPrimitive;
+import org.cirqwizard.io.AsciiInput;
+import org.cirqwizard.logging.LoggerFactory;
 import org.cirqwizard.pp.PPParser;
 import org.cirqwizard.settings.ImportSettings;
 import org.cirqwizard.settings.SettingsFactory;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 public class Board
@@ -34,9 +45,14 @@ public class Board
         TOP, BOTTOM, DRILLING, MILLING, SOLDER_PASTE_TOP, SOLDER_PASTE_BOTTOM, PLACEMENT_TOP, PLACEMENT_BOTTOM
     }
 
+    private final static String[] LAYER_EXTENSIONS = {".cmp", ".sol", ".drd", ".ncl", ".crc", ".crs", ".mnt"};
+
     private HashMap<LayerType, Layer> layers = new HashMap<>();
     private int width;
     private int height;
+    // Digests of layer files as they were read, keyed by extension
+    private Map<String, byte[]> fileDigests = new ConcurrentHashMap<>();
+    private String contentHash;
 
     public Layer getLayer(LayerType type)
     {
@@ -58,36 +74,82 @@ public class Board
         return height;
     }
 
+    /**
+     * Digest of all board files as they were loaded. Layers are moved to origin by extents of all of them,
+     * so a change in any file may move elements of the others.
+     * @return null if the digest could not be calculated
+     */
+    public String getContentHash()
+    {
+        return contentHash;
+    }
+
+    /**
+     * Loads layer files of the board. Every file is parsed as a separate task of the processing pool.
+     */
     public void loadLayers(String filename) throws IOException
     {
-        if (new File(filename + ".cmp").exists())
-            setLayer(LayerType.TOP, new Layer(new GerberParser(new FileReader(filename + ".cmp")).parse()));
-        if (new File(filename + ".sol").exists())
-            setLayer(LayerType.BOTTOM, new Layer(new GerberParser(new FileReader(filename + ".sol")).parse()));
         ImportSettings importSettings = SettingsFactory.getImportSettings();
+        int excellonIntegerPlaces = importSettings.getExcellonIntegerPlaces().getValue();
+        int excellonDecimalPlaces = importSettings.getExcellonDecimalPlaces().getValue();
+        BigDecimal excellonMultiplier = importSettings.getExcellonUnits().getValue().getMultiplier();
+        boolean excellonLeadingZeros = importSettings.getZeroesOmision().getValue().isLeadingZeros();
+        String[] centroidPatterns = {importSettings.getCentroidFileFormat().getValue().getTopRegex(),
+                importSettings.getCentroidFileFormat().getValue().getBottomRegex()};
+        BigDecimal centroidMultiplier = importSettings.getCentroidUnits().getValue().getMultiplier();
+
+        List<LayerLoader> loaders = new ArrayList<>();
+        addGerberLoader(loaders, LayerType.TOP, filename, ".cmp");
+        addGerberLoader(loaders, LayerType.BOTTOM, filename, ".sol");
         if (new File(filename + ".drd").exists())
-                setLayer(LayerType.DRILLING, new Layer(new ExcellonParser(importSettings.getExcellonIntegerPlaces().getValue(),
-                        importSettings.getExcellonDecimalPlaces().getValue(),
-                        importSettings.getExcellonUnits().getValue().getMultiplier(),
-                        importSettings.getZeroesOmision().getValue().isLeadingZeros(),
-                        new FileReader(filename + ".drd")).parse()));
-        if (new File(filename + ".ncl").exists())
-            setLayer(LayerType.MILLING, new Layer(new GerberParser(new FileReader(filename + ".ncl")).parse()));
-        if (new File(filename + ".crc").exists())
-            setLayer(LayerType.SOLDER_PASTE_TOP, new Layer(new GerberParser(new FileReader(filename + ".crc")).parse()));
-        if (new File(filename + ".crs").exists())
-            setLayer(LayerType.SOLDER_PASTE_BOTTOM, new Layer(new GerberParser(new FileReader(filename + ".crs")).parse()));
-        if (new File(filename + ".mnt").exists())
         {
-            setLayer(LayerType.PLACEMENT_TOP, new Layer(new PPParser(new FileReader(filename + ".mnt"),
-                    importSettings.getCentroidFileFormat().getValue().getTopRegex(),
-                    importSettings.getCentroidUnits().getValue().getMultiplier()).parse()));
+            loaders.add(loaded ->
+            {
+                try (AsciiInput input = open(filename, ".drd"))
+                {
+                    loaded[LayerType.DRILLING.ordinal()] = new Layer(new ExcellonParser(excellonIntegerPlaces, excellonDecimalPlaces,
+                            excellonMultiplier, excellonLeadingZeros, input).parse());
+                }
+            });
         }
+        addGerberLoader(loaders, LayerType.MILLING, filename, ".ncl");
+        addGerberLoader(loaders, LayerType.SOLDER_PASTE_TOP, filename, ".crc");
+        addGerberLoader(loaders, LayerType.SOLDER_PASTE_BOTTOM, filename, ".crs");
         if (new File(filename + ".mnt").exists())
         {
-            setLayer(LayerType.PLACEMENT_BOTTOM, new Layer(new PPParser(new FileReader(filename + ".mnt"),
-                    importSettings.getCentroidFileFormat().getValue().getBottomRegex(),
-                    importSettings.getCentroidUnits().getValue().getMultiplier()).parse()));
+            // Components of both sides are listed in the same file
+            loaders.add(loaded ->
+            {
+                try (AsciiInput input = open(filename, ".mnt"))
+                {
+                    List<List<PPPoint>> components = new PPParser(input, centroidPatterns, centroidMultiplier).parseAll();
+                    loaded[LayerType.PLACEMENT_TOP.ordinal()] = new Layer(components.get(0));
+                    loaded[LayerType.PLACEMENT_BOTTOM.ordinal()] = new Layer(components.get(1));
+                }
+            });
+        }
+
+        Layer[] loaded = new Layer[LayerType.values().length];
+        AtomicReference<IOException> error = new AtomicReference<>();
+        ProcessingPool.getInstance().forEach(loaders, 1, loader ->
+        {
+            try
+            {
+                loader.load(loaded);
+            }
+            catch (IOException e)
+            {
+                error.compareAndSet(null, e);
+            }
+        });
+        if (error.get() != null)
+            throw error.get();
+        updateContentHash();
+
+        for (LayerType type : LayerType.values())
+        {
+            if (loaded[type.ordinal()] != null)
+                setLayer(type, loaded[type.ordinal()]);
         }
         List<LayerType> toRemove = layers.keySet().stream().filter(k -> layers.get(k).getElements().isEmpty()).collect(Collectors.toList());
         toRemove.stream().forEach(k -> layers.remove(k));
@@ -95,6 +157,79 @@ public class Board
             moveToOrigin();
     }
 
+    private void addGerberLoader(List<LayerLoader> loaders, LayerType type, String filename, String extension)
+    {
+        if (new File(filename + extension).exists())
+        {
+            // Contour is small and contour milling screens go through its elements directly, so it is kept as objects
+            if (type == LayerType.MILLING)
+                loaders.add(loaded -> loaded[type.ordinal()] = new Layer(parseGerber(filename, extension)));
+            else
+                loaders.add(loaded -> loaded[type.ordinal()] = new Layer(new PrimitiveStore(parseGerber(filename, extension))));
+        }
+    }
+
+    private List<GerberPrimitive> parseGerber(String filename, String extension) throws IOException
+    {
+        try (AsciiInput input = open(filename, extension))
+        {
+            return new GerberParser(input).parse();
+        }
+    }
+
+    /**
+     * Opens layer file and digests its content, so that the board hash matches what has been parsed
+     * even if the file changes afterwards
+     */
+    private AsciiInput open(String filename, String extension) throws IOException
+    {
+        MessageDigest digest = null;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            LoggerFactory.logException("Could not calculate board hash", e);
+        }
+        AsciiInput input = AsciiInput.open(new File(filename + extension), digest);
+        if (digest != null)
+            fileDigests.put(extension, digest.digest());
+        return input;
+    }
+
+    private void updateContentHash()
+    {
+        contentHash = null;
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String extension : LAYER_EXTENSIONS)
+            {
+                digest.update(extension.getBytes());
+                byte[] fileDigest = fileDigests.get(extension);
+                if (fileDigest != null)
+                    digest.update(fileDigest);
+            }
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest())
+                hash.append(String.format("%02x", b));
+            contentHash = hash.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            LoggerFactory.logException("Could not calculate board hash", e);
+        }
+    }
+
+    /**
+     * Parses a layer file, storing resulting layers at their type ordinals
+     */
+    private interface LayerLoader
+    {
+        void load(Layer[] loaded) throws IOException;
+    }
+
     public void moveToOrigin()
     {
         int minX = layers.values().stream().mapToInt(layer -> layer.getMinPoint().getX()).min().getAsInt();
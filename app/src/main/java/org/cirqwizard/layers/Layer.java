@@ -20,6 +20,9 @@ import java.util.List;
 public class Layer
 {
     private List<? extends LayerElement> elements;
+    private PrimitiveStore store;
+    // Incremented on every change of elements, so that panel knows when its combined elements are outdated
+    private int version;
 
     public Layer()
     {
@@ -30,6 +33,19 @@ public class Layer
         this.elements = elements;
     }
 
+    /**
+     * Creates layer backed by columnar store, its elements are created on access
+     */
+    public Layer(PrimitiveStore store)
+    {
+        this.store = store;
+        this.elements = store.getElements();
+    }
+
+    /**
+     * For layers backed by a store every call to get() creates a new element, so get(i) != get(i) and changes made
+     * to an element are lost. Callers going through the elements repeatedly are expected to copy them once.
+     */
     public List<? extends LayerElement> getElements()
     {
         return elements;
@@ -38,10 +54,27 @@ public class Layer
     public void setElements(List<? extends LayerElement> elements)
     {
         this.elements = elements;
+        this.store = null;
+        version++;
+    }
+
+    /**
+     * Columnar store backing elements of the layer, null if they are kept as objects
+     */
+    public PrimitiveStore getStore()
+    {
+        return store;
+    }
+
+    public int getVersion()
+    {
+        return version;
     }
 
     public Point getMinPoint()
     {
+        if (store != null)
+            return store.getMin();
         int minX = elements.stream().mapToInt(p -> p.getMin().getX()).min().getAsInt();
         int minY = elements.stream().mapToInt(p -> p.getMin().getY()).min().getAsInt();
         return new Point(minX, minY);
@@ -49,6 +82,8 @@ public class Layer
 
     public Point getMaxPoint()
     {
+        if (store != null)
+            return store.getMax();
         int maxX = elements.stream().mapToInt(p -> p.getMax().getX()).max().getAsInt();
         int maxY = elements.stream().mapToInt(p -> p.getMax().getY()).max().getAsInt();
         return new Point(maxX, maxY);
@@ -56,12 +91,20 @@ public class Layer
 
     public void move(Point p)
     {
-        elements.stream().forEach(e -> e.move(p));
+        version++;
+        if (store != null)
+            store.move(p);
+        else
+            elements.stream().forEach(e -> e.move(p));
     }
 
     public void rotate(boolean clockwise)
     {
-        elements.stream().forEach(e -> e.rotate(clockwise));
+        version++;
+        if (store != null)
+            store.rotate(clockwise);
+        else
+            elements.stream().forEach(e -> e.rotate(clockwise));
     }
 
 }
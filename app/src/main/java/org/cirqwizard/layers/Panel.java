@@ -14,6 +14,7 @@ This program is free software: you can redistribute it and/or modify
 package org.cirqwizard.layers;
 
 import org.cirqwizard.fx.PCBSize;
+import org.cirqwizard.generation.ProcessingPool;
 import org.cirqwizard.generation.toolpath.Toolpath;
 import org.cirqwizard.geom.Point;
 import org.cirqwizard.logging.LoggerFactory;
@@ -27,10 +28,9 @@ import org.simpleframework.xml.core.Persister;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Root
 public class Panel
@@ -41,6 +41,8 @@ public class Panel
     private List<PanelBoard> boards = new ArrayList<>();
     @Transient
     private HashMap<Board.LayerType, List<Toolpath>> toolpaths = new HashMap<>();
+    @Transient
+    private HashMap<Board.LayerType, PanelLayer> combinedElements = new HashMap<>();
 
     public PCBSize getSize()
     {
@@ -76,7 +78,9 @@ public class Panel
     {
         String basename = panelFile.getAbsolutePath().substring(0,
                 panelFile.getAbsolutePath().lastIndexOf(File.separatorChar));
-        boards.stream().forEach(b ->
+        // Boards are independent of each other, so they are loaded in parallel and the panel takes as long as the largest one
+        AtomicBoolean relocated = new AtomicBoolean();
+        ProcessingPool.getInstance().forEach(boards, 1, b ->
         {
             try
             {
@@ -88,7 +92,7 @@ public class Panel
                     b.setFilename(basename + File.separatorChar + filename);
                     b.loadBoard();
                     if (b.getBoard().hasLayers())
-                        save(panelFile);
+                        relocated.set(true);
                 }
             }
             catch (IOException e)
@@ -96,6 +100,8 @@ public class Panel
                 LoggerFactory.logException("Could not load layers", e);
             }
         });
+        if (relocated.get())
+            save(panelFile);
     }
 
     public void save(File file)
@@ -125,30 +131,28 @@ public class Panel
         return null;
     }
 
-    public List<? extends LayerElement> getCombinedElements(Board.LayerType layerType)
+    /**
+     * Elements of given layer of all boards placed at their panel positions. The list is read-only and is reused
+     * until boards of the panel are moved, rotated, reloaded, added or removed.
+     */
+    public synchronized List<? extends LayerElement> getCombinedElements(Board.LayerType layerType)
     {
-        return boards.stream().map(b ->
+        PanelLayer layer = combinedElements.get(layerType);
+        if (layer == null || !layer.isValid(boards))
         {
-            Layer layer = b.getBoard().getLayer(layerType);
-            if (layer == null)
-                return null;
-            Point offset = new Point(b.getX(), b.getY());
-            return layer.getElements().stream().map(e ->
-            {
-                try
-                {
-                    LayerElement clone = (LayerElement) e.clone();
-                    clone.move(offset);
-                    return clone;
-                }
-                catch (CloneNotSupportedException e1) {
-                    e1.printStackTrace();
-                }
-                return null;
-            }).collect(Collectors.toList());
-        }).
-                filter(l -> l != null).
-                flatMap(Collection::stream).collect(Collectors.toList());
+            layer = new PanelLayer(layerType, boards, new Point(0, 0));
+            combinedElements.put(layerType, layer);
+        }
+        return layer;
+    }
+
+    /**
+     * Combines elements of given boards, placing each of them at its panel position shifted by offset.
+     * Boards are referenced rather than copied, the list is read-only.
+     */
+    public static List<? extends LayerElement> getCombinedElements(Board.LayerType layerType, List<PanelBoard> boards, Point offset)
+    {
+        return new PanelLayer(layerType, boards, offset);
     }
 
     public void updateCacheTimestamps()
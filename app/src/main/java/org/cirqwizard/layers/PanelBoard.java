@@ -134,6 +134,15 @@ public class PanelBoard
         return validateTimestamp(bottomLayerTimestamp, new File(filename + ".sol"));
     }
 
+    /**
+     * Digest of board files as they were loaded
+     * @return null if the board has not been loaded or its digest could not be calculated
+     */
+    public String getContentHash()
+    {
+        return board == null ? null : board.getContentHash();
+    }
+
     public void rotate(boolean clockwise)
     {
         if (generateOutline)
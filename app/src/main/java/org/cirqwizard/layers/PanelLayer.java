@@ -0,0 +1,143 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.layers;
+
+import org.cirqwizard.geom.Point;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Elements of a layer of several boards, each of them placed at its panel position. Boards are referenced
+ * rather than copied: elements of columnar layers are created at their panel positions on access, elements
+ * of other layers are copied and moved on access.
+ */
+class PanelLayer extends AbstractList<LayerElement> implements RandomAccess
+{
+    private List<Placement> placements = new ArrayList<>();
+    private int size;
+
+    PanelLayer(Board.LayerType layerType, List<PanelBoard> boards, Point offset)
+    {
+        for (PanelBoard board : boards)
+        {
+            Placement placement = new Placement(board, layerType, new Point(board.getX(), board.getY()).add(offset), size);
+            placements.add(placement);
+            size += placement.elements.size();
+        }
+    }
+
+    /**
+     * Checks that the boards are still the same and are placed where they were when the layer was combined
+     */
+    boolean isValid(List<PanelBoard> boards)
+    {
+        if (boards.size() != placements.size())
+            return false;
+        for (int i = 0; i < boards.size(); i++)
+        {
+            if (!placements.get(i).isValid(boards.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public LayerElement get(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        int low = 0;
+        int high = placements.size() - 1;
+        while (low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+            if (placements.get(middle).start <= index)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return placements.get(low).get(index - placements.get(low).start);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    private static class Placement
+    {
+        private PanelBoard panelBoard;
+        private Board board;
+        private Board.LayerType layerType;
+        private Layer layer;
+        private int version;
+        private int x;
+        private int y;
+        private Point offset;
+        private int start;
+        private boolean columnar;
+        private List<? extends LayerElement> elements;
+
+        private Placement(PanelBoard panelBoard, Board.LayerType layerType, Point offset, int start)
+        {
+            this.panelBoard = panelBoard;
+            this.board = panelBoard.getBoard();
+            this.layerType = layerType;
+            this.layer = board.getLayer(layerType);
+            this.version = layer == null ? 0 : layer.getVersion();
+            this.x = panelBoard.getX();
+            this.y = panelBoard.getY();
+            this.offset = offset;
+            this.start = start;
+            this.columnar = layer != null && layer.getStore() != null;
+            if (layer == null)
+                elements = new ArrayList<>();
+            else if (columnar)
+                elements = layer.getStore().getElements(0, offset);
+            else
+                elements = layer.getElements();
+        }
+
+        private boolean isValid(PanelBoard panelBoard)
+        {
+            if (panelBoard != this.panelBoard || panelBoard.getBoard() != board || panelBoard.getX() != x || panelBoard.getY() != y)
+                return false;
+            Layer layer = board.getLayer(layerType);
+            return layer == this.layer && (layer == null || layer.getVersion() == version);
+        }
+
+        private LayerElement get(int index)
+        {
+            LayerElement element = elements.get(index);
+            if (columnar)
+                return element;
+            try
+            {
+                // Elements of object layers are mutable, every caller gets its own copies the way it always did
+                LayerElement clone = (LayerElement) element.clone();
+                clone.move(offset);
+                return clone;
+            }
+            catch (CloneNotSupportedException e)
+            {
+                // Callers go through every element, a missing one would only fail later and farther from the cause
+                throw new IllegalStateException("Could not copy layer element", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.layers;
+
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.gerber.CircularShape;
+import org.cirqwizard.gerber.Flash;
+import org.cirqwizard.gerber.GerberPrimitive;
+import org.cirqwizard.gerber.LinearShape;
+import org.cirqwizard.gerber.Region;
+import org.cirqwizard.gerber.appertures.Aperture;
+import org.cirqwizard.logging.LoggerFactory;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Column-oriented storage of gerber primitives. Coordinates are kept in int arrays and apertures are shared through
+ * a table, so a layer takes a fraction of the heap its primitive objects would. Primitives are created on access
+ * and are not meant to be modified, the store is changed through {@link #move(Point)} and {@link #rotate(boolean)}.
+ */
+public class PrimitiveStore
+{
+    private final static byte FLASH = 0;
+    private final static byte LINEAR = 1;
+    private final static byte CIRCULAR = 2;
+    private final static byte REGION = 3;
+    // Anything else without a column representation is kept as an object
+    private final static byte OTHER = 4;
+
+    private final static byte DARK = 1;
+    private final static byte CLOCKWISE = 2;
+
+    private int size;
+    private byte[] kinds;
+    private byte[] flags;
+    private int[] x;
+    private int[] y;
+    private int[] toX;
+    private int[] toY;
+    private int[] centerX;
+    private int[] centerY;
+    // Index in aperture table (-1 for no aperture), in region table or in the list of other primitives
+    private int[] references;
+    private Aperture[] apertures;
+    // Incremented on every rotation, so that views know when their rotated apertures are outdated
+    private int rotations;
+    private List<GerberPrimitive> others = new ArrayList<>();
+    // Segments of all regions, segments of region i are stored from regionStarts[i] to regionStarts[i + 1]
+    private PrimitiveStore segments;
+    private int[] regionStarts;
+    private List<GerberPrimitive> view = new View(0, 0, 0);
+
+    public PrimitiveStore(List<? extends GerberPrimitive> primitives)
+    {
+        size = primitives.size();
+        kinds = new byte[size];
+        flags = new byte[size];
+        x = new int[size];
+        y = new int[size];
+        toX = new int[size];
+        toY = new int[size];
+        centerX = new int[size];
+        centerY = new int[size];
+        references = new int[size];
+        IdentityHashMap<Aperture, Integer> apertureIndices = new IdentityHashMap<>();
+        List<Aperture> apertureTable = new ArrayList<>();
+        List<GerberPrimitive> regionSegments = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+
+        for (int i = 0; i < size; i++)
+        {
+            GerberPrimitive primitive = primitives.get(i);
+            if (primitive.getPolarity() == GerberPrimitive.Polarity.DARK)
+                flags[i] = DARK;
+            if (primitive instanceof Flash)
+            {
+                Flash flash = (Flash) primitive;
+                kinds[i] = FLASH;
+                x[i] = flash.getX();
+                y[i] = flash.getY();
+            }
+            else if (primitive instanceof LinearShape)
+            {
+                LinearShape line = (LinearShape) primitive;
+                kinds[i] = LINEAR;
+                x[i] = line.getFrom().getX();
+                y[i] = line.getFrom().getY();
+                toX[i] = line.getTo().getX();
+                toY[i] = line.getTo().getY();
+            }
+            else if (primitive instanceof CircularShape)
+            {
+                CircularShape arc = (CircularShape) primitive;
+                kinds[i] = CIRCULAR;
+                x[i] = arc.getFrom().getX();
+                y[i] = arc.getFrom().getY();
+                toX[i] = arc.getTo().getX();
+                toY[i] = arc.getTo().getY();
+                centerX[i] = arc.getArc().getCenter().getX();
+                centerY[i] = arc.getArc().getCenter().getY();
+                if (arc.getArc().isClockwise())
+                    flags[i] |= CLOCKWISE;
+            }
+            else if (primitive instanceof Region)
+            {
+                kinds[i] = REGION;
+                references[i] = starts.size();
+                starts.add(regionSegments.size());
+                regionSegments.addAll(((Region) primitive).getSegments());
+                continue;
+            }
+            else
+            {
+                kinds[i] = OTHER;
+                references[i] = others.size();
+                others.add(primitive);
+                continue;
+            }
+
+            Aperture aperture = primitive.getAperture();
+            if (aperture == null)
+            {
+                references[i] = -1;
+                continue;
+            }
+            Integer index = apertureIndices.get(aperture);
+            if (index == null)
+            {
+                index = apertureTable.size();
+                apertureIndices.put(aperture, index);
+                apertureTable.add(aperture);
+            }
+            references[i] = index;
+        }
+        apertures = apertureTable.toArray(new Aperture[apertureTable.size()]);
+        if (!starts.isEmpty())
+        {
+            starts.add(regionSegments.size());
+            regionStarts = starts.stream().mapToInt(Integer::intValue).toArray();
+            segments = new PrimitiveStore(regionSegments);
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Primitives of the store as they are
+     */
+    public List<GerberPrimitive> getElements()
+    {
+        return view;
+    }
+
+    /**
+     * Primitives rotated around origin and shifted by offset, without modifying or copying the store
+     * @param clockwiseTurns number of quarter turns clockwise, negative for counterclockwise ones
+     */
+    public List<GerberPrimitive> getElements(int clockwiseTurns, Point offset)
+    {
+        return new View(clockwiseTurns, offset.getX(), offset.getY());
+    }
+
+    public void move(Point point)
+    {
+        int dx = point.getX();
+        int dy = point.getY();
+        for (int i = 0; i < size; i++)
+        {
+            x[i] += dx;
+            y[i] += dy;
+            toX[i] += dx;
+            toY[i] += dy;
+            centerX[i] += dx;
+            centerY[i] += dy;
+        }
+        if (segments != null)
+            segments.move(point);
+        others.forEach(p -> p.move(point));
+    }
+
+    public void rotate(boolean clockwise)
+    {
+        int sign = clockwise ? 1 : -1;
+        for (int i = 0; i < size; i++)
+        {
+            int t = x[i];
+            x[i] = y[i] * sign;
+            y[i] = -t * sign;
+            t = toX[i];
+            toX[i] = toY[i] * sign;
+            toY[i] = -t * sign;
+            t = centerX[i];
+            centerX[i] = centerY[i] * sign;
+            centerY[i] = -t * sign;
+        }
+        for (int i = 0; i < apertures.length; i++)
+            apertures[i] = apertures[i].rotate(clockwise);
+        rotations++;
+        if (segments != null)
+            segments.rotate(clockwise);
+        others.forEach(p -> p.rotate(clockwise));
+    }
+
+    public Point getMin()
+    {
+        int[] bounds = getBounds(0, size);
+        return new Point(bounds[0], bounds[1]);
+    }
+
+    public Point getMax()
+    {
+        int[] bounds = getBounds(0, size);
+        return new Point(bounds[2], bounds[3]);
+    }
+
+    /**
+     * Calculates extents of primitives stored at given indices the same way the primitives do
+     * @return minimal x, minimal y, maximal x and maximal y
+     */
+    private int[] getBounds(int from, int to)
+    {
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (int i = from; i < to; i++)
+        {
+            if (kinds[i] == FLASH || kinds[i] == LINEAR)
+            {
+                Aperture aperture = references[i] < 0 ? null : apertures[references[i]];
+                int halfWidth = aperture == null ? 0 : aperture.getWidth() / 2;
+                int halfHeight = aperture == null ? 0 : aperture.getHeight() / 2;
+                int endX = kinds[i] == FLASH ? x[i] : toX[i];
+                int endY = kinds[i] == FLASH ? y[i] : toY[i];
+                bounds[0] = Math.min(bounds[0], Math.min(x[i], endX) - halfWidth);
+                bounds[1] = Math.min(bounds[1], Math.min(y[i], endY) - halfHeight);
+                bounds[2] = Math.max(bounds[2], Math.max(x[i], endX) + halfWidth);
+                bounds[3] = Math.max(bounds[3], Math.max(y[i], endY) + halfHeight);
+            }
+            else if (kinds[i] == REGION)
+            {
+                int[] regionBounds = segments.getBounds(regionStarts[references[i]], regionStarts[references[i] + 1]);
+                bounds[0] = Math.min(bounds[0], regionBounds[0]);
+                bounds[1] = Math.min(bounds[1], regionBounds[1]);
+                bounds[2] = Math.max(bounds[2], regionBounds[2]);
+                bounds[3] = Math.max(bounds[3], regionBounds[3]);
+            }
+            else
+            {
+                // Extents of arcs depend on the angles they span
+                GerberPrimitive primitive = get(i, 0, 0, 0, apertures, null);
+                Point min = primitive.getMin();
+                Point max = primitive.getMax();
+                bounds[0] = Math.min(bounds[0], min.getX());
+                bounds[1] = Math.min(bounds[1], min.getY());
+                bounds[2] = Math.max(bounds[2], max.getX());
+                bounds[3] = Math.max(bounds[3], max.getY());
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Creates primitive at given index, rotated by turns quarter turns clockwise and then shifted
+     */
+    private GerberPrimitive get(int index, int turns, int dx, int dy, Aperture[] apertures, List<GerberPrimitive> segmentView)
+    {
+        if (kinds[index] == OTHER)
+            return getOther(index, turns, dx, dy);
+
+        GerberPrimitive.Polarity polarity = (flags[index] & DARK) != 0 ? GerberPrimitive.Polarity.DARK : GerberPrimitive.Polarity.CLEAR;
+        if (kinds[index] == REGION)
+        {
+            Region region = new Region(polarity);
+            for (int i = regionStarts[references[index]]; i < regionStarts[references[index] + 1]; i++)
+                region.addSegment(segmentView.get(i));
+            return region;
+        }
+        Aperture aperture = references[index] < 0 ? null : apertures[references[index]];
+        int fromX = rotateX(x[index], y[index], turns) + dx;
+        int fromY = rotateY(x[index], y[index], turns) + dy;
+        if (kinds[index] == FLASH)
+            return new Flash(fromX, fromY, aperture, polarity);
+        int endX = rotateX(toX[index], toY[index], turns) + dx;
+        int endY = rotateY(toX[index], toY[index], turns) + dy;
+        if (kinds[index] == LINEAR)
+            return new LinearShape(fromX, fromY, endX, endY, aperture, polarity);
+        return new CircularShape(fromX, fromY, endX, endY,
+                rotateX(centerX[index], centerY[index], turns) + dx, rotateY(centerX[index], centerY[index], turns) + dy,
+                (flags[index] & CLOCKWISE) != 0, aperture, polarity);
+    }
+
+    private GerberPrimitive getOther(int index, int turns, int dx, int dy)
+    {
+        GerberPrimitive primitive = others.get(references[index]);
+        if (turns == 0 && dx == 0 && dy == 0)
+            return primitive;
+        try
+        {
+            primitive = (GerberPrimitive) primitive.clone();
+        }
+        catch (CloneNotSupportedException e)
+        {
+            LoggerFactory.logException("Could not copy primitive", e);
+            return primitive;
+        }
+        for (int i = 0; i < turns; i++)
+            primitive.rotate(true);
+        primitive.move(new Point(dx, dy));
+        return primitive;
+    }
+
+    private static int rotateX(int x, int y, int turns)
+    {
+        switch (turns)
+        {
+            case 1: return y;
+            case 2: return -x;
+            case 3: return -y;
+            default: return x;
+        }
+    }
+
+    private static int rotateY(int x, int y, int turns)
+    {
+        switch (turns)
+        {
+            case 1: return -x;
+            case 2: return -y;
+            case 3: return x;
+            default: return y;
+        }
+    }
+
+    private class View extends AbstractList<GerberPrimitive> implements RandomAccess
+    {
+        private int turns;
+        private int dx;
+        private int dy;
+        private volatile Aperture[] viewApertures;
+        private volatile int viewRotations = -1;
+        private List<GerberPrimitive> segmentView;
+
+        private View(int clockwiseTurns, int dx, int dy)
+        {
+            this.turns = ((clockwiseTurns % 4) + 4) % 4;
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        private List<GerberPrimitive> getSegmentView()
+        {
+            if (segmentView == null && segments != null)
+                segmentView = turns == 0 && dx == 0 && dy == 0 ? segments.getElements() : segments.getElements(turns, new Point(dx, dy));
+            return segmentView;
+        }
+
+        @Override
+        public GerberPrimitive get(int index)
+        {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            return PrimitiveStore.this.get(index, turns, dx, dy, getApertures(), getSegmentView());
+        }
+
+        private Aperture[] getApertures()
+        {
+            if (turns == 0)
+                return apertures;
+            if (viewRotations != rotations)
+            {
+                Aperture[] rotated = apertures.clone();
+                for (int i = 0; i < rotated.length; i++)
+                    for (int j = 0; j < turns; j++)
+                        rotated[i] = rotated[i].rotate(true);
+                viewApertures = rotated;
+                viewRotations = rotations;
+            }
+            return viewApertures;
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+}
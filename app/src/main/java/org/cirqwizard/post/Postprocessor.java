@@ -28,8 +28,8 @@ public interface Postprocessor
     public void comment(StringBuilder str, String comment);
 
     public void rapid(StringBuilder str, Integer x, Integer y, Integer z);
-    public void linearInterpolation(StringBuilder str, Integer x, Integer y, Integer z, Integer feed);
-    public void circularInterpolation(StringBuilder str, boolean clockwise, Integer x, Integer y, Integer z, Integer i, Integer j, Integer feed);
+    public void linearInterpolation(StringBuilder str, int x, int y, int z, int feed);
+    public void circularInterpolation(StringBuilder str, boolean clockwise, int x, int y, int z, int i, int j, int feed);
 
     public void spindleOn(StringBuilder str, int speed);
     public void spindleOff(StringBuilder str);
@@ -16,41 +16,34 @@ package org.cirqwizard.post;
 
 import org.cirqwizard.settings.ApplicationConstants;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-
 
 public class RTPostprocessor implements Postprocessor
 {
-    private Integer x;
-    private Integer y;
-    private Integer z;
-    private Integer feed;
+    // Modal value which is not known yet, forcing the word to be output
+    private final static int UNSET = Integer.MIN_VALUE;
 
-    private DecimalFormat format;
-
-    public RTPostprocessor()
-    {
-        format = new DecimalFormat("0.###");
-        DecimalFormatSymbols customPoint = new DecimalFormatSymbols();
-        customPoint.setDecimalSeparator('.');
-        format.setDecimalFormatSymbols(customPoint);
-    }
+    private int x = UNSET;
+    private int y = UNSET;
+    private int z = UNSET;
+    private int feed = UNSET;
 
     @Override
     public void home(StringBuilder str, Integer yDiff)
     {
         str.append("G28");
         if (yDiff != null)
-            str.append(" Y").append(formatCoordinate(yDiff));
+        {
+            str.append(" Y");
+            appendCoordinate(str, yDiff);
+        }
         str.append('\n');
     }
 
     private void resetCoordinates()
     {
-        x = null;
-        y = null;
-        z = null;
+        x = UNSET;
+        y = UNSET;
+        z = UNSET;
     }
 
     @Override
@@ -67,7 +60,13 @@ public class RTPostprocessor implements Postprocessor
     @Override
     public void setupG54(StringBuilder str, int x, int y, int z)
     {
-        str.append("G92 X").append(formatCoordinate(x)).append(" Y").append(formatCoordinate(y)).append(" Z").append(formatCoordinate(z)).append('\n');
+        str.append("G92 X");
+        appendCoordinate(str, x);
+        str.append(" Y");
+        appendCoordinate(str, y);
+        str.append(" Z");
+        appendCoordinate(str, z);
+        str.append('\n');
     }
 
     @Override
@@ -77,40 +76,77 @@ public class RTPostprocessor implements Postprocessor
         str.append("G54\n");
     }
 
-    private String formatCoordinate(int number)
-    {
-        return format.format((double)number / ApplicationConstants.RESOLUTION);
+    /**
+     * Appends value in microns as millimeters with up to three decimal places and no trailing zeros, the same way
+     * "0.###" decimal format does, without creating intermediate strings
+     */
+    public static void appendCoordinate(StringBuilder str, int number)
+    {
+        long value = number;
+        if (value < 0)
+        {
+            str.append('-');
+            value = -value;
+        }
+        str.append(value / ApplicationConstants.RESOLUTION);
+        long fraction = value % ApplicationConstants.RESOLUTION;
+        if (fraction == 0)
+            return;
+        str.append('.');
+        for (int divisor = ApplicationConstants.RESOLUTION / 10; fraction > 0; divisor /= 10)
+        {
+            str.append((char) ('0' + fraction / divisor));
+            fraction %= divisor;
+        }
+    }
+
+    private static void appendWord(StringBuilder str, char letter, int value)
+    {
+        str.append(letter);
+        appendCoordinate(str, value);
+        str.append(' ');
     }
 
     public void rapid(StringBuilder str, Integer x, Integer y, Integer z)
+    {
+        rapid(str, x == null ? UNSET : x, y == null ? UNSET : y, z == null ? UNSET : z);
+    }
+
+    private void rapid(StringBuilder str, int x, int y, int z)
     {
         str.append("G0 ");
-        if (x != null && (this.x == null || !this.x.equals(x)))
-            str.append('X').append(formatCoordinate(x)).append(' ');
-        if (y != null && (this.y == null || !this.y.equals(y)))
-            str.append('Y').append(formatCoordinate(y)).append(' ');
-        if (z != null && (this.z == null || !this.z.equals(z)))
-            str.append('Z').append(formatCoordinate(z));
+        if (x != UNSET && this.x != x)
+            appendWord(str, 'X', x);
+        if (y != UNSET && this.y != y)
+            appendWord(str, 'Y', y);
+        if (z != UNSET && this.z != z)
+        {
+            str.append('Z');
+            appendCoordinate(str, z);
+        }
         str.append('\n');
-        if (x != null)
+        if (x != UNSET)
             this.x = x;
-        if (y != null)
+        if (y != UNSET)
             this.y = y;
-        if (z != null)
+        if (z != UNSET)
             this.z = z;
     }
 
-    public void linearInterpolation(StringBuilder str, Integer x, Integer y, Integer z, Integer feed)
+    public void linearInterpolation(StringBuilder str, int x, int y, int z, int feed)
     {
         str.append("G1 ");
-        if (this.x == null || !this.x.equals(x))
-            str.append('X').append(formatCoordinate(x)).append(' ');
-        if (this.y == null || !this.y.equals(y))
-            str.append('Y').append(formatCoordinate(y)).append(' ');
-        if (this.z == null || !this.z.equals(z))
-            str.append('Z').append(formatCoordinate(z)).append(' ');
-        if (this.feed == null || !this.feed.equals(feed))
-            str.append("F").append(formatCoordinate(feed));
+        if (this.x != x)
+            appendWord(str, 'X', x);
+        if (this.y != y)
+            appendWord(str, 'Y', y);
+        if (this.z != z)
+            appendWord(str, 'Z', z);
+        if (this.feed != feed)
+        {
+            str.append('F');
+            appendCoordinate(str, feed);
+        }
         str.append('\n');
         this.x = x;
         this.y = y;
@@ -118,19 +154,22 @@ public class RTPostprocessor implements Postprocessor
         this.feed = feed;
     }
 
-    public void circularInterpolation(StringBuilder str, boolean clockwise, Integer x, Integer y, Integer z, Integer i, Integer j, Integer feed)
+    public void circularInterpolation(StringBuilder str, boolean clockwise, int x, int y, int z, int i, int j, int feed)
     {
         str.append('G');
         str.append(clockwise ? '2' : '3');
         str.append(' ');
-        str.append('X').append(formatCoordinate(x)).append(' ');
-        str.append('Y').append(formatCoordinate(y)).append(' ');
-        if (this.z == null || !this.z.equals(z))
-            str.append('Z').append(formatCoordinate(z)).append(' ');
-        str.append('I').append(formatCoordinate(i)).append(' ');
-        str.append('J').append(formatCoordinate(j)).append(' ');
-        if (this.feed == null || !this.feed.equals(feed))
-            str.append("F").append(formatCoordinate(feed));
+        appendWord(str, 'X', x);
+        appendWord(str, 'Y', y);
+        if (this.z != z)
+            appendWord(str, 'Z', z);
+        appendWord(str, 'I', i);
+        appendWord(str, 'J', j);
+        if (this.feed != feed)
+        {
+            str.append('F');
+            appendCoordinate(str, feed);
+        }
         str.append('\n');
         this.x = x;
         this.y = y;
@@ -155,7 +194,9 @@ public class RTPostprocessor implements Postprocessor
 
     public void pause(StringBuilder str, int duration)
     {
-        str.append("G4 P").append(formatCoordinate(duration)).append("\n");
+        str.append("G4 P");
+        appendCoordinate(str, duration);
+        str.append("\n");
     }
 
     public void comment(StringBuilder str, String comment)
@@ -176,14 +217,19 @@ public class RTPostprocessor implements Postprocessor
     @Override
     public void rotatePP(StringBuilder str, int angle, int feed)
     {
-        str.append("G1 A").append(formatCoordinate(angle / 100));
-        str.append(" F").append(formatCoordinate(feed)).append("\n");
+        str.append("G1 A");
+        appendCoordinate(str, angle / 100);
+        str.append(" F");
+        appendCoordinate(str, feed);
+        str.append("\n");
     }
 
     @Override
     public void rotatePP(StringBuilder str, int angle)
     {
-        str.append("G0 A").append(formatCoordinate(angle / 100)).append("\n");
+        str.append("G0 A");
+        appendCoordinate(str, angle / 100);
+        str.append("\n");
     }
 
     @Override
@@ -15,6 +15,8 @@ This program is free software: you can redistribute it and/or modify
 package org.cirqwizard.pp;
 
 import org.cirqwizard.geom.Point;
+import org.cirqwizard.io.AsciiInput;
+import org.cirqwizard.io.AsciiLine;
 import org.cirqwizard.logging.LoggerFactory;
 import org.cirqwizard.settings.ApplicationConstants;
 import org.cirqwizard.settings.DistanceUnit;
@@ -22,10 +24,10 @@ import org.cirqwizard.generation.toolpath.PPPoint;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
@@ -34,8 +36,8 @@ import java.util.regex.Pattern;
 
 public class PPParser
 {
-    private Reader reader;
-    private Pattern pattern;
+    private AsciiInput input;
+    private String[] patterns;
     private BigDecimal coordinatesConversionRatio;
 
     public PPParser(Reader reader, String pattern)
@@ -45,40 +47,65 @@ public class PPParser
 
     public PPParser(Reader reader, String pattern, BigDecimal coordinatesConversionRatio)
     {
-        this.reader = reader;
-        this.pattern = Pattern.compile(pattern);
+        this(reader, new String[] {pattern}, coordinatesConversionRatio);
+    }
+
+    /**
+     * Parser matching every line against several patterns, e.g. one per board side
+     */
+    public PPParser(Reader reader, String[] patterns, BigDecimal coordinatesConversionRatio)
+    {
+        this(AsciiInput.of(reader), patterns, coordinatesConversionRatio);
+    }
+
+    public PPParser(AsciiInput input, String[] patterns, BigDecimal coordinatesConversionRatio)
+    {
+        this.input = input;
+        this.patterns = patterns;
         this.coordinatesConversionRatio = coordinatesConversionRatio;
     }
 
     public List<PPPoint> parse() throws IOException
     {
-        List<PPPoint> components = new ArrayList<>();
+        return parseAll().get(0);
+    }
+
+    /**
+     * Reads the input once, collecting components matched by each of the patterns
+     * @return lists of components in the order of patterns
+     */
+    public List<List<PPPoint>> parseAll() throws IOException
+    {
+        List<List<PPPoint>> result = new ArrayList<>();
+        // Formats may use the same pattern for both sides, each distinct pattern is matched once per line
+        List<Matcher> matchers = new ArrayList<>();
+        int[] matcherIndices = new int[patterns.length];
+        for (int i = 0; i < patterns.length; i++)
+        {
+            result.add(new ArrayList<>());
+            int j = Arrays.asList(patterns).indexOf(patterns[i]);
+            if (j == i)
+            {
+                matcherIndices[i] = matchers.size();
+                matchers.add(Pattern.compile(patterns[i]).matcher(""));
+            }
+            else
+                matcherIndices[i] = matcherIndices[j];
+        }
+
         try
         {
-            LineNumberReader reader = new LineNumberReader(this.reader);
-            String str;
-            while ((str = reader.readLine()) != null)
+            AsciiLine line = new AsciiLine();
+            boolean[] matched = new boolean[matchers.size()];
+            while (input.readLine(line))
             {
-                Matcher matcher = pattern.matcher(str);
-                if (!matcher.find())
-                    continue;
-
-                String name = matcher.group("name");
-                String x = matcher.group("x");
-                String y = matcher.group("y");
-                String angle = matcher.group("angle");
-                String value = matcher.group("value");
-                String packaging = matcher.group("package");
-                if (packaging == null)
+                for (int i = 0; i < matchers.size(); i++)
+                    matched[i] = matchers.get(i).reset(line).find();
+                for (int i = 0; i < patterns.length; i++)
                 {
-                    packaging = value;
-                    value = "";
+                    if (matched[matcherIndices[i]])
+                        result.get(i).add(parseComponent(matchers.get(matcherIndices[i])));
                 }
-
-                components.add(new PPPoint(new ComponentId(packaging, value),
-                        new Point(coordinatesConversionRatio.multiply(new BigDecimal(x)).intValue(),
-                                coordinatesConversionRatio.multiply(new BigDecimal(y)).intValue()),
-                                (int)(Double.valueOf(angle) * ApplicationConstants.RESOLUTION), name));
             }
         }
         catch (FileNotFoundException e)
@@ -89,7 +116,27 @@ public class PPParser
         {
             LoggerFactory.logException("Error parsing PP file", e);
         }
-        return components;
+        return result;
+    }
+
+    private PPPoint parseComponent(Matcher matcher)
+    {
+        String name = matcher.group("name");
+        String x = matcher.group("x");
+        String y = matcher.group("y");
+        String angle = matcher.group("angle");
+        String value = matcher.group("value");
+        String packaging = matcher.group("package");
+        if (packaging == null)
+        {
+            packaging = value;
+            value = "";
+        }
+
+        return new PPPoint(new ComponentId(packaging, value),
+                new Point(coordinatesConversionRatio.multiply(new BigDecimal(x)).intValue(),
+                        coordinatesConversionRatio.multiply(new BigDecimal(y)).intValue()),
+                        (int)(Double.valueOf(angle) * ApplicationConstants.RESOLUTION), name);
     }
 
 }
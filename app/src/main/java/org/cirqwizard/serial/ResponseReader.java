@@ -0,0 +1,89 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.serial;
+
+import org.cirqwizard.logging.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits bytes received from the controller into lines and hands them over to the thread waiting for a response.
+ * Bytes are fed by the port event thread, partial line is accumulated in a buffer reused for all lines.
+ * Feeding and clearing are synchronized, so that clearing never leaves a part of a line behind.
+ */
+public class ResponseReader
+{
+    private final static int QUEUE_SIZE = 256;
+    private final static int INITIAL_LINE_LENGTH = 128;
+
+    private ArrayBlockingQueue<String> lines = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private byte[] buffer = new byte[INITIAL_LINE_LENGTH];
+    private int length;
+
+    public synchronized void feed(byte[] data)
+    {
+        if (data == null)
+            return;
+        for (byte b : data)
+        {
+            if (b == '\n')
+            {
+                // Line terminator might be preceded by carriage return
+                int end = length > 0 && buffer[length - 1] == '\r' ? length - 1 : length;
+                if (end > 0)
+                    offer(new String(buffer, 0, end, StandardCharsets.US_ASCII));
+                length = 0;
+                continue;
+            }
+            if (length == buffer.length)
+            {
+                byte[] newBuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, length);
+                buffer = newBuffer;
+            }
+            buffer[length++] = b;
+        }
+    }
+
+    /**
+     * Waits for the next line
+     * @return line without terminator or null if nothing arrived in time
+     */
+    public String readLine(long timeout) throws InterruptedException
+    {
+        return lines.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drops lines nobody has waited for along with the unterminated part of a line received so far
+     */
+    public synchronized void clear()
+    {
+        lines.clear();
+        length = 0;
+    }
+
+    private void offer(String line)
+    {
+        // Event thread never blocks: once nobody reads responses the oldest ones are discarded
+        while (!lines.offer(line))
+        {
+            String dropped = lines.poll();
+            if (dropped != null)
+                LoggerFactory.getSerialLogger().fine("Discarding unread response: " + dropped + "\n");
+        }
+    }
+}
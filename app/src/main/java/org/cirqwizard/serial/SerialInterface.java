@@ -16,6 +16,8 @@ package org.cirqwizard.serial;
 
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
 
 
 public interface SerialInterface
@@ -28,5 +30,11 @@ public interface SerialInterface
     public void close() throws SerialException;
     public void send(String str, long timeout) throws SerialException, ExecutionException, InterruptedException;
     public void send(String str, long timeout, StringBuilder response, boolean suppressExceptions) throws SerialException, ExecutionException, InterruptedException;
+    /**
+     * Streams program lines keeping up to bufferSize bytes in the receive buffer of the controller
+     * @param progress receives index of every acknowledged line
+     */
+    public void stream(Iterator<String> lines, int bufferSize, long timeout, StringBuilder response, boolean suppressExceptions,
+                       IntConsumer progress) throws SerialException, ExecutionException, InterruptedException;
     public String getPortName();
 }
@@ -16,11 +16,14 @@ package org.cirqwizard.serial;
 
 
 import jssc.SerialPort;
+import jssc.SerialPortEvent;
 import jssc.SerialPortException;
 import jssc.SerialPortTimeoutException;
 import org.cirqwizard.logging.LoggerFactory;
 
 import java.io.*;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
 
 
 public class SerialInterfaceImpl implements SerialInterface
@@ -29,6 +32,7 @@ public class SerialInterfaceImpl implements SerialInterface
     private int baudrate;
     private String portName;
     private int timeout = -1;
+    private ResponseReader responseReader = new ResponseReader();
 
     public SerialInterfaceImpl(String commPortName, int baudrate) throws SerialException
     {
@@ -36,6 +40,7 @@ public class SerialInterfaceImpl implements SerialInterface
         try
         {
             initUSART(commPortName, baudrate, SerialPort.PARITY_NONE);
+            startResponseReader();
         }
         catch (SerialPortException e)
         {
@@ -54,12 +59,38 @@ public class SerialInterfaceImpl implements SerialInterface
         port.setParams(baudrate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, parity);
     }
 
+    /**
+     * Responses are read by the event thread of the port as soon as they arrive
+     */
+    private void startResponseReader() throws SerialPortException
+    {
+        responseReader.clear();
+        port.addEventListener(this::serialEvent, SerialPort.MASK_RXCHAR);
+    }
+
+    private void serialEvent(SerialPortEvent event)
+    {
+        if (!event.isRXCHAR() || event.getEventValue() <= 0)
+            return;
+        try
+        {
+            responseReader.feed(port.readBytes(event.getEventValue()));
+        }
+        catch (SerialPortException e)
+        {
+            LoggerFactory.logException("Error reading from serial port", e);
+        }
+    }
+
     public void setBootloaderMode(boolean bootloader) throws SerialException
     {
         try
         {
             initUSART(portName, bootloader ? 57600 : baudrate, bootloader ? SerialPort.PARITY_EVEN : SerialPort.PARITY_NONE);
             timeout = bootloader ? 25000 : -1;
+            // Bootloader protocol is read byte by byte
+            if (!bootloader)
+                startResponseReader();
         }
         catch (Exception e)
         {
@@ -123,48 +154,31 @@ public class SerialInterfaceImpl implements SerialInterface
 
     private void sendCommand(String command, long timeout, StringBuilder response, boolean suppressExceptions) throws SerialException, ExecutionException, InterruptedException
     {
-        timeout += System.currentTimeMillis();
-
         try
         {
-            port.readBytes();
-            port.writeString(command);
-            port.writeString("\n");
+            responseReader.clear();
+            port.writeString(command + "\n");
             LoggerFactory.getSerialLogger().fine(command + "\n");
-
-            StringBuffer buffer = new StringBuffer();
-            while (System.currentTimeMillis() < timeout)
-            {
-                String s = port.readString();
-                if (s == null)
-                {
-                    Thread.sleep(10);
-                    continue;
-                }
-                buffer.append(s);
-                String str = buffer.toString();
-                if (str.indexOf('\n') >= 0)
-                {
-                    if (response != null)
-                        response.append(str);
-                    LoggerFactory.getSerialLogger().fine(str);
-                    if (str.startsWith("ok"))
-                        return;
-                    if (str.startsWith("nack") && !suppressExceptions)
-                        throw new SerialException("Negative acknowledgement received: " + str);
-                    if (str.startsWith("error") && !suppressExceptions)
-                        throw new ExecutionException("Execution error received from controller: " + str);
-                    if (!suppressExceptions)
-                        throw new SerialException("Unexpected confirmation received from controller: " + str);
-                    return;
-                }
-            }
         }
         catch (SerialPortException e)
         {
             throw new SerialException(e);
         }
-        throw new SerialException("Timeout.");
+
+        String str = responseReader.readLine(timeout);
+        if (str == null)
+            throw new SerialException("Timeout.");
+        if (response != null)
+            response.append(str).append('\n');
+        LoggerFactory.getSerialLogger().fine(str + "\n");
+        if (str.startsWith("ok"))
+            return;
+        if (str.startsWith("nack") && !suppressExceptions)
+            throw new SerialException("Negative acknowledgement received: " + str);
+        if (str.startsWith("error") && !suppressExceptions)
+            throw new ExecutionException("Execution error received from controller: " + str);
+        if (!suppressExceptions)
+            throw new SerialException("Unexpected confirmation received from controller: " + str);
     }
 
     public void send(String str, long timeout) throws SerialException, ExecutionException, InterruptedException
@@ -199,8 +213,38 @@ public class SerialInterfaceImpl implements SerialInterface
 
     }
 
+    @Override
+    public void stream(Iterator<String> lines, int bufferSize, long timeout, StringBuilder response, boolean suppressExceptions,
+                       IntConsumer progress) throws SerialException, ExecutionException, InterruptedException
+    {
+        responseReader.clear();
+        new StreamingSender(new PortConnection(), bufferSize).send(lines, timeout, response, suppressExceptions, progress);
+    }
+
     public String getPortName()
     {
         return portName;
     }
+
+    private class PortConnection implements StreamingSender.Connection
+    {
+        @Override
+        public void write(String line) throws SerialException
+        {
+            try
+            {
+                port.writeString(line + "\n");
+            }
+            catch (SerialPortException e)
+            {
+                throw new SerialException(e);
+            }
+        }
+
+        @Override
+        public String readLine(long timeout) throws InterruptedException
+        {
+            return responseReader.readLine(timeout);
+        }
+    }
 }
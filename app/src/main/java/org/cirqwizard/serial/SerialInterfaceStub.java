@@ -17,7 +17,9 @@ package org.cirqwizard.serial;
 import org.cirqwizard.logging.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.Random;
+import java.util.function.IntConsumer;
 
 
 public class SerialInterfaceStub implements SerialInterface
@@ -68,6 +70,18 @@ public class SerialInterfaceStub implements SerialInterface
         }
     }
 
+    @Override
+    public void stream(Iterator<String> lines, int bufferSize, long timeout, StringBuilder response, boolean suppressExceptions,
+                       IntConsumer progress) throws SerialException, ExecutionException, InterruptedException
+    {
+        for (int i = 0; lines.hasNext(); i++)
+        {
+            LoggerFactory.getSerialLogger().fine(lines.next());
+            Thread.sleep(5);
+            progress.accept(i);
+        }
+    }
+
     @Override
     public String getPortName()
     {
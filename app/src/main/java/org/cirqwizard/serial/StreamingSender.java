@@ -0,0 +1,119 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.serial;
+
+import org.cirqwizard.logging.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Streams program lines to the controller without waiting for acknowledgement of every line. Lines are sent as long
+ * as all unacknowledged ones fit into the receive buffer of the controller (character counting), acknowledgements
+ * are matched to outstanding lines in the order they were sent.
+ */
+public class StreamingSender
+{
+    public interface Connection
+    {
+        void write(String line) throws SerialException;
+
+        /**
+         * @return next line received from the controller without line terminator or null if nothing arrived in time
+         */
+        String readLine(long timeout) throws SerialException, InterruptedException;
+    }
+
+    private Connection connection;
+    private int bufferSize;
+
+    public StreamingSender(Connection connection, int bufferSize)
+    {
+        this.connection = connection;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Sends the lines and waits for all of them to be acknowledged. Lines are taken from the iterator only when
+     * there is room for them in the receive buffer.
+     * @param timeout time to wait for the next acknowledgement
+     * @param progress receives index of every acknowledged line
+     */
+    public void send(Iterator<String> lines, long timeout, StringBuilder response, boolean suppressExceptions,
+                     IntConsumer progress) throws SerialException, ExecutionException, InterruptedException
+    {
+        ArrayDeque<String> outstanding = new ArrayDeque<>();
+        int acknowledged = 0;
+        int bufferedBytes = 0;
+        String next = null;
+        while (next != null || lines.hasNext() || !outstanding.isEmpty())
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            // A line longer than the whole buffer is sent once everything before it is acknowledged
+            while (next != null || lines.hasNext())
+            {
+                if (next == null)
+                    next = lines.next();
+                if (!outstanding.isEmpty() && bufferedBytes + getLength(next) > bufferSize)
+                    break;
+                connection.write(next);
+                LoggerFactory.getSerialLogger().fine(next + "\n");
+                outstanding.add(next);
+                bufferedBytes += getLength(next);
+                next = null;
+            }
+
+            String str = connection.readLine(timeout);
+            if (str == null)
+                throw new SerialException("Timeout waiting for acknowledgement of line " + (acknowledged + 1));
+            LoggerFactory.getSerialLogger().fine(str + "\n");
+            if (response != null)
+                response.append(str).append('\n');
+
+            boolean ok = str.startsWith("ok");
+            boolean nack = str.startsWith("nack");
+            boolean error = str.startsWith("error");
+            // Anything else is a status report or a message not related to a particular line
+            if (!ok && !nack && !error)
+                continue;
+
+            if (outstanding.isEmpty())
+            {
+                LoggerFactory.getSerialLogger().warning("Response received while no lines are outstanding: " + str + "\n");
+                continue;
+            }
+            String line = outstanding.poll();
+            int lineNumber = acknowledged++;
+            bufferedBytes -= getLength(line);
+            progress.accept(lineNumber);
+            if (suppressExceptions)
+                continue;
+            if (nack)
+                throw new SerialException("Negative acknowledgement received for line " + (lineNumber + 1) + " (" + line + "): " + str);
+            if (error)
+                throw new ExecutionException("Execution error received for line " + (lineNumber + 1) + " (" + line + "): " + str);
+        }
+    }
+
+    /**
+     * Number of bytes a line occupies in the receive buffer including line terminator
+     */
+    private static int getLength(String line)
+    {
+        return line.length() + 1;
+    }
+}
@@ -31,6 +31,7 @@ public class ApplicationConstants
     private final static int Y_RAPID_ACCELERATION = 50_000;
     private final static int Z_RAPID_ACCELERATION = 50_000;
     private final static int FEED_ACCELERATION = 50_000;
+    private final static int JUNCTION_DEVIATION = 10;
     private final static int ARC_FEED = 400_000;
 
     public final static int REGISTRATION_PINS_INSET = 5_000;
@@ -71,6 +72,11 @@ public class ApplicationConstants
         return FEED_ACCELERATION;
     }
 
+    public static int getJunctionDeviation()
+    {
+        return JUNCTION_DEVIATION;
+    }
+
     public static int getArcFeed()
     {
         return ARC_FEED;
@@ -25,9 +25,28 @@ public class ApplicationSettings extends SettingsGroup
     private UserPreference<Level> logLevel = new UserPreference<>("Log level", Level.INFO, "").setItems(Level.OFF, Level.SEVERE, Level.WARNING, Level.INFO,
             Level.CONFIG, Level.FINE, Level.FINER, Level.FINEST, Level.ALL).setInstantiator(Level::parse);
 
+    @PersistentPreference
+    private UserPreference<Integer> streamingBufferSize = new UserPreference<>("Streaming buffer size", 0, "bytes", PreferenceType.INTEGER);
+
+    @PersistentPreference
+    private UserPreference<Integer> pathSimplificationTolerance = new UserPreference<>("Path simplification tolerance", 0, "mm");
+
     @PersistentPreference
     private UserPreference<Integer> processingThreads = new UserPreference<>("Processing threads", Runtime.getRuntime().availableProcessors(), "", PreferenceType.INTEGER);
 
+    @PersistentPreference
+    private UserPreference<Integer> generationMemoryBudget = new UserPreference<>("Generation memory budget", 50, "%", PreferenceType.PERCENT);
+
+    @PersistentPreference
+    private UserPreference<OptimizationStrategy> optimizationStrategy = new UserPreference<>("Optimization strategy", OptimizationStrategy.GENETIC, "").
+            setItems(OptimizationStrategy.values()).setInstantiator(OptimizationStrategy::forName);
+
+    @PersistentPreference
+    private UserPreference<Integer> optimizationTimeLimit = new UserPreference<>("Optimization time limit", 30, "s", PreferenceType.INTEGER);
+
+    @PersistentPreference
+    private UserPreference<Boolean> chainReversal = new UserPreference<>("Allow reversed milling direction", false, "");
+
     @Override
     public String getName()
     {
@@ -60,6 +79,26 @@ public class ApplicationSettings extends SettingsGroup
         this.logLevel = logLevel;
     }
 
+    public UserPreference<Integer> getStreamingBufferSize()
+    {
+        return streamingBufferSize;
+    }
+
+    public void setStreamingBufferSize(UserPreference<Integer> streamingBufferSize)
+    {
+        this.streamingBufferSize = streamingBufferSize;
+    }
+
+    public UserPreference<Integer> getPathSimplificationTolerance()
+    {
+        return pathSimplificationTolerance;
+    }
+
+    public void setPathSimplificationTolerance(UserPreference<Integer> pathSimplificationTolerance)
+    {
+        this.pathSimplificationTolerance = pathSimplificationTolerance;
+    }
+
     public UserPreference<Integer> getProcessingThreads()
     {
         return processingThreads;
@@ -69,4 +108,44 @@ public class ApplicationSettings extends SettingsGroup
     {
         this.processingThreads = processingThreads;
     }
+
+    public UserPreference<Integer> getGenerationMemoryBudget()
+    {
+        return generationMemoryBudget;
+    }
+
+    public void setGenerationMemoryBudget(UserPreference<Integer> generationMemoryBudget)
+    {
+        this.generationMemoryBudget = generationMemoryBudget;
+    }
+
+    public UserPreference<OptimizationStrategy> getOptimizationStrategy()
+    {
+        return optimizationStrategy;
+    }
+
+    public void setOptimizationStrategy(UserPreference<OptimizationStrategy> optimizationStrategy)
+    {
+        this.optimizationStrategy = optimizationStrategy;
+    }
+
+    public UserPreference<Integer> getOptimizationTimeLimit()
+    {
+        return optimizationTimeLimit;
+    }
+
+    public void setOptimizationTimeLimit(UserPreference<Integer> optimizationTimeLimit)
+    {
+        this.optimizationTimeLimit = optimizationTimeLimit;
+    }
+
+    public UserPreference<Boolean> getChainReversal()
+    {
+        return chainReversal;
+    }
+
+    public void setChainReversal(UserPreference<Boolean> chainReversal)
+    {
+        this.chainReversal = chainReversal;
+    }
 }
@@ -31,6 +31,12 @@ public class InsulationMillingSettings extends SettingsGroup
     @PersistentPreference
     @PreferenceGroup(name = "Heights")
     private UserPreference<Integer> workingHeight = new UserPreference<>("Working height", -50, "mm");
+
+    @PersistentPreference
+    @PreferenceGroup(name = "Generation")
+    private UserPreference<ToolpathEngine> toolpathEngine = new UserPreference<>("Tool path engine", ToolpathEngine.RASTER, "").
+            setItems(ToolpathEngine.values()).setInstantiator(ToolpathEngine::forName);
+
     @Override
     public String getName()
     {
@@ -82,4 +88,14 @@ public class InsulationMillingSettings extends SettingsGroup
     {
         this.toolTable = toolTable;
     }
+
+    public UserPreference<ToolpathEngine> getToolpathEngine()
+    {
+        return toolpathEngine;
+    }
+
+    public void setToolpathEngine(UserPreference<ToolpathEngine> toolpathEngine)
+    {
+        this.toolpathEngine = toolpathEngine;
+    }
 }
@@ -0,0 +1,46 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.settings;
+
+public enum OptimizationStrategy
+{
+    GENETIC("Genetic algorithm"), PARALLEL_GENETIC("Parallel genetic algorithm"), LOCAL_SEARCH("Local search");
+
+    private String name;
+
+    OptimizationStrategy(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public static OptimizationStrategy forName(String name)
+    {
+        for (OptimizationStrategy s : values())
+            if (s.getName().equals(name))
+                return s;
+        throw new IllegalArgumentException("Could not find OptimizationStrategy for " + name);
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
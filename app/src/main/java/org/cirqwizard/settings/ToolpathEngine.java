@@ -0,0 +1,46 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.settings;
+
+public enum ToolpathEngine
+{
+    RASTER("Raster tracing"), VECTOR("Vector offsetting");
+
+    private String name;
+
+    ToolpathEngine(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public static ToolpathEngine forName(String name)
+    {
+        for (ToolpathEngine e : values())
+            if (e.getName().equals(name))
+                return e;
+        throw new IllegalArgumentException("Could not find ToolpathEngine for " + name);
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.test.generation;
+
+import org.cirqwizard.generation.BitRaster;
+import org.cirqwizard.generation.BitRasterPool;
+import org.cirqwizard.generation.SimpleEdgeDetector;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BitRasterTest
+{
+    @Test
+    public void testSetRange()
+    {
+        BitRaster raster = new BitRaster(200, 2);
+        raster.setRange(1, 3, 150);
+        for (int x = 0; x < 200; x++)
+        {
+            assertEquals(false, raster.get(x, 0));
+            assertEquals(x >= 3 && x < 150, raster.get(x, 1));
+        }
+        raster.setRange(0, 10, 12);
+        assertEquals(false, raster.get(9, 0));
+        assertEquals(true, raster.get(10, 0));
+        assertEquals(true, raster.get(11, 0));
+        assertEquals(false, raster.get(12, 0));
+    }
+
+    @Test
+    public void testImageConversion()
+    {
+        BufferedImage image = new BufferedImage(131, 37, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillOval(10, 5, 100, 25);
+        g.fillRect(120, 0, 11, 37);
+
+        BitRaster raster = BitRaster.fromImage(image);
+        for (int y = 0; y < image.getHeight(); y++)
+            for (int x = 0; x < image.getWidth(); x++)
+                assertEquals((image.getRGB(x, y) & 0xFFFFFF) != 0, raster.get(x, y));
+
+        BufferedImage copy = raster.toImage();
+        for (int y = 0; y < image.getHeight(); y++)
+            for (int x = 0; x < image.getWidth(); x++)
+                assertEquals(image.getRGB(x, y), copy.getRGB(x, y));
+    }
+
+    @Test
+    public void testEdgeDetector()
+    {
+        checkEdgeDetector(193, 41, null);
+    }
+
+    @Test
+    public void testPooledEdgeDetector()
+    {
+        // Enough rows to be split into bands, the pooled raster is dirty
+        BitRasterPool pool = new BitRasterPool(2);
+        BitRaster dirty = new BitRaster(130, 700);
+        Arrays.fill(dirty.getWords(), -1L);
+        pool.release(dirty);
+        pool.release(new BitRaster(131, 700));
+        assertSame(dirty, checkEdgeDetector(130, 700, pool));
+        assertEquals(1, pool.getIdleCount());
+        pool.release(dirty);
+        pool.release(new BitRaster(1, 1));
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    private BitRaster checkEdgeDetector(int width, int height, BitRasterPool pool)
+    {
+        Random random = new Random(0);
+        BitRaster source = new BitRaster(width, height);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                if (random.nextInt(3) == 0)
+                    source.set(x, y);
+
+        SimpleEdgeDetector detector = new SimpleEdgeDetector(source, pool);
+        detector.process();
+        BitRaster output = detector.getOutput();
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                boolean expected = x > 0 && y > 0 && x < width - 1 && y < height - 1 && !source.get(x, y) &&
+                        (source.get(x - 1, y) || source.get(x + 1, y) || source.get(x, y - 1) || source.get(x, y + 1));
+                assertEquals(expected, output.get(x, y));
+            }
+        }
+        return output;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation;
+
+import org.cirqwizard.generation.BoardGroups;
+import org.cirqwizard.generation.toolpath.BoardToolpathsKey;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.generation.toolpath.ToolpathsCache;
+import org.cirqwizard.generation.toolpath.ToolpathsCacheKey;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.layers.PanelBoard;
+import org.cirqwizard.settings.ToolpathEngine;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BoardGroupsTest
+{
+    // Board is 26289 x 13081 after being moved to origin
+    private final static String GERBER = "%FSLAX24Y24*%\n%MOIN*%\n%ADD10C,0.0100*%\n%ADD11R,0.0600X0.0200*%\n" +
+            "D10*\nX10000Y10000D02*\nX20000Y10000D01*\nD11*\nX20000Y15000D03*\nM02*\n";
+    private final static int MARGIN = 1000;
+    private final static ToolpathsCacheKey PARAMETERS = new ToolpathsCacheKey(0, 300, 0, 0, false, ToolpathEngine.RASTER, 0, 0);
+
+    private File createFile(String content) throws IOException
+    {
+        File file = File.createTempFile("board", ".cmp");
+        file.deleteOnExit();
+        write(file, content);
+        return file;
+    }
+
+    private void write(File file, String content) throws IOException
+    {
+        try (FileWriter writer = new FileWriter(file))
+        {
+            writer.write(content);
+        }
+    }
+
+    private PanelBoard createBoard(File file, int x, int y) throws IOException
+    {
+        String filename = file.getAbsolutePath().substring(0, file.getAbsolutePath().length() - ".cmp".length());
+        PanelBoard board = new PanelBoard(filename, x, y);
+        board.loadBoard();
+        return board;
+    }
+
+    @Test
+    public void testSplit() throws IOException
+    {
+        File file = createFile(GERBER);
+        PanelBoard a = createBoard(file, 0, 0);
+        PanelBoard b = createBoard(file, 100000, 0);
+        PanelBoard c = createBoard(file, 27000, 0);
+        PanelBoard d = createBoard(file, 0, 50000);
+
+        List<List<PanelBoard>> groups = BoardGroups.split(Arrays.asList(a, b, c, d), MARGIN);
+        assertEquals(3, groups.size());
+        assertEquals(Arrays.asList(a, c), groups.get(0));
+        assertEquals(Collections.singletonList(b), groups.get(1));
+        assertEquals(Collections.singletonList(d), groups.get(2));
+    }
+
+    @Test
+    public void testSplitTransitive() throws IOException
+    {
+        File file = createFile(GERBER);
+        PanelBoard a = createBoard(file, 0, 0);
+        PanelBoard b = createBoard(file, 54000, 0);
+        PanelBoard c = createBoard(file, 27000, 0);
+
+        List<List<PanelBoard>> groups = BoardGroups.split(Arrays.asList(a, b, c), MARGIN);
+        assertEquals(1, groups.size());
+        assertEquals(3, groups.get(0).size());
+    }
+
+    @Test
+    public void testIdenticalBoardsShareKey() throws IOException
+    {
+        PanelBoard a = createBoard(createFile(GERBER), 0, 0);
+        PanelBoard b = createBoard(createFile(GERBER), 100000, 20000);
+        assertNotNull(a.getContentHash());
+        assertEquals(a.getContentHash(), b.getContentHash());
+
+        List<PanelBoard> groupA = Collections.singletonList(a);
+        List<PanelBoard> groupB = Collections.singletonList(b);
+        BoardToolpathsKey keyA = BoardGroups.getKey(PARAMETERS, groupA, BoardGroups.getOrigin(groupA, MARGIN));
+        BoardToolpathsKey keyB = BoardGroups.getKey(PARAMETERS, groupB, BoardGroups.getOrigin(groupB, MARGIN));
+        assertEquals(keyA, keyB);
+
+        b.rotate(true);
+        assertNotEquals(keyA, BoardGroups.getKey(PARAMETERS, groupB, BoardGroups.getOrigin(groupB, MARGIN)));
+    }
+
+    @Test
+    public void testKeyFollowsLoadedContent() throws IOException
+    {
+        File file = createFile(GERBER);
+        PanelBoard board = createBoard(file, 0, 0);
+        List<PanelBoard> group = Collections.singletonList(board);
+        Point origin = BoardGroups.getOrigin(group, MARGIN);
+        BoardToolpathsKey key = BoardGroups.getKey(PARAMETERS, group, origin);
+
+        // Tool paths are generated from what has been loaded, so changes on disk matter only after reloading
+        write(file, GERBER.replace("X20000Y15000", "X20000Y16000"));
+        assertEquals(key, BoardGroups.getKey(PARAMETERS, group, origin));
+        board.loadBoard();
+        assertNotEquals(key, BoardGroups.getKey(PARAMETERS, group, origin));
+    }
+
+    @Test
+    public void testKeyOfUnloadedBoard()
+    {
+        List<PanelBoard> group = Collections.singletonList(new PanelBoard("missing", 0, 0));
+        assertNull(BoardGroups.getKey(PARAMETERS, group, new Point(0, 0)));
+    }
+
+    @Test
+    public void testRetainBoardToolpaths()
+    {
+        ToolpathsCacheKey otherParameters = new ToolpathsCacheKey(0, 200, 0, 0, false, ToolpathEngine.RASTER, 0, 0);
+        BoardToolpathsKey used = new BoardToolpathsKey(PARAMETERS, new String[] {"a:0:false"}, new int[] {0}, new int[] {0});
+        BoardToolpathsKey unused = new BoardToolpathsKey(PARAMETERS, new String[] {"b:0:false"}, new int[] {0}, new int[] {0});
+        BoardToolpathsKey other = new BoardToolpathsKey(otherParameters, new String[] {"b:0:false"}, new int[] {0}, new int[] {0});
+        List<Toolpath> toolpaths = new ArrayList<>();
+        toolpaths.add(new LinearToolpath(300, new Point(0, 0), new Point(1000, 0)));
+
+        ToolpathsCache cache = new ToolpathsCache();
+        cache.setBoardToolpaths(used, toolpaths);
+        cache.setBoardToolpaths(unused, toolpaths);
+        cache.setBoardToolpaths(other, toolpaths);
+        cache.retainBoardToolpaths(PARAMETERS, new HashSet<>(Collections.singletonList(used)));
+
+        assertSame(toolpaths, cache.getBoardToolpaths(used));
+        assertNull(cache.getBoardToolpaths(unused));
+        assertSame(toolpaths, cache.getBoardToolpaths(other));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation;
+
+import org.cirqwizard.generation.CircleIndex;
+import org.cirqwizard.geom.Circle;
+import org.cirqwizard.geom.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CircleIndexTest
+{
+    @Test
+    public void testQuery()
+    {
+        Circle small = new Circle(new Point(500, 500), 100);
+        Circle large = new Circle(new Point(-2000, 500), 2600);
+        Circle outside = new Circle(new Point(10000, 10000), 300);
+        CircleIndex index = new CircleIndex(Arrays.asList(small, large, outside), 1000, 1000, 10);
+
+        assertEquals(Arrays.asList(small, large), index.query(600, 500));
+        assertEquals(Arrays.asList(small), index.query(500, 409));
+        assertEquals(0, index.query(500, 500).size());
+        assertEquals(0, index.query(500, 389).size());
+        assertEquals(0, index.query(1500, 500).size());
+    }
+
+    @Test
+    public void testMatchesExhaustiveSearch()
+    {
+        Random random = new Random(1);
+        List<Circle> circles = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            circles.add(new Circle(new Point(random.nextInt(3000) - 1000, random.nextInt(3000) - 1000), random.nextInt(1500)));
+        CircleIndex index = new CircleIndex(circles, 1000, 1000, 10);
+
+        for (int i = 0; i < 2000; i++)
+        {
+            Point point = new Point(random.nextInt(1000), random.nextInt(1000));
+            List<Circle> expected = new ArrayList<>();
+            for (Circle circle : circles)
+                if (Math.abs(circle.getRadius() - circle.getCenter().distanceTo(point)) < 10)
+                    expected.add(circle);
+            assertEquals(expected, index.query(point.getX(), point.getY()));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.test.generation;
+
+import org.cirqwizard.generation.PrimitiveIndex;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.gerber.Flash;
+import org.cirqwizard.gerber.GerberPrimitive;
+import org.cirqwizard.gerber.LinearShape;
+import org.cirqwizard.gerber.appertures.CircularAperture;
+import org.cirqwizard.gerber.appertures.macro.ApertureMacro;
+import org.cirqwizard.gerber.appertures.macro.MacroCircle;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrimitiveIndexTest
+{
+    @Test
+    public void testQueryPreservesOrder()
+    {
+        CircularAperture aperture = new CircularAperture(1000);
+        GerberPrimitive trace = new LinearShape(0, 0, 20000, 0, aperture, GerberPrimitive.Polarity.DARK);
+        GerberPrimitive farPad = new Flash(50000, 50000, aperture, GerberPrimitive.Polarity.DARK);
+        GerberPrimitive clearPad = new Flash(12000, 0, aperture, GerberPrimitive.Polarity.CLEAR);
+        GerberPrimitive pad = new Flash(11000, 0, aperture, GerberPrimitive.Polarity.DARK);
+        PrimitiveIndex index = new PrimitiveIndex(Arrays.asList(trace, farPad, clearPad, pad), 0);
+
+        assertEquals(Arrays.asList(trace, clearPad, pad), index.query(10000, -1000, 5000, 2000));
+        assertEquals(Arrays.asList(farPad), index.query(45000, 45000, 5000, 5000));
+        assertEquals(0, index.query(100000, 100000, 5000, 5000).size());
+    }
+
+    @Test
+    public void testInflation()
+    {
+        GerberPrimitive pad = new Flash(10000, 10000, new CircularAperture(1000), GerberPrimitive.Polarity.DARK);
+        assertEquals(0, new PrimitiveIndex(Arrays.asList(pad), 0).query(0, 0, 8000, 8000).size());
+        assertEquals(1, new PrimitiveIndex(Arrays.asList(pad), 2000).query(0, 0, 8000, 8000).size());
+    }
+
+    @Test
+    public void testMacroExtents()
+    {
+        ApertureMacro macro = new ApertureMacro();
+        macro.addPrimitive(new MacroCircle(2000, new Point(5000, 0)));
+        GerberPrimitive pad = new Flash(0, 0, macro, GerberPrimitive.Polarity.DARK);
+        assertEquals(1, new PrimitiveIndex(Arrays.asList(pad), 0).query(5500, -100, 100, 200).size());
+    }
+
+    @Test
+    public void testMatchesBruteForce()
+    {
+        CircularAperture aperture = new CircularAperture(300);
+        List<GerberPrimitive> primitives = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            int x = (i * 7919) % 100000;
+            int y = (i * 104729) % 60000;
+            primitives.add(new LinearShape(x, y, x + (i % 13) * 1000, y + (i % 7) * 1000, aperture, GerberPrimitive.Polarity.DARK));
+        }
+        PrimitiveIndex index = new PrimitiveIndex(primitives, 100, 3000);
+
+        for (int x = -5000; x < 110000; x += 5000)
+        {
+            for (int y = -5000; y < 70000; y += 5000)
+            {
+                List<GerberPrimitive> expected = new ArrayList<>();
+                for (GerberPrimitive p : primitives)
+                {
+                    if (p.getMax().getX() + 100 >= x && p.getMin().getX() - 100 <= x + 5000 &&
+                            p.getMax().getY() + 100 >= y && p.getMin().getY() - 100 <= y + 5000)
+                        expected.add(p);
+                }
+                List<GerberPrimitive> actual = index.query(x, y, 5000, 5000);
+                assertEquals(true, actual.containsAll(expected));
+                for (int i = 1; i < actual.size(); i++)
+                    assertEquals(true, primitives.indexOf(actual.get(i - 1)) < primitives.indexOf(actual.get(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.test.generation;
+
+import org.cirqwizard.generation.ProcessingPool;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingPoolTest
+{
+    @Test
+    public void testEveryIndexProcessedOnce()
+    {
+        ProcessingPool pool = new ProcessingPool(4);
+        for (int chunkSize : new int[] {1, 3, 7, 1000})
+        {
+            AtomicIntegerArray counts = new AtomicIntegerArray(350);
+            pool.forEach(counts.length(), chunkSize, i -> counts.incrementAndGet(i));
+            for (int i = 0; i < counts.length(); i++)
+                assertEquals(1, counts.get(i));
+        }
+        assertEquals(350 + 117 + 50 + 1, pool.getCompletedTasks());
+        assertEquals(0, pool.getQueuedTasks());
+    }
+
+    @Test
+    public void testNestedSubmission()
+    {
+        ProcessingPool pool = new ProcessingPool(2);
+        AtomicIntegerArray counts = new AtomicIntegerArray(100);
+        pool.forEach(10, 1, i -> pool.forEach(10, 1, j -> counts.incrementAndGet(i * 10 + j)));
+        for (int i = 0; i < counts.length(); i++)
+            assertEquals(1, counts.get(i));
+    }
+
+    @Test
+    public void testSubmissionFromOtherPool() throws Exception
+    {
+        ProcessingPool pool = new ProcessingPool(2);
+        ForkJoinPool other = new ForkJoinPool(1);
+        AtomicIntegerArray foreign = new AtomicIntegerArray(1);
+        other.submit(() -> pool.forEach(20, 1, i ->
+        {
+            if (ForkJoinTask.getPool() == other)
+                foreign.incrementAndGet(0);
+        })).get();
+        other.shutdown();
+        assertEquals(0, foreign.get(0));
+        assertTrue(pool.getCompletedTasks() >= 20);
+    }
+}
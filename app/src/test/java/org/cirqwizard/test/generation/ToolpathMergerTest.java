@@ -0,0 +1,177 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation;
+
+import org.cirqwizard.generation.ToolpathMerger;
+import org.cirqwizard.generation.toolpath.CircularToolpath;
+import org.cirqwizard.generation.toolpath.CuttingToolpath;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Curve;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.gerber.Flash;
+import org.cirqwizard.gerber.GerberParser;
+import org.cirqwizard.gerber.GerberPrimitive;
+import org.cirqwizard.gerber.LinearShape;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ToolpathMergerTest
+{
+    private final static int TOOL_DIAMETER = 300;
+    private final static int TOLERANCE = 150;
+    // Tool paths of raster tracer consist of short segments
+    private final static int SEGMENT_LENGTH = 200;
+
+    // Sample boards of EDAGerberTest, traces and round pads only, moved to positive coordinates
+    private final static String[] BOARDS =
+    {
+        "%FSLAX24Y24*%\n%MOIN*%\n%ADD16C,0.0740*%\n%ADD22C,0.0236*%\n" +
+                "D16*\nX003624Y010901D03*\nX002624Y010901D03*\n" +
+                "D22*\nX004594Y008561D02*\nX003214Y008561D01*\nX002874Y008901D01*\nM02*\n",
+        "%FSLAX34Y34*%\n%MOIN*%\n%ADD12C,0.055*%\n%ADD39C,0.012*%\n" +
+                "D12*\nX29724Y52649D03*\nD39*\nX30905Y49428D02*\nX30905Y49094D01*\nX31023Y47755D02*\nX30433Y47755D01*\nM02*\n",
+    };
+
+    /**
+     * Outlines of traces and round pads split into pieces the way tool path generators produce them
+     */
+    private static List<Toolpath> createToolpaths(String board) throws IOException
+    {
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (GerberPrimitive p : new GerberParser(new StringReader(board)).parse())
+        {
+            int radius = p.getAperture().getWidth() / 2 + TOOL_DIAMETER / 2;
+            if (p instanceof LinearShape)
+            {
+                Point from = ((LinearShape) p).getFrom();
+                Point to = ((LinearShape) p).getTo();
+                double length = from.distanceTo(to);
+                double nx = -(to.getY() - from.getY()) / length * radius;
+                double ny = (to.getX() - from.getX()) / length * radius;
+                addLine(toolpaths, from, to, nx, ny);
+                addLine(toolpaths, from, to, -nx, -ny);
+                addArcs(toolpaths, to, radius, Math.atan2(ny, nx), -Math.PI, 2);
+                addArcs(toolpaths, from, radius, Math.atan2(-ny, -nx), -Math.PI, 2);
+            }
+            else if (p instanceof Flash)
+                addArcs(toolpaths, ((Flash) p).getPoint(), radius, 0, -Math.PI * 2, 4);
+        }
+        return toolpaths;
+    }
+
+    private static Point offset(Point p, double dx, double dy)
+    {
+        return new Point(p.getX() + (int) Math.round(dx), p.getY() + (int) Math.round(dy));
+    }
+
+    private static void addLine(List<Toolpath> toolpaths, Point from, Point to, double nx, double ny)
+    {
+        int pieces = (int) Math.ceil(from.distanceTo(to) / SEGMENT_LENGTH);
+        Point previous = offset(from, nx, ny);
+        for (int i = 1; i <= pieces; i++)
+        {
+            Point next = offset(from, (double) (to.getX() - from.getX()) * i / pieces + nx, (double) (to.getY() - from.getY()) * i / pieces + ny);
+            toolpaths.add(new LinearToolpath(TOOL_DIAMETER, previous, next));
+            previous = next;
+        }
+    }
+
+    private static void addArcs(List<Toolpath> toolpaths, Point center, int radius, double start, double sweep, int pieces)
+    {
+        Point previous = offset(center, Math.cos(start) * radius, Math.sin(start) * radius);
+        Point first = previous;
+        for (int i = 1; i <= pieces; i++)
+        {
+            double angle = start + sweep * i / pieces;
+            Point next = i == pieces && Math.abs(sweep) == Math.PI * 2 ? first :
+                    offset(center, Math.cos(angle) * radius, Math.sin(angle) * radius);
+            toolpaths.add(new CircularToolpath(TOOL_DIAMETER, previous, next, center, radius, sweep < 0));
+            previous = next;
+        }
+    }
+
+    /**
+     * Canonical description of tool paths which does not depend on their order, direction and start points of circles
+     */
+    private static List<String> describe(List<Toolpath> toolpaths)
+    {
+        List<String> result = new ArrayList<>();
+        for (Toolpath t : toolpaths)
+        {
+            Curve c = ((CuttingToolpath) t).getCurve();
+            String from = c.getFrom().toString();
+            String to = c.getTo().toString();
+            boolean clockwise = c instanceof Arc && ((Arc) c).isClockwise();
+            if (from.compareTo(to) > 0)
+            {
+                String s = from;
+                from = to;
+                to = s;
+                clockwise = !clockwise;
+            }
+            if (c instanceof Arc && c.getFrom().equals(c.getTo()))
+                result.add("circle " + ((Arc) c).getCenter() + " " + ((Arc) c).getRadius());
+            else if (c instanceof Arc)
+                result.add("arc " + from + " " + to + " " + ((Arc) c).getCenter() + " " + ((Arc) c).getRadius() + " " + clockwise);
+            else
+                result.add("line " + from + " " + to);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testIsolatedTrace() throws IOException
+    {
+        List<Toolpath> toolpaths = createToolpaths("%FSLAX24Y24*%\n%MOIN*%\n%ADD10C,0.0100*%\n%ADD11C,0.0600*%\n" +
+                "D10*\nX010000Y010000D02*\nX020000Y010000D01*\nD11*\nX030000Y010000D03*\nM02*\n");
+        List<String> merged = describe(new ToolpathMerger(toolpaths, TOLERANCE).merge());
+        // Two sides and two end caps of the trace, a circle around the pad
+        assertEquals(5, merged.size());
+        assertEquals("line " + new Point(25400, 25123) + " " + new Point(50800, 25123), merged.get(3));
+        assertEquals("line " + new Point(25400, 25677) + " " + new Point(50800, 25677), merged.get(4));
+    }
+
+    @Test
+    public void testSampleBoards() throws IOException
+    {
+        for (String board : BOARDS)
+        {
+            List<Toolpath> merged = new ToolpathMerger(createToolpaths(board), TOLERANCE).merge();
+            List<String> expected = describe(merged);
+
+            // Nothing is left to merge
+            assertEquals(expected, describe(new ToolpathMerger(new ArrayList<>(merged), TOLERANCE).merge()));
+
+            // Split outlines are joined back whatever the order of tool paths is
+            Random random = new Random(0);
+            for (int i = 0; i < 20; i++)
+            {
+                List<Toolpath> toolpaths = createToolpaths(board);
+                Collections.shuffle(toolpaths, random);
+                assertEquals(expected, describe(new ToolpathMerger(toolpaths, TOLERANCE).merge()));
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.test.generation;
+
+import org.cirqwizard.generation.WindowScheduler;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WindowSchedulerTest
+{
+    @Test
+    public void testFitWindowSize()
+    {
+        long footprint = WindowScheduler.estimateFootprint(5010, 5010, 3);
+        assertEquals(5000, new WindowScheduler(footprint * 8).fitWindowSize(5000, 5, 3, 8));
+
+        int size = new WindowScheduler(footprint * 2).fitWindowSize(5000, 5, 3, 8);
+        assertTrue(size < 5000);
+        assertTrue(WindowScheduler.estimateFootprint(size + 10, size + 10, 3) * 8 <= footprint * 2);
+
+        assertEquals(WindowScheduler.MIN_WINDOW_SIZE, new WindowScheduler(1024).fitWindowSize(5000, 5, 3, 8));
+
+        // Narrow horizontal overlap leaves room for a larger window than the vertical one alone would
+        long rubOut = WindowScheduler.estimateFootprint(5010, 6000, 2);
+        assertEquals(5000, new WindowScheduler(rubOut * 8).fitWindowSize(5000, 5, 500, 2, 8));
+        assertTrue(new WindowScheduler(rubOut * 8).fitWindowSize(5000, 500, 500, 2, 8) < 5000);
+    }
+
+    @Test
+    public void testPeakBytes() throws InterruptedException
+    {
+        WindowScheduler scheduler = new WindowScheduler(10 * 1024 * 1024);
+        scheduler.acquire(3 * 1024 * 1024);
+        scheduler.acquire(4 * 1024 * 1024);
+        scheduler.release(3 * 1024 * 1024);
+        scheduler.acquire(1024 * 1024);
+        scheduler.release(4 * 1024 * 1024);
+        scheduler.release(1024 * 1024);
+        assertEquals(7 * 1024 * 1024, scheduler.getPeakBytes());
+
+        // Windows larger than the budget are admitted alone instead of blocking forever
+        scheduler.acquire(100 * 1024 * 1024);
+        scheduler.release(100 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation.gcode;
+
+import org.cirqwizard.generation.gcode.PathSimplifier;
+import org.cirqwizard.generation.toolpath.CircularToolpath;
+import org.cirqwizard.generation.toolpath.CuttingToolpath;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Curve;
+import org.cirqwizard.geom.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PathSimplifierTest
+{
+    private static List<Toolpath> polyline(List<Point> points)
+    {
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (int i = 1; i < points.size(); i++)
+            toolpaths.add(new LinearToolpath(300, points.get(i - 1), points.get(i)));
+        return toolpaths;
+    }
+
+    @Test
+    public void testCollinearRuns()
+    {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i <= 20; i++)
+            points.add(new Point(i * 100, i % 2 == 0 ? 0 : 3));
+        points.add(new Point(2000, 1000));
+        points.add(new Point(2000, 2000));
+        List<Toolpath> toolpaths = polyline(points);
+        Toolpath separate = new LinearToolpath(300, new Point(5000, 5000), new Point(6000, 5000));
+        toolpaths.add(separate);
+        Toolpath disabled = new LinearToolpath(300, new Point(6000, 5000), new Point(7000, 5000));
+        disabled.setEnabled(false);
+        toolpaths.add(disabled);
+
+        PathSimplifier simplifier = new PathSimplifier(5);
+        List<Toolpath> result = simplifier.simplify(toolpaths);
+        assertEquals(3, result.size());
+        assertEquals(new Point(0, 0), ((LinearToolpath) result.get(0)).getCurve().getFrom());
+        assertEquals(new Point(2000, 0), ((LinearToolpath) result.get(0)).getCurve().getTo());
+        assertEquals(new Point(2000, 2000), ((LinearToolpath) result.get(1)).getCurve().getTo());
+        assertSame(separate, result.get(2));
+        assertEquals(23, simplifier.getInputCount());
+        assertEquals(3, simplifier.getOutputCount());
+
+        // Zigzag exceeding tolerance is preserved, the last two segments are still merged
+        assertEquals(21, new PathSimplifier(2).simplify(polyline(points)).size());
+    }
+
+    @Test
+    public void testArcFitting()
+    {
+        for (boolean clockwise : new boolean[] {false, true})
+        {
+            List<Point> points = new ArrayList<>();
+            for (int i = 0; i <= 60; i++)
+            {
+                double angle = Math.PI * 1.5 * i / 60 * (clockwise ? -1 : 1);
+                points.add(new Point(10000 + (int) Math.round(5000 * Math.cos(angle)), 20000 + (int) Math.round(5000 * Math.sin(angle))));
+            }
+            List<Toolpath> toolpaths = polyline(points);
+            toolpaths.add(new LinearToolpath(300, points.get(points.size() - 1), new Point(0, 0)));
+
+            List<Toolpath> result = new PathSimplifier(5).simplify(toolpaths);
+            assertEquals(2, result.size());
+            assertTrue(result.get(0) instanceof PathSimplifier.FittedArc);
+            Arc arc = (Arc) ((CircularToolpath) result.get(0)).getCurve();
+            assertEquals(points.get(0), arc.getFrom());
+            assertEquals(points.get(points.size() - 1), arc.getTo());
+            assertTrue(arc.getCenter().distanceTo(new Point(10000, 20000)) <= 5);
+            assertEquals(5000, arc.getRadius(), 5);
+            assertEquals(clockwise, arc.isClockwise());
+            assertEquals(Math.PI * 1.5, arc.getAngle(), 0.01);
+            assertEquals(new Point(0, 0), ((LinearToolpath) result.get(1)).getCurve().getTo());
+        }
+    }
+
+    @Test
+    public void testFullCircle()
+    {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i <= 100; i++)
+        {
+            double angle = Math.PI * 2 * i / 100;
+            points.add(new Point((int) Math.round(3000 * Math.cos(angle)), (int) Math.round(3000 * Math.sin(angle))));
+        }
+        List<Toolpath> result = new PathSimplifier(5).simplify(polyline(points));
+        assertTrue(result.size() >= 2 && result.size() < 10);
+        assertTrue(result.get(0) instanceof CircularToolpath);
+        Point location = points.get(0);
+        for (Toolpath toolpath : result)
+        {
+            Curve curve = ((CuttingToolpath) toolpath).getCurve();
+            assertEquals(location, curve.getFrom());
+            if (curve instanceof Arc)
+                assertTrue(((Arc) curve).getAngle() < Math.PI * 2);
+            location = curve.getTo();
+        }
+        assertEquals(points.get(0), location);
+    }
+
+    @Test
+    public void testStreaming()
+    {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i <= 40; i++)
+        {
+            double angle = Math.PI * i / 40;
+            points.add(new Point((int) Math.round(4000 * Math.cos(angle)), (int) Math.round(4000 * Math.sin(angle))));
+        }
+        List<Toolpath> toolpaths = polyline(points);
+        Toolpath arc = new CircularToolpath(300, new Point(-4000, 0), new Point(4000, 0), new Point(0, 0), 4000, false);
+        toolpaths.add(arc);
+        toolpaths.addAll(polyline(points));
+
+        PathSimplifier simplifier = new PathSimplifier(5);
+        List<Toolpath> output = new ArrayList<>();
+        simplifier.add(toolpaths.get(0), output);
+        assertTrue(output.isEmpty());
+        for (int i = 1; i <= 40; i++)
+            simplifier.add(toolpaths.get(i), output);
+        assertEquals(2, output.size());
+        assertTrue(output.get(0) instanceof PathSimplifier.FittedArc);
+        assertSame(arc, output.get(1));
+        for (int i = 41; i < toolpaths.size(); i++)
+            simplifier.add(toolpaths.get(i), output);
+        assertEquals(2, output.size());
+        simplifier.flush(output);
+        assertEquals(3, output.size());
+        assertTrue(output.get(2) instanceof PathSimplifier.FittedArc);
+        assertEquals(81, simplifier.getInputCount());
+        assertEquals(3, simplifier.getOutputCount());
+        assertEquals(3, new PathSimplifier(5).simplify(toolpaths).size());
+    }
+}
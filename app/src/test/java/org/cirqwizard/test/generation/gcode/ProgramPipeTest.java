@@ -0,0 +1,116 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation.gcode;
+
+import org.cirqwizard.generation.gcode.ProgramPipe;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProgramPipeTest
+{
+    @Test
+    public void testOf()
+    {
+        List<String> lines = new ArrayList<>();
+        ProgramPipe pipe = ProgramPipe.of("G0 X1\r\nG1 Y2\n\nM5\n");
+        pipe.forEachRemaining(lines::add);
+        assertEquals(Arrays.asList("G0 X1", "G1 Y2", "", "M5"), lines);
+        assertEquals(0.75, pipe.getProgress(), 1e-9);
+        assertFalse(ProgramPipe.of("").hasNext());
+    }
+
+    @Test
+    public void testBoundedPipeline() throws Exception
+    {
+        ProgramPipe pipe = new ProgramPipe(8);
+        AtomicInteger generated = new AtomicInteger();
+        Thread generator = new Thread(() ->
+        {
+            StringBuilder str = new StringBuilder();
+            for (int i = 0; i < 1000; i++)
+            {
+                pipe.setProgress(i / 1000.0);
+                str.append("G1 X").append(i).append('\n');
+                pipe.flush(str);
+                generated.incrementAndGet();
+            }
+            pipe.close();
+        });
+        generator.start();
+
+        for (int i = 0; i < 1000; i++)
+        {
+            assertTrue(pipe.hasNext());
+            assertEquals("G1 X" + i, pipe.next());
+            assertEquals(i / 1000.0, pipe.getProgress(), 1e-9);
+            // Generator is never ahead by more than the capacity
+            assertTrue(generated.get() <= i + 1 + 8 + 1);
+        }
+        assertFalse(pipe.hasNext());
+        generator.join();
+    }
+
+    @Test
+    public void testCancellation() throws Exception
+    {
+        ProgramPipe pipe = new ProgramPipe(4);
+        AtomicReference<Throwable> result = new AtomicReference<>();
+        Thread generator = new Thread(() ->
+        {
+            try
+            {
+                while (true)
+                    pipe.accept("G4 P1");
+            }
+            catch (Throwable e)
+            {
+                result.set(e);
+            }
+        });
+        generator.start();
+        pipe.next();
+        pipe.cancel();
+        generator.join(5000);
+        assertTrue(result.get() instanceof CancellationException);
+    }
+
+    @Test
+    public void testFailure()
+    {
+        ProgramPipe pipe = new ProgramPipe();
+        pipe.accept("G0 X0");
+        pipe.fail(new RuntimeException("Broken"));
+        assertEquals("G0 X0", pipe.next());
+        try
+        {
+            pipe.hasNext();
+            fail("Generation failure expected");
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals("Broken", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation.optimizer;
+
+import org.cirqwizard.generation.optimizer.Chain;
+import org.cirqwizard.generation.optimizer.ChainDetector;
+import org.cirqwizard.generation.toolpath.CuttingToolpath;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChainDetectorTest
+{
+    @Test
+    public void testLongChain()
+    {
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (int i = 0; i < 100000; i++)
+        {
+            Point from = new Point(1000 + i * 100, 1000);
+            Point to = new Point(1000 + (i + 1) * 100, 1000);
+            // Every other segment runs in opposite direction
+            toolpaths.add(i % 2 == 0 ? new LinearToolpath(300, from, to) : new LinearToolpath(300, to, from));
+        }
+        Collections.shuffle(toolpaths, new Random(0));
+
+        List<Chain> chains = new ChainDetector(toolpaths).detect();
+        assertEquals(1, chains.size());
+        List<Toolpath> segments = chains.get(0).getSegments();
+        assertEquals(toolpaths.size(), segments.size());
+        for (int i = 0; i < segments.size(); i++)
+        {
+            assertEquals(new Point(1000 + i * 100, 1000), ((CuttingToolpath) segments.get(i)).getCurve().getFrom());
+            assertEquals(new Point(1000 + (i + 1) * 100, 1000), ((CuttingToolpath) segments.get(i)).getCurve().getTo());
+        }
+    }
+
+    @Test
+    public void testRegions()
+    {
+        Random random = new Random(0);
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            int x = 1000 + random.nextInt(20) * 1000;
+            int y = 1000 + random.nextInt(20) * 1000;
+            toolpaths.add(new LinearToolpath(300, new Point(x, y), new Point(x + 1000, y)));
+            toolpaths.add(new LinearToolpath(300, new Point(x, y + 1000), new Point(x, y)));
+        }
+
+        for (int regions = 1; regions <= 5; regions++)
+        {
+            int segments = 0;
+            for (Chain chain : new ChainDetector(toolpaths).detect(regions))
+            {
+                for (int i = 1; i < chain.getSegments().size(); i++)
+                    assertEquals(((CuttingToolpath) chain.getSegments().get(i - 1)).getCurve().getTo(),
+                            ((CuttingToolpath) chain.getSegments().get(i)).getCurve().getFrom());
+                segments += chain.getSegments().size();
+            }
+            assertEquals(toolpaths.size(), segments);
+        }
+    }
+}
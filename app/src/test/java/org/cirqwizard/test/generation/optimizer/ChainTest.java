@@ -0,0 +1,63 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation.optimizer;
+
+import org.cirqwizard.generation.optimizer.Chain;
+import org.cirqwizard.generation.toolpath.CircularToolpath;
+import org.cirqwizard.generation.toolpath.CuttingToolpath;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Point;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChainTest
+{
+    @Test
+    public void testReverse()
+    {
+        LinearToolpath line = new LinearToolpath(300, new Point(0, 0), new Point(1000, 0));
+        CircularToolpath arc = new CircularToolpath(300, new Point(1000, 0), new Point(2000, 1000), new Point(1000, 1000), 1000, false);
+        arc.setEnabled(false);
+        Chain chain = new Chain(Arrays.asList((Toolpath) line, arc));
+
+        Chain reversed = chain.reverse();
+        assertEquals(new Point(2000, 1000), reversed.getStart());
+        assertEquals(new Point(0, 0), reversed.getEnd());
+        assertEquals(2, reversed.getSegments().size());
+
+        Arc reversedArc = (Arc) ((CuttingToolpath) reversed.getSegments().get(0)).getCurve();
+        assertEquals(new Point(2000, 1000), reversedArc.getFrom());
+        assertEquals(new Point(1000, 0), reversedArc.getTo());
+        assertEquals(new Point(1000, 1000), reversedArc.getCenter());
+        assertEquals(1000, reversedArc.getRadius());
+        assertTrue(reversedArc.isClockwise());
+        assertFalse(reversed.getSegments().get(0).isEnabled());
+
+        LinearToolpath reversedLine = (LinearToolpath) reversed.getSegments().get(1);
+        assertEquals(new Point(1000, 0), reversedLine.getCurve().getFrom());
+        assertEquals(new Point(0, 0), reversedLine.getCurve().getTo());
+        assertTrue(reversedLine.isEnabled());
+
+        // Original chain is left intact
+        assertEquals(new Point(0, 0), chain.getStart());
+        assertEquals(new Point(2000, 1000), chain.reverse().reverse().getEnd());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation.optimizer;
+
+import org.cirqwizard.generation.optimizer.Chain;
+import org.cirqwizard.generation.optimizer.Environment;
+import org.cirqwizard.generation.optimizer.Island;
+import org.cirqwizard.generation.optimizer.MigrationRing;
+import org.cirqwizard.generation.optimizer.Phenotype;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IslandTest
+{
+    private static Environment createEnvironment(int size)
+    {
+        Random random = new Random(0);
+        List<Chain> chains = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+            Point from = new Point(random.nextInt(50000), random.nextInt(50000));
+            Point to = new Point(random.nextInt(50000), random.nextInt(50000));
+            chains.add(new Chain(Arrays.asList((Toolpath) new LinearToolpath(300, from, to))));
+        }
+        return new Environment(chains);
+    }
+
+    private static Phenotype createPhenotype(Environment environment, int... genes)
+    {
+        Phenotype phenotype = new Phenotype(genes);
+        phenotype.calculateFitness(environment);
+        return phenotype;
+    }
+
+    @Test
+    public void testNotWorseThanInitialOrder()
+    {
+        Environment environment = createEnvironment(40);
+        int[] initial = new int[40];
+        for (int i = 0; i < initial.length; i++)
+            initial[i] = i;
+        double initialFitness = new Phenotype(initial).calculateFitness(environment);
+
+        Island island = new Island(environment, new MigrationRing(1, 2), 0);
+        double fitness = island.getMostFit().calculateFitness(environment);
+        assertTrue(fitness <= initialFitness);
+        for (int i = 0; i < 300; i++)
+        {
+            island.breed();
+            if (i % 50 == 0)
+                island.migrate();
+            double f = island.getMostFit().calculateFitness(environment);
+            assertTrue(f <= fitness);
+            fitness = f;
+        }
+        assertTrue(fitness < initialFitness);
+
+        int[] genes = island.getMostFit().getGenes().clone();
+        Arrays.sort(genes);
+        assertArrayEquals(initial, genes);
+    }
+
+    @Test
+    public void testMigration()
+    {
+        Environment environment = createEnvironment(4);
+        MigrationRing ring = new MigrationRing(2, 1);
+        Phenotype best = createPhenotype(environment, 0, 1, 2, 3);
+        Phenotype[] first = {best, createPhenotype(environment, 0, 1, 2, 3)};
+        Phenotype[] second = {createPhenotype(environment, 3, 2, 1, 0), createPhenotype(environment, 1, 3, 0, 2),
+                createPhenotype(environment, 2, 0, 3, 1)};
+        double bestFitness = best.calculateFitness(environment);
+        Arrays.sort(second, (a, b) -> Double.compare(a.calculateFitness(environment), b.calculateFitness(environment)));
+        assertTrue(second[0].calculateFitness(environment) > bestFitness);
+        Phenotype worst = second[2];
+
+        // Nothing is published yet, the first island only publishes its best phenotype
+        ring.migrate(0, first, environment);
+        assertSame(best, first[0]);
+
+        // The worst phenotype of the second island is replaced by a copy of the immigrant
+        ring.migrate(1, second, environment);
+        assertSame(worst, second[2]);
+        assertArrayEquals(best.getGenes(), worst.getGenes());
+        assertNotSame(best.getGenes(), worst.getGenes());
+        assertEquals(bestFitness, worst.calculateFitness(environment), 1e-9);
+
+        // The immigrant is the best of the second island now and goes back to the first island, which already has it
+        ring.migrate(0, first, environment);
+        assertArrayEquals(new int[] {0, 1, 2, 3}, first[0].getGenes());
+        assertArrayEquals(new int[] {0, 1, 2, 3}, first[1].getGenes());
+    }
+
+    @Test
+    public void testSingleIslandDoesNotMigrate()
+    {
+        Environment environment = createEnvironment(4);
+        MigrationRing ring = new MigrationRing(1, 1);
+        Phenotype[] population = {createPhenotype(environment, 3, 2, 1, 0)};
+        ring.migrate(0, population, environment);
+        ring.migrate(0, population, environment);
+        assertArrayEquals(new int[] {3, 2, 1, 0}, population[0].getGenes());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation.optimizer;
+
+import org.cirqwizard.generation.optimizer.MotionPlanner;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MotionPlannerTest
+{
+    @Test
+    public void testSingleMove()
+    {
+        MotionPlanner planner = new MotionPlanner();
+        planner.reset(0, 0, 0);
+        planner.feed(100, 0, 0, 10);
+        planner.flush();
+        // 50 mm/s2 feed acceleration: 0.2 s and 1 mm to reach 10 mm/s, the same to stop
+        assertEquals(0.2 + 9.8 + 0.2, planner.getTotalDuration(), 1e-9);
+        assertEquals(planner.getTotalDuration(), planner.getDuration(MotionPlanner.Phase.LINEAR), 1e-9);
+        assertEquals(planner.getTotalDuration(), MotionPlanner.calculateFeedDuration(100, 0, 0, 10), 1e-9);
+
+        // Too short to reach the speed
+        planner.reset(0, 0, 0);
+        planner.feed(0.5, 0, 0, 10);
+        planner.flush();
+        assertEquals(2 * Math.sqrt(0.25 * 2 / 50), planner.getTotalDuration(), 1e-9);
+    }
+
+    @Test
+    public void testJunctions()
+    {
+        MotionPlanner planner = new MotionPlanner();
+        planner.reset(0, 0, 0);
+        for (int i = 1; i <= 100; i++)
+            planner.feed(i, 0, 0, 10);
+        planner.flush();
+        assertEquals(10.2, planner.getTotalDuration(), 1e-6);
+
+        // Reversal stops the tool
+        planner.reset(0, 0, 0);
+        planner.feed(50, 0, 0, 10);
+        planner.feed(0, 0, 0, 10);
+        planner.flush();
+        assertEquals(2 * MotionPlanner.calculateFeedDuration(50, 0, 0, 10), planner.getTotalDuration(), 1e-9);
+
+        // Right angle slows the tool down without stopping it
+        planner.reset(0, 0, 0);
+        planner.feed(50, 0, 0, 10);
+        planner.feed(50, 50, 0, 10);
+        planner.flush();
+        double duration = planner.getTotalDuration();
+        assertTrue(duration < 2 * MotionPlanner.calculateFeedDuration(50, 0, 0, 10));
+        assertTrue(duration > 10.2);
+    }
+
+    @Test
+    public void testTessellatedArc()
+    {
+        MotionPlanner planner = new MotionPlanner();
+        planner.reset(10, 0, 0);
+        planner.arc(-10, 0, 0, 0, false, 10);
+        planner.flush();
+        double arcDuration = planner.getTotalDuration();
+        assertEquals(MotionPlanner.calculateFeedDuration(Math.PI * 10, 0, 0, 10), arcDuration, 1e-9);
+        assertEquals(arcDuration, planner.getDuration(MotionPlanner.Phase.ARC), 1e-9);
+
+        assertEquals(arcDuration, tessellate(planner, 200), arcDuration * 0.01);
+
+        // Look-ahead buffer covers too short distance to keep the speed, but the tool never stops
+        double duration = tessellate(planner, 10_000);
+        assertTrue(duration > arcDuration * 2);
+        assertTrue(duration < 10_000 * MotionPlanner.calculateFeedDuration(Math.PI * 10 / 10_000, 0, 0, 10) / 5);
+    }
+
+    private double tessellate(MotionPlanner planner, int segments)
+    {
+        planner.reset(10, 0, 0);
+        for (int i = 1; i <= segments; i++)
+            planner.feed(10 * Math.cos(Math.PI * i / segments), 10 * Math.sin(Math.PI * i / segments), 0, 10);
+        planner.flush();
+        return planner.getTotalDuration();
+    }
+
+    @Test
+    public void testPhases()
+    {
+        MotionPlanner planner = new MotionPlanner();
+        planner.reset(0, 0, 0);
+        planner.rapid(0, 0, 5);
+        planner.rapid(20, 30, 5);
+        planner.rapid(20, 30, 1);
+        planner.feed(20, 30, 0, 2);
+        planner.feed(30, 30, 0, 10);
+        planner.flush();
+        assertEquals(MotionPlanner.calculateFeedDuration(0, 0, 1, 2), planner.getDuration(MotionPlanner.Phase.PLUNGE), 0.05);
+        assertTrue(planner.getDuration(MotionPlanner.Phase.RAPID) > MotionPlanner.calculateRapidDuration(20, 30, 0));
+        assertEquals(planner.getTotalDuration(), planner.getDuration(MotionPlanner.Phase.RAPID) + planner.getDuration(MotionPlanner.Phase.PLUNGE) +
+                planner.getDuration(MotionPlanner.Phase.LINEAR), 1e-9);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.test.generation.optimizer;
+
+import org.cirqwizard.generation.optimizer.Chain;
+import org.cirqwizard.generation.optimizer.Environment;
+import org.cirqwizard.generation.optimizer.Phenotype;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PhenotypeTest
+{
+    private static Environment createEnvironment(int size)
+    {
+        Random random = new Random(0);
+        List<Chain> chains = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+            Point from = new Point(random.nextInt(50000), random.nextInt(50000));
+            Point to = i % 4 == 0 ? from : new Point(random.nextInt(50000), random.nextInt(50000));
+            chains.add(new Chain(Arrays.asList((Toolpath) new LinearToolpath(300, from, to))));
+        }
+        return new Environment(chains);
+    }
+
+    @Test
+    public void testFitness()
+    {
+        List<Chain> chains = new ArrayList<>();
+        chains.add(new Chain(Arrays.asList((Toolpath) new LinearToolpath(300, new Point(0, 0), new Point(3000, 4000)))));
+        chains.add(new Chain(Arrays.asList((Toolpath) new LinearToolpath(300, new Point(3010, 4000), new Point(0, 4000)))));
+        Environment environment = new Environment(chains);
+        // Moves shorter than rounding are free, others cost their length and a penalty
+        assertEquals(0, new Phenotype(new int[] {0, 1}).calculateFitness(environment), 1e-9);
+        assertEquals(Math.hypot(3010, 4000) + 2000 + 4000 + 2000, new Phenotype(new int[] {1, 0}).calculateFitness(environment), 1e-6);
+    }
+
+    @Test
+    public void testIncrementalMutation()
+    {
+        Environment environment = createEnvironment(300);
+        int[] genes = new int[300];
+        for (int i = 0; i < genes.length; i++)
+            genes[i] = i;
+        Phenotype phenotype = new Phenotype(genes);
+        for (int i = 0; i < 200; i++)
+        {
+            phenotype.calculateFitness(environment);
+            phenotype.mutate(environment);
+            double expected = new Phenotype(phenotype.getGenes().clone()).calculateFitness(environment);
+            assertEquals(expected, phenotype.calculateFitness(environment), 1e-3);
+        }
+    }
+}
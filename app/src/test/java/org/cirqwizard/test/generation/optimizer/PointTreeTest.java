@@ -0,0 +1,146 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation.optimizer;
+
+import org.cirqwizard.generation.optimizer.PointTree;
+import org.cirqwizard.generation.optimizer.TimeEstimator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PointTreeTest
+{
+    private static double distance(int[] x, int[] y, int i, int px, int py)
+    {
+        return TimeEstimator.calculateRapidDuration(px - x[i], py - y[i]);
+    }
+
+    private static int[] identity(int size)
+    {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++)
+            ids[i] = i;
+        return ids;
+    }
+
+    private static int[] sorted(int[] ids, int from, int to)
+    {
+        int[] result = Arrays.copyOfRange(ids, from, to);
+        Arrays.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testEmptyTree()
+    {
+        PointTree tree = new PointTree(new int[0], new int[0], new int[0]);
+        assertEquals(-1, tree.nearest(0, 0));
+        assertEquals(0, tree.nearest(0, 0, 5, -1, 1).length);
+    }
+
+    @Test
+    public void testRemoval()
+    {
+        int[] x = {0, 100, 200, 300};
+        int[] y = {0, 0, 0, 0};
+        PointTree tree = new PointTree(x, y, identity(4));
+        assertEquals(1, tree.nearest(90, 0));
+        tree.remove(1);
+        tree.remove(1);
+        assertEquals(0, tree.nearest(90, 0));
+        tree.remove(0);
+        assertEquals(2, tree.nearest(90, 0));
+        tree.remove(2);
+        tree.remove(3);
+        assertEquals(-1, tree.nearest(90, 0));
+    }
+
+    @Test
+    public void testTies()
+    {
+        // Two pairs of points at the same distance, Y axis is slower, so the second pair is farther
+        int[] x = {100, -100, 0, 0, 500};
+        int[] y = {0, 0, 100, -100, 0};
+        PointTree tree = new PointTree(x, y, identity(5));
+        int nearest = tree.nearest(0, 0);
+        assertTrue(nearest >= 0 && nearest < 2);
+        assertArrayEquals(new int[] {2, 3}, sorted(tree.nearest(0, 0, 4, -1, 1), 2, 4));
+
+        int[] result = tree.nearest(0, 0, 4, -1, 1);
+        boolean[] found = new boolean[5];
+        for (int id : result)
+            found[id] = true;
+        assertArrayEquals(new boolean[] {true, true, true, true, false}, found);
+
+        tree.remove(nearest);
+        assertEquals(3, tree.nearest(0, 0, 3, -1, 1).length);
+        assertTrue(tree.nearest(0, 0) != nearest);
+    }
+
+    @Test
+    public void testExcludedGroup()
+    {
+        int[] x = {0, 10, 20, 30};
+        int[] y = {0, 0, 0, 0};
+        PointTree tree = new PointTree(x, y, identity(4));
+        assertArrayEquals(new int[] {2, 3}, tree.nearest(0, 0, 2, 0, 2));
+    }
+
+    @Test
+    public void testAgainstExhaustiveSearch()
+    {
+        Random random = new Random(0);
+        int size = 500;
+        int[] x = new int[size];
+        int[] y = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            x[i] = random.nextInt(1000);
+            y[i] = random.nextInt(1000);
+        }
+        int[] ids = identity(size);
+        for (int i = size - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            int t = ids[i];
+            ids[i] = ids[j];
+            ids[j] = t;
+        }
+        int[] byId = new int[size];
+        for (int i = 0; i < size; i++)
+            byId[ids[i]] = i;
+
+        PointTree tree = new PointTree(x, y, ids);
+        boolean[] removed = new boolean[size];
+        for (int step = 0; step < size; step++)
+        {
+            int px = random.nextInt(1200) - 100;
+            int py = random.nextInt(1200) - 100;
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < size; i++)
+                if (!removed[ids[i]])
+                    best = Math.min(best, distance(x, y, i, px, py));
+            int id = tree.nearest(px, py);
+            assertEquals(best, distance(x, y, byId[id], px, py), 0);
+            tree.remove(id);
+            removed[id] = true;
+        }
+        assertEquals(-1, tree.nearest(0, 0));
+    }
+}
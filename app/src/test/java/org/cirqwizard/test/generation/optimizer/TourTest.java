@@ -0,0 +1,99 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.generation.optimizer;
+
+import org.cirqwizard.generation.optimizer.Chain;
+import org.cirqwizard.generation.optimizer.Tour;
+import org.cirqwizard.generation.toolpath.LinearToolpath;
+import org.cirqwizard.generation.toolpath.Toolpath;
+import org.cirqwizard.geom.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TourTest
+{
+    private final static double TRANSITION_DURATION = 1.5;
+    private final static int MERGE_TOLERANCE = 50;
+
+    private static Tour createTour(Random random, int size)
+    {
+        List<Chain> chains = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+            Point from = new Point(random.nextInt(50000), random.nextInt(50000));
+            // Some of the chains are continuous with the previous one
+            if (i > 0 && i % 5 == 0)
+                from = chains.get(i - 1).getEnd();
+            Point to = new Point(random.nextInt(50000), random.nextInt(50000));
+            chains.add(new Chain(Arrays.asList((Toolpath) new LinearToolpath(300, from, to))));
+        }
+        return new Tour(chains, TRANSITION_DURATION, MERGE_TOLERANCE);
+    }
+
+    @Test
+    public void testReversalDelta()
+    {
+        Random random = new Random(0);
+        Tour tour = createTour(random, 30);
+        for (int i = 0; i < 500; i++)
+        {
+            int from = random.nextInt(tour.size());
+            int to = from + random.nextInt(tour.size() - from);
+            double cost = tour.getCost();
+            double delta = tour.getReversalDelta(from, to);
+            tour.reverse(from, to);
+            assertEquals(cost + delta, tour.getCost(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testMoveDelta()
+    {
+        Random random = new Random(1);
+        Tour tour = createTour(random, 30);
+        for (int i = 0; i < 1000; i++)
+        {
+            int length = 1 + random.nextInt(3);
+            int position = random.nextInt(tour.size() - length + 1);
+            int target = random.nextInt(tour.size() + 1);
+            if (target >= position && target <= position + length)
+                continue;
+            boolean reverse = random.nextBoolean();
+            double cost = tour.getCost();
+            double delta = tour.getMoveDelta(position, length, target, reverse);
+            tour.move(position, length, target, reverse);
+            assertEquals(cost + delta, tour.getCost(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testMoveKeepsPositions()
+    {
+        Tour tour = createTour(new Random(2), 6);
+        tour.move(1, 2, 5, true);
+        int[] expected = {0, 3, 4, 2, 1, 5};
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals(expected[i], tour.getChain(i));
+            assertEquals(i, tour.getPosition(expected[i]));
+            assertEquals(expected[i] == 1 || expected[i] == 2, tour.isReversed(expected[i]));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.test.generation.toolpath;
+
+import org.cirqwizard.generation.toolpath.*;
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.settings.ToolpathEngine;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ToolpathsPersistorTest
+{
+    private static List<Toolpath> createToolpaths(int count, int shift)
+    {
+        List<Toolpath> toolpaths = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            Point from = new Point(i * 1000 + shift, -i * 300);
+            Point to = new Point(i * 1000 + 700 + shift, -i * 300 + 50);
+            if (i % 3 == 0)
+                toolpaths.add(new CircularToolpath(300, from, to, new Point(from.getX() + 350, from.getY() - 2000), 2030, i % 2 == 0));
+            else
+                toolpaths.add(new LinearToolpath(i % 5 == 0 ? 100 : 300, from, to));
+            toolpaths.get(i).setEnabled(i % 7 != 0);
+        }
+        return toolpaths;
+    }
+
+    private static void assertToolpathsEqual(List<Toolpath> expected, List<Toolpath> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            CuttingToolpath e = (CuttingToolpath) expected.get(i);
+            CuttingToolpath a = (CuttingToolpath) actual.get(i);
+            assertEquals(e.getClass(), a.getClass());
+            assertEquals(e.getToolDiameter(), a.getToolDiameter());
+            assertEquals(e.isEnabled(), a.isEnabled());
+            assertEquals(e.getCurve().getFrom(), a.getCurve().getFrom());
+            assertEquals(e.getCurve().getTo(), a.getCurve().getTo());
+            if (e.getCurve() instanceof Arc)
+            {
+                assertEquals(((Arc) e.getCurve()).getCenter(), ((Arc) a.getCurve()).getCenter());
+                assertEquals(((Arc) e.getCurve()).getRadius(), ((Arc) a.getCurve()).getRadius());
+                assertEquals(((Arc) e.getCurve()).isClockwise(), ((Arc) a.getCurve()).isClockwise());
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException, ToolpathPersistingException
+    {
+        File file = File.createTempFile("toolpaths", ".tmp");
+        file.deleteOnExit();
+        ToolpathsCacheKey topKey = new ToolpathsCacheKey(1, 300, 1, 50, false, ToolpathEngine.VECTOR, 0, 0);
+        ToolpathsCacheKey bottomKey = new ToolpathsCacheKey(2, 300, 0, 0, true, null, 0, 0);
+        BoardToolpathsKey boardKey = new BoardToolpathsKey(topKey, new String[] {"abc:0:true"}, new int[] {10}, new int[] {20});
+        // Large enough to be compressed
+        List<Toolpath> top = createToolpaths(2000, 0);
+        List<Toolpath> bottom = createToolpaths(10, 5);
+        List<Toolpath> board = createToolpaths(3, 7);
+
+        ToolpathsCache cache = new ToolpathsCache();
+        cache.setToolpaths(topKey, top);
+        cache.setToolpaths(bottomKey, bottom);
+        cache.setBoardToolpaths(boardKey, board);
+        ToolpathsPersistor.saveToFile(cache, file.getAbsolutePath());
+
+        ToolpathsCache loaded = ToolpathsPersistor.loadFromFile(file.getAbsolutePath());
+        assertToolpathsEqual(top, loaded.getToolpaths(topKey));
+        assertToolpathsEqual(bottom, loaded.getToolpaths(bottomKey));
+        assertToolpathsEqual(board, loaded.getBoardToolpaths(new BoardToolpathsKey(topKey, new String[] {"abc:0:true"},
+                new int[] {10}, new int[] {20})));
+        assertNull(loaded.getToolpaths(new ToolpathsCacheKey(3, 300, 0, 0, false, null, 0, 0)));
+    }
+
+    @Test
+    public void testReplaceAndRemove() throws IOException, ToolpathPersistingException
+    {
+        File file = File.createTempFile("toolpaths", ".tmp");
+        file.deleteOnExit();
+        ToolpathsCacheKey topKey = new ToolpathsCacheKey(1, 300, 0, 0, false, ToolpathEngine.RASTER, 0, 0);
+        ToolpathsCacheKey bottomKey = new ToolpathsCacheKey(2, 300, 0, 0, false, ToolpathEngine.RASTER, 0, 0);
+        BoardToolpathsKey boardKey = new BoardToolpathsKey(topKey, new String[] {"abc:0:true"}, new int[] {0}, new int[] {0});
+
+        ToolpathsCache cache = new ToolpathsCache();
+        cache.setToolpaths(topKey, createToolpaths(20, 0));
+        cache.setToolpaths(bottomKey, createToolpaths(20, 1));
+        cache.setBoardToolpaths(boardKey, createToolpaths(20, 2));
+        ToolpathsPersistor.saveToFile(cache, file.getAbsolutePath());
+
+        // Entries not touched by the second session are neither loaded nor rewritten
+        ToolpathsCache session = ToolpathsPersistor.loadFromFile(file.getAbsolutePath());
+        List<Toolpath> replacement = createToolpaths(5, 3);
+        session.setToolpaths(topKey, replacement);
+        session.invalidatePanelToolpaths();
+        session.setToolpaths(topKey, replacement);
+        ToolpathsPersistor.saveToFile(session, file.getAbsolutePath());
+
+        ToolpathsCache loaded = ToolpathsPersistor.loadFromFile(file.getAbsolutePath());
+        assertToolpathsEqual(replacement, loaded.getToolpaths(topKey));
+        assertNull(loaded.getToolpaths(bottomKey));
+        assertToolpathsEqual(createToolpaths(20, 2), loaded.getBoardToolpaths(boardKey));
+
+        // Unchanged entries of a saved cache are still readable after the file has been appended to
+        session.setToolpaths(bottomKey, createToolpaths(4, 4));
+        ToolpathsPersistor.saveToFile(session, file.getAbsolutePath());
+        assertToolpathsEqual(createToolpaths(20, 2), session.getBoardToolpaths(boardKey));
+        assertToolpathsEqual(createToolpaths(4, 4), ToolpathsPersistor.loadFromFile(file.getAbsolutePath()).getToolpaths(bottomKey));
+    }
+
+    @Test
+    public void testMissingFile() throws ToolpathPersistingException
+    {
+        assertNull(ToolpathsPersistor.loadFromFile(new File("nonexistent_toolpaths.tmp").getAbsolutePath()));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.gerber;
+
+import org.cirqwizard.gerber.GerberLexer;
+import org.cirqwizard.gerber.GerberParsingException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GerberLexerTest
+{
+    @Test
+    public void testBlocks() throws IOException
+    {
+        String content = "G04 100% comment*\n%FSLAX24Y24*%\r\n%AMOC8*\n5,1,8,0,0,1.08239X$1,22.5*\n%\n  X1 Y-2\tD01*\n**M02*";
+        GerberLexer lexer = new GerberLexer(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)));
+
+        assertTrue(lexer.nextBlock());
+        assertEquals("G04100%comment", lexer.getBlock());
+        assertFalse(lexer.isParameterMode());
+
+        assertTrue(lexer.nextBlock());
+        assertEquals("FSLAX24Y24", lexer.getBlock());
+        assertTrue(lexer.isParameterMode());
+        assertTrue(lexer.isDelimiterPassed());
+
+        assertTrue(lexer.nextBlock());
+        assertEquals("AMOC8", lexer.getBlock());
+        assertTrue(lexer.isParameterMode());
+        assertTrue(lexer.isDelimiterPassed());
+
+        assertTrue(lexer.nextBlock());
+        assertEquals("5,1,8,0,0,1.08239X$1,22.5", lexer.getBlock());
+        assertTrue(lexer.isParameterMode());
+        assertFalse(lexer.isDelimiterPassed());
+
+        assertTrue(lexer.nextBlock());
+        assertEquals("X1Y-2D01", lexer.getBlock());
+        assertFalse(lexer.isParameterMode());
+
+        assertTrue(lexer.nextBlock());
+        assertEquals("M02", lexer.getBlock());
+        assertFalse(lexer.nextBlock());
+    }
+
+    @Test
+    public void testWords() throws IOException, GerberParsingException
+    {
+        GerberLexer lexer = new GerberLexer(new StringReader("G01X+0012Y-340I-J5DQ7D10*"));
+        lexer.nextBlock();
+
+        assertEquals('G', lexer.nextWord());
+        assertEquals(1, lexer.getIntValue());
+
+        assertEquals('X', lexer.nextWord());
+        assertEquals(12, lexer.getDigits());
+        assertEquals(4, lexer.getDigitCount());
+        assertFalse(lexer.isNegative());
+
+        assertEquals('Y', lexer.nextWord());
+        assertEquals(-340, lexer.getIntValue());
+        assertEquals(3, lexer.getDigitCount());
+
+        assertEquals('J', lexer.nextWord());
+        assertEquals(5, lexer.getIntValue());
+
+        assertEquals('D', lexer.nextWord());
+        assertEquals(10, lexer.getIntValue());
+        assertEquals(-1, lexer.nextWord());
+    }
+
+    @Test(expected = GerberParsingException.class)
+    public void testOverflow() throws IOException, GerberParsingException
+    {
+        GerberLexer lexer = new GerberLexer(new StringReader("D99999999999*"));
+        lexer.nextBlock();
+        lexer.nextWord();
+        lexer.getIntValue();
+    }
+}
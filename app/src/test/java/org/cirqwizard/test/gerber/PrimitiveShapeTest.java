@@ -0,0 +1,85 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.cirqwizard.test.gerber;
+
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.gerber.*;
+import org.cirqwizard.gerber.appertures.CircularAperture;
+import org.cirqwizard.gerber.appertures.OvalAperture;
+import org.cirqwizard.gerber.appertures.RectangularAperture;
+import org.cirqwizard.gerber.appertures.macro.ApertureMacro;
+import org.cirqwizard.gerber.appertures.macro.MacroCircle;
+import org.junit.Test;
+
+import java.awt.*;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrimitiveShapeTest
+{
+    @Test
+    public void testFlashes()
+    {
+        Shape circle = new Flash(1000, 1000, new CircularAperture(1000), GerberPrimitive.Polarity.DARK).getShape(100);
+        assertTrue(circle.contains(1590, 1000));
+        assertFalse(circle.contains(1610, 1000));
+
+        Shape rect = new Flash(0, 0, new RectangularAperture(2000, 1000), GerberPrimitive.Polarity.DARK).getShape(-100);
+        assertTrue(rect.contains(890, 390));
+        assertFalse(rect.contains(910, 0));
+        assertFalse(rect.contains(0, 410));
+
+        Shape oval = new Flash(0, 0, new OvalAperture(3000, 1000), GerberPrimitive.Polarity.DARK).getShape(0);
+        assertTrue(oval.contains(1450, 0));
+        assertFalse(oval.contains(1450, 450));
+    }
+
+    @Test
+    public void testTraces()
+    {
+        Shape round = new LinearShape(0, 0, 10000, 0, new CircularAperture(1000), GerberPrimitive.Polarity.DARK).getShape(200);
+        assertTrue(round.contains(-690, 0));
+        assertFalse(round.contains(-690, 690));
+        assertTrue(round.contains(5000, 690));
+
+        Shape square = new LinearShape(0, 0, 10000, 0, new RectangularAperture(1000, 1000), GerberPrimitive.Polarity.DARK).getShape(0);
+        assertTrue(square.contains(-490, 490));
+    }
+
+    @Test
+    public void testMacroInflation()
+    {
+        ApertureMacro macro = new ApertureMacro();
+        macro.addPrimitive(new MacroCircle(1000, new Point(2000, 0)));
+        Shape shape = new Flash(0, 0, macro, GerberPrimitive.Polarity.DARK).getShape(300);
+        assertTrue(shape.contains(2790, 0));
+        assertFalse(shape.contains(2810, 0));
+    }
+
+    @Test
+    public void testRegion()
+    {
+        Region region = new Region(GerberPrimitive.Polarity.DARK);
+        CircularAperture aperture = new CircularAperture(0);
+        region.addSegment(new LinearShape(0, 0, 1000, 0, aperture, GerberPrimitive.Polarity.DARK));
+        region.addSegment(new LinearShape(1000, 0, 1000, 1000, aperture, GerberPrimitive.Polarity.DARK));
+        region.addSegment(new LinearShape(1000, 1000, 0, 0, aperture, GerberPrimitive.Polarity.DARK));
+        assertTrue(region.getShape(0).contains(900, 100));
+        assertFalse(region.getShape(0).contains(100, 900));
+        assertTrue(region.getShape(100).contains(1090, 500));
+        assertFalse(region.getShape(-100).contains(950, 500));
+    }
+}
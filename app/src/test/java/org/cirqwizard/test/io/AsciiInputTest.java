@@ -0,0 +1,163 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.io;
+
+import org.cirqwizard.io.AsciiInput;
+import org.cirqwizard.io.AsciiLine;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsciiInputTest
+{
+    @Test
+    public void testLineTerminators() throws IOException
+    {
+        AsciiInput input = AsciiInput.of(new StringReader("M48\r\nT1C0.8\rX1Y2\n\nM30"));
+        assertEquals(Arrays.asList("M48", "T1C0.8", "X1Y2", "", "M30"), readLines(input));
+    }
+
+    @Test
+    public void testNonAsciiCharacters() throws IOException
+    {
+        AsciiInput input = AsciiInput.of(new StringReader("C1 1µF 😀 Ω"));
+        AsciiLine line = new AsciiLine();
+        assertTrue(input.readLine(line));
+
+        Matcher matcher = Pattern.compile("(\\S+)\\s+(\\S+)\\s+(\\S+)\\s+(.+)").matcher(line);
+        assertTrue(matcher.matches());
+        assertEquals("C1", matcher.group(1));
+        assertEquals("1µF", matcher.group(2));
+        assertEquals("😀", matcher.group(3));
+        assertEquals("Ω", matcher.group(4));
+        assertFalse(line.contentEquals("C1"));
+    }
+
+    @Test
+    public void testUnpairedSurrogates() throws IOException
+    {
+        assertEquals(Arrays.asList("a?b", "?", "c?"), readLines(AsciiInput.of(new StringReader("a\uD83Db\n\uDE00\nc\uD83D"))));
+    }
+
+    @Test
+    public void testSurrogatePairAcrossReads() throws IOException
+    {
+        String content = "X1\uD83D\uDE00Y2\n\uD83D";
+        // Reader returning one char at a time splits every pair
+        Reader reader = new StringReader(content)
+        {
+            @Override
+            public int read(char[] chars, int offset, int length) throws IOException
+            {
+                return super.read(chars, offset, Math.min(length, 1));
+            }
+        };
+        assertEquals(Arrays.asList("X1\uD83D\uDE00Y2", "?"), readLines(AsciiInput.of(reader)));
+    }
+
+    @Test
+    public void testMappedFile() throws IOException, NoSuchAlgorithmException
+    {
+        File file = File.createTempFile("cirqwizard", ".drd");
+        try
+        {
+            StringBuilder content = new StringBuilder();
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; content.length() <= AsciiInput.MAP_THRESHOLD; i++)
+            {
+                String line = "X" + i + "Y" + (i * 7) + (i % 3 == 0 ? "µ" : "");
+                // Files are read in default encoding, which may not be able to represent all characters
+                expected.add(new String(line.getBytes(Charset.defaultCharset()), Charset.defaultCharset()));
+                content.append(line).append(i % 2 == 0 ? "\n" : "\r\n");
+            }
+            Files.write(file.toPath(), content.toString().getBytes(Charset.defaultCharset()));
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            try (AsciiInput input = AsciiInput.open(file, digest))
+            {
+                assertEquals(expected, readLines(input));
+            }
+            assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(file.toPath())), digest.digest());
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUnmap() throws IOException
+    {
+        File file = File.createTempFile("cirqwizard", ".gbr");
+        try
+        {
+            Files.write(file.toPath(), new byte[AsciiInput.MAP_THRESHOLD]);
+            MappedByteBuffer mapped;
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+            {
+                mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            }
+            assertTrue(AsciiInput.unmap(mapped));
+
+            // Buffers which are not mapped are left alone
+            assertFalse(AsciiInput.unmap(ByteBuffer.allocate(16)));
+
+            try (AsciiInput input = AsciiInput.open(file))
+            {
+                assertEquals(0, input.read());
+            }
+            // Mapping is released on close, so the file can be exported again
+            Files.write(file.toPath(), "M02*\n".getBytes(StandardCharsets.US_ASCII));
+            try (AsciiInput input = AsciiInput.open(file))
+            {
+                assertEquals(Arrays.asList("M02*"), readLines(input));
+            }
+        }
+        finally
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    private List<String> readLines(AsciiInput input) throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        AsciiLine line = new AsciiLine();
+        while (input.readLine(line))
+            lines.add(line.toString());
+        return lines;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.layers;
+
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.gerber.Flash;
+import org.cirqwizard.gerber.GerberPrimitive;
+import org.cirqwizard.gerber.LinearShape;
+import org.cirqwizard.gerber.appertures.CircularAperture;
+import org.cirqwizard.layers.Board;
+import org.cirqwizard.layers.Layer;
+import org.cirqwizard.layers.LayerElement;
+import org.cirqwizard.layers.Panel;
+import org.cirqwizard.layers.PanelBoard;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PanelTest
+{
+    private final static String GERBER = "%FSLAX24Y24*%\n%MOIN*%\n%ADD10C,0.0100*%\n%ADD11R,0.0600X0.0200*%\n" +
+            "D10*\nX10000Y10000D02*\nX20000Y10000D01*\nD11*\nX20000Y15000D03*\nM02*\n";
+
+    private Panel createPanel() throws IOException
+    {
+        File file = File.createTempFile("board", ".cmp");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file))
+        {
+            writer.write(GERBER);
+        }
+        String filename = file.getAbsolutePath().substring(0, file.getAbsolutePath().length() - ".cmp".length());
+        Panel panel = new Panel();
+        for (int i = 0; i < 2; i++)
+        {
+            PanelBoard board = new PanelBoard(filename, i * 50000, 1000);
+            board.loadBoard();
+            panel.addBoard(board);
+        }
+        return panel;
+    }
+
+    @Test
+    public void testPlacement() throws IOException
+    {
+        List<? extends LayerElement> elements = createPanel().getCombinedElements(Board.LayerType.TOP);
+        assertEquals(4, elements.size());
+        // Board is moved to origin by its extents, which include half of the trace width
+        assertEquals(new Point(127, 1127), ((LinearShape) elements.get(0)).getFrom());
+        assertEquals(new Point(25527, 13827), ((Flash) elements.get(1)).getPoint());
+        assertEquals(new Point(50127, 1127), ((LinearShape) elements.get(2)).getFrom());
+        assertEquals(new Point(75527, 13827), ((Flash) elements.get(3)).getPoint());
+    }
+
+    @Test
+    public void testCaching() throws IOException
+    {
+        Panel panel = createPanel();
+        List<? extends LayerElement> elements = panel.getCombinedElements(Board.LayerType.TOP);
+        assertSame(elements, panel.getCombinedElements(Board.LayerType.TOP));
+
+        panel.getBoards().get(1).setX(60000);
+        List<? extends LayerElement> moved = panel.getCombinedElements(Board.LayerType.TOP);
+        assertNotSame(elements, moved);
+        assertEquals(new Point(60127, 1127), ((LinearShape) moved.get(2)).getFrom());
+
+        panel.getBoards().get(0).rotate(true);
+        List<? extends LayerElement> rotated = panel.getCombinedElements(Board.LayerType.TOP);
+        assertNotSame(moved, rotated);
+        assertEquals(new Point(127, 27162), ((LinearShape) rotated.get(0)).getFrom());
+
+        panel.getBoards().remove(1);
+        assertEquals(2, panel.getCombinedElements(Board.LayerType.TOP).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testElementWhichCanNotBeCopied() throws IOException
+    {
+        Panel panel = createPanel();
+        Flash flash = new Flash(0, 0, new CircularAperture(1000), GerberPrimitive.Polarity.DARK)
+        {
+            @Override
+            public Object clone() throws CloneNotSupportedException
+            {
+                throw new CloneNotSupportedException();
+            }
+        };
+        panel.getBoards().get(0).getBoard().setLayer(Board.LayerType.MILLING, new Layer(Arrays.asList(flash)));
+        panel.getCombinedElements(Board.LayerType.MILLING).get(0);
+    }
+}
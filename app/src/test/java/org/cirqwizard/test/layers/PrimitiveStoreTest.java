@@ -0,0 +1,130 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.layers;
+
+import org.cirqwizard.geom.Arc;
+import org.cirqwizard.geom.Point;
+import org.cirqwizard.gerber.CircularShape;
+import org.cirqwizard.gerber.Flash;
+import org.cirqwizard.gerber.GerberPrimitive;
+import org.cirqwizard.gerber.InterpolatingShape;
+import org.cirqwizard.gerber.LinearShape;
+import org.cirqwizard.gerber.Region;
+import org.cirqwizard.gerber.appertures.CircularAperture;
+import org.cirqwizard.gerber.appertures.RectangularAperture;
+import org.cirqwizard.layers.Layer;
+import org.cirqwizard.layers.LayerElement;
+import org.cirqwizard.layers.PrimitiveStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrimitiveStoreTest
+{
+    private List<GerberPrimitive> createPrimitives()
+    {
+        List<GerberPrimitive> primitives = new ArrayList<>();
+        RectangularAperture pad = new RectangularAperture(1500, 600);
+        CircularAperture trace = new CircularAperture(300);
+        primitives.add(new Flash(10000, 5000, pad, GerberPrimitive.Polarity.DARK));
+        primitives.add(new Flash(12000, 5000, pad, GerberPrimitive.Polarity.CLEAR));
+        primitives.add(new LinearShape(10000, 5000, 20000, 8000, trace, GerberPrimitive.Polarity.DARK));
+        primitives.add(new CircularShape(20000, 8000, 25000, 13000, 25000, 8000, true, trace, GerberPrimitive.Polarity.DARK));
+        primitives.add(new CircularShape(3000, 1000, 1000, 3000, 1000, 1000, false, pad, GerberPrimitive.Polarity.CLEAR));
+        Region region = new Region(GerberPrimitive.Polarity.DARK);
+        region.addSegment(new LinearShape(0, 0, 4000, 0, null, GerberPrimitive.Polarity.DARK));
+        region.addSegment(new LinearShape(4000, 0, 4000, 4000, null, GerberPrimitive.Polarity.DARK));
+        region.addSegment(new LinearShape(4000, 4000, 0, 0, null, GerberPrimitive.Polarity.DARK));
+        primitives.add(region);
+        return primitives;
+    }
+
+    private String describe(GerberPrimitive primitive)
+    {
+        StringBuilder str = new StringBuilder(primitive.getClass().getSimpleName());
+        str.append(' ').append(primitive.getPolarity()).append(' ').append(primitive.getMin()).append(' ').append(primitive.getMax());
+        if (primitive.getAperture() != null)
+            str.append(' ').append(primitive.getAperture().getWidth()).append('x').append(primitive.getAperture().getHeight());
+        if (primitive instanceof Flash)
+            str.append(' ').append(((Flash) primitive).getPoint());
+        if (primitive instanceof InterpolatingShape)
+            str.append(' ').append(((InterpolatingShape) primitive).getFrom()).append(' ').append(((InterpolatingShape) primitive).getTo());
+        if (primitive instanceof CircularShape)
+        {
+            Arc arc = ((CircularShape) primitive).getArc();
+            str.append(' ').append(arc.getCenter()).append(' ').append(arc.getRadius()).append(' ').append(arc.isClockwise());
+        }
+        if (primitive instanceof Region)
+            ((Region) primitive).getSegments().forEach(s -> str.append(" [").append(describe(s)).append(']'));
+        return str.toString();
+    }
+
+    /**
+     * Compares primitives by their description, as elements of a store are different objects on every access
+     */
+    private void assertEquivalent(List<? extends LayerElement> expected, List<? extends LayerElement> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(describe((GerberPrimitive) expected.get(i)), describe((GerberPrimitive) actual.get(i)));
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        assertEquivalent(createPrimitives(), new PrimitiveStore(createPrimitives()).getElements());
+    }
+
+    @Test
+    public void testMoveAndRotate()
+    {
+        Layer objects = new Layer(createPrimitives());
+        Layer columns = new Layer(new PrimitiveStore(createPrimitives()));
+        for (Layer layer : new Layer[] {objects, columns})
+        {
+            layer.rotate(true);
+            layer.move(new Point(30000, 1000));
+            layer.rotate(true);
+            layer.rotate(false);
+            layer.rotate(false);
+            layer.rotate(false);
+            layer.move(new Point(-500, 40000));
+        }
+        assertEquivalent(objects.getElements(), columns.getElements());
+        assertEquals(objects.getMinPoint(), columns.getMinPoint());
+        assertEquals(objects.getMaxPoint(), columns.getMaxPoint());
+    }
+
+    @Test
+    public void testViews() throws CloneNotSupportedException
+    {
+        PrimitiveStore store = new PrimitiveStore(createPrimitives());
+        for (int turns = -2; turns <= 5; turns++)
+        {
+            List<GerberPrimitive> expected = new ArrayList<>();
+            for (GerberPrimitive primitive : createPrimitives())
+            {
+                for (int i = 0; i < Math.abs(turns); i++)
+                    primitive.rotate(turns > 0);
+                primitive.move(new Point(7000, -3000));
+                expected.add(primitive);
+            }
+            assertEquivalent(expected, store.getElements(turns, new Point(7000, -3000)));
+        }
+        assertEquivalent(createPrimitives(), store.getElements());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.post;
+
+import org.cirqwizard.post.RTPostprocessor;
+import org.junit.Test;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RTPostprocessorTest
+{
+    @Test
+    public void testCoordinateFormat()
+    {
+        DecimalFormat format = new DecimalFormat("0.###");
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols();
+        symbols.setDecimalSeparator('.');
+        format.setDecimalFormatSymbols(symbols);
+
+        StringBuilder str = new StringBuilder();
+        Random random = new Random(0);
+        for (int i = -20000; i < 200000; i++)
+        {
+            int value = i < 100000 ? i : random.nextInt();
+            str.setLength(0);
+            RTPostprocessor.appendCoordinate(str, value);
+            assertEquals(format.format((double) value / 1000), str.toString());
+        }
+        str.setLength(0);
+        RTPostprocessor.appendCoordinate(str, Integer.MIN_VALUE);
+        assertEquals("-2147483.648", str.toString());
+    }
+
+    @Test
+    public void testModalWords()
+    {
+        RTPostprocessor post = new RTPostprocessor();
+        StringBuilder str = new StringBuilder();
+        post.rapid(str, null, null, 1500);
+        post.rapid(str, 10000, -2050, 1500);
+        post.linearInterpolation(str, 10000, -2050, -100, 200000);
+        post.linearInterpolation(str, 12500, -2050, -100, 200000);
+        post.circularInterpolation(str, true, 12500, 3000, -100, 0, 2525, 150000);
+        post.selectWCS(str);
+        post.linearInterpolation(str, 12500, 3000, -100, 150000);
+        assertEquals("G0 Z1.5\n" +
+                "G0 X10 Y-2.05 \n" +
+                "G1 Z-0.1 F200\n" +
+                "G1 X12.5 \n" +
+                "G2 X12.5 Y3 I0 J2.525 F150\n" +
+                "G54\n" +
+                "G1 X12.5 Y3 Z-0.1 \n", str.toString());
+    }
+}
@@ -202,5 +202,22 @@ public class PPParserTest
         assertEquals("R1", p.getName());
     }
 
-
+    @Test
+    public void testBothSidesInOnePass() throws IOException
+    {
+        String fileContent = "\"C1\",\"100nF\",\"KERKO5X4R5\",\"23.876000\",\"14.732000\",\"90\",\"TOP\",\"SMD\"\n" +
+                "\"R1\",\"10kOhm\",\"RESC6432X70N\",\"29.972000\",\"56.388000\",\"180\",\"BOTTOM\",\"SMD\"\n" +
+                "\"R2\",\"1kOhm\",\"RESC6432X70N\",\"10.000000\",\"20.000000\",\"0\",\"TOP\",\"SMD\"";
+        String[] patterns = {PickAndPlaceFormat.ULTIBOARD.getTopRegex(), PickAndPlaceFormat.ULTIBOARD.getBottomRegex()};
+
+        List<List<PPPoint>> sides = new PPParser(new StringReader(fileContent), patterns, DistanceUnit.MM.getMultiplier()).parseAll();
+
+        assertEquals(2, sides.size());
+        assertEquals(2, sides.get(0).size());
+        assertEquals("C1", sides.get(0).get(0).getName());
+        assertEquals("R2", sides.get(0).get(1).getName());
+        assertEquals(1, sides.get(1).size());
+        assertEquals("R1", sides.get(1).get(0).getName());
+        assertEquals(new Point(29972, 56388), sides.get(1).get(0).getPoint());
+    }
 }
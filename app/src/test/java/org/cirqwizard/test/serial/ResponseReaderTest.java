@@ -0,0 +1,74 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.serial;
+
+import org.cirqwizard.serial.ResponseReader;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResponseReaderTest
+{
+    @Test
+    public void testLineSplitting() throws Exception
+    {
+        ResponseReader reader = new ResponseReader();
+        reader.feed("o".getBytes(StandardCharsets.US_ASCII));
+        assertNull(reader.readLine(0));
+        reader.feed("k\r\nerror: 2".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("ok", reader.readLine(0));
+        assertNull(reader.readLine(0));
+        reader.feed("0\n\r\nnack\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("error: 20", reader.readLine(0));
+        assertEquals("nack", reader.readLine(0));
+        assertNull(reader.readLine(0));
+
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            longLine.append((char) ('a' + i % 26));
+        reader.feed((longLine + "\n").getBytes(StandardCharsets.US_ASCII));
+        assertEquals(longLine.toString(), reader.readLine(0));
+    }
+
+    @Test
+    public void testHandover() throws Exception
+    {
+        ResponseReader reader = new ResponseReader();
+        Thread thread = new Thread(() -> reader.feed("ok\n".getBytes(StandardCharsets.US_ASCII)));
+        thread.start();
+        assertEquals("ok", reader.readLine(5000));
+        thread.join();
+
+        // Unread responses do not block the feeding thread, the oldest ones are dropped
+        for (int i = 0; i < 1000; i++)
+            reader.feed(("ok " + i + "\n").getBytes(StandardCharsets.US_ASCII));
+        assertEquals("ok 744", reader.readLine(0));
+        reader.clear();
+        assertNull(reader.readLine(0));
+    }
+
+    @Test
+    public void testClearDropsPartialLine() throws Exception
+    {
+        ResponseReader reader = new ResponseReader();
+        reader.feed("ok\nGrbl 1.1f [".getBytes(StandardCharsets.US_ASCII));
+        reader.clear();
+        assertNull(reader.readLine(0));
+        reader.feed("ok\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("ok", reader.readLine(0));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 3 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cirqwizard.test.serial;
+
+import org.cirqwizard.serial.ExecutionException;
+import org.cirqwizard.serial.SerialException;
+import org.cirqwizard.serial.StreamingSender;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingSenderTest
+{
+    /**
+     * Controller with a receive buffer which acknowledges a line once the line is executed
+     */
+    private static class ControllerStub implements StreamingSender.Connection
+    {
+        private int bufferSize;
+        private ArrayDeque<String> buffer = new ArrayDeque<>();
+        private int bufferedBytes;
+        private int maxBufferedBytes;
+        private List<String> executed = new ArrayList<>();
+        private String failingLine;
+
+        private ControllerStub(int bufferSize)
+        {
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public void write(String line) throws SerialException
+        {
+            buffer.add(line);
+            bufferedBytes += line.length() + 1;
+            maxBufferedBytes = Math.max(maxBufferedBytes, bufferedBytes);
+            if (buffer.size() > 1 && bufferedBytes > bufferSize)
+                throw new SerialException("Buffer overflow");
+        }
+
+        @Override
+        public String readLine(long timeout)
+        {
+            if (buffer.isEmpty())
+                return null;
+            if (executed.size() % 3 == 0 && !executed.contains("<status>"))
+            {
+                executed.add("<status>");
+                return "<Idle>";
+            }
+            String line = buffer.poll();
+            bufferedBytes -= line.length() + 1;
+            executed.add(line);
+            return line.equals(failingLine) ? "error:20" : "ok";
+        }
+    }
+
+    private static List<String> createProgram()
+    {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            lines.add("G1X" + i * 37 + "Y" + i * 11);
+        return lines;
+    }
+
+    @Test
+    public void testBufferIsKeptFull() throws Exception
+    {
+        ControllerStub controller = new ControllerStub(64);
+        List<String> lines = createProgram();
+        List<Integer> acknowledged = new ArrayList<>();
+        StringBuilder response = new StringBuilder();
+        new StreamingSender(controller, 64).send(lines.iterator(), 1000, response, false, acknowledged::add);
+
+        controller.executed.remove("<status>");
+        assertEquals(lines, controller.executed);
+        assertEquals(lines.size(), acknowledged.size());
+        for (int i = 0; i < acknowledged.size(); i++)
+            assertEquals(i, (int) acknowledged.get(i));
+        assertTrue(controller.maxBufferedBytes <= 64);
+        assertTrue(controller.maxBufferedBytes > 64 - 16);
+        assertTrue(response.toString().startsWith("<Idle>\nok\n"));
+    }
+
+    @Test
+    public void testErrorLineNumber() throws Exception
+    {
+        ControllerStub controller = new ControllerStub(128);
+        List<String> lines = createProgram();
+        controller.failingLine = lines.get(41);
+        try
+        {
+            new StreamingSender(controller, 128).send(lines.iterator(), 1000, null, false, i -> {});
+            fail("Execution error expected");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getMessage().contains("line 42 (" + lines.get(41) + ")"));
+        }
+
+        controller = new ControllerStub(128);
+        controller.failingLine = lines.get(41);
+        List<Integer> acknowledged = new ArrayList<>();
+        new StreamingSender(controller, 128).send(lines.iterator(), 1000, null, true, acknowledged::add);
+        assertEquals(lines.size(), acknowledged.size());
+    }
+
+    @Test
+    public void testResponseWithoutOutstandingLines() throws Exception
+    {
+        List<String> lines = createProgram().subList(0, 3);
+        List<String> written = new ArrayList<>();
+        ArrayDeque<String> responses = new ArrayDeque<>();
+        StreamingSender.Connection connection = new StreamingSender.Connection()
+        {
+            @Override
+            public void write(String line)
+            {
+                written.add(line);
+                responses.add("ok");
+                // Stray acknowledgement, e.g. of a command sent before streaming started
+                if (written.size() == lines.size())
+                    responses.add("ok");
+            }
+
+            @Override
+            public String readLine(long timeout)
+            {
+                return responses.poll();
+            }
+        };
+        List<Integer> acknowledged = new ArrayList<>();
+        // Lines of a producer which is still running when the last line is acknowledged and finishes right after
+        Iterator<String> iterator = new Iterator<String>()
+        {
+            private int index;
+            private boolean running = true;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (index < lines.size())
+                    return true;
+                if (acknowledged.size() < lines.size())
+                    return false;
+                boolean result = running;
+                running = false;
+                return result;
+            }
+
+            @Override
+            public String next()
+            {
+                return lines.get(index++);
+            }
+        };
+
+        new StreamingSender(connection, 1024).send(iterator, 1000, null, false, acknowledged::add);
+        assertEquals(lines, written);
+        assertEquals(3, acknowledged.size());
+        assertTrue(responses.isEmpty());
+    }
+}